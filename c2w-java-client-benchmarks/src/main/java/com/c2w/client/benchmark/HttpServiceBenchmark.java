@@ -0,0 +1,72 @@
+package com.c2w.client.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.service.Result;
+import com.c2w.client.core.service.ServiceException;
+import com.c2w.client.core.service.http.HttpService;
+
+/**
+ * Round trip of {@link HttpService#send(Message)} against the in-process stub server over loopback HTTP.
+ * Measures the whole client path: serialization, connection pool, HTTP exchange and result parsing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpServiceBenchmark {
+
+	private StubServer server;
+
+	private HttpService service;
+
+	private Message message;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		server = new StubServer(8);
+
+		System.setProperty(HttpService.SERVER_URL, server.getUrl());
+		service = new HttpService();
+		service.setApiToken("benchmark");
+		service.setApiKey("benchmark");
+		service.start();
+
+		message = Messages.create(1024);
+	}
+
+	@TearDown
+	public void tearDown() throws ServiceException {
+		service.stop();
+		server.stop();
+		System.getProperties().remove(HttpService.SERVER_URL);
+	}
+
+	@Benchmark
+	public Result send() throws ServiceException {
+		return service.send(message);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Result sendConcurrent() throws ServiceException {
+		return service.send(message);
+	}
+}
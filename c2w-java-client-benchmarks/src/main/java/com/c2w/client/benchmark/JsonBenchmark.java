@@ -0,0 +1,92 @@
+package com.c2w.client.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.service.Result;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * JSON mapping of the service model: serialization of {@link Message} and deserialization of {@link Result} 
+ * and {@link MessageResponse} lists, with the typed writers and readers used by the HTTP service
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+	private static final byte[] RESULT =
+			"{\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1000\" } }".getBytes();
+
+	private static final byte[] RESPONSES = ("[{\"messageId\": 1000, \"timestamp\": 1451649600000, \"respondedOption\": \"Restart\", "
+			+ "\"userId\": \"user@example.com\", \"channelId\": 1, \"properties\": { \"host\": \"app-server-01\" } }]").getBytes();
+
+	/*
+	 * Approximate length of the message text
+	 */
+	@Param({ "256", "4096" })
+	private int textLength;
+
+	private ObjectWriter messageWriter;
+
+	private ObjectReader resultReader;
+
+	private ObjectReader responseListReader;
+
+	private Message message;
+
+	private OutputStream out = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Setup
+	public void setUp() {
+		ObjectMapper mapper = new ObjectMapper();
+		messageWriter = mapper.writerWithType(Message.class);
+		resultReader = mapper.reader(Result.class);
+		responseListReader = mapper.reader(new TypeReference<List<MessageResponse>>(){});
+		message = Messages.create(textLength);
+	}
+
+	@Benchmark
+	public void serializeMessage() throws IOException {
+		messageWriter.writeValue(out, message);
+	}
+
+	@Benchmark
+	public Result deserializeResult() throws IOException {
+		return resultReader.readValue(RESULT);
+	}
+
+	@Benchmark
+	public List<MessageResponse> deserializeResponses() throws IOException {
+		return responseListReader.readValue(RESPONSES);
+	}
+}
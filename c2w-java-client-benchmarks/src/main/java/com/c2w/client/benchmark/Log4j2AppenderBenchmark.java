@@ -0,0 +1,101 @@
+package com.c2w.client.benchmark;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.c2w.client.core.service.Service;
+import com.c2w.client.log4j2.Corp2WorldAppender;
+
+/**
+ * Throughput of log4j2 {@link Corp2WorldAppender} appending events from many threads.
+ * Messages are published to a service which does not send them, so the benchmark measures the appender 
+ * queue and publisher thread. Events which do not fit into the full queue are dropped, as in production.
+ * Use JMH '-t' option to change the number of logging threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class Log4j2AppenderBenchmark {
+
+	/*
+	 * Appender queue type
+	 */
+	@Param({ "blocking", "ringBuffer" })
+	private String queueType;
+
+	private BenchmarkAppender appender;
+
+	private LogEvent event;
+
+	@Setup
+	public void setUp() {
+
+		appender = new BenchmarkAppender(PatternLayout.newBuilder().withPattern("%d %p [%t] %c{10} - %m%n").build());
+		appender.setQueueType(queueType);
+		appender.start();
+
+		event = new Log4jLogEvent("com.c2w.client.benchmark", null, Log4jLogEvent.class.getName(), Level.ERROR, 
+				new SimpleMessage("Something went wrong"), null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		appender.stop();
+	}
+
+	@Benchmark
+	public void append() {
+		appender.append(event);
+	}
+
+
+	/**
+	 * Appender publishing messages to the service which does not send them
+	 */
+	private static class BenchmarkAppender extends Corp2WorldAppender {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Service service = new NullService();
+
+		private BenchmarkAppender(Layout<? extends Serializable> layout) {
+			super("C2W", (Filter) null, layout, true, Property.EMPTY_ARRAY);
+		}
+
+		@Override
+		protected Service getService() {
+			return service;
+		}
+
+		@Override
+		protected void setQueueType(String queueType) {
+			super.setQueueType(queueType);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.c2w.client.benchmark;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.c2w.client.log4j2.Corp2WorldAppender;
+
+/**
+ * Formatting of log4j2 event topic and text by {@link Corp2WorldAppender}.
+ * <p>
+ * 'legacy' renders the layouts into byte arrays and decodes them into new strings, as the appender used to do.
+ * 'reused' renders them into the buffers reused by the publisher thread. Run with '-prof gc' to compare allocations.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Log4j2FormatBenchmark {
+
+	private Layout<? extends Serializable> topicLayout;
+
+	private Layout<? extends Serializable> layout;
+
+	private FormattingAppender appender;
+
+	private LogEvent event;
+
+	private StringBuilder topic = new StringBuilder(256);
+
+	private StringBuilder text = new StringBuilder(1024);
+
+	@Setup
+	public void setUp() {
+
+		topicLayout = PatternLayout.newBuilder().withPattern("Log %-5p Message").withAlwaysWriteExceptions(false).build();
+		layout = PatternLayout.newBuilder().withPattern("%d %-5p [%t] %c{2} - %m%n").build();
+		appender = new FormattingAppender(layout);
+		appender.setTopicPattern("Log %-5p Message");
+
+		event = Log4jLogEvent.newBuilder().setLoggerName("com.c2w.client.benchmark").setLevel(Level.ERROR)
+				.setMessage(new SimpleMessage("Something went wrong")).setThreadName("main")
+				.setTimeMillis(System.currentTimeMillis()).build();
+	}
+
+	@Benchmark
+	public int legacy() {
+		String messageTopic = new String(topicLayout.toByteArray(event));
+		String messageText = new StringBuilder(new String(layout.toByteArray(event))).toString();
+		return messageTopic.length() + messageText.length();
+	}
+
+	@Benchmark
+	public int reused() {
+		appender.format(event, topic, text);
+		int length = topic.length() + text.length();
+		topic.setLength(0);
+		text.setLength(0);
+		return length;
+	}
+
+
+	/**
+	 * Appender exposing its formatting methods
+	 */
+	private static class FormattingAppender extends Corp2WorldAppender {
+
+		private static final long serialVersionUID = 1L;
+
+		private FormattingAppender(Layout<? extends Serializable> layout) {
+			super("C2W", (Filter) null, layout, true, Property.EMPTY_ARRAY);
+		}
+
+		private void setTopicPattern(String pattern) {
+			setTopicLayout(PatternLayout.newBuilder().withPattern(pattern).withAlwaysWriteExceptions(false).build());
+		}
+
+		private void format(LogEvent event, StringBuilder topic, StringBuilder text) {
+			formatTopic(event, topic);
+			formatText(event, text);
+		}
+	}
+}
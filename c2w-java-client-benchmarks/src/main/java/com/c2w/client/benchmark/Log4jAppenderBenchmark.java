@@ -0,0 +1,74 @@
+package com.c2w.client.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.c2w.client.core.service.Service;
+import com.c2w.client.log4j.Corp2WorldAppender;
+
+/**
+ * Throughput of log4j {@link Corp2WorldAppender} appending events from many threads.
+ * Messages are published to a service which does not send them, so the benchmark measures the appender 
+ * queue and publisher thread. Events which do not fit into the full queue are dropped, as in production.
+ * Use JMH '-t' option to change the number of logging threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class Log4jAppenderBenchmark {
+
+	private Corp2WorldAppender appender;
+
+	private LoggingEvent event;
+
+	@Setup
+	public void setUp() {
+
+		// Full queue warnings are expected
+		LogLog.setQuietMode(true);
+
+		appender = new Corp2WorldAppender(new PatternLayout("%d %p [%t] %c{10} - %m%n")) {
+			private final Service service = new NullService();
+			@Override
+			protected Service getService() {
+				return service;
+			}
+		};
+		appender.setName("C2W");
+		appender.activateOptions();
+
+		Logger logger = Logger.getLogger("com.c2w.client.benchmark");
+		event = new LoggingEvent(Logger.class.getName(), logger, Level.ERROR, "Something went wrong", null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		appender.close();
+	}
+
+	@Benchmark
+	public void append() {
+		appender.doAppend(event);
+	}
+}
@@ -0,0 +1,28 @@
+package com.c2w.client.benchmark;
+
+import com.c2w.client.core.message.Message;
+
+/**
+ * Test messages used by benchmarks
+ */
+final class Messages {
+
+	private Messages() {
+	}
+
+	/**
+	 * Create message similar to the one sent by log appenders
+	 * @param textLength approximate length of the message text
+	 * @return message
+	 */
+	static Message create(int textLength) {
+
+		StringBuilder text = new StringBuilder(textLength);
+		while(text.length() < textLength)
+			text.append("2016-01-01 12:00:00,000 ERROR [main] com.test.Component (Component.java:42) - Something went wrong\n");
+
+		Message message = new Message("Log ERROR Message", text.toString());
+		message.getProperties().setProperty("host", "app-server-01");
+		return message;
+	}
+}
@@ -0,0 +1,55 @@
+package com.c2w.client.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.service.Result;
+import com.c2w.client.core.service.Service;
+
+/**
+ * Service accepting all messages without sending them, so appenders can be measured in isolation
+ */
+final class NullService implements Service {
+
+	private static final Result OK = new Result(Result.Status.OK, "Message accepted");
+
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public Result send(Message message) {
+		return OK;
+	}
+
+	@Override
+	public CompletableFuture<Result> sendAsync(Message message) {
+		return CompletableFuture.completedFuture(send(message));
+	}
+
+	@Override
+	public List<Result> sendBatch(List<Message> messages) {
+		List<Result> results = new ArrayList<Result>(messages.size());
+		for(Message message : messages)
+			results.add(send(message));
+		return results;
+	}
+
+	@Override
+	public List<MessageResponse> waitForResponse(long messageId, long timeoutSec) {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public CompletableFuture<List<MessageResponse>> awaitResponseAsync(long messageId, long timeoutSec) {
+		return CompletableFuture.completedFuture(Collections.<MessageResponse>emptyList());
+	}
+
+	@Override
+	public void stop() {
+	}
+}
@@ -0,0 +1,115 @@
+package com.c2w.client.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.service.Result;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Per-call cost of preparing the 'send message' request and parsing its result, without network.
+ * <p>
+ * 'legacy' benchmarks repeat what every send call used to do: build the endpoint URL from strings, serialize the message
+ * with the general object mapper into a String, re-encode it into the request entity and parse the result from a String.
+ * 'cached' benchmarks do what the send path does now: use the endpoint URI and typed writer/reader resolved once
+ * at service start and stream JSON directly.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendPathBenchmark {
+
+	private static final String URL_STRING = "https://www.corp2world.com:9443/rest";
+
+	private static final String PATH_POST_MESSAGE = "/message/post";
+
+	private static final byte[] RESULT =
+			"{\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1000\" } }".getBytes();
+
+	private ObjectMapper mapper;
+
+	private JsonFactory factory;
+
+	private ObjectWriter messageWriter;
+
+	private ObjectReader resultReader;
+
+	private URI postMessageUri;
+
+	private Message message;
+
+	private OutputStream out = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Setup
+	public void setUp() throws Exception {
+		mapper = new ObjectMapper();
+		factory = mapper.getJsonFactory();
+		messageWriter = mapper.writerWithType(Message.class);
+		resultReader = mapper.reader(Result.class);
+		postMessageUri = new URI(URL_STRING + PATH_POST_MESSAGE);
+		message = Messages.create(2048);
+	}
+
+	@Benchmark
+	public HttpPost legacyRequest() throws IOException {
+		HttpPost httpPost = new HttpPost(new URL(URL_STRING + PATH_POST_MESSAGE).toExternalForm());
+		StringEntity entity = new StringEntity(mapper.writeValueAsString(message), "UTF-8");
+		entity.setContentType("application/json");
+		httpPost.setEntity(entity);
+		entity.writeTo(out);
+		return httpPost;
+	}
+
+	@Benchmark
+	public HttpPost cachedRequest() throws IOException {
+		HttpPost httpPost = new HttpPost(postMessageUri);
+		JsonGenerator generator = factory.createJsonGenerator(out, JsonEncoding.UTF8);
+		messageWriter.writeValue(generator, message);
+		generator.flush();
+		return httpPost;
+	}
+
+	@Benchmark
+	public Result legacyResult() throws IOException {
+		return mapper.readValue(new String(RESULT, "UTF-8"), Result.class);
+	}
+
+	@Benchmark
+	public Result cachedResult() throws IOException {
+		return resultReader.readValue(new ByteArrayInputStream(RESULT));
+	}
+}
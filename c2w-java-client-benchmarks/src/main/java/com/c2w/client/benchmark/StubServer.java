@@ -0,0 +1,76 @@
+package com.c2w.client.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP server answering 'post message' requests with a fixed result, 
+ * so the client can be measured without network and server latency
+ */
+final class StubServer {
+
+	private static final byte[] RESULT =
+			"{\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1000\" } }".getBytes();
+
+	private final HttpServer server;
+
+	private final ExecutorService executor;
+
+	/**
+	 * Start server on a free local port
+	 * @param threads number of threads serving requests
+	 * @throws IOException if the server cannot be started
+	 */
+	StubServer(int threads) throws IOException {
+
+		// Response headers and body are written separately , avoid delayed ACK stalls on loopback
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/rest/message/post", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+
+				// Read the whole request , as the real server does
+				InputStream in = exchange.getRequestBody();
+				byte[] buffer = new byte[8192];
+				while(in.read(buffer) >= 0);
+				in.close();
+
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, RESULT.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(RESULT);
+				out.close();
+			}
+		});
+
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Get service URL of this server
+	 * @return URL
+	 */
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/rest";
+	}
+
+	/**
+	 * Stop server
+	 */
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,39 @@
+package com.c2w.client.core.limit;
+
+/**
+ * What to do with a message exceeding the client-side rate limit
+ */
+public enum RateLimitPolicy {
+
+	/**
+	 * Drop the message
+	 */
+	DROP,
+
+	/**
+	 * Wait until the message can be sent , up to the configured max delay , then drop the message
+	 */
+	DELAY,
+
+	/**
+	 * Merge messages of the same topic into a single message sent as soon as the rate limit allows
+	 */
+	COALESCE;
+
+
+	/**
+	 * Get policy by name , case insensitive
+	 * @param name policy name
+	 * @return policy
+	 * @throws IllegalArgumentException if the policy is unknown
+	 */
+	public static RateLimitPolicy parse(String name) {
+
+		if(name != null)
+			for(RateLimitPolicy policy : values())
+				if(policy.name().equalsIgnoreCase(name.trim()))
+					return policy;
+
+		throw new IllegalArgumentException("Unknown rate limit policy: " + name);
+	}
+}
@@ -0,0 +1,103 @@
+package com.c2w.client.core.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * The bucket is refilled with 'rate' tokens per second and holds up to 'burst' tokens. Instead of the number of tokens
+ * the bucket keeps the time the next token is due (generic cell rate algorithm), so taking a token is a single
+ * compare-and-set and no refill thread is needed. Tokens can also be reserved in advance, the caller then waits until
+ * its token is due.
+ * </p>
+ */
+public class TokenBucket {
+
+	/*
+	 * Time in nanoseconds between two tokens
+	 */
+	private final long interval;
+
+	/*
+	 * How far the due time of the next token may be ahead of now , in nanoseconds
+	 */
+	private final long tolerance;
+
+	/*
+	 * Time the next token is due if the bucket were refilled one token at a time , in nanoseconds
+	 */
+	private final AtomicLong due;
+
+	/**
+	 * Create new full bucket
+	 * @param ratePerSecond number of tokens added per second
+	 * @param burst max number of tokens in the bucket
+	 */
+	public TokenBucket(double ratePerSecond, int burst) {
+
+		if(ratePerSecond <= 0 || burst < 1)
+			throw new IllegalArgumentException("Invalid token bucket parameters, rate: " + ratePerSecond + ", burst: " + burst);
+
+		this.interval = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+		this.tolerance = interval * (burst - 1);
+		this.due = new AtomicLong(System.nanoTime() - tolerance - interval);
+	}
+
+	/**
+	 * Take a token if available
+	 * @return true if the token is taken
+	 */
+	public boolean tryAcquire() {
+		return reserve(0) == 0;
+	}
+
+	/**
+	 * Reserve a token available within the given time
+	 * @param maxWaitNanos max time in nanoseconds the caller can wait for the token
+	 * @return time in nanoseconds the caller must wait before using the token , 0 if it is available now ,
+	 * or -1 if no token is available within the given time and nothing is reserved
+	 */
+	public long reserve(long maxWaitNanos) {
+
+		while(true) {
+
+			long now = System.nanoTime();
+			long current = due.get();
+			long next = current - now > 0 ? current : now;
+			long wait = next - tolerance - now;
+
+			if(wait > maxWaitNanos)
+				return -1;
+
+			if(due.compareAndSet(current, next + interval))
+				return Math.max(0, wait);
+		}
+	}
+
+	/**
+	 * Return the token taken or reserved but not used
+	 */
+	public void release() {
+		due.addAndGet(-interval);
+	}
+
+	/**
+	 * Get time until the next token is available
+	 * @return time in nanoseconds , 0 if the token is available now
+	 */
+	public long getWaitNanos() {
+
+		long now = System.nanoTime();
+		long current = due.get();
+		return Math.max(0, (current - now > 0 ? current : now) - tolerance - now);
+	}
+
+	/**
+	 * Check if the bucket is full , i.e. it was not used for a while and can be discarded
+	 * @return true if the bucket is full
+	 */
+	public boolean isFull() {
+		return due.get() - System.nanoTime() <= 0;
+	}
+}
@@ -0,0 +1,190 @@
+package com.c2w.client.core.message;
+
+/**
+ * Builder of a single message from several events, used to send a storm of log events as one message.
+ * <p>
+ * Texts of the events are concatenated line by line, the message topic is the topic of the first event 
+ * followed by the number of events. The batch is limited by number of events and by size of the text in bytes
+ * (UTF-8 encoded), a single event larger than the limit still makes its own batch.
+ * </p>
+ * This class is not thread-safe.
+ */
+public class MessageBatch {
+
+	/**
+	 * Default max number of events in a batch
+	 */
+	public static final int DEFAULT_MAX_EVENTS = 100;
+	
+	/**
+	 * Default max size of the batch text in bytes
+	 */
+	public static final int DEFAULT_MAX_BYTES = 65536;
+	
+	/**
+	 * Message property holding the number of events in the batch
+	 */
+	public static final String EVENTS_PROPERTY = "events";
+	
+	/*
+	 * Line separator between event texts
+	 */
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	
+	/*
+	 * Max number of events
+	 */
+	private final int maxEvents;
+	
+	/*
+	 * Max text size in bytes
+	 */
+	private final int maxBytes;
+	
+	/*
+	 * Concatenated texts
+	 */
+	private final StringBuilder text = new StringBuilder();
+	
+	/*
+	 * Topic of the first event
+	 */
+	private String topic;
+	
+	/*
+	 * Number of events
+	 */
+	private int events;
+	
+	/*
+	 * Text size in bytes
+	 */
+	private int bytes;
+	
+	
+	/**
+	 * Create new batch
+	 * @param maxEvents max number of events
+	 * @param maxBytes max size of the batch text in bytes
+	 */
+	public MessageBatch(int maxEvents, int maxBytes) {
+		
+		if(maxEvents < 1)
+			throw new IllegalArgumentException("Max number of events must be positive: " + maxEvents);
+		if(maxBytes < 1)
+			throw new IllegalArgumentException("Max number of bytes must be positive: " + maxBytes);
+		
+		this.maxEvents = maxEvents;
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Add event to the batch if it fits into the limits. 
+	 * Event is always added to the empty batch
+	 * @param eventTopic topic of the event
+	 * @param eventText text of the event
+	 * @return true if the event is added , false if the batch is full
+	 */
+	public boolean add(CharSequence eventTopic, CharSequence eventText) {
+		
+		if(eventText == null)
+			eventText = "";
+		
+		boolean separate = events > 0 && text.length() > 0 && text.charAt(text.length() - 1) != '\n';
+		int eventBytes = utf8Length(eventText) + (separate ? LINE_SEPARATOR.length() : 0);
+		
+		if(events > 0 && (events >= maxEvents || bytes + eventBytes > maxBytes))
+			return false;
+		
+		if(events == 0)
+			topic = eventTopic != null ? eventTopic.toString() : null;
+		if(separate)
+			text.append(LINE_SEPARATOR);
+		text.append(eventText);
+		
+		bytes += eventBytes;
+		events++;
+		
+		return true;
+	}
+	
+	/**
+	 * Check if no more events can be added to the batch
+	 * @return true if the batch reached max number of events or max size
+	 */
+	public boolean isFull() {
+		return events >= maxEvents || bytes >= maxBytes;
+	}
+	
+	/**
+	 * Check if the batch has no events
+	 * @return true if the batch is empty
+	 */
+	public boolean isEmpty() {
+		return events == 0;
+	}
+	
+	/**
+	 * Get number of events in the batch
+	 * @return number of events
+	 */
+	public int size() {
+		return events;
+	}
+	
+	/**
+	 * Get size of the batch text in bytes
+	 * @return size in bytes
+	 */
+	public int getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * Create message from the events of the batch
+	 * @return message
+	 */
+	public Message toMessage() {
+		
+		Message message = new Message(events > 1 ? topic + " (" + events + " events)" : topic, text.toString());
+		if(events > 1)
+			message.getProperties().setProperty(EVENTS_PROPERTY, String.valueOf(events));
+		
+		return message;
+	}
+	
+	/**
+	 * Remove all events from the batch
+	 */
+	public void clear() {
+		text.setLength(0);
+		topic = null;
+		events = 0;
+		bytes = 0;
+	}
+	
+	
+	/*
+	 * Get length of the text in UTF-8 encoding without encoding it
+	 */
+	private static int utf8Length(CharSequence value) {
+		
+		int length = 0;
+		
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c < 0x80)
+				length++;
+			else if(c < 0x800)
+				length += 2;
+			else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 4;
+				i++;
+			}
+			else
+				length += 3;
+		}
+		
+		return length;
+	}
+}
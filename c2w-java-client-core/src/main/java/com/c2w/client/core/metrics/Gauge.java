@@ -0,0 +1,14 @@
+package com.c2w.client.core.metrics;
+
+/**
+ * Metric whose value is read on demand, e.g. current size of a queue.
+ * Implementations must be thread safe and fast, they are called when metrics are pulled.
+ */
+public interface Gauge {
+
+	/**
+	 * Get current value
+	 * @return value
+	 */
+	public long getValue();
+}
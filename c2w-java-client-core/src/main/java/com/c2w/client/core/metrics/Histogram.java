@@ -0,0 +1,147 @@
+package com.c2w.client.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values, e.g. latencies in nanoseconds.
+ * <p>
+ * Values are counted in log-linear buckets: every power of two range is split into 32 linear sub-buckets, so any
+ * value is reported with a relative error below 3% and the histogram covers the whole long range with a fixed
+ * array of counters. Recording a value is a few atomic increments without allocation. Percentiles are computed
+ * when they are read, concurrent recording may make them slightly inconsistent with the count.
+ * </p>
+ */
+public class Histogram {
+
+	/*
+	 * Every power of two range is split into 2^SUB_BUCKET_BITS linear sub-buckets
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/*
+	 * Counters of values by bucket
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT);
+
+	/*
+	 * Number and sum of recorded values
+	 */
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	/*
+	 * Max recorded value
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record value , negative values are recorded as 0
+	 * @param value value
+	 */
+	public void record(long value) {
+
+		if(value < 0)
+			value = 0;
+
+		buckets.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+
+		long current = max.get();
+		while(value > current && !max.compareAndSet(current, value))
+			current = max.get();
+	}
+
+	/**
+	 * Get number of recorded values
+	 * @return number of values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Get max recorded value
+	 * @return max value , 0 if nothing is recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get mean of recorded values
+	 * @return mean value , 0 if nothing is recorded
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n > 0 ? (double) sum.sum() / n : 0;
+	}
+
+	/**
+	 * Get value at the given percentile
+	 * @param percentile percentile from 0 to 100 , e.g. 99.9
+	 * @return the highest value of the bucket containing the percentile (not greater than the max value) , 0 if nothing is recorded
+	 */
+	public long getPercentile(double percentile) {
+
+		long total = 0;
+		for(int i = 0; i < buckets.length(); i++)
+			total += buckets.get(i);
+
+		if(total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+
+		long seen = 0;
+		for(int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if(seen >= rank)
+				return Math.min(highestValue(i), getMax());
+		}
+
+		return getMax();
+	}
+
+	/**
+	 * Remove all recorded values
+	 */
+	public void reset() {
+		for(int i = 0; i < buckets.length(); i++)
+			buckets.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	/*
+	 * Get bucket of the value
+	 */
+	static int index(long value) {
+
+		if(value < SUB_BUCKET_COUNT)
+			return (int) value;
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+	}
+
+	/*
+	 * Get the highest value counted in the bucket
+	 */
+	static long highestValue(int index) {
+
+		if(index < SUB_BUCKET_COUNT)
+			return index;
+
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		long next = (subBucket + 1) << shift;
+		return next > 0 ? next - 1 : Long.MAX_VALUE;
+	}
+}
@@ -0,0 +1,320 @@
+package com.c2w.client.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Registry of client metrics: counters, histograms and gauges identified by name.
+ * <p>
+ * Counters are {@link LongAdder}s and histograms are lock-free {@link Histogram}s, callers on the send path look
+ * them up once and keep the reference, so recording a value costs a few uncontended atomic operations.
+ * All metrics are pulled with {@link #snapshot()} , histograms are reported as 'name.count' , 'name.mean' , 'name.max' ,
+ * 'name.p50' , 'name.p99' and 'name.p999'.
+ * </p>
+ * <p>
+ * The default registry is registered in the platform MBean server as 'com.c2w.client:type=Metrics,name=default' ,
+ * every metric of the snapshot is a read only attribute. Registration can be disabled with
+ * 'com.c2w.service.metrics.jmx' system property set to 'false'.
+ * </p>
+ */
+public class MetricsRegistry {
+
+	/**
+	 * System property to disable registration of the default registry in JMX
+	 */
+	public static final String JMX = "com.c2w.service.metrics.jmx";
+
+	/**
+	 * Property to specify prefix of metric names of a service , so services sharing a registry record separate metrics
+	 */
+	public static final String PREFIX = "com.c2w.service.metrics.prefix";
+
+	/**
+	 * JMX domain of registered registries
+	 */
+	public static final String JMX_DOMAIN = "com.c2w.client";
+
+	/*
+	 * Logger
+	 */
+	private static Log log = LogFactory.getLog(MetricsRegistry.class);
+
+	/*
+	 * Default registry , created on demand
+	 */
+	private static volatile MetricsRegistry defaultRegistry;
+
+	/*
+	 * Name of the registry
+	 */
+	private final String name;
+
+	/*
+	 * Metrics by name
+	 */
+	private final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	private final Map<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+	/*
+	 * Name of the registry in JMX , null if not registered
+	 */
+	private ObjectName objectName;
+
+
+	/**
+	 * Create new registry
+	 * @param name name of the registry
+	 */
+	public MetricsRegistry(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Get the default registry used by services and appenders , registered in JMX unless disabled
+	 * @return default registry
+	 */
+	public static MetricsRegistry getDefault() {
+
+		if(defaultRegistry == null) {
+			synchronized(MetricsRegistry.class) {
+				if(defaultRegistry == null) {
+					MetricsRegistry registry = new MetricsRegistry("default");
+					if(!"false".equalsIgnoreCase(System.getProperty(JMX)))
+						registry.registerMBean();
+					defaultRegistry = registry;
+				}
+			}
+		}
+
+		return defaultRegistry;
+	}
+
+	/**
+	 * Get name of the registry
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get counter , create it if does not exist
+	 * @param name metric name
+	 * @return counter
+	 */
+	public LongAdder counter(String name) {
+
+		LongAdder counter = counters.get(name);
+		if(counter == null) {
+			counters.putIfAbsent(name, new LongAdder());
+			counter = counters.get(name);
+		}
+
+		return counter;
+	}
+
+	/**
+	 * Get histogram , create it if does not exist
+	 * @param name metric name
+	 * @return histogram
+	 */
+	public Histogram histogram(String name) {
+
+		Histogram histogram = histograms.get(name);
+		if(histogram == null) {
+			histograms.putIfAbsent(name, new Histogram());
+			histogram = histograms.get(name);
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * Register gauge , replacing the gauge with the same name
+	 * @param name metric name
+	 * @param gauge gauge
+	 */
+	public void gauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Remove metric with the given name
+	 * @param name metric name
+	 */
+	public void remove(String name) {
+		counters.remove(name);
+		histograms.remove(name);
+		gauges.remove(name);
+	}
+
+	/**
+	 * Remove gauge with the given name only if it is the given gauge , so a gauge registered by another owner is kept
+	 * @param name metric name
+	 * @param gauge gauge registered by the caller
+	 * @return true if the gauge is removed
+	 */
+	public boolean remove(String name, Gauge gauge) {
+		return gauges.remove(name, gauge);
+	}
+
+	/**
+	 * Get current values of all metrics sorted by name
+	 * @return metric values by name
+	 */
+	public SortedMap<String, Number> snapshot() {
+
+		SortedMap<String, Number> values = new TreeMap<String, Number>();
+
+		for(Map.Entry<String, LongAdder> entry : counters.entrySet())
+			values.put(entry.getKey(), entry.getValue().sum());
+
+		for(Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			Histogram histogram = entry.getValue();
+			values.put(entry.getKey() + ".count", histogram.getCount());
+			values.put(entry.getKey() + ".mean", histogram.getMean());
+			values.put(entry.getKey() + ".max", histogram.getMax());
+			values.put(entry.getKey() + ".p50", histogram.getPercentile(50));
+			values.put(entry.getKey() + ".p99", histogram.getPercentile(99));
+			values.put(entry.getKey() + ".p999", histogram.getPercentile(99.9));
+		}
+
+		for(Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+			try {
+				values.put(entry.getKey(), entry.getValue().getValue());
+			} catch(RuntimeException e) {
+				log.debug("Cannot read gauge " + entry.getKey() + ": " + e.getMessage());
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Reset all counters and histograms , gauges are not affected
+	 */
+	public void reset() {
+
+		for(LongAdder counter : counters.values())
+			counter.reset();
+
+		for(Histogram histogram : histograms.values())
+			histogram.reset();
+	}
+
+	/**
+	 * Register the registry in the platform MBean server as 'com.c2w.client:type=Metrics,name=&lt;registry name&gt;'
+	 */
+	public synchronized void registerMBean() {
+
+		if(objectName != null)
+			return;
+
+		try {
+			ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+			server.registerMBean(new MetricsMBean(), objectName);
+			this.objectName = objectName;
+		} catch(Exception e) {
+			log.warn("Cannot register metrics in JMX: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Unregister the registry from the platform MBean server
+	 */
+	public synchronized void unregisterMBean() {
+
+		if(objectName == null)
+			return;
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch(Exception e) {
+			log.warn("Cannot unregister metrics from JMX: " + e.getMessage());
+		}
+
+		objectName = null;
+	}
+
+
+	/**
+	 * Read only MBean exposing metrics of the snapshot as attributes
+	 */
+	private class MetricsMBean implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+
+			Number value = snapshot().get(attribute);
+			if(value == null)
+				throw new AttributeNotFoundException("No such metric: " + attribute);
+
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+
+			Map<String, Number> values = snapshot();
+
+			AttributeList list = new AttributeList();
+			for(String attribute : attributes)
+				if(values.containsKey(attribute))
+					list.add(new Attribute(attribute, values.get(attribute)));
+
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Metrics are read only: " + attribute.getName());
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException("No operations: " + actionName);
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+
+			List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+			for(Map.Entry<String, Number> entry : snapshot().entrySet())
+				attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+					entry.getKey(), true, false, false));
+
+			return new MBeanInfo(MetricsRegistry.class.getName(), "Corp2World client metrics",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+		}
+	}
+}
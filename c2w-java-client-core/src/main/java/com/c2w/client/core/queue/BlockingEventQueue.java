@@ -0,0 +1,74 @@
+package com.c2w.client.core.queue;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event queue backed by {@link ArrayBlockingQueue}.
+ * Producers and the consumer share a single lock, the consumer waits for events without spinning
+ * @param <E> event type
+ */
+public class BlockingEventQueue<E> implements EventQueue<E> {
+
+	/*
+	 * Events
+	 */
+	private final BlockingQueue<E> queue;
+	
+	/*
+	 * Max number of events
+	 */
+	private final int capacity;
+	
+	
+	/**
+	 * Create new queue
+	 * @param capacity max number of events
+	 */
+	public BlockingEventQueue(int capacity) {
+		this.capacity = capacity;
+		this.queue = new ArrayBlockingQueue<E>(capacity);
+	}
+	
+	@Override
+	public boolean offer(E event) {
+		return queue.offer(event);
+	}
+
+	@Override
+	public boolean offer(E event, long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.offer(event, timeout, unit);
+	}
+
+	@Override
+	public E poll() {
+		return queue.poll();
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.poll(timeout, unit);
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		return queue.take();
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> collection, int maxEvents) {
+		return queue.drainTo(collection, maxEvents);
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+}
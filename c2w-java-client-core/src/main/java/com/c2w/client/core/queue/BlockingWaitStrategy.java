@@ -0,0 +1,58 @@
+package com.c2w.client.core.queue;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Consumers sleep on a condition until a producer signals them.
+ * Uses no CPU while idle, producers take a lock only when a consumer is actually sleeping
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+	/*
+	 * Lock guarding the condition
+	 */
+	private final Lock lock = new ReentrantLock();
+	
+	/*
+	 * Condition consumers sleep on
+	 */
+	private final Condition notEmpty = lock.newCondition();
+	
+	/*
+	 * Number of consumers going to sleep or sleeping , changed under the lock
+	 */
+	private volatile int waiting;
+	
+	@Override
+	public void waitFor(EventQueue<?> queue, long timeoutNanos) throws InterruptedException {
+		
+		lock.lockInterruptibly();
+		try {
+			
+			// Check the queue after the counter is set , so an event added concurrently is either seen here or signaled
+			waiting++;
+			long remaining = timeoutNanos;
+			while(queue.size() == 0 && remaining > 0)
+				remaining = notEmpty.awaitNanos(remaining);
+			
+		} finally {
+			waiting--;
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void signal() {
+		
+		if(waiting > 0) {
+			lock.lock();
+			try {
+				notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
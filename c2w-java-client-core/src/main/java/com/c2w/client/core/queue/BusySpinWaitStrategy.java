@@ -0,0 +1,27 @@
+package com.c2w.client.core.queue;
+
+/**
+ * Consumer checks the queue in a tight loop.
+ * Lowest latency , but the idle consumer burns a whole CPU core. Use only if the publisher thread has a dedicated core
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+	@Override
+	public void waitFor(EventQueue<?> queue, long timeoutNanos) throws InterruptedException {
+		
+		long deadline = System.nanoTime() + timeoutNanos;
+		
+		while(queue.size() == 0) {
+			
+			if(Thread.interrupted())
+				throw new InterruptedException();
+			
+			if(deadline - System.nanoTime() <= 0)
+				return;
+		}
+	}
+
+	@Override
+	public void signal() {
+	}
+}
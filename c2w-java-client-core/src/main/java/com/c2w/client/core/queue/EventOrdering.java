@@ -0,0 +1,64 @@
+package com.c2w.client.core.queue;
+
+/**
+ * Order of events kept by several publisher threads consuming events in parallel
+ */
+public enum EventOrdering {
+
+	/**
+	 * No order , all publisher threads consume a single shared queue
+	 */
+	NONE,
+	
+	/**
+	 * Events of the same logger are published in order , 
+	 * every publisher thread consumes its own queue and events are routed by logger name
+	 */
+	LOGGER,
+	
+	/**
+	 * Events with the same message topic are published in order , 
+	 * every publisher thread consumes its own queue and events are routed by topic
+	 */
+	TOPIC;
+	
+	
+	/**
+	 * Get ordering by name , case insensitive
+	 * @param name ordering name
+	 * @return ordering
+	 * @throws IllegalArgumentException if the ordering is unknown
+	 */
+	public static EventOrdering parse(String name) {
+		
+		if(name != null)
+			for(EventOrdering ordering : values())
+				if(ordering.name().equalsIgnoreCase(name.trim()))
+					return ordering;
+		
+		throw new IllegalArgumentException("Unknown event ordering: " + name);
+	}
+	
+	
+	/**
+	 * Get index of the queue events with the given key are routed to
+	 * @param key ordering key , logger name or topic
+	 * @param partitions number of queues
+	 * @return queue index
+	 */
+	public static int partition(CharSequence key, int partitions) {
+		
+		if(key == null || partitions <= 1)
+			return 0;
+		
+		// Same as String.hashCode , but does not need a String
+		int hash = 0;
+		for(int i = 0; i < key.length(); i++)
+			hash = 31 * hash + key.charAt(i);
+		
+		// Spread the bits , so keys differing in the last characters only are distributed too
+		hash ^= (hash >>> 16);
+		
+		return (hash & Integer.MAX_VALUE) % partitions;
+	}
+}
@@ -0,0 +1,75 @@
+package com.c2w.client.core.queue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of events published by many application threads and consumed by a single publisher thread.
+ * <p>
+ * Producers never block, events which do not fit into the full queue are rejected by {@link #offer(Object)}, 
+ * unless they choose to wait for free space with {@link #offer(Object, long, TimeUnit)}.
+ * </p>
+ * @param <E> event type
+ */
+public interface EventQueue<E> {
+
+	/**
+	 * Add event to the queue if there is free space
+	 * @param event event , must not be null
+	 * @return true if the event is added , false if the queue is full
+	 */
+	public boolean offer(E event);
+	
+	/**
+	 * Add event to the queue , waiting up to the given time for free space if the queue is full
+	 * @param event event , must not be null
+	 * @param timeout max time to wait
+	 * @param unit time unit of the timeout
+	 * @return true if the event is added , false if the timeout expires
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public boolean offer(E event, long timeout, TimeUnit unit) throws InterruptedException;
+	
+	/**
+	 * Remove the oldest event from the queue
+	 * @return event , or null if the queue is empty
+	 */
+	public E poll();
+	
+	/**
+	 * Remove the oldest event from the queue , waiting up to the given time if the queue is empty
+	 * @param timeout max time to wait
+	 * @param unit time unit of the timeout
+	 * @return event , or null if the timeout expires
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException;
+	
+	/**
+	 * Remove the oldest event from the queue , waiting until an event is available
+	 * @return event
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public E take() throws InterruptedException;
+	
+	/**
+	 * Remove available events from the queue and add them to the given collection
+	 * @param collection collection to add events to
+	 * @param maxEvents max number of events to remove
+	 * @return number of removed events
+	 */
+	public int drainTo(Collection<? super E> collection, int maxEvents);
+	
+	/**
+	 * Get number of events in the queue.
+	 * The value may be inaccurate while events are added or removed concurrently
+	 * @return number of events
+	 */
+	public int size();
+	
+	/**
+	 * Get max number of events the queue can hold
+	 * @return capacity
+	 */
+	public int capacity();
+}
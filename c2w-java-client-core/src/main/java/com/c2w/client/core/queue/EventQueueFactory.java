@@ -0,0 +1,77 @@
+package com.c2w.client.core.queue;
+
+/**
+ * Factory of event queues and wait strategies configured by names
+ */
+public class EventQueueFactory {
+
+	/**
+	 * Queue type backed by {@link java.util.concurrent.ArrayBlockingQueue}
+	 */
+	public static final String BLOCKING = "blocking";
+	
+	/**
+	 * Lock-free ring buffer queue type
+	 */
+	public static final String RING_BUFFER = "ringBuffer";
+	
+	/**
+	 * Wait strategy sleeping on a lock condition
+	 */
+	public static final String WAIT_BLOCKING = "blocking";
+	
+	/**
+	 * Wait strategy spinning, yielding and parking for a short time
+	 */
+	public static final String WAIT_SLEEPING = "sleeping";
+	
+	/**
+	 * Wait strategy spinning and yielding
+	 */
+	public static final String WAIT_YIELDING = "yielding";
+	
+	/**
+	 * Wait strategy spinning
+	 */
+	public static final String WAIT_BUSY_SPIN = "busySpin";
+	
+	
+	/**
+	 * Create event queue
+	 * @param type queue type , {@link #BLOCKING} if null
+	 * @param capacity max number of events
+	 * @param waitStrategy name of the consumer wait strategy , used by {@link #RING_BUFFER} queue only, {@link #WAIT_SLEEPING} if null
+	 * @return event queue
+	 * @throws IllegalArgumentException if the queue type or wait strategy is unknown
+	 */
+	public static <E> EventQueue<E> createQueue(String type, int capacity, String waitStrategy) {
+		
+		if(type == null || BLOCKING.equalsIgnoreCase(type))
+			return new BlockingEventQueue<E>(capacity);
+		
+		if(RING_BUFFER.equalsIgnoreCase(type))
+			return new RingBufferEventQueue<E>(capacity, createWaitStrategy(waitStrategy));
+		
+		throw new IllegalArgumentException("Unknown queue type: " + type);
+	}
+	
+	/**
+	 * Create wait strategy
+	 * @param name strategy name , {@link #WAIT_SLEEPING} if null
+	 * @return wait strategy
+	 * @throws IllegalArgumentException if the strategy is unknown
+	 */
+	public static WaitStrategy createWaitStrategy(String name) {
+		
+		if(name == null || WAIT_SLEEPING.equalsIgnoreCase(name))
+			return new SleepingWaitStrategy();
+		if(WAIT_BLOCKING.equalsIgnoreCase(name))
+			return new BlockingWaitStrategy();
+		if(WAIT_YIELDING.equalsIgnoreCase(name))
+			return new YieldingWaitStrategy();
+		if(WAIT_BUSY_SPIN.equalsIgnoreCase(name))
+			return new BusySpinWaitStrategy();
+		
+		throw new IllegalArgumentException("Unknown wait strategy: " + name);
+	}
+}
@@ -0,0 +1,225 @@
+package com.c2w.client.core.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds events to the event queue applying the {@link OverflowPolicy} when the queue is full.
+ * <p>
+ * Dropped events are counted instead of being reported one by one, so an overloaded application 
+ * is not flooded with warnings. Consumer threads call {@link #checkDropped()} regularly 
+ * and report the number of events dropped since the previous report once per report interval.
+ * </p>
+ * @param <E> event type
+ */
+public class OverflowHandler<E> {
+
+	/**
+	 * Default time in milliseconds to wait for free space with {@link OverflowPolicy#BLOCK_WITH_TIMEOUT}
+	 */
+	public static final long DEFAULT_TIMEOUT_MS = 100;
+	
+	/**
+	 * Default min interval in milliseconds between reports of dropped events
+	 */
+	public static final long DEFAULT_REPORT_INTERVAL_MS = 10000;
+	
+	/*
+	 * Max number of attempts to evict the oldest event before the new event is dropped
+	 */
+	private static final int MAX_EVICTIONS = 16;
+	
+	/*
+	 * Queue
+	 */
+	private final EventQueue<E> queue;
+	
+	/*
+	 * Overflow policy
+	 */
+	private final OverflowPolicy policy;
+	
+	/*
+	 * Time in nanoseconds to wait for free space
+	 */
+	private final long timeoutNanos;
+	
+	/*
+	 * Min interval in nanoseconds between reports
+	 */
+	private final long reportIntervalNanos;
+	
+	/*
+	 * Number of free slots kept for important events with DROP_BELOW_LEVEL policy
+	 */
+	private final int reserved;
+	
+	/*
+	 * Total number of dropped events
+	 */
+	private final LongAdder dropped = new LongAdder();
+	
+	/*
+	 * Number of dropped events at the time of the last report , guarded by this handler
+	 */
+	private long reportedDropped;
+	
+	/*
+	 * Time of the last report , guarded by this handler
+	 */
+	private long lastReportNanos = System.nanoTime();
+	
+	
+	/**
+	 * Create new handler with default timeout and report interval
+	 * @param queue event queue
+	 * @param policy overflow policy , {@link OverflowPolicy#DROP_NEWEST} if null
+	 */
+	public OverflowHandler(EventQueue<E> queue, OverflowPolicy policy) {
+		this(queue, policy, DEFAULT_TIMEOUT_MS, DEFAULT_REPORT_INTERVAL_MS);
+	}
+	
+	/**
+	 * Create new handler
+	 * @param queue event queue
+	 * @param policy overflow policy , {@link OverflowPolicy#DROP_NEWEST} if null
+	 * @param timeoutMs time in milliseconds to wait for free space with {@link OverflowPolicy#BLOCK_WITH_TIMEOUT}
+	 * @param reportIntervalMs min interval in milliseconds between reports of dropped events
+	 */
+	public OverflowHandler(EventQueue<E> queue, OverflowPolicy policy, long timeoutMs, long reportIntervalMs) {
+		
+		this.queue = queue;
+		this.policy = policy != null ? policy : OverflowPolicy.DROP_NEWEST;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMs));
+		this.reportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, reportIntervalMs));
+		// Keep a tenth of the queue for important events
+		this.reserved = queue.capacity() / 10;
+	}
+	
+	
+	/**
+	 * Add event to the queue , applying the overflow policy if the queue is full
+	 * @param event event
+	 * @param important if the event should be kept with {@link OverflowPolicy#DROP_BELOW_LEVEL} policy
+	 * @return true if the event is added
+	 */
+	public boolean offer(E event, boolean important) {
+		
+		switch(policy) {
+		
+		case DROP_OLDEST:
+			return offerEvictingOldest(event);
+			
+		case BLOCK_WITH_TIMEOUT:
+			try {
+				if(queue.offer(event, timeoutNanos, TimeUnit.NANOSECONDS))
+					return true;
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			dropped.increment();
+			return false;
+			
+		case DROP_BELOW_LEVEL:
+			if(important)
+				return offerEvictingOldest(event);
+			if(reserved > 0 && queue.size() >= queue.capacity() - reserved) {
+				dropped.increment();
+				return false;
+			}
+			// fall through
+			
+		default:
+			if(queue.offer(event))
+				return true;
+			dropped.increment();
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Get number of events dropped since the last report if the report interval expired
+	 * @return number of events to report , 0 if nothing to report yet
+	 */
+	public synchronized long checkDropped() {
+		
+		long now = System.nanoTime();
+		if(now - lastReportNanos < reportIntervalNanos)
+			return 0;
+		
+		return flushDropped(now);
+	}
+	
+	
+	/**
+	 * Get number of events dropped since the last report regardless of the report interval , 
+	 * e.g. when the consumer terminates
+	 * @return number of events to report
+	 */
+	public synchronized long flushDropped() {
+		return flushDropped(System.nanoTime());
+	}
+	
+	
+	/**
+	 * Get total number of dropped events
+	 * @return number of dropped events
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+	
+	
+	/**
+	 * Get queue events are added to
+	 * @return event queue
+	 */
+	public EventQueue<E> getQueue() {
+		return queue;
+	}
+	
+	
+	/**
+	 * Get overflow policy
+	 * @return overflow policy
+	 */
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+	
+	
+	/*
+	 * Add event removing the oldest events if the queue is full
+	 */
+	private boolean offerEvictingOldest(E event) {
+		
+		for(int i = 0; i < MAX_EVICTIONS; i++) {
+			if(queue.offer(event))
+				return true;
+			if(queue.poll() != null)
+				dropped.increment();
+		}
+		
+		// Other producers take the free space faster
+		if(queue.offer(event))
+			return true;
+		dropped.increment();
+		return false;
+	}
+	
+	
+	/*
+	 * Take the number of unreported dropped events
+	 */
+	private long flushDropped(long now) {
+		
+		long total = dropped.sum();
+		long count = total - reportedDropped;
+		
+		reportedDropped = total;
+		lastReportNanos = now;
+		
+		return count;
+	}
+}
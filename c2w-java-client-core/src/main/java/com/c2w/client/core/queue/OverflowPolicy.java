@@ -0,0 +1,45 @@
+package com.c2w.client.core.queue;
+
+/**
+ * What to do with an event which does not fit into the full event queue
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Drop the new event
+	 */
+	DROP_NEWEST,
+	
+	/**
+	 * Drop the oldest events waiting in the queue to make room for the new event
+	 */
+	DROP_OLDEST,
+	
+	/**
+	 * Wait for free space up to the configured timeout , then drop the new event
+	 */
+	BLOCK_WITH_TIMEOUT,
+	
+	/**
+	 * Drop events of low importance (e.g. below ERROR level) while the queue is nearly full , 
+	 * important events are added evicting the oldest events if necessary
+	 */
+	DROP_BELOW_LEVEL;
+	
+	
+	/**
+	 * Get policy by name , case insensitive
+	 * @param name policy name
+	 * @return policy
+	 * @throws IllegalArgumentException if the policy is unknown
+	 */
+	public static OverflowPolicy parse(String name) {
+		
+		if(name != null)
+			for(OverflowPolicy policy : values())
+				if(policy.name().equalsIgnoreCase(name.trim()))
+					return policy;
+		
+		throw new IllegalArgumentException("Unknown overflow policy: " + name);
+	}
+}
@@ -0,0 +1,262 @@
+package com.c2w.client.core.queue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free bounded multi-producer event queue.
+ * <p>
+ * Events are stored in a ring buffer of power of two size. Every slot has a sequence number telling whether 
+ * it is free for the producer or published for the consumer, producers claim slots with a single CAS, 
+ * so application threads adding events never block each other on a lock. 
+ * The consumer waits for events using the given {@link WaitStrategy}.
+ * </p>
+ * <p>
+ * Consumers claim events with a CAS as well, so several publisher threads may consume the same queue 
+ * and producers may remove the oldest events concurrently to make room for new ones.
+ * </p>
+ * @param <E> event type
+ */
+public class RingBufferEventQueue<E> implements EventQueue<E> {
+
+	/*
+	 * Max time in nanoseconds a producer waiting for free space sleeps between attempts
+	 */
+	private static final long MAX_OFFER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	/*
+	 * Events
+	 */
+	private final AtomicReferenceArray<E> buffer;
+	
+	/*
+	 * Slot sequences: equal to the producer position if the slot is free , 
+	 * position + 1 if the slot is published for the consumer
+	 */
+	private final AtomicLongArray sequences;
+	
+	/*
+	 * Index mask , capacity - 1
+	 */
+	private final int mask;
+	
+	/*
+	 * Next position to be claimed by producers
+	 */
+	private final PaddedAtomicLong tail = new PaddedAtomicLong();
+	
+	/*
+	 * Next position to be consumed
+	 */
+	private final PaddedAtomicLong head = new PaddedAtomicLong();
+	
+	/*
+	 * Consumer waiting strategy
+	 */
+	private final WaitStrategy waitStrategy;
+	
+	
+	/**
+	 * Create new queue
+	 * @param capacity min number of events , rounded up to the nearest power of two , at least 2
+	 * @param waitStrategy consumer waiting strategy
+	 */
+	public RingBufferEventQueue(int capacity, WaitStrategy waitStrategy) {
+		
+		if(capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Capacity must be from 1 to 2^30: " + capacity);
+		if(waitStrategy == null)
+			throw new IllegalArgumentException("Wait strategy must be specified");
+		
+		// A single slot cannot tell a published event from a free slot of the next round
+		int size = Integer.highestOneBit(Math.max(capacity, 2));
+		if(size < capacity)
+			size <<= 1;
+		
+		this.buffer = new AtomicReferenceArray<E>(size);
+		this.sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++)
+			sequences.set(i, i);
+		this.mask = size - 1;
+		this.waitStrategy = waitStrategy;
+	}
+	
+	@Override
+	public boolean offer(E event) {
+		
+		if(event == null)
+			throw new NullPointerException("Event must not be null");
+		
+		long position = tail.get();
+		int index;
+		
+		while(true) {
+			
+			index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			
+			if(difference == 0) {
+				// Slot is free , claim it
+				if(tail.compareAndSet(position, position + 1))
+					break;
+				position = tail.get();
+			}
+			else if(difference < 0) {
+				// Slot is not consumed yet , the queue is full
+				return false;
+			}
+			else {
+				// Slot is claimed by another producer
+				position = tail.get();
+			}
+		}
+		
+		// Publish the event , volatile write orders it before the check of the waiting consumer
+		buffer.lazySet(index, event);
+		sequences.set(index, position + 1);
+		
+		waitStrategy.signal();
+		
+		return true;
+	}
+
+	@Override
+	public boolean offer(E event, long timeout, TimeUnit unit) throws InterruptedException {
+		
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		
+		while(!offer(event)) {
+			if(Thread.interrupted())
+				throw new InterruptedException();
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				return false;
+			// The consumer is not signaled about free slots , check them again shortly
+			LockSupport.parkNanos(Math.min(remaining, MAX_OFFER_PARK_NANOS));
+		}
+		
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		
+		long position = head.get();
+		int index;
+		
+		while(true) {
+			
+			index = (int) position & mask;
+			long difference = sequences.get(index) - (position + 1);
+			
+			if(difference == 0) {
+				// Event is published , claim it
+				if(head.compareAndSet(position, position + 1))
+					break;
+				position = head.get();
+			}
+			else if(difference < 0) {
+				// Event is not published yet , the queue is empty
+				return null;
+			}
+			else {
+				// Event is removed by another thread
+				position = head.get();
+			}
+		}
+		
+		E event = buffer.get(index);
+		buffer.lazySet(index, null);
+		
+		// Release the slot for the producer of the next round
+		sequences.lazySet(index, position + mask + 1);
+		
+		return event;
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		
+		E event;
+		while((event = poll()) == null) {
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				return null;
+			waitStrategy.waitFor(this, remaining);
+		}
+		
+		return event;
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		
+		E event;
+		while((event = poll()) == null)
+			waitStrategy.waitFor(this, Long.MAX_VALUE);
+		
+		return event;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> collection, int maxEvents) {
+		
+		int count = 0;
+		E event;
+		
+		while(count < maxEvents && (event = poll()) != null) {
+			collection.add(event);
+			count++;
+		}
+		
+		return count;
+	}
+
+	@Override
+	public int size() {
+		
+		// Read head first , so the size is never negative
+		long consumed = head.get();
+		long claimed = tail.get();
+		
+		return (int) Math.max(0, Math.min(claimed - consumed, mask + 1));
+	}
+
+	@Override
+	public int capacity() {
+		return mask + 1;
+	}
+	
+	/**
+	 * Get consumer waiting strategy
+	 * @return wait strategy
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+	
+	
+	/**
+	 * Atomic long padded to its own cache line, 
+	 * so producers updating the tail do not slow down the consumer updating the head
+	 */
+	@SuppressWarnings("serial")
+	private static class PaddedAtomicLong extends AtomicLong {
+		
+		public volatile long p1, p2, p3, p4, p5, p6 = 7L;
+		
+		/*
+		 * Read padding , so it is not removed as unused
+		 */
+		@SuppressWarnings("unused")
+		long sumPadding() {
+			return p1 + p2 + p3 + p4 + p5 + p6;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.c2w.client.core.queue;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Consumer spins , then yields , then parks for a short time between checks of the queue.
+ * Producers never signal the consumer, so adding an event costs no more than the queue itself. 
+ * Idle consumer wakes up every 'sleep' period
+ */
+public class SleepingWaitStrategy implements WaitStrategy {
+
+	/**
+	 * Default number of checks of the queue before parking
+	 */
+	public static final int DEFAULT_RETRIES = 200;
+	
+	/**
+	 * Default park time in nanoseconds
+	 */
+	public static final long DEFAULT_SLEEP_NANOS = 100000;
+	
+	/*
+	 * Number of checks of the queue before parking , the first half spin and the second half yield
+	 */
+	private final int retries;
+	
+	/*
+	 * Park time in nanoseconds
+	 */
+	private final long sleepNanos;
+	
+	
+	/**
+	 * Create new strategy with default settings
+	 */
+	public SleepingWaitStrategy() {
+		this(DEFAULT_RETRIES, DEFAULT_SLEEP_NANOS);
+	}
+	
+	/**
+	 * Create new strategy
+	 * @param retries number of checks of the queue before parking
+	 * @param sleepNanos park time in nanoseconds
+	 */
+	public SleepingWaitStrategy(int retries, long sleepNanos) {
+		
+		if(retries < 0)
+			throw new IllegalArgumentException("Number of retries must not be negative: " + retries);
+		if(sleepNanos <= 0)
+			throw new IllegalArgumentException("Sleep time must be positive: " + sleepNanos);
+		
+		this.retries = retries;
+		this.sleepNanos = sleepNanos;
+	}
+	
+	@Override
+	public void waitFor(EventQueue<?> queue, long timeoutNanos) throws InterruptedException {
+		
+		long deadline = System.nanoTime() + timeoutNanos;
+		int counter = retries;
+		
+		while(queue.size() == 0) {
+			
+			if(Thread.interrupted())
+				throw new InterruptedException();
+			
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				return;
+			
+			if(counter > retries / 2)
+				counter--;
+			else if(counter > 0) {
+				counter--;
+				Thread.yield();
+			}
+			else
+				LockSupport.parkNanos(Math.min(sleepNanos, remaining));
+		}
+	}
+
+	@Override
+	public void signal() {
+	}
+}
@@ -0,0 +1,26 @@
+package com.c2w.client.core.queue;
+
+/**
+ * Strategy of consumer threads waiting for events in {@link RingBufferEventQueue}.
+ * <p>
+ * Strategies trade CPU usage for latency of waking up, and decide whether producers pay
+ * for waking consumers up. The same strategy instance must not be shared by several queues.
+ * </p>
+ */
+public interface WaitStrategy {
+
+	/**
+	 * Wait until the queue is not empty or the timeout expires. 
+	 * The method may also return earlier, callers check the queue again
+	 * @param queue queue to wait for
+	 * @param timeoutNanos max time to wait in nanoseconds
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public void waitFor(EventQueue<?> queue, long timeoutNanos) throws InterruptedException;
+	
+	/**
+	 * Notify a waiting consumer that an event is added to the queue.
+	 * Called by producers after every added event
+	 */
+	public void signal();
+}
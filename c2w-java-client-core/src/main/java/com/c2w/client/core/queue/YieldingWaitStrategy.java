@@ -0,0 +1,38 @@
+package com.c2w.client.core.queue;
+
+/**
+ * Consumer spins for a while , then yields the CPU between checks of the queue.
+ * Low latency , but the idle consumer keeps a CPU core busy whenever no other thread wants it
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+	/*
+	 * Number of spins before yielding
+	 */
+	private static final int SPIN_TRIES = 100;
+	
+	@Override
+	public void waitFor(EventQueue<?> queue, long timeoutNanos) throws InterruptedException {
+		
+		long deadline = System.nanoTime() + timeoutNanos;
+		int counter = SPIN_TRIES;
+		
+		while(queue.size() == 0) {
+			
+			if(Thread.interrupted())
+				throw new InterruptedException();
+			
+			if(deadline - System.nanoTime() <= 0)
+				return;
+			
+			if(counter > 0)
+				counter--;
+			else
+				Thread.yield();
+		}
+	}
+
+	@Override
+	public void signal() {
+	}
+}
@@ -0,0 +1,506 @@
+package com.c2w.client.core.service;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.c2w.client.core.message.Message;
+
+/**
+ * Service protecting callers and the Corp2World endpoint from each other when the endpoint is degraded.
+ * <p>
+ * Outcomes of the last 'window size' calls are tracked while the circuit is CLOSED. Calls failing with an exception or
+ * with HTTP 429 or 5xx status, and calls slower than 'slow call' threshold are counted. Once at least 'min calls' are tracked and
+ * the failure rate or the slow call rate reaches its threshold, the circuit OPENs: messages are rejected immediately with
+ * {@link CircuitOpenException} without calling the wrapped service, so no threads wait for socket timeouts.
+ * After 'open' milliseconds the circuit becomes HALF_OPEN and lets 'half-open calls' trial calls through,
+ * it is CLOSED again if their failure and slow call rates are below the thresholds and OPENs again otherwise.
+ * </p>
+ * <p>
+ * Rejected messages are counted. When this service is wrapped by {@link SpoolingService} (which {@link ServiceFactory} does
+ * if both are enabled) rejected messages are kept in the spool on local disk instead and are replayed once the circuit closes.
+ * Waiting for responses is not affected by the circuit.
+ * </p>
+ * This service can be configured with the following optional properties:
+ * <ul>
+ *  <li>com.c2w.service.breaker.enabled - if 'true' , {@link ServiceFactory} wraps the service with this service</li>
+ *  <li>com.c2w.service.breaker.windowSize - number of the last calls the rates are calculated of (default is 50)</li>
+ *  <li>com.c2w.service.breaker.minCalls - min number of calls in the window before the circuit can open (default is 10)</li>
+ *  <li>com.c2w.service.breaker.failureRateThreshold - failure rate in percent which opens the circuit (default is 50)</li>
+ *  <li>com.c2w.service.breaker.slowCallMs - duration in milliseconds from which the call is slow (default is 5000)</li>
+ *  <li>com.c2w.service.breaker.slowCallRateThreshold - slow call rate in percent which opens the circuit (default is 80)</li>
+ *  <li>com.c2w.service.breaker.openMs - time in milliseconds the circuit stays open (default is 30000)</li>
+ *  <li>com.c2w.service.breaker.halfOpenCalls - number of trial calls let through when the circuit is half-open (default is 3)</li>
+ * </ul>
+ */
+public class CircuitBreakerService extends ServiceWrapper {
+
+	/**
+	 * System property to enable the circuit breaker in {@link ServiceFactory}
+	 */
+	public static final String ENABLED = "com.c2w.service.breaker.enabled";
+
+	/**
+	 * System property to specify number of the last calls the rates are calculated of
+	 */
+	public static final String WINDOW_SIZE = "com.c2w.service.breaker.windowSize";
+
+	/**
+	 * Default number of the last calls the rates are calculated of
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 50;
+
+	/**
+	 * System property to specify min number of calls in the window before the circuit can open
+	 */
+	public static final String MIN_CALLS = "com.c2w.service.breaker.minCalls";
+
+	/**
+	 * Default min number of calls in the window before the circuit can open
+	 */
+	public static final int DEFAULT_MIN_CALLS = 10;
+
+	/**
+	 * System property to specify failure rate in percent which opens the circuit
+	 */
+	public static final String FAILURE_RATE_THRESHOLD = "com.c2w.service.breaker.failureRateThreshold";
+
+	/**
+	 * Default failure rate in percent which opens the circuit
+	 */
+	public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+
+	/**
+	 * System property to specify duration in milliseconds from which the call is slow
+	 */
+	public static final String SLOW_CALL_MS = "com.c2w.service.breaker.slowCallMs";
+
+	/**
+	 * Default duration in milliseconds from which the call is slow
+	 */
+	public static final long DEFAULT_SLOW_CALL_MS = 5000;
+
+	/**
+	 * System property to specify slow call rate in percent which opens the circuit
+	 */
+	public static final String SLOW_CALL_RATE_THRESHOLD = "com.c2w.service.breaker.slowCallRateThreshold";
+
+	/**
+	 * Default slow call rate in percent which opens the circuit
+	 */
+	public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+
+	/**
+	 * System property to specify time in milliseconds the circuit stays open
+	 */
+	public static final String OPEN_MS = "com.c2w.service.breaker.openMs";
+
+	/**
+	 * Default time in milliseconds the circuit stays open
+	 */
+	public static final long DEFAULT_OPEN_MS = 30000;
+
+	/**
+	 * System property to specify number of trial calls let through when the circuit is half-open
+	 */
+	public static final String HALF_OPEN_CALLS = "com.c2w.service.breaker.halfOpenCalls";
+
+	/**
+	 * Default number of trial calls let through when the circuit is half-open
+	 */
+	public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+	/**
+	 * Circuit state
+	 */
+	public static enum State {
+
+		/**
+		 * Calls are let through and their outcomes are tracked
+		 */
+		CLOSED,
+
+		/**
+		 * Calls are rejected
+		 */
+		OPEN,
+
+		/**
+		 * Limited number of trial calls is let through to check if the service recovered
+		 */
+		HALF_OPEN
+	}
+
+	/*
+	 * Logger
+	 */
+	private static Log log = LogFactory.getLog(CircuitBreakerService.class);
+
+	/*
+	 * Min number of calls in the window before the circuit can open
+	 */
+	private final int minCalls;
+
+	/*
+	 * Failure rate in percent which opens the circuit
+	 */
+	private final int failureRateThreshold;
+
+	/*
+	 * Duration in nanoseconds from which the call is slow
+	 */
+	private final long slowCallNanos;
+
+	/*
+	 * Slow call rate in percent which opens the circuit
+	 */
+	private final int slowCallRateThreshold;
+
+	/*
+	 * Time in nanoseconds the circuit stays open
+	 */
+	private final long openNanos;
+
+	/*
+	 * Number of trial calls let through when the circuit is half-open
+	 */
+	private final int halfOpenCalls;
+
+	/*
+	 * Outcomes of the last calls while the circuit is closed , or of the trial calls while it is half-open
+	 */
+	private final Window window;
+
+	/*
+	 * Current state , changed under the lock of this service only
+	 */
+	private volatile State state = State.CLOSED;
+
+	/*
+	 * Incremented on every state change , outcomes of calls permitted in another generation are ignored
+	 */
+	private long generation;
+
+	/*
+	 * Time the circuit opened in nanoseconds
+	 */
+	private long openedAt;
+
+	/*
+	 * Number of trial calls let through since the circuit became half-open
+	 */
+	private int trialCalls;
+
+	/*
+	 * Number of rejected messages
+	 */
+	private final LongAdder rejected = new LongAdder();
+
+	/*
+	 * Number of rejected messages when the circuit opened the last time
+	 */
+	private long rejectedAtOpen;
+
+
+	/**
+	 * Create new instance wrapping the given service, configured from system properties
+	 * @param service wrapped service
+	 */
+	public CircuitBreakerService(Service service) {
+		this(service, (Properties) null);
+	}
+
+	/**
+	 * Create new instance wrapping the given service, configured from the given properties
+	 * @param service wrapped service
+	 * @param properties service properties , properties which are not in the set are taken from system properties
+	 */
+	public CircuitBreakerService(Service service, Properties properties) {
+		this(service, new ServiceProperties(properties));
+	}
+
+	private CircuitBreakerService(Service service, ServiceProperties properties) {
+		this(service, properties.getInt(WINDOW_SIZE, DEFAULT_WINDOW_SIZE), properties.getInt(MIN_CALLS, DEFAULT_MIN_CALLS),
+				properties.getInt(FAILURE_RATE_THRESHOLD, DEFAULT_FAILURE_RATE_THRESHOLD), properties.getLong(SLOW_CALL_MS, DEFAULT_SLOW_CALL_MS),
+				properties.getInt(SLOW_CALL_RATE_THRESHOLD, DEFAULT_SLOW_CALL_RATE_THRESHOLD), properties.getLong(OPEN_MS, DEFAULT_OPEN_MS),
+				properties.getInt(HALF_OPEN_CALLS, DEFAULT_HALF_OPEN_CALLS));
+	}
+
+	/**
+	 * Create new instance wrapping the given service
+	 * @param service wrapped service
+	 * @param windowSize number of the last calls the rates are calculated of
+	 * @param minCalls min number of calls in the window before the circuit can open
+	 * @param failureRateThreshold failure rate in percent which opens the circuit
+	 * @param slowCallMs duration in milliseconds from which the call is slow
+	 * @param slowCallRateThreshold slow call rate in percent which opens the circuit
+	 * @param openMs time in milliseconds the circuit stays open
+	 * @param halfOpenCalls number of trial calls let through when the circuit is half-open
+	 */
+	public CircuitBreakerService(Service service, int windowSize, int minCalls, int failureRateThreshold, long slowCallMs,
+			int slowCallRateThreshold, long openMs, int halfOpenCalls) {
+
+		super(service);
+
+		if(windowSize < 1 || minCalls < 1 || halfOpenCalls < 1 || openMs < 0)
+			throw new IllegalArgumentException("Invalid circuit breaker parameters, window size: " + windowSize + ", min calls: " + minCalls +
+					", half-open calls: " + halfOpenCalls + ", open ms: " + openMs);
+
+		this.minCalls = Math.min(minCalls, windowSize);
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+		this.halfOpenCalls = halfOpenCalls;
+		this.window = new Window(Math.max(windowSize, halfOpenCalls));
+	}
+
+	/**
+	 * Send message , or reject it if the circuit is open
+	 */
+	@Override
+	public Result send(Message message) throws ServiceException {
+
+		long permit = acquirePermission();
+		long start = System.nanoTime();
+
+		try {
+			Result result = service.send(message);
+			onComplete(permit, isFailure(result), System.nanoTime() - start);
+			return result;
+		} catch(ServiceException e) {
+			onComplete(permit, true, System.nanoTime() - start);
+			throw e;
+		} catch(RuntimeException e) {
+			onComplete(permit, true, System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Send message asynchronously , or complete the future exceptionally immediately if the circuit is open
+	 */
+	@Override
+	public CompletableFuture<Result> sendAsync(Message message) {
+
+		final long permit;
+		try {
+			permit = acquirePermission();
+		} catch(CircuitOpenException e) {
+			CompletableFuture<Result> future = new CompletableFuture<Result>();
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		final long start = System.nanoTime();
+
+		CompletableFuture<Result> future = service.sendAsync(message);
+		future.whenComplete((result, error) -> onComplete(permit, error != null || isFailure(result), System.nanoTime() - start));
+		return future;
+	}
+
+	/**
+	 * Send batch of messages as a single call , or reject it if the circuit is open
+	 */
+	@Override
+	public List<Result> sendBatch(List<Message> messages) throws ServiceException {
+
+		long permit = acquirePermission();
+		long start = System.nanoTime();
+
+		try {
+
+			List<Result> results = service.sendBatch(messages);
+
+			boolean failure = false;
+			for(Result result : results)
+				failure |= isFailure(result);
+
+			onComplete(permit, failure, System.nanoTime() - start);
+			return results;
+
+		} catch(ServiceException e) {
+			onComplete(permit, true, System.nanoTime() - start);
+			throw e;
+		} catch(RuntimeException e) {
+			onComplete(permit, true, System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Get current circuit state
+	 * @return circuit state
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Get number of messages rejected because the circuit was open
+	 * @return number of rejected messages
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Check if the result of the call means the service is degraded.
+	 * By default HTTP 429 or 5xx status reported by {@link com.c2w.client.core.service.http.HttpService} is a failure
+	 * (see {@link Result#isTransientFailure(Result)}), other errors (e.g. invalid message) are not
+	 * @param result result of the call
+	 * @return true if the call failed
+	 */
+	protected boolean isFailure(Result result) {
+
+		return Result.isTransientFailure(result);
+	}
+
+	/*
+	 * Let the call through or reject it.
+	 * Returns generation the call is permitted in
+	 */
+	private long acquirePermission() throws CircuitOpenException {
+
+		synchronized(this) {
+
+			if(state == State.OPEN) {
+				if(System.nanoTime() - openedAt < openNanos)
+					throw reject();
+				transition(State.HALF_OPEN);
+			}
+
+			if(state == State.HALF_OPEN) {
+				if(trialCalls >= halfOpenCalls)
+					throw reject();
+				trialCalls++;
+			}
+
+			return generation;
+		}
+	}
+
+	/*
+	 * Account rejected message
+	 */
+	private CircuitOpenException reject() {
+
+		rejected.increment();
+
+		return new CircuitOpenException("Circuit is " + state + ", the message is not sent to the service");
+	}
+
+	/*
+	 * Record outcome of the permitted call and change the state if thresholds are reached
+	 */
+	private synchronized void onComplete(long permit, boolean failure, long durationNanos) {
+
+		// Call permitted before the last state change
+		if(permit != generation)
+			return;
+
+		window.add(failure, durationNanos >= slowCallNanos);
+
+		if(state == State.CLOSED) {
+			if(window.count >= minCalls && isAboveThreshold())
+				transition(State.OPEN);
+		}
+		else if(state == State.HALF_OPEN && window.count >= halfOpenCalls) {
+			transition(isAboveThreshold() ? State.OPEN : State.CLOSED);
+		}
+	}
+
+	/*
+	 * Check if the failure rate or the slow call rate reaches its threshold
+	 */
+	private boolean isAboveThreshold() {
+		return window.failures * 100 >= failureRateThreshold * window.count || window.slow * 100 >= slowCallRateThreshold * window.count;
+	}
+
+	/*
+	 * Change state , must be called under the lock of this service
+	 */
+	private void transition(State next) {
+
+		if(next == State.OPEN) {
+			log.warn("Circuit breaker is open, " + window.failures + " of " + window.count + " calls failed and " + window.slow +
+					" were slow, messages are rejected for " + TimeUnit.NANOSECONDS.toMillis(openNanos) + " ms");
+			openedAt = System.nanoTime();
+			if(state == State.CLOSED)
+				rejectedAtOpen = rejected.sum();
+		}
+		else if(next == State.CLOSED) {
+			log.info("Circuit breaker is closed, " + (rejected.sum() - rejectedAtOpen) + " messages were rejected while it was open");
+		}
+		else {
+			log.debug("Circuit breaker is half-open, letting " + halfOpenCalls + " trial calls through");
+		}
+
+		state = next;
+		generation++;
+		trialCalls = 0;
+		window.clear();
+	}
+
+
+	/**
+	 * Outcomes of the last calls
+	 */
+	private static class Window {
+
+		private static final byte FAILURE = 1;
+
+		private static final byte SLOW = 2;
+
+		private final byte[] outcomes;
+
+		private int next;
+
+		private int count;
+
+		private int failures;
+
+		private int slow;
+
+		private Window(int size) {
+			this.outcomes = new byte[size];
+		}
+
+		/*
+		 * Add outcome , the oldest one is replaced if the window is full
+		 */
+		private void add(boolean failure, boolean isSlow) {
+
+			if(count == outcomes.length) {
+				byte oldest = outcomes[next];
+				if((oldest & FAILURE) != 0)
+					failures--;
+				if((oldest & SLOW) != 0)
+					slow--;
+			}
+			else {
+				count++;
+			}
+
+			outcomes[next] = (byte) ((failure ? FAILURE : 0) | (isSlow ? SLOW : 0));
+			next = (next + 1) % outcomes.length;
+
+			if(failure)
+				failures++;
+			if(isSlow)
+				slow++;
+		}
+
+		private void clear() {
+			next = 0;
+			count = 0;
+			failures = 0;
+			slow = 0;
+		}
+	}
+}
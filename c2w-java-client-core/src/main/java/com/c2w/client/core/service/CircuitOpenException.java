@@ -0,0 +1,18 @@
+package com.c2w.client.core.service;
+
+/**
+ * Exception thrown by {@link CircuitBreakerService} when the message is rejected without calling
+ * the wrapped service, because the circuit is open
+ */
+public class CircuitOpenException extends ServiceException {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,347 @@
+package com.c2w.client.core.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.c2w.client.core.message.Message;
+
+/**
+ * Service gathering messages sent from many threads and sending them to the wrapped service in batches.
+ * <p>
+ * Every message is held for up to 'linger' milliseconds or until 'max messages' are gathered, then all gathered
+ * messages are sent with a single {@link Service#sendBatch(List)} call. Every caller still gets its own result,
+ * {@link #send(Message)} blocks until the batch containing the message is sent.
+ * </p>
+ * This service can be configured with the following optional properties:
+ * <ul>
+ *  <li>com.c2w.service.coalesce.enabled - if 'true' , {@link ServiceFactory} wraps the service with this service</li>
+ *  <li>com.c2w.service.coalesce.lingerMs - max time in milliseconds message waits for the batch to be sent (default is 50)</li>
+ *  <li>com.c2w.service.coalesce.maxMessages - max number of messages sent in a single batch (default is 100)</li>
+ *  <li>com.c2w.service.coalesce.queueSize - max number of messages waiting to be sent (default is 10000)</li>
+ * </ul>
+ */
+public class CoalescingService extends ServiceWrapper {
+
+	/**
+	 * System property to enable coalescing in {@link ServiceFactory}
+	 */
+	public static final String ENABLED = "com.c2w.service.coalesce.enabled";
+
+	/**
+	 * System property to specify max time in milliseconds message waits for the batch to be sent
+	 */
+	public static final String LINGER_MS = "com.c2w.service.coalesce.lingerMs";
+
+	/**
+	 * Default max time in milliseconds message waits for the batch to be sent
+	 */
+	public static final long DEFAULT_LINGER_MS = 50;
+
+	/**
+	 * System property to specify max number of messages sent in a single batch
+	 */
+	public static final String MAX_MESSAGES = "com.c2w.service.coalesce.maxMessages";
+
+	/**
+	 * Default max number of messages sent in a single batch
+	 */
+	public static final int DEFAULT_MAX_MESSAGES = 100;
+
+	/**
+	 * System property to specify max number of messages waiting to be sent
+	 */
+	public static final String QUEUE_SIZE = "com.c2w.service.coalesce.queueSize";
+
+	/**
+	 * Default max number of messages waiting to be sent
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+	/*
+	 * Logger
+	 */
+	private static Log log = LogFactory.getLog(CoalescingService.class);
+
+	/*
+	 * Max time in milliseconds the idle flusher thread waits before checking if the service is stopped
+	 */
+	private static final long IDLE_WAIT_MS = 100;
+
+	/*
+	 * Max time in milliseconds message waits for the batch to be sent
+	 */
+	private final long lingerMs;
+
+	/*
+	 * Max number of messages sent in a single batch
+	 */
+	private final int maxMessages;
+
+	/*
+	 * Messages waiting to be sent
+	 */
+	private final BlockingQueue<PendingMessage> queue;
+
+	/*
+	 * Thread sending gathered messages , changed under the lock of this service only
+	 */
+	private Thread flusherThread;
+
+	/*
+	 * Flag to control flusher thread
+	 */
+	private volatile boolean isRunning;
+
+	/*
+	 * Set by stop , the flusher thread is not started by messages sent after the service is stopped
+	 */
+	private volatile boolean isStopped;
+
+
+	/**
+	 * Create new instance wrapping the given service, configured from system properties
+	 * @param service wrapped service
+	 */
+	public CoalescingService(Service service) {
+		this(service, (Properties) null);
+	}
+
+	/**
+	 * Create new instance wrapping the given service, configured from the given properties
+	 * @param service wrapped service
+	 * @param properties service properties , properties which are not in the set are taken from system properties
+	 */
+	public CoalescingService(Service service, Properties properties) {
+		this(service, new ServiceProperties(properties));
+	}
+
+	private CoalescingService(Service service, ServiceProperties properties) {
+		this(service, properties.getLong(LINGER_MS, DEFAULT_LINGER_MS), properties.getInt(MAX_MESSAGES, DEFAULT_MAX_MESSAGES),
+				properties.getInt(QUEUE_SIZE, DEFAULT_QUEUE_SIZE));
+	}
+
+	/**
+	 * Create new instance wrapping the given service
+	 * @param service wrapped service
+	 * @param lingerMs max time in milliseconds message waits for the batch to be sent
+	 * @param maxMessages max number of messages sent in a single batch
+	 * @param queueSize max number of messages waiting to be sent
+	 */
+	public CoalescingService(Service service, long lingerMs, int maxMessages, int queueSize) {
+		super(service);
+		this.lingerMs = lingerMs;
+		this.maxMessages = maxMessages;
+		this.queue = new LinkedBlockingQueue<PendingMessage>(queueSize);
+	}
+
+	/**
+	 * Start wrapped service and the internal flusher thread
+	 */
+	@Override
+	public void start() throws ServiceException {
+		service.start();
+		isStopped = false;
+		startFlusherThread();
+	}
+
+	/**
+	 * Send message as a part of the next batch and wait for the result
+	 */
+	@Override
+	public Result send(Message message) throws ServiceException {
+
+		try {
+			return sendAsync(message).get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof ServiceException)
+				throw (ServiceException) e.getCause();
+			throw new ServiceException(e);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		}
+	}
+
+	/**
+	 * Add message to the next batch.
+	 * If too many messages are waiting to be sent or the service is stopped , the returned future is completed exceptionally immediately
+	 */
+	@Override
+	public CompletableFuture<Result> sendAsync(Message message) {
+
+		if(!isRunning)
+			startFlusherThread();
+
+		PendingMessage pending = new PendingMessage(message);
+
+		if(!queue.offer(pending)) {
+			log.warn("Cannot send message, too many messages are waiting to be sent");
+			pending.future.completeExceptionally(new ServiceException("Cannot send message, too many messages are waiting to be sent"));
+			return pending.future;
+		}
+
+		// The service is stopped while the message is added , the message is sent by stop unless it is still in the queue
+		if(isStopped && queue.remove(pending))
+			pending.future.completeExceptionally(new ServiceException("Cannot send message, the service is stopped"));
+
+		return pending.future;
+	}
+
+	/**
+	 * Stop the internal flusher thread , send all waiting messages and stop wrapped service
+	 */
+	@Override
+	public void stop() throws ServiceException {
+
+		Thread thread;
+		synchronized(this) {
+			isStopped = true;
+			isRunning = false;
+			thread = flusherThread;
+			flusherThread = null;
+		}
+
+		// The flusher thread sends the batch it gathers and exits , it is not interrupted in the middle of sending
+		if(thread != null) {
+			try {
+				thread.join(lingerMs + 1000);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// Send messages left in the queue
+		List<PendingMessage> batch = new ArrayList<PendingMessage>();
+		while(queue.drainTo(batch, maxMessages) > 0) {
+			flush(batch);
+			batch.clear();
+		}
+
+		service.stop();
+	}
+
+	/*
+	 * Start flusher thread if not started yet and the service is not stopped
+	 */
+	private synchronized void startFlusherThread() {
+
+		if(!isRunning && !isStopped) {
+
+			flusherThread = new FlusherThread();
+
+			flusherThread.setDaemon(true);
+
+			isRunning = true;
+
+			flusherThread.start();
+		}
+	}
+
+	/*
+	 * Send batch of messages and complete futures with results
+	 */
+	private void flush(List<PendingMessage> batch) {
+
+		List<Message> messages = new ArrayList<Message>(batch.size());
+		for(PendingMessage pending : batch)
+			messages.add(pending.message);
+
+		try {
+
+			List<Result> results = service.sendBatch(messages);
+
+			for(int i = 0; i < batch.size(); i++) {
+				if(i < results.size())
+					batch.get(i).future.complete(results.get(i));
+				else
+					batch.get(i).future.complete(new Result(Result.Status.ERROR, Result.NO_RESULT));
+			}
+
+		} catch(ServiceException e) {
+			for(PendingMessage pending : batch)
+				pending.future.completeExceptionally(e);
+		} catch(RuntimeException e) {
+			log.error("Cannot send batch of messages because of " + e.getMessage(), e);
+			for(PendingMessage pending : batch)
+				pending.future.completeExceptionally(new ServiceException(e));
+		}
+	}
+
+
+	/**
+	 * Message waiting to be sent with the future for its result
+	 */
+	private static class PendingMessage {
+
+		private final Message message;
+
+		private final CompletableFuture<Result> future = new CompletableFuture<Result>();
+
+		private PendingMessage(Message message) {
+			this.message = message;
+		}
+	}
+
+
+	/**
+	 * Internal thread gathering messages into batches and sending them
+	 */
+	private class FlusherThread extends Thread {
+
+		private FlusherThread() {
+			super("c2w-coalescing-sender");
+		}
+
+		public void run() {
+
+			List<PendingMessage> batch = new ArrayList<PendingMessage>(maxMessages);
+
+			while(isRunning) {
+
+				try {
+
+					// Wait for the first message of the batch , checking if the service is stopped from time to time
+					PendingMessage first = queue.poll(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+					if(first == null)
+						continue;
+					batch.add(first);
+
+					// Gather more messages until batch is full or linger time expires
+					long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+					while(batch.size() < maxMessages) {
+
+						queue.drainTo(batch, maxMessages - batch.size());
+
+						long remaining = deadline - System.nanoTime();
+						if(batch.size() >= maxMessages || remaining <= 0)
+							break;
+
+						PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+						if(next == null)
+							break;
+						batch.add(next);
+					}
+
+				} catch(InterruptedException e) {
+					log.debug("Internal flusher thread is interrupted");
+				}
+
+				if(!batch.isEmpty()) {
+					flush(batch);
+					batch.clear();
+				}
+			}
+
+			log.debug("Terminating internal flusher thread");
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package com.c2w.client.core.service;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.c2w.client.core.message.Message;
+
+/**
+ * Service suppressing repeated messages and sending one summary of the repeats per time window instead.
+ * <p>
+ * Messages are identified by the fingerprint of the topic and the normalized text: runs of digits (counters, timestamps,
+ * IDs) and runs of white space are replaced, so messages differing only in such details are the same. Channel recipients,
+ * test flag and TTL are part of the fingerprint as they are , messages sent to other recipients are never suppressed. The first message
+ * with the fingerprint is sent and opens the window, repeats within 'window' milliseconds are not sent and the caller
+ * gets an ERROR result with 'suppressed' property. When the window ends, a single summary message with the text of the
+ * first message and the line like "Repeated 1,243 times in 60s" is sent if there were repeats.
+ * </p>
+ * <p>
+ * At most 'max entries' fingerprints are tracked, messages with new fingerprints are sent without suppression if there is
+ * no room for them. Dialog messages are never suppressed.
+ * </p>
+ * This service can be configured with the following optional properties:
+ * <ul>
+ *  <li>com.c2w.service.dedup.enabled - if 'true' , {@link ServiceFactory} wraps the service with this service</li>
+ *  <li>com.c2w.service.dedup.windowMs - time window in milliseconds repeats are suppressed in (default is 60000)</li>
+ *  <li>com.c2w.service.dedup.maxEntries - max number of tracked fingerprints (default is 10000)</li>
+ * </ul>
+ */
+public class DeduplicatingService extends ServiceWrapper {
+
+	/**
+	 * System property to enable suppression of repeated messages in {@link ServiceFactory}
+	 */
+	public static final String ENABLED = "com.c2w.service.dedup.enabled";
+
+	/**
+	 * System property to specify time window in milliseconds repeats are suppressed in
+	 */
+	public static final String WINDOW_MS = "com.c2w.service.dedup.windowMs";
+
+	/**
+	 * Default time window in milliseconds repeats are suppressed in
+	 */
+	public static final long DEFAULT_WINDOW_MS = 60000;
+
+	/**
+	 * System property to specify max number of tracked fingerprints
+	 */
+	public static final String MAX_ENTRIES = "com.c2w.service.dedup.maxEntries";
+
+	/**
+	 * Default max number of tracked fingerprints
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	/**
+	 * Result property set to 'true' if the message is not sent because it repeats a recent message
+	 */
+	public static final String SUPPRESSED = "suppressed";
+
+	/**
+	 * Summary message property with the number of repeats
+	 */
+	public static final String REPEATED = "repeated";
+
+	/*
+	 * Logger
+	 */
+	private static Log log = LogFactory.getLog(DeduplicatingService.class);
+
+	/*
+	 * Line separator used in summary messages
+	 */
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	/*
+	 * FNV-1a 64 bit hash parameters
+	 */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/*
+	 * Time window in milliseconds repeats are suppressed in
+	 */
+	private final long windowMs;
+
+	/*
+	 * Max number of tracked fingerprints
+	 */
+	private final int maxEntries;
+
+	/*
+	 * Recent messages by fingerprint
+	 */
+	private final Map<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+
+	/*
+	 * Thread closing windows and sending summaries , created on demand
+	 */
+	private volatile ScheduledExecutorService sweeper;
+
+	/*
+	 * Number of suppressed messages
+	 */
+	private final LongAdder suppressed = new LongAdder();
+
+
+	/**
+	 * Create new instance wrapping the given service, configured from system properties
+	 * @param service wrapped service
+	 */
+	public DeduplicatingService(Service service) {
+		this(service, (Properties) null);
+	}
+
+	/**
+	 * Create new instance wrapping the given service, configured from the given properties
+	 * @param service wrapped service
+	 * @param properties service properties , properties which are not in the set are taken from system properties
+	 */
+	public DeduplicatingService(Service service, Properties properties) {
+		this(service, new ServiceProperties(properties));
+	}
+
+	private DeduplicatingService(Service service, ServiceProperties properties) {
+		this(service, properties.getLong(WINDOW_MS, DEFAULT_WINDOW_MS), properties.getInt(MAX_ENTRIES, DEFAULT_MAX_ENTRIES));
+	}
+
+	/**
+	 * Create new instance wrapping the given service
+	 * @param service wrapped service
+	 * @param windowMs time window in milliseconds repeats are suppressed in
+	 * @param maxEntries max number of tracked fingerprints
+	 */
+	public DeduplicatingService(Service service, long windowMs, int maxEntries) {
+		super(service);
+		this.windowMs = windowMs;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Send message , unless it repeats a message sent within the window
+	 */
+	@Override
+	public Result send(Message message) throws ServiceException {
+
+		if(isRepeat(message))
+			return suppress();
+
+		return service.send(message);
+	}
+
+	/**
+	 * Send message asynchronously , unless it repeats a message sent within the window
+	 */
+	@Override
+	public CompletableFuture<Result> sendAsync(Message message) {
+
+		if(isRepeat(message))
+			return CompletableFuture.completedFuture(suppress());
+
+		return service.sendAsync(message);
+	}
+
+	/**
+	 * Send messages which do not repeat messages sent within the window as a single batch
+	 */
+	@Override
+	public List<Result> sendBatch(List<Message> messages) throws ServiceException {
+
+		List<Message> unique = new ArrayList<Message>(messages.size());
+		boolean[] repeats = new boolean[messages.size()];
+
+		for(int i = 0; i < messages.size(); i++) {
+			repeats[i] = isRepeat(messages.get(i));
+			if(!repeats[i])
+				unique.add(messages.get(i));
+		}
+
+		List<Result> sent = unique.isEmpty() ? new ArrayList<Result>() : service.sendBatch(unique);
+
+		List<Result> results = new ArrayList<Result>(messages.size());
+		int next = 0;
+		for(int i = 0; i < messages.size(); i++) {
+			if(repeats[i])
+				results.add(suppress());
+			else if(next < sent.size())
+				results.add(sent.get(next++));
+			else
+				results.add(new Result(Result.Status.ERROR, Result.NO_RESULT));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Send summaries of all open windows , stop the internal thread and the wrapped service
+	 */
+	@Override
+	public void stop() throws ServiceException {
+
+		synchronized(this) {
+			if(sweeper != null) {
+				sweeper.shutdownNow();
+				sweeper = null;
+			}
+		}
+
+		sweep(Long.MAX_VALUE);
+
+		service.stop();
+	}
+
+	/**
+	 * Get number of messages suppressed as repeats
+	 * @return number of suppressed messages
+	 */
+	public long getSuppressedCount() {
+		return suppressed.sum();
+	}
+
+	/**
+	 * Get fingerprint of the message , the same for messages with the same topic and text differing only in numbers and white space,
+	 * sent to the same channel recipients with the same test flag and TTL
+	 * @param message message
+	 * @return fingerprint
+	 */
+	public static long fingerprint(Message message) {
+
+		// Topic and text are separated , so moving characters between them changes the fingerprint
+		long hash = hash(FNV_OFFSET, message.getTopic()) * FNV_PRIME;
+		hash = hash(hash, message.getText()) * FNV_PRIME;
+
+		// Message to other recipients , test message or message expiring at other time is not a repeat
+		hash = hash(hash, message.isTest() ? 1 : 0);
+		hash = hash(hash, message.getTtl());
+		return hash(hash, message.getChannelRecipients());
+	}
+
+	/*
+	 * Add recipients to the hash regardless of the order of channels and recipients , recipients are not normalized
+	 */
+	private static long hash(long hash, Map<Long, List<String>> channelRecipients) {
+
+		if(channelRecipients == null || channelRecipients.isEmpty())
+			return hash;
+
+		long recipients = 0;
+		for(Map.Entry<Long, List<String>> channel : channelRecipients.entrySet()) {
+			if(channel.getValue() == null)
+				continue;
+			long channelHash = hash(FNV_OFFSET, channel.getKey() != null ? channel.getKey() : 0);
+			for(String recipient : channel.getValue())
+				recipients += hashExact(channelHash, recipient);
+		}
+
+		return hash(hash, recipients);
+	}
+
+	/*
+	 * Add all bytes of the value to the hash
+	 */
+	private static long hash(long hash, long value) {
+
+		for(int i = 0; i < 8; i++) {
+			hash = (hash ^ (value & 0xff)) * FNV_PRIME;
+			value >>>= 8;
+		}
+
+		return hash;
+	}
+
+	/*
+	 * Add text to the hash as it is
+	 */
+	private static long hashExact(long hash, String text) {
+
+		if(text == null)
+			return hash;
+
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+
+		return hash;
+	}
+
+	/*
+	 * Add normalized text to the hash: runs of digits and runs of white space count as a single character
+	 */
+	private static long hash(long hash, String text) {
+
+		if(text == null)
+			return hash;
+
+		char previous = 0;
+		for(int i = 0; i < text.length(); i++) {
+
+			char c = text.charAt(i);
+			if(Character.isDigit(c))
+				c = '#';
+			else if(Character.isWhitespace(c))
+				c = ' ';
+
+			if((c == '#' || c == ' ') && c == previous)
+				continue;
+			previous = c;
+
+			hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+
+		return hash;
+	}
+
+	/*
+	 * Check if the message repeats a message sent within the window and count the repeat ,
+	 * otherwise open the window for the message
+	 */
+	private boolean isRepeat(Message message) {
+
+		if(windowMs <= 0 || (message.getDialogOptions() != null && !message.getDialogOptions().isEmpty()))
+			return false;
+
+		startSweeper();
+
+		Long key = fingerprint(message);
+		long now = System.currentTimeMillis();
+
+		while(true) {
+
+			Entry entry = entries.get(key);
+
+			if(entry == null) {
+				if(entries.size() >= maxEntries) {
+					sweep(now);
+					if(entries.size() >= maxEntries)
+						return false;
+				}
+				if(entries.putIfAbsent(key, new Entry(message, now)) == null)
+					return false;
+				continue;
+			}
+
+			synchronized(entry) {
+
+				// The window is closed by the sweeper , the message opens a new one
+				if(entry.closed)
+					continue;
+
+				if(now - entry.windowStart < windowMs) {
+					entry.repeats++;
+					entry.lastRepeat = now;
+					return true;
+				}
+			}
+
+			// The window ended but it is not closed yet
+			close(key, entry);
+		}
+	}
+
+	/*
+	 * Count suppressed message and create its result
+	 */
+	private Result suppress() {
+
+		suppressed.increment();
+
+		return new Result(Result.Status.ERROR, "Message repeats a recent message and is not sent", SUPPRESSED, "true");
+	}
+
+	/*
+	 * Close windows which ended before the given time
+	 */
+	private void sweep(long now) {
+
+		Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+		while(iterator.hasNext()) {
+			Map.Entry<Long, Entry> next = iterator.next();
+			if(now == Long.MAX_VALUE || now - next.getValue().windowStart >= windowMs)
+				close(next.getKey(), next.getValue());
+		}
+	}
+
+	/*
+	 * Close the window and send summary of the repeats if any
+	 */
+	private void close(Long key, Entry entry) {
+
+		int repeats;
+		synchronized(entry) {
+			if(entry.closed)
+				return;
+			entry.closed = true;
+			repeats = entry.repeats;
+		}
+
+		entries.remove(key, entry);
+
+		if(repeats > 0) {
+			final Message summary = entry.toSummary(repeats);
+			service.sendAsync(summary).whenComplete((result, error) -> {
+				if(error != null)
+					log.warn("Cannot send summary of repeated message: " + error.getMessage());
+			});
+		}
+	}
+
+	/*
+	 * Start sweeper thread if not started yet
+	 */
+	private void startSweeper() {
+
+		if(sweeper != null)
+			return;
+
+		synchronized(this) {
+
+			if(sweeper != null)
+				return;
+
+			ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "c2w-dedup-sweeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+			// Windows are closed with 10% precision
+			long interval = Math.max(10, windowMs / 10);
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						sweep(System.currentTimeMillis());
+					} catch(RuntimeException e) {
+						log.error("Cannot send summaries of repeated messages because of " + e.getMessage(), e);
+					}
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+
+			sweeper = executor;
+		}
+	}
+
+
+	/**
+	 * Window of the recent message
+	 */
+	private static class Entry {
+
+		private final Message first;
+
+		private final long windowStart;
+
+		/*
+		 * Guarded by this object
+		 */
+		private int repeats;
+
+		private long lastRepeat;
+
+		private boolean closed;
+
+		private Entry(Message first, long windowStart) {
+			this.first = first;
+			this.windowStart = windowStart;
+		}
+
+		/*
+		 * Create summary message with the text of the first message
+		 */
+		private Message toSummary(int repeats) {
+
+			long seconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(lastRepeat - windowStart + 999));
+
+			StringBuilder text = new StringBuilder();
+			if(first.getText() != null)
+				text.append(first.getText()).append(LINE_SEPARATOR);
+			text.append("Repeated ").append(NumberFormat.getIntegerInstance(Locale.US).format(repeats))
+				.append(repeats == 1 ? " time in " : " times in ").append(seconds).append('s');
+
+			Message summary = new Message(first.getTopic(), text.toString());
+			summary.setChannelRecipients(first.getChannelRecipients());
+			summary.setTtl(first.getTtl());
+			summary.setTest(first.isTest());
+			summary.getProperties().setProperty(REPEATED, String.valueOf(repeats));
+			return summary;
+		}
+	}
+}
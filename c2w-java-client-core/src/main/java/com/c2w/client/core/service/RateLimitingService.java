@@ -0,0 +1,633 @@
+package com.c2w.client.core.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.c2w.client.core.limit.RateLimitPolicy;
+import com.c2w.client.core.limit.TokenBucket;
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageBatch;
+
+/**
+ * Service keeping the rate of messages sent to the wrapped service within the limits of the Corp2World account,
+ * so messages the server would not deliver anyway ({@link com.c2w.client.core.message.MessageDelivery.DELIVERY_STATUS#NOT_DELIVERED_LIMITED})
+ * are handled before they reach the network.
+ * <p>
+ * Every message takes a token from the global {@link TokenBucket} and , if per-topic limit is configured , from the bucket
+ * of its topic. Messages exceeding the limit are handled according to the {@link RateLimitPolicy}:
+ * <ul>
+ *  <li>DROP - the caller gets an ERROR result with 'limited' property</li>
+ *  <li>DELAY - the message is sent as soon as the tokens are available if it happens within the max delay , dropped otherwise.
+ *  {@link #send(Message)} waits , {@link #sendAsync(Message)} sends the message later by the internal scheduler thread</li>
+ *  <li>COALESCE - messages of the same topic and recipients are appended to a single message which is sent as soon as 
+ *  the tokens are available, callers get the result of that message. Dialog messages and messages which do not fit 
+ *  into the coalesced message are dropped</li>
+ * </ul>
+ * </p>
+ * This service can be configured with the following optional properties:
+ * <ul>
+ *  <li>com.c2w.service.rateLimit.enabled - if 'true' , {@link ServiceFactory} wraps the service with this service</li>
+ *  <li>com.c2w.service.rateLimit.ratePerSecond - max number of messages sent per second (default is 10)</li>
+ *  <li>com.c2w.service.rateLimit.burst - max number of messages sent at once after a quiet period (default is 20)</li>
+ *  <li>com.c2w.service.rateLimit.topicRatePerSecond - max number of messages of the same topic sent per second (default is not limited)</li>
+ *  <li>com.c2w.service.rateLimit.topicBurst - max number of messages of the same topic sent at once (default is 5)</li>
+ *  <li>com.c2w.service.rateLimit.policy - DROP, DELAY or COALESCE (default is DELAY)</li>
+ *  <li>com.c2w.service.rateLimit.maxDelayMs - max time in milliseconds message is delayed (default is 5000)</li>
+ *  <li>com.c2w.service.rateLimit.maxTopics - max number of topics with their own bucket or coalesced message (default is 1000)</li>
+ * </ul>
+ */
+public class RateLimitingService extends ServiceWrapper {
+
+	/**
+	 * System property to enable rate limiting in {@link ServiceFactory}
+	 */
+	public static final String ENABLED = "com.c2w.service.rateLimit.enabled";
+
+	/**
+	 * System property to specify max number of messages sent per second
+	 */
+	public static final String RATE_PER_SECOND = "com.c2w.service.rateLimit.ratePerSecond";
+
+	/**
+	 * Default max number of messages sent per second
+	 */
+	public static final double DEFAULT_RATE_PER_SECOND = 10;
+
+	/**
+	 * System property to specify max number of messages sent at once after a quiet period
+	 */
+	public static final String BURST = "com.c2w.service.rateLimit.burst";
+
+	/**
+	 * Default max number of messages sent at once after a quiet period
+	 */
+	public static final int DEFAULT_BURST = 20;
+
+	/**
+	 * System property to specify max number of messages of the same topic sent per second
+	 */
+	public static final String TOPIC_RATE_PER_SECOND = "com.c2w.service.rateLimit.topicRatePerSecond";
+
+	/**
+	 * System property to specify max number of messages of the same topic sent at once after a quiet period
+	 */
+	public static final String TOPIC_BURST = "com.c2w.service.rateLimit.topicBurst";
+
+	/**
+	 * Default max number of messages of the same topic sent at once after a quiet period
+	 */
+	public static final int DEFAULT_TOPIC_BURST = 5;
+
+	/**
+	 * System property to specify what to do with messages exceeding the limit
+	 */
+	public static final String POLICY = "com.c2w.service.rateLimit.policy";
+
+	/**
+	 * System property to specify max time in milliseconds message is delayed
+	 */
+	public static final String MAX_DELAY_MS = "com.c2w.service.rateLimit.maxDelayMs";
+
+	/**
+	 * Default max time in milliseconds message is delayed
+	 */
+	public static final long DEFAULT_MAX_DELAY_MS = 5000;
+
+	/**
+	 * System property to specify max number of topics with their own bucket or coalesced message
+	 */
+	public static final String MAX_TOPICS = "com.c2w.service.rateLimit.maxTopics";
+
+	/**
+	 * Default max number of topics with their own bucket or coalesced message
+	 */
+	public static final int DEFAULT_MAX_TOPICS = 1000;
+
+	/**
+	 * Result property set to 'true' if the message is dropped because of the rate limit
+	 */
+	public static final String LIMITED = "limited";
+
+	/*
+	 * Bucket shared by all messages
+	 */
+	private final TokenBucket globalBucket;
+
+	/*
+	 * Rate of the per-topic buckets , 0 if topics are not limited
+	 */
+	private final double topicRate;
+
+	/*
+	 * Burst of the per-topic buckets
+	 */
+	private final int topicBurst;
+
+	/*
+	 * What to do with messages exceeding the limit
+	 */
+	private final RateLimitPolicy policy;
+
+	/*
+	 * Max time in nanoseconds message is delayed
+	 */
+	private final long maxDelayNanos;
+
+	/*
+	 * Max number of topics with their own bucket or coalesced message
+	 */
+	private final int maxTopics;
+
+	/*
+	 * Buckets of topics
+	 */
+	private final Map<String, TokenBucket> topicBuckets = new ConcurrentHashMap<String, TokenBucket>();
+
+	/*
+	 * Coalesced messages waiting for tokens by topic and recipients
+	 */
+	private final Map<String, Coalesced> coalesced = new ConcurrentHashMap<String, Coalesced>();
+
+	/*
+	 * Thread sending delayed and coalesced messages , created on demand
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/*
+	 * Statistics
+	 */
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder delayed = new LongAdder();
+
+	private final LongAdder coalescedCount = new LongAdder();
+
+
+	/**
+	 * Create new instance wrapping the given service, configured from system properties
+	 * @param service wrapped service
+	 */
+	public RateLimitingService(Service service) {
+		this(service, (Properties) null);
+	}
+
+	/**
+	 * Create new instance wrapping the given service, configured from the given properties
+	 * @param service wrapped service
+	 * @param properties service properties , properties which are not in the set are taken from system properties
+	 */
+	public RateLimitingService(Service service, Properties properties) {
+		this(service, new ServiceProperties(properties));
+	}
+
+	private RateLimitingService(Service service, ServiceProperties properties) {
+		this(service, properties.getDouble(RATE_PER_SECOND, DEFAULT_RATE_PER_SECOND), properties.getInt(BURST, DEFAULT_BURST),
+				properties.getDouble(TOPIC_RATE_PER_SECOND, 0), properties.getInt(TOPIC_BURST, DEFAULT_TOPIC_BURST),
+				RateLimitPolicy.parse(properties.getProperty(POLICY, RateLimitPolicy.DELAY.name())),
+				properties.getLong(MAX_DELAY_MS, DEFAULT_MAX_DELAY_MS), properties.getInt(MAX_TOPICS, DEFAULT_MAX_TOPICS));
+	}
+
+	/**
+	 * Create new instance wrapping the given service
+	 * @param service wrapped service
+	 * @param ratePerSecond max number of messages sent per second
+	 * @param burst max number of messages sent at once after a quiet period
+	 * @param topicRatePerSecond max number of messages of the same topic sent per second , 0 if not limited
+	 * @param topicBurst max number of messages of the same topic sent at once after a quiet period
+	 * @param policy what to do with messages exceeding the limit
+	 * @param maxDelayMs max time in milliseconds message is delayed
+	 * @param maxTopics max number of topics with their own bucket or coalesced message
+	 */
+	public RateLimitingService(Service service, double ratePerSecond, int burst, double topicRatePerSecond, int topicBurst,
+			RateLimitPolicy policy, long maxDelayMs, int maxTopics) {
+
+		super(service);
+		this.globalBucket = new TokenBucket(ratePerSecond, burst);
+		this.topicRate = topicRatePerSecond;
+		this.topicBurst = topicBurst;
+		this.policy = policy;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+		this.maxTopics = maxTopics;
+	}
+
+	/**
+	 * Send message , or handle it according to the policy if it exceeds the rate limit
+	 */
+	@Override
+	public Result send(Message message) throws ServiceException {
+
+		long wait = admit(message, policy == RateLimitPolicy.DELAY ? maxDelayNanos : 0);
+
+		if(wait < 0)
+			return join(overLimit(message));
+
+		if(wait > 0) {
+			delayed.increment();
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServiceException(e);
+			}
+		}
+
+		return service.send(message);
+	}
+
+	/**
+	 * Send message asynchronously , or handle it according to the policy if it exceeds the rate limit.
+	 * Delayed messages are sent later by the internal scheduler thread
+	 */
+	@Override
+	public CompletableFuture<Result> sendAsync(final Message message) {
+
+		long wait = admit(message, policy == RateLimitPolicy.DELAY ? maxDelayNanos : 0);
+
+		if(wait < 0)
+			return overLimit(message);
+
+		if(wait == 0)
+			return service.sendAsync(message);
+
+		delayed.increment();
+
+		final CompletableFuture<Result> future = new CompletableFuture<Result>();
+		schedule(new Runnable() {
+			@Override
+			public void run() {
+				service.sendAsync(message).whenComplete((result, error) -> {
+					if(error != null)
+						future.completeExceptionally(error);
+					else
+						future.complete(result);
+				});
+			}
+		}, wait, future);
+
+		return future;
+	}
+
+	/**
+	 * Send messages within the rate limit as a single batch after the longest delay ,
+	 * other messages are handled according to the policy
+	 */
+	@Override
+	public List<Result> sendBatch(List<Message> messages) throws ServiceException {
+
+		List<Message> admitted = new ArrayList<Message>(messages.size());
+		List<CompletableFuture<Result>> limited = new ArrayList<CompletableFuture<Result>>(messages.size());
+		long maxWait = 0;
+
+		for(Message message : messages) {
+			long wait = admit(message, policy == RateLimitPolicy.DELAY ? maxDelayNanos : 0);
+			if(wait < 0) {
+				limited.add(overLimit(message));
+			}
+			else {
+				admitted.add(message);
+				limited.add(null);
+				maxWait = Math.max(maxWait, wait);
+			}
+		}
+
+		List<Result> sent = new ArrayList<Result>();
+		if(!admitted.isEmpty()) {
+			if(maxWait > 0) {
+				delayed.add(admitted.size());
+				try {
+					TimeUnit.NANOSECONDS.sleep(maxWait);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ServiceException(e);
+				}
+			}
+			sent = service.sendBatch(admitted);
+		}
+
+		List<Result> results = new ArrayList<Result>(messages.size());
+		int next = 0;
+		for(CompletableFuture<Result> future : limited) {
+			if(future != null)
+				results.add(join(future));
+			else if(next < sent.size())
+				results.add(sent.get(next++));
+			else
+				results.add(new Result(Result.Status.ERROR, Result.NO_RESULT));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Send coalesced messages ignoring the limit , stop the scheduler thread and the wrapped service
+	 */
+	@Override
+	public void stop() throws ServiceException {
+
+		for(String key : coalesced.keySet())
+			flush(key, true);
+
+		synchronized(this) {
+			if(scheduler != null) {
+				scheduler.shutdown();
+				try {
+					scheduler.awaitTermination(TimeUnit.NANOSECONDS.toMillis(maxDelayNanos) + 1000, TimeUnit.MILLISECONDS);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				scheduler = null;
+			}
+		}
+
+		service.stop();
+	}
+
+	/**
+	 * Get number of messages dropped because of the rate limit
+	 * @return number of dropped messages
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Get number of messages delayed because of the rate limit
+	 * @return number of delayed messages
+	 */
+	public long getDelayedCount() {
+		return delayed.sum();
+	}
+
+	/**
+	 * Get number of messages appended to coalesced messages because of the rate limit
+	 * @return number of coalesced messages
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.sum();
+	}
+
+	/*
+	 * Take tokens for the message from the topic and the global buckets , reserving them up to the given time ahead.
+	 * Returns time in nanoseconds to wait before sending , or -1 if the message exceeds the limit
+	 */
+	private long admit(Message message, long maxWaitNanos) {
+
+		TokenBucket topicBucket = getTopicBucket(message.getTopic());
+
+		long topicWait = 0;
+		if(topicBucket != null) {
+			topicWait = topicBucket.reserve(maxWaitNanos);
+			if(topicWait < 0)
+				return -1;
+		}
+
+		long globalWait = globalBucket.reserve(maxWaitNanos);
+		if(globalWait < 0) {
+			if(topicBucket != null)
+				topicBucket.release();
+			return -1;
+		}
+
+		return Math.max(topicWait, globalWait);
+	}
+
+	/*
+	 * Get bucket of the topic , or null if topics are not limited
+	 */
+	private TokenBucket getTopicBucket(String topic) {
+
+		if(topicRate <= 0)
+			return null;
+
+		String key = topic != null ? topic : "";
+
+		TokenBucket bucket = topicBuckets.get(key);
+		if(bucket != null)
+			return bucket;
+
+		// Discard buckets of topics not used for a while , full buckets are the same as new ones
+		if(topicBuckets.size() >= maxTopics) {
+			Iterator<TokenBucket> iterator = topicBuckets.values().iterator();
+			while(iterator.hasNext())
+				if(iterator.next().isFull())
+					iterator.remove();
+		}
+
+		return topicBuckets.computeIfAbsent(key, k -> new TokenBucket(topicRate, topicBurst));
+	}
+
+	/*
+	 * Handle message exceeding the limit according to the policy
+	 */
+	private CompletableFuture<Result> overLimit(Message message) {
+
+		if(policy == RateLimitPolicy.COALESCE && (message.getDialogOptions() == null || message.getDialogOptions().isEmpty())) {
+			CompletableFuture<Result> future = coalesce(message);
+			if(future != null)
+				return future;
+		}
+
+		return CompletableFuture.completedFuture(drop());
+	}
+
+	/*
+	 * Count dropped message and create its result
+	 */
+	private Result drop() {
+
+		dropped.increment();
+
+		return new Result(Result.Status.ERROR, "Message rate limit is exceeded, the message is not sent", LIMITED, "true");
+	}
+
+	/*
+	 * Append message to the coalesced message of its topic , or return null if it does not fit
+	 */
+	private CompletableFuture<Result> coalesce(Message message) {
+
+		// Only messages to the same recipients are merged
+		final String key = message.getChannelRecipients() != null ? message.getTopic() + '\u0000' + message.getChannelRecipients() : 
+			String.valueOf(message.getTopic());
+
+		while(true) {
+
+			Coalesced current = coalesced.get(key);
+
+			if(current == null) {
+
+				if(coalesced.size() >= maxTopics)
+					return null;
+
+				Coalesced created = new Coalesced(message);
+				if(coalesced.putIfAbsent(key, created) != null)
+					continue;
+
+				coalescedCount.increment();
+				scheduleFlush(key, created);
+				return created.future;
+			}
+
+			synchronized(current) {
+
+				// Already sent , start a new one
+				if(current.closed)
+					continue;
+
+				if(!current.batch.add(message.getTopic(), message.getText()))
+					return null;
+			}
+
+			coalescedCount.increment();
+			return current.future;
+		}
+	}
+
+	/*
+	 * Schedule sending of the coalesced message when the tokens are expected to be available
+	 */
+	private void scheduleFlush(final String key, Coalesced pending) {
+
+		TokenBucket topicBucket = getTopicBucket(pending.first.getTopic());
+		long wait = Math.max(globalBucket.getWaitNanos(), topicBucket != null ? topicBucket.getWaitNanos() : 0);
+
+		schedule(new Runnable() {
+			@Override
+			public void run() {
+				flush(key, false);
+			}
+		}, Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1)), pending.future);
+	}
+
+	/*
+	 * Send the coalesced message if the tokens are available or the limit is ignored ,
+	 * otherwise schedule the next attempt
+	 */
+	private void flush(String key, boolean ignoreLimit) {
+
+		Coalesced current = coalesced.get(key);
+		if(current == null)
+			return;
+
+		if(!ignoreLimit && admit(current.first, 0) < 0) {
+			scheduleFlush(key, current);
+			return;
+		}
+
+		Message message;
+		synchronized(current) {
+			if(current.closed)
+				return;
+			current.closed = true;
+			coalesced.remove(key, current);
+			message = current.toMessage();
+		}
+
+		final CompletableFuture<Result> future = current.future;
+		service.sendAsync(message).whenComplete((result, error) -> {
+			if(error != null)
+				future.completeExceptionally(error);
+			else
+				future.complete(result);
+		});
+	}
+
+	/*
+	 * Run task after the given delay by the scheduler thread
+	 */
+	private void schedule(Runnable task, long delayNanos, CompletableFuture<Result> future) {
+
+		try {
+			getScheduler().schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+		} catch(RejectedExecutionException e) {
+			future.completeExceptionally(new ServiceException("Service is stopped"));
+		}
+	}
+
+	/*
+	 * Get scheduler thread , create it if needed
+	 */
+	private synchronized ScheduledExecutorService getScheduler() {
+
+		if(scheduler == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "c2w-rate-limiter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.setRemoveOnCancelPolicy(true);
+			scheduler = executor;
+		}
+
+		return scheduler;
+	}
+
+	/*
+	 * Wait for the result of the future
+	 */
+	private static Result join(CompletableFuture<Result> future) throws ServiceException {
+
+		try {
+			return future.get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof ServiceException)
+				throw (ServiceException) e.getCause();
+			throw new ServiceException(e);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		}
+	}
+
+
+	/**
+	 * Messages of the same topic merged into a single message
+	 */
+	private static class Coalesced {
+
+		private final Message first;
+
+		private final MessageBatch batch = new MessageBatch(MessageBatch.DEFAULT_MAX_EVENTS, MessageBatch.DEFAULT_MAX_BYTES);
+
+		private final CompletableFuture<Result> future = new CompletableFuture<Result>();
+
+		/*
+		 * Set when the message is sent , guarded by this object
+		 */
+		private boolean closed;
+
+		private Coalesced(Message first) {
+			this.first = first;
+			batch.add(first.getTopic(), first.getText());
+		}
+
+		/*
+		 * Create message to send , recipients and settings are taken from the first message
+		 */
+		private Message toMessage() {
+
+			if(batch.size() == 1)
+				return first;
+
+			Message message = batch.toMessage();
+			message.setChannelRecipients(first.getChannelRecipients());
+			message.setTtl(first.getTtl());
+			message.setTest(first.isTest());
+			return message;
+		}
+	}
+}
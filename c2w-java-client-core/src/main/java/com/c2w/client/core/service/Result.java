@@ -20,6 +20,16 @@ public class Result extends PropertiesModel {
 	@XmlType(name="ResultStatus", namespace="http://c2w.com/result")
 	public static enum Status {OK , ERROR};
 	
+	/**
+	 * Response of the error result of a message the service did not answer , e.g. the batch request failed
+	 */
+	public static final String NO_RESULT = "No result for the message in the batch";
+	
+	/**
+	 * Name of the property holding HTTP status code of the error result of a request the server did not accept
+	 */
+	public static final String HTTP_STATUS = "httpStatus";
+	
 	private Status status;
 	private Object response;
 	
@@ -93,4 +103,36 @@ public class Result extends PropertiesModel {
 	public void setResponse(Object response) {
 		this.response = response;
 	}
+	
+	/**
+	 * Get HTTP status code of the error result
+	 * @param result result of the call , may be null
+	 * @return HTTP status code , or -1 if the result has no valid HTTP status
+	 */
+	public static int getHttpStatus(Result result) {
+		
+		String status = result != null ? result.getProperty(HTTP_STATUS) : null;
+		if(status == null)
+			return -1;
+		try {
+			return Integer.parseInt(status.trim());
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Check if the result is a transient failure of the service , i.e. error result with HTTP status 429 or 5xx.
+	 * The same call may succeed later
+	 * @param result result of the call , may be null
+	 * @return true if the service failed to handle the call for the time being
+	 */
+	public static boolean isTransientFailure(Result result) {
+		
+		if(result == null || result.getStatus() != Status.ERROR)
+			return false;
+		
+		int status = getHttpStatus(result);
+		return status == 429 || (status >= 500 && status < 600);
+	}
 }
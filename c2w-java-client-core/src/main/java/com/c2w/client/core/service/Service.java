@@ -1,6 +1,8 @@
 package com.c2w.client.core.service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.c2w.client.core.message.Message;
 import com.c2w.client.core.message.MessageResponse;
@@ -25,6 +27,63 @@ public interface Service {
 	 */
 	public Result send(Message message) throws ServiceException;
 	
+	/**
+	 * Send message to Corp2World service asynchronously, without blocking the calling thread.
+	 * The returned future is completed with the result of the call (including results with 'ERROR' status)
+	 * or completed exceptionally with {@link ServiceException} if message could not be sent for any reason,
+	 * including the case when the service has no capacity to accept more asynchronous requests.
+	 * The default implementation calls {@link #send(Message)} in a daemon thread of its own executor , 
+	 * services should override it with their own executor
+	 * @param message message object to be sent
+	 * @return future result 
+	 */
+	public default CompletableFuture<Result> sendAsync(final Message message) {
+		
+		final CompletableFuture<Result> future = new CompletableFuture<Result>();
+		
+		ServiceExecutor.get().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(send(message));
+				} catch(ServiceException e) {
+					future.completeExceptionally(e);
+				} catch(RuntimeException e) {
+					future.completeExceptionally(new ServiceException(e));
+				}
+			}
+		});
+		
+		return future;
+	}
+	
+	/**
+	 * Send list of messages to Corp2World service using as few requests as possible.
+	 * Messages are split into batches limited by the service configuration, each batch is sent as a single request
+	 * @param messages list of message objects to be sent
+	 * @return list of results , one result for every message in the same order as messages are given. 
+	 * If a batch could not be delivered , results of all messages of that batch have 'ERROR' status
+	 * @throws ServiceException exception is thrown if messages could not be sent for any reason
+	 * <p>
+	 * The default implementation sends the messages one by one with {@link #send(Message)} , 
+	 * a message which could not be sent gets 'ERROR' result with the reason
+	 * </p>
+	 */
+	public default List<Result> sendBatch(List<Message> messages) throws ServiceException {
+		
+		List<Result> results = new ArrayList<Result>(messages.size());
+		
+		for(Message message : messages) {
+			try {
+				results.add(send(message));
+			} catch(ServiceException e) {
+				results.add(new Result(Result.Status.ERROR, e.getMessage()));
+			}
+		}
+		
+		return results;
+	}
+	
 	/**
 	 * Wait for response for the given message ID
 	 * @param messageId messageId message ID for which response is needed
@@ -34,6 +93,35 @@ public interface Service {
 	 */
 	public List<MessageResponse> waitForResponse(long messageId, long timeoutSec) throws ServiceException;
 	
+	/**
+	 * Wait for response for the given message ID asynchronously, without blocking the calling thread
+	 * @param messageId message ID for which response is needed
+	 * @param timeoutSec timeout in seconds for how long to wait
+	 * @return future completed with the list of message responses, or with empty list if the timeout expires.
+	 * The future is completed exceptionally with {@link ServiceException} if responses could not be received for any reason.
+	 * The default implementation calls {@link #waitForResponse(long, long)} in a daemon thread of its own executor , 
+	 * services should override it without blocking a thread per message
+	 */
+	public default CompletableFuture<List<MessageResponse>> awaitResponseAsync(final long messageId, final long timeoutSec) {
+		
+		final CompletableFuture<List<MessageResponse>> future = new CompletableFuture<List<MessageResponse>>();
+		
+		ServiceExecutor.get().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(waitForResponse(messageId, timeoutSec));
+				} catch(ServiceException e) {
+					future.completeExceptionally(e);
+				} catch(RuntimeException e) {
+					future.completeExceptionally(new ServiceException(e));
+				}
+			}
+		});
+		
+		return future;
+	}
+	
 	/**
 	 * Stop service and release all resources
 	 * @throws ServiceException 
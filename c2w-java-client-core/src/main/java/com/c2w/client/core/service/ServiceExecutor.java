@@ -0,0 +1,42 @@
+package com.c2w.client.core.service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor of the default asynchronous methods of {@link Service}.
+ * The default methods call blocking methods which may wait for minutes (e.g. for a message response),
+ * so they run in their own daemon threads instead of the common fork-join pool shared by the whole application.
+ * Threads are created on demand and released after they are idle for a minute
+ */
+class ServiceExecutor {
+
+	/*
+	 * Executor shared by all services which do not override the asynchronous methods
+	 */
+	private static final Executor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+			new SynchronousQueue<Runnable>(), new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "c2w-service-async-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private ServiceExecutor() {
+	}
+
+	/**
+	 * Get executor of the default asynchronous methods
+	 * @return shared executor
+	 */
+	static Executor get() {
+		return executor;
+	}
+}
@@ -1,14 +1,28 @@
 package com.c2w.client.core.service;
 
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.c2w.client.core.metrics.MetricsRegistry;
+
 
 
 
 /**
  * Service factory class.
  * Provides static method to get the instance of the C2W service.
+ * <p>
+ * Besides the default service configured by system properties, the factory creates named services configured 
+ * independently by their own properties, e.g. a service per tenant with its own endpoint, credentials and connection pool. 
+ * Service implementation is created by the {@link ServiceProvider} selected by 'com.c2w.service.provider' property 
+ * ('http' by default), providers are discovered with {@link ServiceLoader}. Named services are created once and cached 
+ * until they are closed with {@link #closeService(String)}.
+ * </p>
  * 
  * @author peter
  *
@@ -22,25 +36,120 @@ public class ServiceFactory {
 	// Default service class
 	public static final String DEFAULT_TRANSPORT_CLASS = "com.c2w.client.core.service.http.HttpService";
 	
+	// Property to specify name of the service provider
+	public static final String PROVIDER = "com.c2w.service.provider";
+	
+	// Default service provider name
+	public static final String DEFAULT_PROVIDER = "http";
+	
 	// Logger
 	private static Log LOG = LogFactory.getLog(ServiceFactory.class);
 	
 	// Service instance
-	private static Service service;
+	private static volatile Service service;
 	
-	// Create service instance class
-	static {
-		initialize();
-	}
+	// Named service instances
+	private static final Map<String, Service> services = new ConcurrentHashMap<String, Service>();
 	
 	/**
-	 * Get instance of the service
-	 * @return Corp2World service instance
+	 * Get instance of the service configured by system properties. 
+	 * The service is created by the first call , if it cannot be created the next call tries again
+	 * @return Corp2World service instance , or null if it cannot be created
 	 */
 	public static Service getService() {
+		
+		if(service == null) {
+			synchronized(ServiceFactory.class) {
+				if(service == null)
+					initialize();
+			}
+		}
+		
 		return service;	
 	}
 	
+	/**
+	 * Get named service instance , the service is created by the first call with the given name 
+	 * and the same instance is returned by the next calls regardless of the properties.
+	 * Metrics of the service are prefixed with 'service.&lt;name&gt;.' unless 'com.c2w.service.metrics.prefix' is set
+	 * @param name service name , e.g. tenant ID
+	 * @param properties service properties , properties which are not in the set are taken from system properties
+	 * @return Corp2World service instance
+	 * @throws ServiceException if the service cannot be created
+	 */
+	public static Service getService(String name, Properties properties) throws ServiceException {
+		
+		Service named = services.get(name);
+		if(named != null)
+			return named;
+		
+		synchronized(services) {
+			
+			named = services.get(name);
+			if(named == null) {
+				LOG.info("Creating service " + name);
+				named = createService(withDefaults(name, properties));
+				services.put(name, named);
+			}
+			
+			return named;
+		}
+	}
+	
+	/**
+	 * Stop named service and remove it from the cache , calling this method for unknown name has no effect
+	 * @param name service name
+	 * @throws ServiceException if the service cannot be stopped
+	 */
+	public static void closeService(String name) throws ServiceException {
+		
+		Service named = services.remove(name);
+		if(named != null)
+			named.stop();
+	}
+	
+	/**
+	 * Create new service instance , not cached.
+	 * The service is created by the provider selected by 'com.c2w.service.provider' property and wrapped with 
+	 * the services enabled by the properties , e.g. 'com.c2w.service.spool.enabled'
+	 * @param properties service properties , properties which are not in the set are taken from system properties
+	 * @return Corp2World service instance
+	 * @throws ServiceException if the provider is not found or cannot create the service
+	 */
+	public static Service createService(Properties properties) throws ServiceException {
+		
+		String providerName = getProperty(properties, PROVIDER, DEFAULT_PROVIDER);
+		
+		ServiceProvider provider = getProvider(providerName);
+		if(provider == null)
+			throw new ServiceException("Service provider is not found: " + providerName);
+		
+		return wrap(provider.createService(properties), properties);
+	}
+	
+	/**
+	 * Find service provider by name
+	 * @param name provider name
+	 * @return provider , or null if not found
+	 */
+	public static ServiceProvider getProvider(String name) {
+		
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		if(classLoader == null)
+			classLoader = ServiceFactory.class.getClassLoader();
+		
+		for(ServiceProvider provider : ServiceLoader.load(ServiceProvider.class, classLoader))
+			if(provider.getName().equalsIgnoreCase(name))
+				return provider;
+		
+		// Class loader of the application may not see this library
+		for(ServiceProvider provider : ServiceLoader.load(ServiceProvider.class, ServiceFactory.class.getClassLoader()))
+			if(provider.getName().equalsIgnoreCase(name))
+				return provider;
+		
+		return null;
+	}
+	
 	/**
 	 * Create service instance
 	 */
@@ -48,18 +157,86 @@ public class ServiceFactory {
 		
 		String tClass = System.getProperty(TRANSPORT_CLASS);
 		
-		if(tClass==null || tClass.length()<1) {
-			LOG.info("Transport class is not set in system properties , will use default: " + DEFAULT_TRANSPORT_CLASS);
-			tClass = DEFAULT_TRANSPORT_CLASS;
-		}		
-		
 		try {			
-			service = (Service) Class.forName(tClass).getConstructor().newInstance();
+			
+			if(tClass==null || tClass.length()<1) {
+				LOG.info("Transport class is not set in system properties , will use service provider: " + System.getProperty(PROVIDER, DEFAULT_PROVIDER));
+				service = createService(null);
+				return;
+			}
+			
+			service = wrap((Service) Class.forName(tClass).getConstructor().newInstance(), null);
+			
 		} catch (Exception e) {
 			LOG.error("Cannot initialize transport",e);
 		} 
 		
 	}
 	
+	/*
+	 * Wrap the service with the services enabled by the properties , the services are configured by the same properties
+	 */
+	private static Service wrap(Service service, Properties properties) {
+		
+		// Reject messages without calling the service while it is degraded if enabled
+		if(isEnabled(properties, CircuitBreakerService.ENABLED)) {
+			LOG.info("Circuit breaker is enabled");
+			service = new CircuitBreakerService(service, properties);
+		}
+		
+		// Keep messages which cannot be sent on local disk if enabled
+		if(isEnabled(properties, SpoolingService.ENABLED)) {
+			LOG.info("Message spooling is enabled");
+			service = new SpoolingService(service, properties);
+		}
+		
+		// Keep the rate of messages within the account limits if enabled
+		if(isEnabled(properties, RateLimitingService.ENABLED)) {
+			LOG.info("Rate limiting is enabled");
+			service = new RateLimitingService(service, properties);
+		}
+		
+		// Send one summary instead of repeated messages if enabled
+		if(isEnabled(properties, DeduplicatingService.ENABLED)) {
+			LOG.info("Suppression of repeated messages is enabled");
+			service = new DeduplicatingService(service, properties);
+		}
+		
+		// Gather messages into batches if enabled
+		if(isEnabled(properties, CoalescingService.ENABLED)) {
+			LOG.info("Message coalescing is enabled");
+			service = new CoalescingService(service, properties);
+		}
+		
+		return service;
+	}
+	
+	/*
+	 * Properties of the named service , the given properties with defaults of the named service
+	 */
+	private static Properties withDefaults(String name, Properties properties) {
+		
+		Properties named = new Properties(properties);
+		if(getProperty(properties, MetricsRegistry.PREFIX, null) == null)
+			named.setProperty(MetricsRegistry.PREFIX, "service." + name + ".");
+		
+		return named;
+	}
+	
+	/*
+	 * Check if boolean property is 'true'
+	 */
+	private static boolean isEnabled(Properties properties, String name) {
+		return Boolean.parseBoolean(getProperty(properties, name, "false"));
+	}
+	
+	/*
+	 * Get property from the given set , or system property if the set does not have it
+	 */
+	private static String getProperty(Properties properties, String name, String defaultValue) {
+		String value = properties != null ? properties.getProperty(name) : null;
+		return value != null ? value : System.getProperty(name, defaultValue);
+	}
+	
 	
 }
@@ -0,0 +1,94 @@
+package com.c2w.client.core.service;
+
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Properties of a service instance , properties which are not in the instance set are taken from system properties.
+ * Used by the wrapping services so every named service created by {@link ServiceFactory} is configured by its own properties
+ */
+class ServiceProperties {
+
+	private static Log log = LogFactory.getLog(ServiceProperties.class);
+
+	/*
+	 * Properties of the instance , may be null
+	 */
+	private final Properties properties;
+
+	/**
+	 * Create new instance
+	 * @param properties properties of the service instance , null to use system properties only
+	 */
+	ServiceProperties(Properties properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * Get property of the instance or system property , or default value if not specified
+	 * @param name property name
+	 * @param defaultValue default value
+	 * @return property value
+	 */
+	String getProperty(String name, String defaultValue) {
+		String value = properties != null ? properties.getProperty(name) : null;
+		return value != null ? value : System.getProperty(name, defaultValue);
+	}
+
+	/**
+	 * Get boolean property , false if not specified
+	 * @param name property name
+	 * @return true if the property is 'true'
+	 */
+	boolean getBoolean(String name) {
+		return Boolean.parseBoolean(getProperty(name, "false"));
+	}
+
+	/**
+	 * Get integer property , or default value if not specified or invalid
+	 * @param name property name
+	 * @param defaultValue default value
+	 * @return property value
+	 */
+	int getInt(String name, int defaultValue) {
+		return (int) getLong(name, defaultValue);
+	}
+
+	/**
+	 * Get long property , or default value if not specified or invalid
+	 * @param name property name
+	 * @param defaultValue default value
+	 * @return property value
+	 */
+	long getLong(String name, long defaultValue) {
+		String value = getProperty(name, null);
+		if(value == null || value.trim().length() < 1)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch(NumberFormatException e) {
+			log.warn("Invalid value of " + name + ": " + value + ", using default: " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Get double property , or default value if not specified or invalid
+	 * @param name property name
+	 * @param defaultValue default value
+	 * @return property value
+	 */
+	double getDouble(String name, double defaultValue) {
+		String value = getProperty(name, null);
+		if(value == null || value.trim().length() < 1)
+			return defaultValue;
+		try {
+			return Double.parseDouble(value.trim());
+		} catch(NumberFormatException e) {
+			log.warn("Invalid value of " + name + ": " + value + ", using default: " + defaultValue);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.c2w.client.core.service;
+
+import java.util.Properties;
+
+/**
+ * Provider of Corp2World service implementations.
+ * <p>
+ * Providers are discovered with {@link java.util.ServiceLoader}: an implementation is registered by listing its class name
+ * in 'META-INF/services/com.c2w.client.core.service.ServiceProvider' resource. {@link ServiceFactory} selects the
+ * provider by the name given in 'com.c2w.service.provider' property , 'http' by default.
+ * </p>
+ */
+public interface ServiceProvider {
+
+	/**
+	 * Get name the provider is selected by , e.g. 'http'
+	 * @return provider name
+	 */
+	public String getName();
+
+	/**
+	 * Create new service instance
+	 * @param properties service properties , properties which are not in the set should be taken from system properties
+	 * @return service , not started
+	 * @throws ServiceException if the service cannot be created
+	 */
+	public Service createService(Properties properties) throws ServiceException;
+}
@@ -0,0 +1,71 @@
+package com.c2w.client.core.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageResponse;
+
+/**
+ * Base class for services adding behavior on top of another service.
+ * All calls are delegated to the wrapped service, subclasses override the calls they need to change. 
+ * 
+ */
+public class ServiceWrapper implements Service {
+
+	/**
+	 * Wrapped service
+	 */
+	protected final Service service;
+	
+	/**
+	 * Create new instance wrapping the given service
+	 * @param service wrapped service
+	 */
+	public ServiceWrapper(Service service) {
+		this.service = service;
+	}
+	
+	@Override
+	public void start() throws ServiceException {
+		service.start();
+	}
+
+	@Override
+	public Result send(Message message) throws ServiceException {
+		return service.send(message);
+	}
+
+	@Override
+	public CompletableFuture<Result> sendAsync(Message message) {
+		return service.sendAsync(message);
+	}
+
+	@Override
+	public List<Result> sendBatch(List<Message> messages) throws ServiceException {
+		return service.sendBatch(messages);
+	}
+
+	@Override
+	public List<MessageResponse> waitForResponse(long messageId, long timeoutSec) throws ServiceException {
+		return service.waitForResponse(messageId, timeoutSec);
+	}
+
+	@Override
+	public CompletableFuture<List<MessageResponse>> awaitResponseAsync(long messageId, long timeoutSec) {
+		return service.awaitResponseAsync(messageId, timeoutSec);
+	}
+
+	@Override
+	public void stop() throws ServiceException {
+		service.stop();
+	}
+	
+	/**
+	 * Get wrapped service
+	 * @return wrapped service instance
+	 */
+	public Service getWrappedService() {
+		return service;
+	}
+}
@@ -0,0 +1,614 @@
+package com.c2w.client.core.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.spool.Spool;
+import com.c2w.client.core.spool.SpoolLockedException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Service keeping messages which cannot be sent in a durable {@link Spool} on local disk and sending them later.
+ * <p>
+ * If the wrapped service fails to send a message, e.g. the Corp2World endpoint is down or the service is over capacity, 
+ * the message is appended to the spool and the caller gets a result with 'spooled' property instead of an exception.
+ * Failures are exceptions and transient error results: HTTP status 429 or 5xx and messages left without result.
+ * Other error results (e.g. the message is rejected as invalid) are returned to the caller , on replay such messages
+ * are dropped from the spool. An internal thread replays spooled messages in order as soon as the service is reachable
+ * again. While the spool is not empty, new messages are spooled too , so they are not sent before the older ones.
+ * Spooled messages survive restart of the application.
+ * </p>
+ * <p>
+ * If the spool is full, the message is lost and the original error is thrown. If the spool directory is used by 
+ * another instance (e.g. another appender or named service) , the spool is opened in its subdirectory 'instance-N'. 
+ * If the spool cannot be opened, messages are sent without spooling and opening is retried after the replay interval.
+ * </p>
+ * This service can be configured with the following optional properties:
+ * <ul>
+ *  <li>com.c2w.service.spool.enabled - if 'true' , {@link ServiceFactory} wraps the service with this service</li>
+ *  <li>com.c2w.service.spool.dir - spool directory (default is 'c2w-spool' in the temporary directory)</li>
+ *  <li>com.c2w.service.spool.segmentBytes - size of a single spool file in bytes (default is 16 MB)</li>
+ *  <li>com.c2w.service.spool.maxBytes - max total size of spool files in bytes (default is 256 MB)</li>
+ *  <li>com.c2w.service.spool.sync - if 'true' , every spooled message is forced to the storage device (default is false, 
+ *  messages survive a crash of the application but may be lost on a crash of the operating system)</li>
+ *  <li>com.c2w.service.spool.replayIntervalMs - delay in milliseconds before the next attempt to replay messages 
+ *  after a failure (default is 5000)</li>
+ * </ul>
+ */
+public class SpoolingService extends ServiceWrapper {
+
+	/**
+	 * System property to enable spooling in {@link ServiceFactory}
+	 */
+	public static final String ENABLED = "com.c2w.service.spool.enabled";
+	
+	/**
+	 * System property to specify spool directory
+	 */
+	public static final String DIRECTORY = "com.c2w.service.spool.dir";
+	
+	/**
+	 * System property to specify size of a single spool file in bytes
+	 */
+	public static final String SEGMENT_BYTES = "com.c2w.service.spool.segmentBytes";
+	
+	/**
+	 * Default size of a single spool file in bytes
+	 */
+	public static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+	
+	/**
+	 * System property to specify max total size of spool files in bytes
+	 */
+	public static final String MAX_BYTES = "com.c2w.service.spool.maxBytes";
+	
+	/**
+	 * Default max total size of spool files in bytes
+	 */
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+	
+	/**
+	 * System property to force every spooled message to the storage device
+	 */
+	public static final String SYNC = "com.c2w.service.spool.sync";
+	
+	/**
+	 * System property to specify delay in milliseconds before the next replay attempt after a failure
+	 */
+	public static final String REPLAY_INTERVAL_MS = "com.c2w.service.spool.replayIntervalMs";
+	
+	/**
+	 * Default delay in milliseconds before the next replay attempt after a failure
+	 */
+	public static final long DEFAULT_REPLAY_INTERVAL_MS = 5000;
+	
+	/**
+	 * Result property set to 'true' if the message is spooled to be sent later
+	 */
+	public static final String SPOOLED = "spooled";
+	
+	/**
+	 * Prefix of subdirectories of the spool directory used if the directory is used by another instance , e.g. 'instance-1'
+	 */
+	public static final String INSTANCE_DIRECTORY_PREFIX = "instance-";
+	
+	/*
+	 * Max number of instance subdirectories tried
+	 */
+	private static final int MAX_INSTANCE_DIRECTORIES = 16;
+	
+	/*
+	 * Logger
+	 */
+	private static Log log = LogFactory.getLog(SpoolingService.class);
+	
+	/*
+	 * Spool directory
+	 */
+	private final File directory;
+	
+	/*
+	 * Size of a single spool file in bytes
+	 */
+	private final int segmentBytes;
+	
+	/*
+	 * Max total size of spool files in bytes
+	 */
+	private final long maxBytes;
+	
+	/*
+	 * Force every spooled message to the storage device
+	 */
+	private final boolean sync;
+	
+	/*
+	 * Delay in milliseconds before the next replay attempt after a failure
+	 */
+	private final long replayIntervalMs;
+	
+	/*
+	 * Message serialization
+	 */
+	private final ObjectWriter messageWriter;
+	
+	private final ObjectReader messageReader;
+	
+	/*
+	 * Monitor the replay thread waits on for spooled messages
+	 */
+	private final Object replayMonitor = new Object();
+	
+	/*
+	 * Spool , null if not opened
+	 */
+	private volatile Spool spool;
+	
+	/*
+	 * Thread replaying spooled messages
+	 */
+	private Thread replayThread;
+	
+	/*
+	 * Flag to control replay thread , set only if the spool is opened
+	 */
+	private volatile boolean isRunning;
+	
+	/*
+	 * Directory the spool is opened in , the configured directory or its instance subdirectory
+	 */
+	private volatile File spoolDirectory;
+	
+	/*
+	 * Time of the next attempt to open the spool after a failure
+	 */
+	private long nextOpenNanos = System.nanoTime();
+	
+	
+	/**
+	 * Create new instance wrapping the given service, configured from system properties
+	 * @param service wrapped service
+	 */
+	public SpoolingService(Service service) {
+		this(service, (Properties) null);
+	}
+	
+	/**
+	 * Create new instance wrapping the given service, configured from the given properties
+	 * @param service wrapped service
+	 * @param properties service properties , properties which are not in the set are taken from system properties
+	 */
+	public SpoolingService(Service service, Properties properties) {
+		this(service, new ServiceProperties(properties));
+	}
+	
+	/**
+	 * Create new instance wrapping the given service and spooling messages in the given directory, 
+	 * other settings are taken from system properties
+	 * @param service wrapped service
+	 * @param directory spool directory
+	 */
+	public SpoolingService(Service service, File directory) {
+		this(service, directory, new ServiceProperties(null));
+	}
+	
+	private SpoolingService(Service service, ServiceProperties properties) {
+		this(service, new File(properties.getProperty(DIRECTORY, new File(System.getProperty("java.io.tmpdir"), "c2w-spool").getPath())), properties);
+	}
+	
+	private SpoolingService(Service service, File directory, ServiceProperties properties) {
+		this(service, directory, properties.getInt(SEGMENT_BYTES, DEFAULT_SEGMENT_BYTES), properties.getLong(MAX_BYTES, DEFAULT_MAX_BYTES),
+				properties.getBoolean(SYNC), properties.getLong(REPLAY_INTERVAL_MS, DEFAULT_REPLAY_INTERVAL_MS));
+	}
+	
+	/**
+	 * Create new instance wrapping the given service
+	 * @param service wrapped service
+	 * @param directory spool directory
+	 * @param segmentBytes size of a single spool file in bytes
+	 * @param maxBytes max total size of spool files in bytes
+	 * @param sync if every spooled message should be forced to the storage device
+	 * @param replayIntervalMs delay in milliseconds before the next replay attempt after a failure
+	 */
+	public SpoolingService(Service service, File directory, int segmentBytes, long maxBytes, boolean sync, long replayIntervalMs) {
+		
+		super(service);
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxBytes = maxBytes;
+		this.sync = sync;
+		this.replayIntervalMs = replayIntervalMs;
+		
+		ObjectMapper mapper = new ObjectMapper();
+		this.messageWriter = mapper.writerWithType(Message.class);
+		this.messageReader = mapper.reader(Message.class);
+	}
+	
+	/**
+	 * Start wrapped service , open the spool and start replaying messages left by the previous run
+	 */
+	@Override
+	public void start() throws ServiceException {
+		service.start();
+		startReplayThread();
+	}
+	
+	/**
+	 * Send message , or spool it if the wrapped service fails or older messages are spooled
+	 */
+	@Override
+	public Result send(Message message) throws ServiceException {
+		
+		startReplayThread();
+		
+		if(hasSpooled())
+			return spool(message, null);
+		
+		Result result;
+		try {
+			result = service.send(message);
+		} catch(ServiceException e) {
+			return spool(message, e);
+		}
+
+		return isTransient(result) ? spoolFailed(message, result) : result;
+	}
+	
+	/**
+	 * Send message asynchronously , or spool it if the wrapped service fails or older messages are spooled
+	 */
+	@Override
+	public CompletableFuture<Result> sendAsync(final Message message) {
+		
+		startReplayThread();
+		
+		final CompletableFuture<Result> future = new CompletableFuture<Result>();
+		
+		if(hasSpooled()) {
+			try {
+				future.complete(spool(message, null));
+			} catch(ServiceException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		
+		service.sendAsync(message).whenComplete((result, error) -> {
+			if(error == null) {
+				future.complete(isTransient(result) ? spoolFailed(message, result) : result);
+				return;
+			}
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+			try {
+				future.complete(spool(message, cause instanceof ServiceException ? (ServiceException) cause : 
+					cause instanceof Exception ? new ServiceException((Exception) cause) : new ServiceException(String.valueOf(cause))));
+			} catch(ServiceException e) {
+				future.completeExceptionally(e);
+			}
+		});
+		
+		return future;
+	}
+	
+	/**
+	 * Send batch of messages , or spool them if the wrapped service fails or older messages are spooled
+	 */
+	@Override
+	public List<Result> sendBatch(List<Message> messages) throws ServiceException {
+		
+		startReplayThread();
+		
+		ServiceException error = null;
+		
+		if(!hasSpooled()) {
+
+			List<Result> results;
+			try {
+				results = service.sendBatch(messages);
+			} catch(ServiceException e) {
+				results = null;
+				error = e;
+			}
+
+			// Spool messages failed with transient errors , the others are sent
+			if(results != null) {
+				List<Result> spooled = new ArrayList<Result>(messages.size());
+				for(int i = 0; i < messages.size(); i++) {
+					Result result = i < results.size() ? results.get(i) : null;
+					spooled.add(isTransient(result) ? spoolFailed(messages.get(i), result) : result);
+				}
+				return spooled;
+			}
+		}
+
+		List<Result> results = new ArrayList<Result>(messages.size());
+		for(Message message : messages)
+			results.add(spool(message, error));
+		return results;
+	}
+	
+	/**
+	 * Stop replaying messages , close the spool and stop wrapped service. 
+	 * Messages left in the spool are sent after the next start
+	 */
+	@Override
+	public void stop() throws ServiceException {
+		
+		synchronized(this) {
+			
+			isRunning = false;
+			
+			if(replayThread != null) {
+				replayThread.interrupt();
+				try {
+					replayThread.join(replayIntervalMs + 1000);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				replayThread = null;
+			}
+			
+			if(spool != null) {
+				try {
+					spool.close();
+				} catch(IOException e) {
+					log.warn("Cannot close message spool: " + e.getMessage());
+				}
+				spool = null;
+			}
+		}
+		
+		service.stop();
+	}
+	
+	/**
+	 * Append message to the spool to be sent later
+	 * @param message message
+	 * @return result with 'spooled' property
+	 * @throws ServiceException if the spool is full or not opened
+	 */
+	public Result spool(Message message) throws ServiceException {
+		
+		startReplayThread();
+		
+		return spool(message, null);
+	}
+	
+	/**
+	 * Get number of messages waiting in the spool
+	 * @return number of spooled messages
+	 */
+	public long getSpooledCount() {
+		
+		Spool current = spool;
+		return current != null ? current.size() : 0;
+	}
+	
+	/**
+	 * Get spool directory
+	 * @return directory the spool is opened in , or the configured directory if the spool is not opened
+	 */
+	public File getDirectory() {
+		
+		File opened = spoolDirectory;
+		return spool != null && opened != null ? opened : directory;
+	}
+	
+	/*
+	 * Open the spool and start replay thread if not started yet
+	 */
+	private void startReplayThread() {
+		
+		if(!isRunning)
+			openSpool();
+	}
+	
+	/*
+	 * Open the spool and start replay thread , unless another thread did it. 
+	 * If the spool cannot be opened , the next attempt is made after the replay interval
+	 */
+	private synchronized void openSpool() {
+		
+		if(isRunning || System.nanoTime() - nextOpenNanos < 0)
+			return;
+		
+		spool = createSpool();
+		
+		if(spool == null) {
+			nextOpenNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replayIntervalMs);
+			return;
+		}
+		
+		replayThread = new ReplayThread();
+		replayThread.setDaemon(true);
+		isRunning = true;
+		replayThread.start();
+	}
+	
+	/*
+	 * Open the spool in the directory , or in an instance subdirectory if the directory is used by another spool
+	 */
+	private Spool createSpool() {
+		
+		for(int i = 0; i <= MAX_INSTANCE_DIRECTORIES; i++) {
+			
+			File candidate = i == 0 ? directory : new File(directory, INSTANCE_DIRECTORY_PREFIX + i);
+			
+			try {
+				
+				Spool opened = new Spool(candidate, segmentBytes, maxBytes, sync);
+				if(i > 0)
+					log.warn("Spool directory " + directory + " is used by another instance, messages are spooled in " + candidate);
+				spoolDirectory = candidate;
+				return opened;
+				
+			} catch(SpoolLockedException e) {
+				// Try the next instance directory
+			} catch(IOException e) {
+				log.error("Cannot open message spool in " + candidate + ", messages will not be spooled: " + e.getMessage(), e);
+				return null;
+			}
+		}
+		
+		log.error("Cannot open message spool, " + directory + " and its instance directories are used by other instances, messages will not be spooled");
+		return null;
+	}
+	
+	/*
+	 * Check if older messages wait in the spool
+	 */
+	private boolean hasSpooled() {
+		
+		Spool current = spool;
+		return current != null && !current.isEmpty();
+	}
+	
+	/**
+	 * Check if the result of the call is a transient failure , so the message is spooled and sent later.
+	 * By default missing result , HTTP status 429 or 5xx reported by {@link com.c2w.client.core.service.http.HttpService} in {@link Result#HTTP_STATUS} property
+	 * and messages of a batch left without result are transient failures , other errors (e.g. invalid message) are not
+	 * @param result result of the call
+	 * @return true if the message should be sent again
+	 */
+	protected boolean isTransient(Result result) {
+
+		if(result == null)
+			return true;
+
+		if(result.getStatus() == Result.Status.ERROR && Result.NO_RESULT.equals(result.getResponse()))
+			return true;
+
+		return Result.isTransientFailure(result);
+	}
+
+	/*
+	 * Spool message failed with transient error , the error result is returned if the message cannot be spooled
+	 */
+	private Result spoolFailed(Message message, Result failure) {
+
+		try {
+			return spool(message, null);
+		} catch(ServiceException e) {
+			return failure != null ? failure : new Result(Result.Status.ERROR, Result.NO_RESULT);
+		}
+	}
+
+	/*
+	 * Append message to the spool and wake up the replay thread
+	 */
+	private Result spool(Message message, ServiceException cause) throws ServiceException {
+		
+		Spool current = spool;
+		
+		if(current == null) {
+			if(cause != null)
+				throw cause;
+			throw new ServiceException("Cannot spool message, the spool is not opened");
+		}
+		
+		try {
+			
+			if(!current.append(messageWriter.writeValueAsBytes(message))) {
+				log.error("Cannot spool message, the spool is full");
+				if(cause != null)
+					throw cause;
+				throw new ServiceException("Cannot spool message, the spool is full");
+			}
+			
+		} catch(IOException e) {
+			log.error("Cannot spool message because of " + e.getMessage(), e);
+			throw cause != null ? cause : new ServiceException(e);
+		} catch(IllegalStateException e) {
+			// The spool is closed by stop()
+			throw cause != null ? cause : new ServiceException("Service is stopped");
+		}
+		
+		synchronized(replayMonitor) {
+			replayMonitor.notifyAll();
+		}
+		
+		return new Result(Result.Status.ERROR, "Message is spooled and will be sent later", SPOOLED, "true");
+	}
+	
+	
+	/**
+	 * Internal thread sending spooled messages in order
+	 */
+	private class ReplayThread extends Thread {
+		
+		private ReplayThread() {
+			super("c2w-spool-replayer");
+		}
+		
+		public void run() {
+			
+			Spool current = spool;
+			
+			while(isRunning && current != null) {
+				
+				try {
+					
+					byte[] data = current.peek();
+					
+					if(data == null) {
+						synchronized(replayMonitor) {
+							if(current.isEmpty())
+								replayMonitor.wait(replayIntervalMs);
+						}
+						continue;
+					}
+					
+					Message message;
+					try {
+						message = messageReader.readValue(data);
+					} catch(IOException e) {
+						log.error("Cannot read spooled message, it is skipped: " + e.getMessage());
+						current.remove();
+						continue;
+					}
+					
+					Result result;
+					try {
+						result = service.send(message);
+					} catch(ServiceException e) {
+						log.debug("Cannot send spooled message, will retry in " + replayIntervalMs + " ms: " + e.getMessage());
+						Thread.sleep(replayIntervalMs);
+						continue;
+					}
+
+					// The message is kept until the service accepts or rejects it
+					if(isTransient(result)) {
+						log.debug("Cannot send spooled message, will retry in " + replayIntervalMs + " ms: " + (result != null ? result.getResponse() : "no result"));
+						Thread.sleep(replayIntervalMs);
+						continue;
+					}
+
+					if(result.getStatus() == Result.Status.ERROR)
+						log.warn("Spooled message is rejected by the service, it is skipped: " + result.getResponse());
+
+					current.remove();
+					
+				} catch(InterruptedException e) {
+					log.debug("Internal replay thread is interrupted");
+				} catch(IllegalStateException e) {
+					// The spool is closed by stop()
+					break;
+				}
+			}
+			
+			log.debug("Terminating internal replay thread");
+		}
+	}
+}
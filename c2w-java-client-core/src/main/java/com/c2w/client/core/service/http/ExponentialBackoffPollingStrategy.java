@@ -0,0 +1,88 @@
+package com.c2w.client.core.service.http;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Polling strategy which polls fast at first and then backs off exponentially up to the max delay.
+ * Every delay is randomized by the 'jitter' factor, so polls of many messages are spread over time.
+ * 
+ */
+public class ExponentialBackoffPollingStrategy implements PollingStrategy {
+
+	/**
+	 * Default delay after the first poll in milliseconds
+	 */
+	public static final long DEFAULT_INITIAL_DELAY = 250;
+	
+	/**
+	 * Default max delay between polls in milliseconds
+	 */
+	public static final long DEFAULT_MAX_DELAY = 10000;
+	
+	/**
+	 * Default multiplier applied to the delay after every poll
+	 */
+	public static final double DEFAULT_MULTIPLIER = 2.0;
+	
+	/**
+	 * Default jitter factor
+	 */
+	public static final double DEFAULT_JITTER = 0.2;
+	
+	/*
+	 * Delay after the first poll in milliseconds
+	 */
+	private final long initialDelayMs;
+	
+	/*
+	 * Max delay between polls in milliseconds
+	 */
+	private final long maxDelayMs;
+	
+	/*
+	 * Multiplier applied to the delay after every poll
+	 */
+	private final double multiplier;
+	
+	/*
+	 * Jitter factor, every delay is randomly changed by up to this fraction
+	 */
+	private final double jitter;
+	
+	/**
+	 * Create new instance with default parameters
+	 */
+	public ExponentialBackoffPollingStrategy() {
+		this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MULTIPLIER, DEFAULT_JITTER);
+	}
+	
+	/**
+	 * Create new instance
+	 * @param initialDelayMs delay after the first poll in milliseconds
+	 * @param maxDelayMs max delay between polls in milliseconds
+	 * @param multiplier multiplier applied to the delay after every poll
+	 * @param jitter jitter factor from 0 to 1 , every delay is randomly changed by up to this fraction
+	 */
+	public ExponentialBackoffPollingStrategy(long initialDelayMs, long maxDelayMs, double multiplier, double jitter) {
+		
+		if(initialDelayMs < 0 || maxDelayMs < initialDelayMs || multiplier < 1 || jitter < 0 || jitter > 1)
+			throw new IllegalArgumentException("Invalid polling parameters, initial delay: " + initialDelayMs + ", max delay: " + maxDelayMs + 
+					", multiplier: " + multiplier + ", jitter: " + jitter);
+		
+		this.initialDelayMs = initialDelayMs;
+		this.maxDelayMs = maxDelayMs;
+		this.multiplier = multiplier;
+		this.jitter = jitter;
+	}
+
+	@Override
+	public long nextDelay(int attempt) {
+		
+		double delay = Math.min(maxDelayMs, initialDelayMs * Math.pow(multiplier, Math.max(0, attempt - 1)));
+		
+		if(jitter > 0)
+			delay = delay * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1));
+		
+		return Math.min(maxDelayMs, Math.round(delay));
+	}
+}
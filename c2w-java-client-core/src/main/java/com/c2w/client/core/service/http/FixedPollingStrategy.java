@@ -0,0 +1,26 @@
+package com.c2w.client.core.service.http;
+
+/**
+ * Polling strategy with the same delay between all polls
+ * 
+ */
+public class FixedPollingStrategy implements PollingStrategy {
+
+	/*
+	 * Delay between polls in milliseconds
+	 */
+	private final long intervalMs;
+	
+	/**
+	 * Create new instance
+	 * @param intervalMs delay between polls in milliseconds
+	 */
+	public FixedPollingStrategy(long intervalMs) {
+		this.intervalMs = intervalMs;
+	}
+	
+	@Override
+	public long nextDelay(int attempt) {
+		return intervalMs;
+	}
+}
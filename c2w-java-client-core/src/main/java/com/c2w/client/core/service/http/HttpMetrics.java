@@ -0,0 +1,170 @@
+package com.c2w.client.core.service.http;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.c2w.client.core.metrics.Histogram;
+import com.c2w.client.core.metrics.MetricsRegistry;
+import com.c2w.client.core.service.Result;
+
+/**
+ * Metrics recorded by {@link HttpService}.
+ * Counters and histograms are looked up in the registry once , so recording on the send path does not touch the registry.
+ * Names are prefixed with the prefix of the service , so services sharing a registry record separate metrics
+ */
+class HttpMetrics {
+
+	/**
+	 * Histogram of time to send a single message including retries , in nanoseconds
+	 */
+	static final String SEND_LATENCY = "send.latency";
+
+	/**
+	 * Prefix of counters of send results by {@link Result.Status} , e.g. 'send.results.OK'
+	 */
+	static final String SEND_RESULTS = "send.results.";
+
+	/**
+	 * Counter of send requests failed with exception
+	 */
+	static final String SEND_FAILURES = "send.failures";
+
+	/**
+	 * Histogram of time of a single HTTP request attempt , in nanoseconds
+	 */
+	static final String REQUEST_LATENCY = "http.request.latency";
+
+	/**
+	 * Prefix of counters of HTTP responses by status code , e.g. 'http.status.200'
+	 */
+	static final String STATUS = "http.status.";
+
+	/**
+	 * Counter of HTTP request attempts failed without response
+	 */
+	static final String REQUEST_ERRORS = "http.errors";
+
+	/**
+	 * Counters of request and response body bytes
+	 */
+	static final String BYTES_SENT = "http.bytes.sent";
+
+	static final String BYTES_RECEIVED = "http.bytes.received";
+
+	/**
+	 * Histogram of time waiting for a connection from the pool , in nanoseconds
+	 */
+	static final String POOL_WAIT = "http.pool.wait";
+
+	/**
+	 * Gauges of the connection pool and the retry policy
+	 */
+	static final String POOL_LEASED = "http.pool.leased";
+
+	static final String POOL_PENDING = "http.pool.pending";
+
+	static final String POOL_AVAILABLE = "http.pool.available";
+
+	static final String RETRIES = "http.retries";
+
+	static final String RETRY_BUDGET_EXHAUSTED = "http.retry.budgetExhausted";
+
+	/*
+	 * Registry the metrics are recorded in
+	 */
+	final MetricsRegistry registry;
+
+	/*
+	 * Prefix of metric names , empty if none
+	 */
+	final String prefix;
+
+	final Histogram sendLatency;
+
+	final LongAdder sendFailures;
+
+	final Histogram requestLatency;
+
+	final LongAdder requestErrors;
+
+	final LongAdder bytesSent;
+
+	final LongAdder bytesReceived;
+
+	final Histogram poolWait;
+
+	/*
+	 * Counters of results by status ordinal
+	 */
+	private final LongAdder[] results;
+
+	/*
+	 * Counters of responses by HTTP status code , created on demand
+	 */
+	private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<Integer, LongAdder>();
+
+
+	/**
+	 * Create metrics in the given registry
+	 * @param registry metrics registry
+	 * @param prefix prefix of metric names , e.g. 'service.tenant-1.' , or empty
+	 */
+	HttpMetrics(MetricsRegistry registry, String prefix) {
+
+		this.registry = registry;
+		this.prefix = prefix != null ? prefix : "";
+
+		sendLatency = registry.histogram(name(SEND_LATENCY));
+		sendFailures = registry.counter(name(SEND_FAILURES));
+		requestLatency = registry.histogram(name(REQUEST_LATENCY));
+		requestErrors = registry.counter(name(REQUEST_ERRORS));
+		bytesSent = registry.counter(name(BYTES_SENT));
+		bytesReceived = registry.counter(name(BYTES_RECEIVED));
+		poolWait = registry.histogram(name(POOL_WAIT));
+
+		results = new LongAdder[Result.Status.values().length];
+		for(Result.Status status : Result.Status.values())
+			results[status.ordinal()] = registry.counter(name(SEND_RESULTS + status.name()));
+	}
+
+	/**
+	 * Get full name of the metric of this service
+	 * @param name metric name , e.g. {@link #SEND_LATENCY}
+	 * @return name with the prefix
+	 */
+	String name(String name) {
+		return prefix + name;
+	}
+
+	/**
+	 * Count result of the message
+	 * @param result result , ignored if null or without status
+	 */
+	void onResult(Result result) {
+		if(result != null && result.getStatus() != null)
+			results[result.getStatus().ordinal()].increment();
+	}
+
+	/**
+	 * Record attempt of HTTP request
+	 * @param durationNanos duration of the attempt in nanoseconds
+	 * @param statusCode HTTP status code , or -1 if the attempt failed without response
+	 */
+	void onAttempt(long durationNanos, int statusCode) {
+
+		requestLatency.record(durationNanos);
+
+		if(statusCode < 0) {
+			requestErrors.increment();
+			return;
+		}
+
+		LongAdder counter = statusCodes.get(statusCode);
+		if(counter == null) {
+			counter = registry.counter(name(STATUS + statusCode));
+			statusCodes.put(statusCode, counter);
+		}
+		counter.increment();
+	}
+}
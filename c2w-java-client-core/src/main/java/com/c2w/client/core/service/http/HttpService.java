@@ -1,15 +1,37 @@
 package com.c2w.client.core.service.http;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
 import java.net.URL;
 import java.security.KeyStore;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -20,24 +42,40 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.params.AuthPolicy;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
 import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
 import com.c2w.client.core.message.Message;
 import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.metrics.Gauge;
+import com.c2w.client.core.metrics.MetricsRegistry;
 import com.c2w.client.core.service.Result;
 import com.c2w.client.core.service.Service;
 import com.c2w.client.core.service.ServiceException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * HTTP-based Corp2World message service implementation
@@ -54,6 +92,58 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  *  <li>com.c2w.service.proxy.port - proxy port</li>
  *  <li>com.c2w.service.proxy.user - proxy user name (if proxy requires authorization)</li>
  *  <li>com.c2w.service.proxy.password - proxy password (if proxy requires authorization)</li>
+ *  
+ *  Asynchronous sending ({@link #sendAsync(Message)}) can be tuned with the following optional properties:
+ *  <li>com.c2w.service.async.threads - max number of threads sending messages asynchronously (default is 4)</li>
+ *  <li>com.c2w.service.async.queueSize - max number of asynchronous requests waiting for a free thread (default is 1000)</li>
+ *  
+ *  Batch sending ({@link #sendBatch(List)}) can be tuned with the following optional properties:
+ *  <li>com.c2w.service.batch.maxMessages - max number of messages sent in a single request (default is 100)</li>
+ *  <li>com.c2w.service.batch.maxBytes - max size of a single batch request in bytes (default is 1048576)</li>
+ *  
+ *  HTTP connection pool can be tuned with the following optional properties:
+ *  <li>com.c2w.service.pool.maxTotal - max number of pooled connections (default is 10)</li>
+ *  <li>com.c2w.service.pool.maxPerRoute - max number of pooled connections per route (default is 10)</li>
+ *  <li>com.c2w.service.pool.ttlMs - max time to live of pooled connection in milliseconds (default is not limited)</li>
+ *  <li>com.c2w.service.pool.keepAliveMs - time connection is kept alive in milliseconds if the server does not specify it (default is 30000)</li>
+ *  <li>com.c2w.service.pool.idleTimeoutMs - max time connection can stay idle in the pool in milliseconds (default is 30000)</li>
+ *  <li>com.c2w.service.pool.reaperIntervalMs - interval between cleanups of expired and idle connections in milliseconds, 0 to disable (default is 5000)</li>
+ *  <li>com.c2w.service.pool.timeoutMs - max time to wait for a free connection in milliseconds (default is not limited)</li>
+ *  
+ *  Responses to dialog messages are polled by a single background poller. Polls of the same message start fast and back off
+ *  exponentially, 'Retry-After' and 'Cache-Control: max-age' response headers are honored. The schedule can be tuned with the following optional properties:
+ *  <li>com.c2w.service.response.initialDelayMs - delay after the first poll in milliseconds (default is 250)</li>
+ *  <li>com.c2w.service.response.maxDelayMs - max delay between polls in milliseconds (default is 10000)</li>
+ *  <li>com.c2w.service.response.multiplier - multiplier applied to the delay after every poll (default is 2)</li>
+ *  <li>com.c2w.service.response.jitter - jitter factor from 0 to 1, every delay is randomly changed by up to this fraction (default is 0.2)</li>
+ *  <li>com.c2w.service.response.pollIntervalMs - if specified, responses are polled with this fixed interval in milliseconds instead</li>
+ *  
+ *  Sending requests failed before reaching the server (connect timeout, refused connection, pool timeout) or rejected with
+ *  retryable status codes are retried with exponential backoff, see {@link RetryPolicy}. Retries are tuned with the following optional properties:
+ *  <li>com.c2w.service.retry.maxAttempts - max number of attempts of a single request, 1 disables retries (default is 3)</li>
+ *  <li>com.c2w.service.retry.initialBackoffMs - delay before the first retry in milliseconds (default is 100)</li>
+ *  <li>com.c2w.service.retry.maxBackoffMs - max delay between attempts in milliseconds (default is 2000)</li>
+ *  <li>com.c2w.service.retry.multiplier - multiplier applied to the delay after every retry (default is 2)</li>
+ *  <li>com.c2w.service.retry.jitter - jitter factor from 0 to 1, every delay is randomly changed by up to this fraction (default is 0.5)</li>
+ *  <li>com.c2w.service.retry.budgetRatio - fraction of a retry every request adds to the retry budget of the client (default is 0.1)</li>
+ *  <li>com.c2w.service.retry.budgetMinPerSecond - number of retries added to the retry budget every second regardless of traffic (default is 10)</li>
+ *  <li>com.c2w.service.retry.statusCodes - comma separated list of retryable HTTP status codes (default is 429,503 , 
+ *  502 and 504 may be returned by a gateway after the message is accepted , so retrying them may duplicate the message)</li>
+ *  
+ *  Request and response bodies are logged by the separate 'com.c2w.client.wire' logger at DEBUG level , see {@link WireLogger}.
+ *  Wire tracing is tuned with the following optional properties:
+ *  <li>com.c2w.service.wire.maxLength - max number of characters of a logged body (default is 2048)</li>
+ *  <li>com.c2w.service.wire.sampleRate - fraction of requests logged from 0 to 1 (default is 1)</li>
+ *  <li>com.c2w.service.wire.redactRecipients - if 'true' , recipients of logged messages are replaced with '***' (default is false)</li>
+ *  
+ *  Send latency, results, HTTP status codes, bytes sent and received and connection pool wait time are recorded in 
+ *  {@link MetricsRegistry#getDefault()} unless another registry is set with {@link #setMetricsRegistry(MetricsRegistry)}.
+ *  <li>com.c2w.service.metrics.prefix - prefix of metric names of this service , so services sharing a registry record 
+ *  separate metrics (default is no prefix , named services of {@link com.c2w.client.core.service.ServiceFactory} use 'service.&lt;name&gt;.')</li>
+ *  
+ *  The service is started lazily by the first request if {@link #start()} is not called explicitly, concurrent first requests 
+ *  share a single start. {@link #stop()} rejects new requests and waits for in-flight requests to complete:
+ *  <li>com.c2w.service.stop.timeoutMs - max time to wait for in-flight requests on stop in milliseconds (default is 5000)</li>
  * </ul>
  * 
  *  This properties can be set through Java JVM parameters passed as -D<parameter_name>=<parameter_value>  or
@@ -61,6 +151,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  *  
  *  System.getProperties().setProperty("<property_name>", "<property_value>");
  *  
+ *  <br>
+ *  Services created with {@link #HttpService(Properties)} , e.g. by {@link com.c2w.client.core.service.ServiceFactory#getService(String, Properties)} , 
+ *  take the properties from the given set first and from system properties only if they are not in the set, 
+ *  so several services with different endpoints, credentials and connection pools can run in the same JVM.
  */
 public class HttpService implements Service {
 	
@@ -124,6 +218,268 @@ public class HttpService implements Service {
 	 */
 	public static final String PROXY_PASSWORD = "com.c2w.service.proxy.password";
 	
+	/**
+	 * System property to specify max number of threads used to send messages asynchronously
+	 */
+	public static final String ASYNC_THREADS = "com.c2w.service.async.threads";
+	
+	/**
+	 * Default max number of threads used to send messages asynchronously
+	 */
+	public static final int DEFAULT_ASYNC_THREADS = 4;
+	
+	/**
+	 * System property to specify max number of asynchronous requests waiting for execution
+	 */
+	public static final String ASYNC_QUEUE_SIZE = "com.c2w.service.async.queueSize";
+	
+	/**
+	 * Default max number of asynchronous requests waiting for execution
+	 */
+	public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+	
+	/**
+	 * System property to specify max number of messages sent in a single batch request
+	 */
+	public static final String BATCH_MAX_MESSAGES = "com.c2w.service.batch.maxMessages";
+	
+	/**
+	 * Default max number of messages sent in a single batch request
+	 */
+	public static final int DEFAULT_BATCH_MAX_MESSAGES = 100;
+	
+	/**
+	 * System property to specify max size of a single batch request in bytes
+	 */
+	public static final String BATCH_MAX_BYTES = "com.c2w.service.batch.maxBytes";
+	
+	/**
+	 * Default max size of a single batch request in bytes
+	 */
+	public static final int DEFAULT_BATCH_MAX_BYTES = 1024 * 1024;
+	
+	/**
+	 * System property to specify max number of pooled HTTP connections
+	 */
+	public static final String POOL_MAX_TOTAL = "com.c2w.service.pool.maxTotal";
+	
+	/**
+	 * Default max number of pooled HTTP connections
+	 */
+	public static final int DEFAULT_POOL_MAX_TOTAL = 10;
+	
+	/**
+	 * System property to specify max number of pooled HTTP connections per route
+	 */
+	public static final String POOL_MAX_PER_ROUTE = "com.c2w.service.pool.maxPerRoute";
+	
+	/**
+	 * Default max number of pooled HTTP connections per route
+	 */
+	public static final int DEFAULT_POOL_MAX_PER_ROUTE = 10;
+	
+	/**
+	 * System property to specify max time to live of pooled HTTP connection in milliseconds
+	 */
+	public static final String POOL_CONNECTION_TTL = "com.c2w.service.pool.ttlMs";
+	
+	/**
+	 * Default max time to live of pooled HTTP connection in milliseconds, not limited
+	 */
+	public static final long DEFAULT_POOL_CONNECTION_TTL = -1;
+	
+	/**
+	 * System property to specify how long HTTP connection is kept alive in milliseconds, if the server does not specify it
+	 */
+	public static final String POOL_KEEP_ALIVE = "com.c2w.service.pool.keepAliveMs";
+	
+	/**
+	 * Default time HTTP connection is kept alive in milliseconds, if the server does not specify it
+	 */
+	public static final long DEFAULT_POOL_KEEP_ALIVE = 30000;
+	
+	/**
+	 * System property to specify max time in milliseconds HTTP connection can stay idle in the pool
+	 */
+	public static final String POOL_IDLE_TIMEOUT = "com.c2w.service.pool.idleTimeoutMs";
+	
+	/**
+	 * Default max time in milliseconds HTTP connection can stay idle in the pool
+	 */
+	public static final long DEFAULT_POOL_IDLE_TIMEOUT = 30000;
+	
+	/**
+	 * System property to specify interval in milliseconds between cleanups of expired and idle HTTP connections
+	 */
+	public static final String POOL_REAPER_INTERVAL = "com.c2w.service.pool.reaperIntervalMs";
+	
+	/**
+	 * Default interval in milliseconds between cleanups of expired and idle HTTP connections
+	 */
+	public static final long DEFAULT_POOL_REAPER_INTERVAL = 5000;
+	
+	/**
+	 * System property to specify max time in milliseconds to wait for a free HTTP connection from the pool
+	 */
+	public static final String POOL_TIMEOUT = "com.c2w.service.pool.timeoutMs";
+	
+	/**
+	 * Default max time in milliseconds to wait for a free HTTP connection from the pool, not limited
+	 */
+	public static final long DEFAULT_POOL_TIMEOUT = 0;
+	
+	/**
+	 * System property to specify max time in milliseconds to establish HTTP connection
+	 */
+	public static final String CONNECT_TIMEOUT = "com.c2w.service.connectTimeoutMs";
+	
+	/**
+	 * Default max time in milliseconds to establish HTTP connection
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	
+	/**
+	 * System property to specify max time in milliseconds to wait for data from HTTP connection
+	 */
+	public static final String SOCKET_TIMEOUT = "com.c2w.service.socketTimeoutMs";
+	
+	/**
+	 * Default max time in milliseconds to wait for data from HTTP connection
+	 */
+	public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+	
+	/**
+	 * System property to specify fixed interval between polls of message responses in milliseconds.
+	 * If specified , responses are polled with fixed interval instead of exponential backoff
+	 */
+	public static final String RESPONSE_POLL_INTERVAL = "com.c2w.service.response.pollIntervalMs";
+	
+	/**
+	 * System property to specify delay after the first poll of message responses in milliseconds
+	 */
+	public static final String RESPONSE_POLL_INITIAL_DELAY = "com.c2w.service.response.initialDelayMs";
+	
+	/**
+	 * System property to specify max delay between polls of message responses in milliseconds
+	 */
+	public static final String RESPONSE_POLL_MAX_DELAY = "com.c2w.service.response.maxDelayMs";
+	
+	/**
+	 * System property to specify multiplier applied to the delay between polls of message responses after every poll
+	 */
+	public static final String RESPONSE_POLL_MULTIPLIER = "com.c2w.service.response.multiplier";
+	
+	/**
+	 * System property to specify jitter factor of the delay between polls of message responses
+	 */
+	public static final String RESPONSE_POLL_JITTER = "com.c2w.service.response.jitter";
+	
+	/**
+	 * System property to specify max number of concurrent polls of message responses
+	 */
+	public static final String RESPONSE_POLL_THREADS = "com.c2w.service.response.threads";
+	
+	/**
+	 * Default max number of concurrent polls of message responses
+	 */
+	public static final int DEFAULT_RESPONSE_POLL_THREADS = 2;
+	
+	/**
+	 * System property to specify max number of attempts of a single request
+	 */
+	public static final String RETRY_MAX_ATTEMPTS = "com.c2w.service.retry.maxAttempts";
+	
+	/**
+	 * System property to specify delay before the first retry in milliseconds
+	 */
+	public static final String RETRY_INITIAL_BACKOFF = "com.c2w.service.retry.initialBackoffMs";
+	
+	/**
+	 * System property to specify max delay between attempts in milliseconds
+	 */
+	public static final String RETRY_MAX_BACKOFF = "com.c2w.service.retry.maxBackoffMs";
+	
+	/**
+	 * System property to specify multiplier applied to the delay between attempts after every retry
+	 */
+	public static final String RETRY_MULTIPLIER = "com.c2w.service.retry.multiplier";
+	
+	/**
+	 * System property to specify jitter factor of the delay between attempts
+	 */
+	public static final String RETRY_JITTER = "com.c2w.service.retry.jitter";
+	
+	/**
+	 * System property to specify fraction of a retry every request adds to the retry budget
+	 */
+	public static final String RETRY_BUDGET_RATIO = "com.c2w.service.retry.budgetRatio";
+	
+	/**
+	 * System property to specify number of retries added to the retry budget every second
+	 */
+	public static final String RETRY_BUDGET_MIN_PER_SECOND = "com.c2w.service.retry.budgetMinPerSecond";
+	
+	/**
+	 * System property to specify comma separated list of retryable HTTP status codes
+	 */
+	public static final String RETRY_STATUS_CODES = "com.c2w.service.retry.statusCodes";
+	
+	/**
+	 * System property to specify max number of characters of a request or response body logged by the wire logger
+	 */
+	public static final String WIRE_MAX_LENGTH = "com.c2w.service.wire.maxLength";
+	
+	/**
+	 * System property to specify fraction of requests logged by the wire logger
+	 */
+	public static final String WIRE_SAMPLE_RATE = "com.c2w.service.wire.sampleRate";
+	
+	/**
+	 * System property to enable replacement of message recipients logged by the wire logger
+	 */
+	public static final String WIRE_REDACT_RECIPIENTS = "com.c2w.service.wire.redactRecipients";
+	
+	/**
+	 * System property to specify max time to wait for in-flight requests on stop in milliseconds
+	 */
+	public static final String STOP_TIMEOUT = "com.c2w.service.stop.timeoutMs";
+	
+	/**
+	 * Default max time to wait for in-flight requests on stop in milliseconds
+	 */
+	public static final long DEFAULT_STOP_TIMEOUT = 5000;
+	
+	/**
+	 * Service lifecycle state
+	 */
+	public static enum State {
+		
+		/**
+		 * Service is created but not started yet
+		 */
+		NEW,
+		
+		/**
+		 * Service is being started
+		 */
+		STARTING,
+		
+		/**
+		 * Service is started and accepts requests
+		 */
+		RUNNING,
+		
+		/**
+		 * Service is being stopped, new requests are rejected
+		 */
+		STOPPING,
+		
+		/**
+		 * Service is stopped, it is started again by the next request
+		 */
+		STOPPED
+	}
+	
 	/*
 	 * Log4J logger
 	 */
@@ -139,20 +495,80 @@ public class HttpService implements Service {
 	 */
 	private static final String PATH_GET_RESPONSE = "/message/response";
 	
+	/*
+	 * Path to 'post message batch' RESTful resource
+	 */
+	private static final String PATH_POST_BATCH = "/message/batch";
+	
 	/*
 	 * JSON object mapper
 	 */
 	private ObjectMapper mapper;
 	
 	/*
-	 * Connection state
+	 * Message JSON writer
+	 */
+	private ObjectWriter messageWriter;
+	
+	/*
+	 * Result JSON reader
+	 */
+	private ObjectReader resultReader;
+	
+	/*
+	 * Result list JSON reader
+	 */
+	private ObjectReader resultListReader;
+	
+	/*
+	 * Message response list JSON reader
+	 */
+	private ObjectReader responseListReader;
+	
+	/*
+	 * URI of 'post message' resource
+	 */
+	private URI postMessageUri;
+	
+	/*
+	 * URI of 'post message batch' resource
+	 */
+	private URI postBatchUri;
+	
+	/*
+	 * URI prefix of 'get message response' resource, message ID is appended to it
 	 */
-	private boolean connected = false;
+	private String getResponseUriPrefix;
 	
 	/*
-	 * HTTP client
+	 * Lifecycle state, changed under the lifecycle lock only
 	 */
-	private DefaultHttpClient httpClient;
+	private volatile State state = State.NEW;
+	
+	/*
+	 * Lock guarding start and stop
+	 */
+	private final Object lifecycleLock = new Object();
+	
+	/*
+	 * Number of accepted requests which are not completed yet
+	 */
+	private final AtomicInteger inFlight = new AtomicInteger();
+	
+	/*
+	 * Monitor notified when the last in-flight request completes
+	 */
+	private final Object drainMonitor = new Object();
+	
+	/*
+	 * Max time to wait for in-flight requests on stop
+	 */
+	private long stopTimeoutMs = -1;
+	
+	/*
+	 * HTTP client , null if the service is not started
+	 */
+	private volatile DefaultHttpClient httpClient;
 	
 	/*
 	 * Service URL
@@ -174,11 +590,106 @@ public class HttpService implements Service {
 	 */
 	private String apiKey;
 	
+	/*
+	 * Max number of threads sending messages asynchronously
+	 */
+	private int asyncThreads = -1;
+	
+	/*
+	 * Max number of asynchronous requests waiting for execution
+	 */
+	private int asyncQueueSize = -1;
+	
+	/*
+	 * Bounded executor for asynchronous requests
+	 */
+	private ThreadPoolExecutor asyncExecutor;
+	
+	/*
+	 * Max number of messages sent in a single batch request
+	 */
+	private int batchMaxMessages = -1;
+	
+	/*
+	 * Max size of a single batch request in bytes
+	 */
+	private int batchMaxBytes = -1;
+	
+	/*
+	 * Shared poller of message responses , null when the service is stopped
+	 */
+	private volatile ResponsePoller responsePoller;
+	
+	/*
+	 * Schedule of polls of message responses
+	 */
+	private PollingStrategy pollingStrategy;
+	
+	/*
+	 * Policy of retries of failed requests , shared by all requests of this service
+	 */
+	private RetryPolicy retryPolicy;
+	
+	/*
+	 * Listener notified about every attempt of request
+	 */
+	private volatile RequestListener requestListener;
+	
+	/*
+	 * Properties of this instance , consulted before system properties
+	 */
+	private final Properties properties;
+	
+	/*
+	 * Tracer of request and response bodies
+	 */
+	private WireLogger wireLogger;
+	
+	/*
+	 * Registry of metrics , the default registry if not set
+	 */
+	private MetricsRegistry metricsRegistry;
+	
+	/*
+	 * Metrics recorded by the service , created when the service is started
+	 */
+	private volatile HttpMetrics metrics;
+	
+	/*
+	 * Prefix of metric names , taken from properties if not set
+	 */
+	private String metricsPrefix;
+	
+	/*
+	 * Gauges registered by this service , removed on stop
+	 */
+	private final Map<String, Gauge> registeredGauges = new LinkedHashMap<String, Gauge>();
+	
+	/*
+	 * HTTP connection pool , null if the service is not started
+	 */
+	private volatile PoolingClientConnectionManager connectionManager;
+	
+	/*
+	 * Background cleaner of expired and idle connections
+	 */
+	private IdleConnectionReaper connectionReaper;
+	
 	
 	/**
-	 * Create new service instance
+	 * Create new service instance configured by system properties
 	 */
 	public HttpService() {
+		this(null);
+	}
+	
+	/**
+	 * Create new service instance configured by the given properties , 
+	 * properties which are not in the set are taken from system properties
+	 * @param properties service properties , or null to use system properties only
+	 */
+	public HttpService(Properties properties) {
+		this.properties = properties;
 	}
 	
 	/**
@@ -186,104 +697,447 @@ public class HttpService implements Service {
 	 */
 	@Override
 	public Result send(Message message) throws ServiceException {
+		
+		beginRequest();
+		try {
+			return doSend(message);
+		} finally {
+			endRequest();
+		}
+	}
+	
+	/*
+	 * Send message , the request must be already accepted
+	 */
+	private Result doSend(Message message) throws ServiceException {
 
 		Result result;
+		long start = System.nanoTime();
 		
 		try {
 			
-			// Start service
-			if(!connected)
-				start();
-			
-			String messageAsJson = mapper.writeValueAsString(message);
+			// Trace message , only if the wire logger is enabled and the request is sampled
+			boolean traced = wireLogger.sample();
+			if(traced)
+				wireLogger.logRequest(PATH_POST_MESSAGE, mapper, message);
 			
-			// Log message
-			log.debug("Sending message: " + messageAsJson);
+			// Execute POST request, message is serialized into the buffer of this thread and sent with its length
+			HttpResponse response = post(postMessageUri, PATH_POST_MESSAGE, new JsonEntity(messageWriter, message));
 			
-			// Prepare and execute POST request
-			HttpPost httpPost = new HttpPost(new URL(urlAsString + PATH_POST_MESSAGE).toExternalForm());
-			StringEntity entity = new StringEntity(messageAsJson, "UTF-8");		
-			entity.setContentType("application/json");
-			httpPost.setEntity(entity);
-			HttpResponse response = httpClient.execute(httpPost);
-			
-			log.debug("Response: " + response.getStatusLine().toString());
+			if(log.isDebugEnabled())
+				log.debug("Response: " + response.getStatusLine());
 			
 			if(response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-				String responseAsString = EntityUtils.toString(response.getEntity());
-				log.debug("Response content: " +   responseAsString);
-				result = mapper.readValue(responseAsString, Result.class);
+				result = readJson(PATH_POST_MESSAGE, response, resultReader, traced);
 			}
 			else {
-				result = new Result(Result.Status.ERROR, response.getStatusLine().toString());
+				EntityUtils.consume(response.getEntity());
+				if(traced)
+					wireLogger.logResponse(PATH_POST_MESSAGE, response.getStatusLine(), null);
+				result = new Result(Result.Status.ERROR, response.getStatusLine().toString(), Result.HTTP_STATUS, String.valueOf(response.getStatusLine().getStatusCode()));
 			}
 			
 		}catch(Exception e) {
+			metrics.sendFailures.increment();
 			log.error("Cannot send message because of " + e.getMessage(), e);
 			throw new ServiceException(e);
 		}
 		
+		metrics.sendLatency.record(System.nanoTime() - start);
+		metrics.onResult(result);
+		
 		// Return result
 		return result;
 	}
+	
+	/**
+	 * Send message asynchronously.
+	 * The message is sent by the internal bounded thread pool, if there is no capacity to accept
+	 * the request the returned future is completed exceptionally with {@link ServiceException} immediately
+	 */
+	@Override
+	public CompletableFuture<Result> sendAsync(final Message message) {
+		
+		final CompletableFuture<Result> future = new CompletableFuture<Result>();
+		
+		// Queued request is in-flight until it is sent , so stop() waits for it
+		try {
+			beginRequest();
+		} catch(ServiceException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		
+		try {
+			
+			asyncExecutor.execute(new AsyncRequest(message, future));
+			
+		} catch(RejectedExecutionException e) {
+			endRequest();
+			log.warn("Cannot send message asynchronously, too many pending requests");
+			future.completeExceptionally(new ServiceException("Cannot send message asynchronously, too many pending requests"));
+		}
+		
+		return future;
+	}
+	
+	/**
+	 * Send list of messages.
+	 * Messages are serialized into JSON arrays, each array is limited by max number of messages 
+	 * and max size in bytes and is sent as a single POST request
+	 */
+	@Override
+	public List<Result> sendBatch(List<Message> messages) throws ServiceException {
+		
+		List<Result> results = new ArrayList<Result>(messages.size());
+		
+		beginRequest();
+		try {
+			
+			int maxMessages = batchMaxMessages > 0 ? batchMaxMessages : getIntProperty(BATCH_MAX_MESSAGES, DEFAULT_BATCH_MAX_MESSAGES);
+			int maxBytes = batchMaxBytes > 0 ? batchMaxBytes : getIntProperty(BATCH_MAX_BYTES, DEFAULT_BATCH_MAX_BYTES);
+			
+			BatchBuffer batch = new BatchBuffer();
+			int batchCount = 0;
+			
+			for(Message message : messages) {
+				
+				byte[] messageAsJson = messageWriter.writeValueAsBytes(message);
+				
+				// Flush the current batch if the message does not fit into it
+				if(batchCount > 0 && (batchCount >= maxMessages || batch.size() + messageAsJson.length + 1 > maxBytes)) {
+					results.addAll(postBatch(batch, batchCount));
+					batch.reset();
+					batchCount = 0;
+				}
+				
+				batch.write(batchCount == 0 ? '[' : ',');
+				batch.write(messageAsJson);
+				batchCount++;
+			}
+			
+			if(batchCount > 0)
+				results.addAll(postBatch(batch, batchCount));
+			
+		}catch(Exception e) {
+			log.error("Cannot send messages because of " + e.getMessage(), e);
+			throw new ServiceException(e);
+		} finally {
+			endRequest();
+		}
+		
+		// Return results
+		return results;
+	}
+	
+	/*
+	 * Send batch of messages serialized as JSON array (without closing bracket) 
+	 * and map response to the list of results of the given size
+	 */
+	private List<Result> postBatch(BatchBuffer batch, int batchCount) {
+		
+		List<Result> results = new ArrayList<Result>(batchCount);
+		
+		try {
+			
+			batch.write(']');
+			
+			// Log message
+			if(log.isDebugEnabled())
+				log.debug("Sending batch of " + batchCount + " messages, " + batch.size() + " bytes");
+			
+			boolean traced = wireLogger.sample();
+			if(traced)
+				wireLogger.logRequest(PATH_POST_BATCH, mapper, batch.buffer(), batch.size());
+			
+			// Execute POST request
+			HttpResponse response = post(postBatchUri, PATH_POST_BATCH, batch.toEntity());
+			
+			if(log.isDebugEnabled())
+				log.debug("Response: " + response.getStatusLine());
+			
+			if(response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+				List<Result> batchResults = readJson(PATH_POST_BATCH, response, resultListReader, traced);
+				if(batchResults != null)
+					results.addAll(batchResults.subList(0, Math.min(batchResults.size(), batchCount)));
+				if(results.size() != batchCount)
+					log.warn("Batch of " + batchCount + " messages was answered with " + (batchResults == null ? 0 : batchResults.size()) + " results");
+			}
+			else {
+				EntityUtils.consume(response.getEntity());
+				if(traced)
+					wireLogger.logResponse(PATH_POST_BATCH, response.getStatusLine(), null);
+				for(int i = 0; i < batchCount; i++)
+					results.add(new Result(Result.Status.ERROR, response.getStatusLine().toString(), Result.HTTP_STATUS, String.valueOf(response.getStatusLine().getStatusCode())));
+			}
+			
+		}catch(Exception e) {
+			log.error("Cannot send batch of messages because of " + e.getMessage(), e);
+			results.clear();
+		}
+		
+		// Results for messages the service did not answer
+		while(results.size() < batchCount)
+			results.add(new Result(Result.Status.ERROR, Result.NO_RESULT));
+		
+		for(Result result : results)
+			metrics.onResult(result);
+		
+		return results;
+	}
 
 	
+	/*
+	 * Execute POST request with the given entity, retrying failures allowed by the retry policy.
+	 * Every attempt is reported to the request listener, the response of the last attempt is returned
+	 */
+	private HttpResponse post(URI uri, String path, HttpEntity entity) throws Exception {
+		
+		DefaultHttpClient client = getHttpClient();
+		
+		RetryPolicy policy = retryPolicy;
+		policy.onRequest();
+		
+		// Every attempt writes the whole entity , so all attempts are counted
+		HttpEntity meteredEntity = new MeteredEntity(entity, metrics.bytesSent);
+		
+		for(int attempt = 1; ; attempt++) {
+			
+			HttpPost httpPost = new HttpPost(uri);
+			httpPost.setEntity(meteredEntity);
+			
+			long retryAfter = -1;
+			long start = System.nanoTime();
+			
+			try {
+				
+				HttpResponse response = client.execute(httpPost);
+				int statusCode = response.getStatusLine().getStatusCode();
+				onAttempt(path, attempt, System.nanoTime() - start, statusCode, null);
+				
+				// Requests are not retried while the service is stopping
+				if(state != State.RUNNING || !policy.shouldRetry(statusCode, attempt))
+					return response;
+				
+				log.warn("Request to " + path + " failed with " + response.getStatusLine() + ", retrying, attempt " + (attempt + 1) + " of " + policy.getMaxAttempts());
+				retryAfter = getRetryAfter(response);
+				EntityUtils.consume(response.getEntity());
+				
+			} catch(Exception e) {
+				
+				onAttempt(path, attempt, System.nanoTime() - start, -1, e);
+				
+				if(state != State.RUNNING || !policy.shouldRetry(e, attempt))
+					throw e;
+				
+				log.warn("Request to " + path + " failed because of " + e.getMessage() + ", retrying, attempt " + (attempt + 1) + " of " + policy.getMaxAttempts());
+			}
+			
+			try {
+				Thread.sleep(policy.getBackoff(attempt, retryAfter));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw e;
+			}
+		}
+	}
+	
+	/*
+	 * Report attempt of request to the listener , listener failures do not affect the request
+	 */
+	private void onAttempt(String path, int attempt, long durationNanos, int statusCode, Exception failure) {
+		
+		metrics.onAttempt(durationNanos, statusCode);
+		
+		RequestListener listener = requestListener;
+		if(listener == null)
+			return;
+		
+		try {
+			listener.onAttempt(path, attempt, durationNanos, statusCode, failure);
+		} catch(RuntimeException e) {
+			log.warn("Request listener failed because of " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Wait for response.
+	 * The calling thread is blocked until there is at least a single response or the timeout expires, 
+	 * responses are polled by the shared background poller
+	 */
 	@Override
 	public List<MessageResponse> waitForResponse(long messageId, long timeoutSec) throws ServiceException {
 		
-		List<MessageResponse> messageResponseList = null;
+		try {
+			return awaitResponseAsync(messageId, timeoutSec).get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof ServiceException)
+				throw (ServiceException) e.getCause();
+			throw new ServiceException(e);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		}
+	}
+	
+	/**
+	 * Wait for response asynchronously.
+	 * Responses are polled by the shared background poller, which tracks all messages waiting for response
+	 */
+	@Override
+	public CompletableFuture<List<MessageResponse>> awaitResponseAsync(long messageId, long timeoutSec) {
 		
 		try {
 			
 			// Start service
-			if(!connected)
-				start();
+			ensureStarted();
 			
-			// Try to get response in the loop
-			long time = System.currentTimeMillis();
-
-			while((messageResponseList == null || messageResponseList.size()==0) && 
-					(time+timeoutSec*1000 > System.currentTimeMillis()) ) {
-				
-				// Log message
-				log.debug("Getting message response for messageID: " + messageId);
+			// The service may be stopped concurrently
+			ResponsePoller poller = responsePoller;
+			if(poller == null)
+				throw new ServiceException("Service is stopped");
+			
+			return poller.await(messageId, timeoutSec);
+			
+		} catch(ServiceException e) {
+			CompletableFuture<List<MessageResponse>> future = new CompletableFuture<List<MessageResponse>>();
+			future.completeExceptionally(e);
+			return future;
+		}
+	}
+	
+	/**
+	 * Get responses for the given message ID from the service
+	 * @param messageId message ID
+	 * @return poll result with the list of responses (empty or null if there are no responses yet) 
+	 * and the delay before the next poll requested by the server
+	 * @throws Exception if responses could not be received
+	 */
+	ResponsePoller.Poll fetchResponses(long messageId) throws Exception {
+		
+		List<MessageResponse> messageResponseList = null;
+		
+		// Log message
+		if(log.isDebugEnabled())
+			log.debug("Getting message response for messageID: " + messageId);
 
-				// Prepare and execute POST request
-				HttpGet httpGet = new HttpGet(new URL(urlAsString + PATH_GET_RESPONSE + "?messageId="+messageId).toExternalForm());
-				httpGet.getParams().setLongParameter("messageId", messageId);
-				HttpResponse response = httpClient.execute(httpGet);
+		// Prepare and execute GET request
+		HttpGet httpGet = new HttpGet(URI.create(getResponseUriPrefix + messageId));
+		HttpResponse response = getHttpClient().execute(httpGet);
 
-				log.debug("Response: " + response.getStatusLine().toString());
+		if(log.isDebugEnabled())
+			log.debug("Response: " + response.getStatusLine());
 
-				if(response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-					String responseAsString = EntityUtils.toString(response.getEntity());
-					log.debug("Response content: " +   responseAsString);
-					messageResponseList = mapper.readValue(responseAsString, new TypeReference<List<MessageResponse>>(){});
+		if(response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+			messageResponseList = readJson(PATH_GET_RESPONSE, response, responseListReader, wireLogger.sample());
+		}
+		else {
+			EntityUtils.consume(response.getEntity());
+		}
+		
+		return new ResponsePoller.Poll(messageResponseList, getRetryAfter(response));
+	}
+	
+	/*
+	 * Parse JSON response directly from the entity stream and release the connection.
+	 * Response content is buffered only if it has to be traced by the wire logger
+	 */
+	private <T> T readJson(String path, HttpResponse response, ObjectReader reader, boolean traced) throws IOException {
+		
+		HttpEntity entity = response.getEntity();
+		if(entity == null)
+			return null;
+		
+		try {
+			
+			if(traced) {
+				byte[] content = EntityUtils.toByteArray(entity);
+				if(content == null)
+					content = new byte[0];
+				metrics.bytesReceived.add(content.length);
+				wireLogger.logResponse(path, response.getStatusLine(), content);
+				return content.length > 0 ? reader.<T>readValue(content) : null;
+			}
+			
+			InputStream content = entity.getContent();
+			return reader.readValue(content != null ? new MeteredInputStream(content, metrics.bytesReceived) : null);
+			
+		} finally {
+			EntityUtils.consume(entity);
+		}
+	}
+	
+	/*
+	 * Get delay before the next request in milliseconds requested by the server 
+	 * with 'Retry-After' or 'Cache-Control: max-age' headers, or -1 if not requested
+	 */
+	private long getRetryAfter(HttpResponse response) {
+		
+		Header retryAfter = response.getFirstHeader("Retry-After");
+		if(retryAfter != null && retryAfter.getValue() != null) {
+			String value = retryAfter.getValue().trim();
+			try {
+				return Long.parseLong(value) * 1000;
+			} catch(NumberFormatException e) {
+				try {
+					return Math.max(0, DateUtils.parseDate(value).getTime() - System.currentTimeMillis());
+				} catch(DateParseException de) {
+					log.debug("Ignoring invalid Retry-After header: " + value);
 				}
-				
-				// Sleep
-				if(messageResponseList == null || messageResponseList.size()==0)
+			}
+		}
+		
+		Header cacheControl = response.getFirstHeader("Cache-Control");
+		if(cacheControl != null) {
+			for(HeaderElement element : cacheControl.getElements()) {
+				if("max-age".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
 					try {
-						Thread.sleep(1000);
-					}catch(InterruptedException e) {}
+						return Long.parseLong(element.getValue()) * 1000;
+					} catch(NumberFormatException e) {
+						log.debug("Ignoring invalid Cache-Control header: " + cacheControl.getValue());
+					}
+				}
 			}
-			
-		}catch(Exception e) {
-			log.error("Cannot send message because of " + e.getMessage(), e);
-			throw new ServiceException(e);
 		}
 		
-		// Return response
-		return messageResponseList;
-	}	
+		return -1;
+	}
 	
+	/**
+	 * Start service.
+	 * Calling this method on the running service has no effect, the stopped service is started again. 
+	 * Only one thread starts the service , concurrent callers wait until it is started
+	 */
 	@Override
 	public void start() throws ServiceException {
+		
+		synchronized(lifecycleLock) {
+			
+			if(state == State.RUNNING)
+				return;
+			
+			State previous = state;
+			state = State.STARTING;
+			
+			try {
+				doStart();
+				state = State.RUNNING;
+			} finally {
+				if(state != State.RUNNING)
+					state = previous;
+			}
+		}
+	}
+	
+	/*
+	 * Create HTTP client, connection pool and background workers
+	 */
+	private void doStart() throws ServiceException {
 		log.info("Starting service...");
 		try {
 			
 			// Get Server URL
-			urlAsString = System.getProperty(SERVER_URL, urlAsString);
+			urlAsString = getProperty(SERVER_URL, urlAsString);
 			
 			log.debug("Connecting to the service at " + urlAsString);
 			if(urlAsString == null || urlAsString.length() < 1) {
@@ -293,14 +1147,14 @@ public class HttpService implements Service {
 			url = new URL(urlAsString);
 			
 			// Get client name
-			String clientName = (apiToken != null && !apiToken.equals("")) ? apiToken : System.getProperty(API_TOKEN);
+			String clientName = (apiToken != null && !apiToken.equals("")) ? apiToken : getProperty(API_TOKEN);
 			if(clientName == null || clientName.length() < 1) {
 				log.error("Client name must be specified, please refer documentation for details");
 				throw new ServiceException("Cannot initialize HttpTransport, client name is not specified");
 			}	
 
 			// Get client password
-			String clientPassword = (apiKey != null && !apiKey.equals("")) ? apiKey : System.getProperty(API_KEY);
+			String clientPassword = (apiKey != null && !apiKey.equals("")) ? apiKey : getProperty(API_KEY);
 			if(clientPassword == null || clientPassword.length() < 1) {
 				log.error("Client password must be specified, please refer documentation for details");
 				throw new ServiceException("Cannot initialize HttpTransport, client password is not specified");
@@ -312,9 +1166,9 @@ public class HttpService implements Service {
 			// If HTTPS
 			if(url.getProtocol().toLowerCase().startsWith("https")) {
 				
-				String certificateFile = System.getProperty(CERTIFICATE_STORAGE_FILE);
+				String certificateFile = getProperty(CERTIFICATE_STORAGE_FILE);
 				
-				String certificatePassword = System.getProperty(CERTIFICATE_STORAGE_PASSWORD);
+				String certificatePassword = getProperty(CERTIFICATE_STORAGE_PASSWORD);
 				
 				// Initialize SSL layer
 				SSLContext ctx=null;
@@ -366,9 +1220,21 @@ public class HttpService implements Service {
 				throw new ServiceException("Cannot initialize communication channel, wrong URL to the service is specified: " + url);
 			}
 			
-			PoolingClientConnectionManager cm = new PoolingClientConnectionManager(sr);
-			cm.setMaxTotal(10);
-			cm.setDefaultMaxPerRoute(10);
+			// Create tracer of request and response bodies
+			if(wireLogger == null)
+				wireLogger = createWireLogger();
+			
+			// Create metrics , they are kept when the service is restarted
+			if(metrics == null)
+				metrics = new HttpMetrics(metricsRegistry != null ? metricsRegistry : MetricsRegistry.getDefault(), 
+						metricsPrefix != null ? metricsPrefix : getProperty(MetricsRegistry.PREFIX, ""));
+			
+			// Initialize connection pool , time waiting for a connection is recorded
+			long connectionTtl = getLongProperty(POOL_CONNECTION_TTL, DEFAULT_POOL_CONNECTION_TTL);
+			PoolingClientConnectionManager cm = new MeteredConnectionManager(sr, connectionTtl, metrics);
+			cm.setMaxTotal(getIntProperty(POOL_MAX_TOTAL, DEFAULT_POOL_MAX_TOTAL));
+			cm.setDefaultMaxPerRoute(getIntProperty(POOL_MAX_PER_ROUTE, DEFAULT_POOL_MAX_PER_ROUTE));
+			connectionManager = cm;
 
 			// Add user credentials
 			CredentialsProvider credsProvider = new BasicCredentialsProvider();
@@ -381,9 +1247,36 @@ public class HttpService implements Service {
 			authpref.add(AuthPolicy.BASIC);
 			httpClient.getParams().setParameter(AuthPNames.TARGET_AUTH_PREF, authpref);
 			
+			// Max time to wait for a connection from the pool
+			long poolTimeout = getLongProperty(POOL_TIMEOUT, DEFAULT_POOL_TIMEOUT);
+			if(poolTimeout > 0)
+				httpClient.getParams().setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, poolTimeout);
+			
+			// Do not let a stalled connection or server block the calling thread forever
+			HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), getIntProperty(CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT));
+			HttpConnectionParams.setSoTimeout(httpClient.getParams(), getIntProperty(SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT));
+			
+			// Keep connections alive as long as the server allows, or default time if the server does not tell
+			final long keepAlive = getLongProperty(POOL_KEEP_ALIVE, DEFAULT_POOL_KEEP_ALIVE);
+			httpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+				@Override
+				public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+					long duration = super.getKeepAliveDuration(response, context);
+					return duration > 0 ? duration : keepAlive;
+				}
+			});
+			
+			// Close expired and idle connections in background
+			long reaperInterval = getLongProperty(POOL_REAPER_INTERVAL, DEFAULT_POOL_REAPER_INTERVAL);
+			if(reaperInterval > 0) {
+				if(connectionReaper != null)
+					connectionReaper.shutdown();
+				connectionReaper = new IdleConnectionReaper(cm, reaperInterval, getLongProperty(POOL_IDLE_TIMEOUT, DEFAULT_POOL_IDLE_TIMEOUT));
+			}
+			
 			// Get proxy configuration
-			String proxyHost = System.getProperty(PROXY_HOST);
-			String proxyPortString = System.getProperty(PROXY_PORT);
+			String proxyHost = getProperty(PROXY_HOST);
+			String proxyPortString = getProperty(PROXY_PORT);
 			
 			// If proxy is configured try to set it
 			if(proxyHost != null && proxyHost.length()>0 && proxyPortString!=null && proxyPortString.length()>0) {				
@@ -393,8 +1286,8 @@ public class HttpService implements Service {
 					httpClient.getParams().setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
 					
 					// Get Proxy credentials configuration
-					String proxyUser = System.getProperty(PROXY_USER);
-					String proxyPassword = System.getProperty(PROXY_PASSWORD);
+					String proxyUser = getProperty(PROXY_USER);
+					String proxyPassword = getProperty(PROXY_PASSWORD);
 					
 					// If proxy authentication is configured , setup user and password for Proxy
 					if(proxyUser!=null && proxyUser.length()>0 && proxyPassword!=null && proxyPassword.length()>0) {
@@ -408,10 +1301,32 @@ public class HttpService implements Service {
 				}
 			}
 			
-			// Create object mapper
+			// Create object mapper and typed readers and writers
 			mapper = new ObjectMapper();
+			messageWriter = mapper.writerWithType(Message.class);
+			resultReader = mapper.reader(Result.class);
+			resultListReader = mapper.reader(new TypeReference<List<Result>>(){});
+			responseListReader = mapper.reader(new TypeReference<List<MessageResponse>>(){});
+			
+			// Resolve resource URIs
+			postMessageUri = new URI(urlAsString + PATH_POST_MESSAGE);
+			postBatchUri = new URI(urlAsString + PATH_POST_BATCH);
+			getResponseUriPrefix = new URI(urlAsString + PATH_GET_RESPONSE).toString() + "?messageId=";
+			
+			// Create executor for asynchronous requests
+			if(asyncExecutor == null || asyncExecutor.isShutdown())
+				asyncExecutor = createAsyncExecutor();
 			
-			connected = true;
+			// Create policy of retries , its budget is kept when the service is restarted
+			if(retryPolicy == null)
+				retryPolicy = createRetryPolicy();
+			
+			// Create poller of message responses
+			if(responsePoller == null)
+				responsePoller = new ResponsePoller(this, pollingStrategy != null ? pollingStrategy : createPollingStrategy(),
+						getIntProperty(RESPONSE_POLL_THREADS, DEFAULT_RESPONSE_POLL_THREADS));
+			
+			registerGauges();
 			
 			log.info("Service started successfully");
 			
@@ -421,16 +1336,505 @@ public class HttpService implements Service {
 		}
 	}
 
+	/**
+	 * Stop service.
+	 * New requests are rejected, in-flight requests (including queued asynchronous requests) are given 
+	 * up to 'stop timeout' milliseconds to complete, then connections are closed. 
+	 * Calling this method on the service which is not running has no effect
+	 */
 	@Override
 	public void stop() throws ServiceException {
-		log.info("Stopping service ...");
-		if(httpClient != null)
-			httpClient.getConnectionManager().shutdown();
-		log.info("Service stopped");
+		
+		synchronized(lifecycleLock) {
+			
+			if(state != State.RUNNING)
+				return;
+			
+			log.info("Stopping service ...");
+			state = State.STOPPING;
+			
+			try {
+				
+				long timeout = stopTimeoutMs >= 0 ? stopTimeoutMs : getLongProperty(STOP_TIMEOUT, DEFAULT_STOP_TIMEOUT);
+				if(!awaitInFlight(timeout))
+					log.warn("Stopping service with " + inFlight.get() + " requests still in progress");
+				
+				shutdown();
+				
+			} finally {
+				state = State.STOPPED;
+			}
+			
+			log.info("Service stopped");
+		}
+	}
+	
+	/**
+	 * Get current lifecycle state of the service
+	 * @return service state
+	 */
+	public State getState() {
+		return state;
+	}
+	
+	/*
+	 * Accept new request, starting the service if needed. 
+	 * Requests accepted while the service is running are tracked until {@link #endRequest()} is called
+	 */
+	private void beginRequest() throws ServiceException {
+		
+		while(true) {
+			
+			// Counted before the state check , so stop() either sees this request or this request sees STOPPING
+			inFlight.incrementAndGet();
+			if(state == State.RUNNING)
+				return;
+			endRequest();
+			
+			ensureStarted();
+		}
+	}
+	
+	/*
+	 * Complete accepted request
+	 */
+	private void endRequest() {
+		if(inFlight.decrementAndGet() == 0 && state == State.STOPPING) {
+			synchronized(drainMonitor) {
+				drainMonitor.notifyAll();
+			}
+		}
+	}
+	
+	/*
+	 * Start service if it is not running, fail if it is being stopped
+	 */
+	private void ensureStarted() throws ServiceException {
+		
+		State current = state;
+		if(current == State.RUNNING)
+			return;
+		if(current == State.STOPPING)
+			throw new ServiceException("Service is stopping");
+		
+		start();
+	}
+	
+	/*
+	 * Wait until all in-flight requests complete or timeout expires
+	 */
+	private boolean awaitInFlight(long timeoutMs) {
+		
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		
+		synchronized(drainMonitor) {
+			while(inFlight.get() > 0) {
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+					return false;
+				try {
+					drainMonitor.wait(remaining);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Release HTTP client, connection pool and background workers
+	 */
+	private void shutdown() {
+		unregisterGauges();
+		if(asyncExecutor != null) {
+			// Reject asynchronous requests which were not sent within the stop timeout
+			for(Runnable request : asyncExecutor.shutdownNow())
+				if(request instanceof AsyncRequest)
+					((AsyncRequest) request).reject();
+		}
+		ResponsePoller poller = responsePoller;
+		responsePoller = null;
+		if(poller != null)
+			poller.shutdown();
+		if(connectionReaper != null) {
+			connectionReaper.shutdown();
+			connectionReaper = null;
+		}
+		
+		// Closed pool is not reported by the statistics and gauges
+		DefaultHttpClient client = httpClient;
+		connectionManager = null;
+		httpClient = null;
+		if(client != null)
+			client.getConnectionManager().shutdown();
+	}
+	
+	/*
+	 * Get HTTP client , requests still in progress when the service is stopped fail
+	 */
+	private DefaultHttpClient getHttpClient() throws ServiceException {
+		DefaultHttpClient client = httpClient;
+		if(client == null)
+			throw new ServiceException("Service is stopped");
+		return client;
+	}
+	
+	/*
+	 * Get property of this instance , or system property if the instance does not have it
+	 */
+	private String getProperty(String name) {
+		String value = properties != null ? properties.getProperty(name) : null;
+		return value != null ? value : System.getProperty(name);
+	}
+	
+	/*
+	 * Get property of this instance or system property , or default value if not specified
+	 */
+	private String getProperty(String name, String defaultValue) {
+		String value = getProperty(name);
+		return value != null ? value : defaultValue;
+	}
+	
+	/*
+	 * Get integer property , or default value if not specified or invalid
+	 */
+	private int getIntProperty(String name, int defaultValue) {
+		return (int) getLongProperty(name, defaultValue);
+	}
+	
+	/*
+	 * Get long property , or default value if not specified or invalid
+	 */
+	private long getLongProperty(String name, long defaultValue) {
+		String value = getProperty(name);
+		if(value == null || value.trim().length() < 1)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch(NumberFormatException e) {
+			log.warn("Invalid value of " + name + ": " + value + ", using default: " + defaultValue);
+			return defaultValue;
+		}
+	}
+	
+	/*
+	 * Get double property , or default value if not specified or invalid
+	 */
+	private double getDoubleProperty(String name, double defaultValue) {
+		String value = getProperty(name);
+		if(value == null || value.trim().length() < 1)
+			return defaultValue;
+		try {
+			return Double.parseDouble(value.trim());
+		} catch(NumberFormatException e) {
+			log.warn("Invalid value of " + name + ": " + value + ", using default: " + defaultValue);
+			return defaultValue;
+		}
+	}
+	
+	/*
+	 * Register gauges of the connection pool and the retry policy
+	 */
+	private void registerGauges() {
+		
+		registerGauge(HttpMetrics.POOL_LEASED, new Gauge() {
+			@Override
+			public long getValue() {
+				PoolStats stats = getPoolStats();
+				return stats != null ? stats.getLeased() : 0;
+			}
+		});
+		registerGauge(HttpMetrics.POOL_PENDING, new Gauge() {
+			@Override
+			public long getValue() {
+				PoolStats stats = getPoolStats();
+				return stats != null ? stats.getPending() : 0;
+			}
+		});
+		registerGauge(HttpMetrics.POOL_AVAILABLE, new Gauge() {
+			@Override
+			public long getValue() {
+				PoolStats stats = getPoolStats();
+				return stats != null ? stats.getAvailable() : 0;
+			}
+		});
+		registerGauge(HttpMetrics.RETRIES, new Gauge() {
+			@Override
+			public long getValue() {
+				return retryPolicy.getRetryCount();
+			}
+		});
+		registerGauge(HttpMetrics.RETRY_BUDGET_EXHAUSTED, new Gauge() {
+			@Override
+			public long getValue() {
+				return retryPolicy.getBudgetExhaustedCount();
+			}
+		});
+	}
+	
+	/*
+	 * Register gauge of this service and remember it
+	 */
+	private void registerGauge(String name, Gauge gauge) {
+		
+		String fullName = metrics.name(name);
+		metrics.registry.gauge(fullName, gauge);
+		registeredGauges.put(fullName, gauge);
+	}
+	
+	/*
+	 * Remove gauges registered by this service , so the registry does not keep the stopped service. 
+	 * Gauges of the same name registered by another service are kept
+	 */
+	private void unregisterGauges() {
+		
+		if(metrics == null)
+			return;
+		
+		for(Map.Entry<String, Gauge> entry : registeredGauges.entrySet())
+			metrics.registry.remove(entry.getKey(), entry.getValue());
+		registeredGauges.clear();
+	}
+	
+	/**
+	 * Connection pool recording time the requests wait for a connection
+	 */
+	private static class MeteredConnectionManager extends PoolingClientConnectionManager {
+		
+		private final HttpMetrics metrics;
+		
+		private MeteredConnectionManager(SchemeRegistry schemeRegistry, long connectionTtl, HttpMetrics metrics) {
+			super(schemeRegistry, connectionTtl, TimeUnit.MILLISECONDS);
+			this.metrics = metrics;
+		}
+		
+		@Override
+		public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+			
+			final ClientConnectionRequest request = super.requestConnection(route, state);
+			
+			return new ClientConnectionRequest() {
+				
+				@Override
+				public ManagedClientConnection getConnection(long timeout, TimeUnit unit) throws InterruptedException, ConnectionPoolTimeoutException {
+					long start = System.nanoTime();
+					try {
+						return request.getConnection(timeout, unit);
+					} finally {
+						metrics.poolWait.record(System.nanoTime() - start);
+					}
+				}
+				
+				@Override
+				public void abortRequest() {
+					request.abortRequest();
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Request entity counting bytes written to the connection
+	 */
+	private static class MeteredEntity extends HttpEntityWrapper {
+		
+		private final LongAdder bytes;
+		
+		private MeteredEntity(HttpEntity entity, LongAdder bytes) {
+			super(entity);
+			this.bytes = bytes;
+		}
+		
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			
+			super.writeTo(new FilterOutputStream(out) {
+				
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					bytes.increment();
+				}
+				
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					bytes.add(len);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Response stream counting bytes read from the connection
+	 */
+	private static class MeteredInputStream extends FilterInputStream {
+		
+		private final LongAdder bytes;
+		
+		private MeteredInputStream(InputStream in, LongAdder bytes) {
+			super(in);
+			this.bytes = bytes;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if(b >= 0)
+				bytes.increment();
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = in.read(b, off, len);
+			if(count > 0)
+				bytes.add(count);
+			return count;
+		}
+	}
+	
+	/**
+	 * Buffer for JSON array of serialized messages, 
+	 * its content is sent without copying
+	 */
+	private static class BatchBuffer extends ByteArrayOutputStream {
+		
+		private BatchBuffer() {
+			super(8192);
+		}
+		
+		private byte[] buffer() {
+			return buf;
+		}
+		
+		private HttpEntity toEntity() {
+			ByteArrayEntity entity = new ByteArrayEntity(buf, 0, count);
+			entity.setContentType("application/json; charset=UTF-8");
+			return entity;
+		}
+	}
+	
+	/**
+	 * Asynchronous request queued for execution
+	 */
+	private class AsyncRequest implements Runnable {
+		
+		private final Message message;
+		
+		private final CompletableFuture<Result> future;
+		
+		private AsyncRequest(Message message, CompletableFuture<Result> future) {
+			this.message = message;
+			this.future = future;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				future.complete(doSend(message));
+			} catch(ServiceException e) {
+				future.completeExceptionally(e);
+			} finally {
+				endRequest();
+			}
+		}
+		
+		/*
+		 * Complete request which will never be executed
+		 */
+		private void reject() {
+			try {
+				future.completeExceptionally(new ServiceException("Service is stopped"));
+			} finally {
+				endRequest();
+			}
+		}
+	}
+	
+	/*
+	 * Create polling strategy configured by system properties
+	 */
+	private PollingStrategy createPollingStrategy() {
+		
+		// Fixed interval , if configured
+		long pollInterval = getLongProperty(RESPONSE_POLL_INTERVAL, -1);
+		if(pollInterval >= 0)
+			return new FixedPollingStrategy(pollInterval);
+		
+		return new ExponentialBackoffPollingStrategy(
+				getLongProperty(RESPONSE_POLL_INITIAL_DELAY, ExponentialBackoffPollingStrategy.DEFAULT_INITIAL_DELAY),
+				getLongProperty(RESPONSE_POLL_MAX_DELAY, ExponentialBackoffPollingStrategy.DEFAULT_MAX_DELAY),
+				getDoubleProperty(RESPONSE_POLL_MULTIPLIER, ExponentialBackoffPollingStrategy.DEFAULT_MULTIPLIER),
+				getDoubleProperty(RESPONSE_POLL_JITTER, ExponentialBackoffPollingStrategy.DEFAULT_JITTER));
+	}
+	
+	/*
+	 * Create retry policy configured by system properties
+	 */
+	private RetryPolicy createRetryPolicy() {
+		
+		String statusCodes = getProperty(RETRY_STATUS_CODES, RetryPolicy.DEFAULT_STATUS_CODES);
+		
+		return new RetryPolicy(
+				getIntProperty(RETRY_MAX_ATTEMPTS, RetryPolicy.DEFAULT_MAX_ATTEMPTS),
+				getLongProperty(RETRY_INITIAL_BACKOFF, RetryPolicy.DEFAULT_INITIAL_BACKOFF),
+				getLongProperty(RETRY_MAX_BACKOFF, RetryPolicy.DEFAULT_MAX_BACKOFF),
+				getDoubleProperty(RETRY_MULTIPLIER, RetryPolicy.DEFAULT_MULTIPLIER),
+				getDoubleProperty(RETRY_JITTER, RetryPolicy.DEFAULT_JITTER),
+				getDoubleProperty(RETRY_BUDGET_RATIO, RetryPolicy.DEFAULT_BUDGET_RATIO),
+				getIntProperty(RETRY_BUDGET_MIN_PER_SECOND, RetryPolicy.DEFAULT_BUDGET_MIN_PER_SECOND),
+				RetryPolicy.parseStatusCodes(statusCodes));
+	}
+	
+	/*
+	 * Create wire logger configured by system properties
+	 */
+	private WireLogger createWireLogger() {
+		
+		return new WireLogger(
+				getIntProperty(WIRE_MAX_LENGTH, WireLogger.DEFAULT_MAX_LENGTH),
+				getDoubleProperty(WIRE_SAMPLE_RATE, WireLogger.DEFAULT_SAMPLE_RATE),
+				Boolean.parseBoolean(getProperty(WIRE_REDACT_RECIPIENTS)));
+	}
+	
+	/*
+	 * Create bounded executor for asynchronous requests
+	 */
+	private ThreadPoolExecutor createAsyncExecutor() {
+		
+		int threads = asyncThreads > 0 ? asyncThreads : getIntProperty(ASYNC_THREADS, DEFAULT_ASYNC_THREADS);
+		int queueSize = asyncQueueSize > 0 ? asyncQueueSize : getIntProperty(ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE);
+		
+		log.debug("Creating asynchronous executor with " + threads + " threads and queue size " + queueSize);
+		
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+					
+					private final AtomicInteger counter = new AtomicInteger();
+					
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "c2w-async-sender-" + counter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		
+		return executor;
 	}
 
-	public void finalize() throws Exception {
-		stop();
+	/**
+	 * Get statistics of the HTTP connection pool
+	 * @return pool statistics (leased, pending, available and max connections), or null if the service is not started or stopped
+	 */
+	public PoolStats getPoolStats() {
+		PoolingClientConnectionManager cm = connectionManager;
+		return cm != null ? cm.getTotalStats() : null;
 	}
 
 	/**
@@ -457,4 +1861,115 @@ public class HttpService implements Service {
 		this.apiKey = apiKey;
 	}
 	
+	/**
+	 * Set max number of threads used to send messages asynchronously.
+	 * This value will override the value provided in system properties (if any), 
+	 * must be set before the service is started
+	 * @param asyncThreads number of threads
+	 */
+	public void setAsyncThreads(int asyncThreads) {
+		this.asyncThreads = asyncThreads;
+	}
+	
+	/**
+	 * Set max number of asynchronous requests waiting for execution.
+	 * This value will override the value provided in system properties (if any), 
+	 * must be set before the service is started
+	 * @param asyncQueueSize queue size
+	 */
+	public void setAsyncQueueSize(int asyncQueueSize) {
+		this.asyncQueueSize = asyncQueueSize;
+	}
+	
+	/**
+	 * Set max number of messages sent in a single batch request.
+	 * This value will override the value provided in system properties (if any)
+	 * @param batchMaxMessages max number of messages
+	 */
+	public void setBatchMaxMessages(int batchMaxMessages) {
+		this.batchMaxMessages = batchMaxMessages;
+	}
+	
+	/**
+	 * Set max size of a single batch request in bytes.
+	 * This value will override the value provided in system properties (if any)
+	 * @param batchMaxBytes max size in bytes
+	 */
+	public void setBatchMaxBytes(int batchMaxBytes) {
+		this.batchMaxBytes = batchMaxBytes;
+	}
+	
+	/**
+	 * Set schedule of polls of message responses.
+	 * This value will override the values provided in system properties (if any), 
+	 * must be set before the service is started
+	 * @param pollingStrategy polling strategy
+	 */
+	public void setPollingStrategy(PollingStrategy pollingStrategy) {
+		this.pollingStrategy = pollingStrategy;
+	}
+	
+	/**
+	 * Get policy of retries of failed requests
+	 * @return retry policy , or null if the service was never started and the policy is not set
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+	
+	/**
+	 * Set policy of retries of failed requests.
+	 * This value will override the values provided in system properties (if any), 
+	 * must be set before the service is started
+	 * @param retryPolicy retry policy , {@link RetryPolicy#none()} disables retries
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+	
+	/**
+	 * Set listener notified about every attempt of request , e.g. to collect per-attempt timing
+	 * @param requestListener listener , or null to remove it
+	 */
+	public void setRequestListener(RequestListener requestListener) {
+		this.requestListener = requestListener;
+	}
+	
+	/**
+	 * Set tracer of request and response bodies.
+	 * This value will override the values provided in system properties (if any), 
+	 * must be set before the service is started
+	 * @param wireLogger wire logger
+	 */
+	public void setWireLogger(WireLogger wireLogger) {
+		this.wireLogger = wireLogger;
+	}
+	
+	/**
+	 * Set registry the service records its metrics in.
+	 * Must be set before the service is started , the default registry is used if not set
+	 * @param metricsRegistry metrics registry
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		this.metricsRegistry = metricsRegistry;
+	}
+	
+	/**
+	 * Set prefix of metric names , e.g. 'service.tenant-1.' , so services sharing a registry record separate metrics.
+	 * This value will override the value provided in properties (if any), must be set before the service is started
+	 * @param metricsPrefix prefix of metric names
+	 */
+	public void setMetricsPrefix(String metricsPrefix) {
+		this.metricsPrefix = metricsPrefix;
+	}
+	
+	/**
+	 * Set max time to wait for in-flight requests on stop in milliseconds.
+	 * This value will override the value provided in system properties (if any)
+	 * @param stopTimeoutMs timeout in milliseconds
+	 */
+	public void setStopTimeoutMs(long stopTimeoutMs) {
+		this.stopTimeoutMs = stopTimeoutMs;
+	}
+	
 }
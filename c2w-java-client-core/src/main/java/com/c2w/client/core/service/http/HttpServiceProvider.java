@@ -0,0 +1,27 @@
+package com.c2w.client.core.service.http;
+
+import java.util.Properties;
+
+import com.c2w.client.core.service.Service;
+import com.c2w.client.core.service.ServiceProvider;
+
+/**
+ * Provider of {@link HttpService} , registered as 'http'
+ */
+public class HttpServiceProvider implements ServiceProvider {
+
+	/**
+	 * Name of the provider
+	 */
+	public static final String NAME = "http";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Service createService(Properties properties) {
+		return new HttpService(properties);
+	}
+}
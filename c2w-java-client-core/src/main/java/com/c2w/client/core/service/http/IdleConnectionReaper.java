@@ -0,0 +1,67 @@
+package com.c2w.client.core.service.http;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.conn.ClientConnectionManager;
+
+/**
+ * Background task periodically closing expired connections and connections idle for too long,
+ * so pooled connections half-closed by the server or by a proxy are not leased to the requests.
+ */
+class IdleConnectionReaper {
+
+	/*
+	 * Logger
+	 */
+	private static Log log = LogFactory.getLog(IdleConnectionReaper.class);
+	
+	/*
+	 * Single reaper thread
+	 */
+	private final ScheduledExecutorService executor;
+	
+	
+	/**
+	 * Create and start new reaper
+	 * @param connectionManager connection manager to be cleaned
+	 * @param intervalMs interval between cleanups in milliseconds
+	 * @param idleTimeoutMs max time in milliseconds connection can stay idle in the pool
+	 */
+	IdleConnectionReaper(final ClientConnectionManager connectionManager, long intervalMs, final long idleTimeoutMs) {
+		
+		executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "c2w-idle-connection-reaper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					connectionManager.closeExpiredConnections();
+					if(idleTimeoutMs > 0)
+						connectionManager.closeIdleConnections(idleTimeoutMs, TimeUnit.MILLISECONDS);
+				} catch(Exception e) {
+					log.warn("Cannot close idle connections because of " + e.getMessage(), e);
+				}
+			}
+		}, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+	}
+	
+	
+	/**
+	 * Stop reaper
+	 */
+	void shutdown() {
+		executor.shutdownNow();
+	}
+}
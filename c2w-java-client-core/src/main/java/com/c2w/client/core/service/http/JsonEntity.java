@@ -0,0 +1,115 @@
+package com.c2w.client.core.service.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * HTTP entity with the given object serialized to JSON.
+ * <p>
+ * The object is serialized into a buffer reused by the current thread, so the entity is sent with known
+ * content length without allocating a new array for every request. The entity is repeatable , the same
+ * content is sent again if the request has to be re-sent (for example after authentication challenge).
+ * </p>
+ * <p>
+ * Small buffers are reused by the next entity created by the same thread, so the entity must be sent
+ * before the thread creates another one.
+ * </p>
+ */
+class JsonEntity extends AbstractHttpEntity {
+
+	/**
+	 * Max size of the buffer kept by a thread for the next entity , larger buffers are released with the entity
+	 */
+	static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+	/*
+	 * Serialization buffer of the current thread
+	 */
+	private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			return new Buffer();
+		}
+	};
+
+	/*
+	 * Serialized object , valid up to the content length
+	 */
+	private final byte[] content;
+
+	/*
+	 * Length of the serialized object
+	 */
+	private final int length;
+
+
+	/**
+	 * Create new entity
+	 * @param writer JSON writer for the object type
+	 * @param value object to be serialized
+	 * @throws IOException if the object cannot be serialized
+	 */
+	JsonEntity(ObjectWriter writer, Object value) throws IOException {
+
+		Buffer buffer = buffers.get();
+		buffer.reset();
+		writer.writeValue(buffer, value);
+
+		this.content = buffer.buffer();
+		this.length = buffer.size();
+
+		// Do not keep a large array for the life of the thread , the entity still refers to it
+		if(content.length > MAX_RETAINED_BUFFER)
+			buffers.remove();
+
+		setContentType("application/json; charset=UTF-8");
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return length;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		return new ByteArrayInputStream(content, 0, length);
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(content, 0, length);
+		out.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+
+	/**
+	 * Serialization buffer , its content is sent without copying
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+
+		private Buffer() {
+			super(1024);
+		}
+
+		private byte[] buffer() {
+			return buf;
+		}
+	}
+}
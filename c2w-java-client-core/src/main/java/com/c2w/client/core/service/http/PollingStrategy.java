@@ -0,0 +1,18 @@
+package com.c2w.client.core.service.http;
+
+/**
+ * Strategy defining the schedule of polls for message responses.
+ * Implementations must be thread safe, the same instance is used for all messages waiting for response.
+ * 
+ * @see ExponentialBackoffPollingStrategy
+ * @see FixedPollingStrategy
+ */
+public interface PollingStrategy {
+
+	/**
+	 * Get delay before the next poll of the message
+	 * @param attempt number of polls of the message made so far (starting from 1)
+	 * @return delay in milliseconds
+	 */
+	public long nextDelay(int attempt);
+}
@@ -0,0 +1,18 @@
+package com.c2w.client.core.service.http;
+
+/**
+ * Listener notified about every attempt of HTTP request made by {@link HttpService}, e.g. to collect metrics.
+ * Implementations must be thread safe and fast, they are called by the threads sending requests.
+ */
+public interface RequestListener {
+
+	/**
+	 * Called when the attempt of the request completes
+	 * @param path path of the requested resource, e.g. "/message/post"
+	 * @param attempt number of the attempt (starting from 1)
+	 * @param durationNanos time from sending the request until the response status is received or the attempt fails, in nanoseconds
+	 * @param statusCode HTTP status code , or -1 if the attempt failed without response
+	 * @param failure failure of the attempt , or null if the response was received
+	 */
+	public void onAttempt(String path, int attempt, long durationNanos, int statusCode, Exception failure);
+}
@@ -0,0 +1,343 @@
+package com.c2w.client.core.service.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.service.ServiceException;
+
+/**
+ * Background poller of message responses.
+ * <p>
+ * All message IDs somebody waits a response for are tracked in one registry, so waiting for responses
+ * does not block the callers. Several callers waiting for the same message share the same poll requests.
+ * </p>
+ * <p>
+ * A single timer thread schedules the polls and the timeouts of the callers, the poll requests run on a small
+ * bounded pool. Every caller is completed at its deadline even if a poll request of its message hangs.
+ * </p>
+ */
+class ResponsePoller {
+
+	/*
+	 * Logger
+	 */
+	private static Log log = LogFactory.getLog(ResponsePoller.class);
+
+	/*
+	 * Service used to fetch responses
+	 */
+	private final HttpService service;
+
+	/*
+	 * Schedule of polls of the same message
+	 */
+	private final PollingStrategy pollingStrategy;
+
+	/*
+	 * Registry of pending messages by message ID
+	 */
+	private final Map<Long, PendingResponse> registry = new ConcurrentHashMap<Long, PendingResponse>();
+
+	/*
+	 * Single timer thread scheduling polls and timeouts , never blocks on requests
+	 */
+	private final ScheduledThreadPoolExecutor timer;
+
+	/*
+	 * Pool running poll requests
+	 */
+	private final ThreadPoolExecutor fetcher;
+
+
+	/**
+	 * Create new poller
+	 * @param service service used to fetch responses
+	 * @param pollingStrategy schedule of polls of the same message
+	 * @param threads max number of concurrent poll requests
+	 */
+	ResponsePoller(HttpService service, PollingStrategy pollingStrategy, int threads) {
+
+		this.service = service;
+		this.pollingStrategy = pollingStrategy;
+
+		this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "c2w-response-timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.timer.setRemoveOnCancelPolicy(true);
+
+		// Every pending message has at most one poll in progress , so the queue is bounded by the registry size
+		threads = Math.max(1, threads);
+		this.fetcher = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "c2w-response-poller-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.fetcher.allowCoreThreadTimeOut(true);
+	}
+
+
+	/**
+	 * Register a waiter for the response to the given message
+	 * @param messageId message ID
+	 * @param timeoutSec timeout in seconds
+	 * @return future completed with the list of responses, or with empty list if timeout expires
+	 */
+	CompletableFuture<List<MessageResponse>> await(final long messageId, long timeoutSec) {
+
+		final Waiter waiter = new Waiter();
+
+		final PendingResponse pending = registry.compute(messageId, (id, existing) -> {
+			if(existing == null)
+				existing = new PendingResponse(id);
+			existing.waiters.add(waiter);
+			return existing;
+		});
+
+		// Complete the waiter at its deadline regardless of the polls in progress
+		final ScheduledFuture<?> timeout;
+		try {
+			timeout = timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					expire(pending, waiter);
+				}
+			}, Math.max(0, timeoutSec) * 1000, TimeUnit.MILLISECONDS);
+		} catch(RejectedExecutionException e) {
+			pending.waiters.remove(waiter);
+			removeIfNoWaiters(pending);
+			waiter.future.completeExceptionally(new ServiceException("Service is stopped"));
+			return waiter.future;
+		}
+
+		// Completed by a response, the timeout or the caller , the waiter is not tracked anymore
+		waiter.future.whenComplete((responses, exception) -> {
+			timeout.cancel(false);
+			pending.waiters.remove(waiter);
+			removeIfNoWaiters(pending);
+		});
+
+		// The first waiter schedules polling of the message
+		if(pending.scheduled.compareAndSet(false, true))
+			schedule(pending, 0);
+
+		return waiter.future;
+	}
+
+
+	/**
+	 * Stop polling, all waiters are completed exceptionally
+	 */
+	void shutdown() {
+
+		timer.shutdownNow();
+		fetcher.shutdownNow();
+
+		for(PendingResponse pending : registry.values())
+			for(Waiter waiter : pending.waiters)
+				waiter.future.completeExceptionally(new ServiceException("Service is stopped"));
+
+		registry.clear();
+	}
+
+
+	/**
+	 * Get number of messages waiting for response
+	 * @return number of pending messages
+	 */
+	int getPendingCount() {
+		return registry.size();
+	}
+
+
+	/*
+	 * Schedule next poll of the given message , the request itself runs on the fetcher pool
+	 */
+	private void schedule(final PendingResponse pending, long delayMs) {
+
+		try {
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						fetcher.execute(new Runnable() {
+							@Override
+							public void run() {
+								poll(pending);
+							}
+						});
+					} catch(RejectedExecutionException e) {
+						complete(pending, null, new ServiceException("Service is stopped"));
+					}
+				}
+			}, delayMs, TimeUnit.MILLISECONDS);
+		} catch(RejectedExecutionException e) {
+			complete(pending, null, new ServiceException("Service is stopped"));
+		}
+	}
+
+
+	/*
+	 * Poll responses of the given message and complete or reschedule it
+	 */
+	private void poll(PendingResponse pending) {
+
+		if(removeIfNoWaiters(pending))
+			return;
+
+		Poll poll;
+		try {
+			poll = service.fetchResponses(pending.messageId);
+			pending.attempts++;
+			pending.lastError = null;
+		} catch(Exception e) {
+			// Transient failure , poll again later. Waiters which expire meanwhile get the error
+			pending.attempts++;
+			pending.lastError = e;
+			log.warn("Cannot get response of message " + pending.messageId + " because of " + e.getMessage() + ", will retry");
+			schedule(pending, pollingStrategy.nextDelay(pending.attempts));
+			return;
+		}
+
+		if(poll.responses != null && poll.responses.size() > 0) {
+			complete(pending, poll.responses, null);
+			return;
+		}
+
+		// Server hint takes precedence if it asks to wait longer than the strategy
+		schedule(pending, Math.max(pollingStrategy.nextDelay(pending.attempts), poll.retryAfterMs));
+	}
+
+
+	/*
+	 * Complete the waiter whose timeout expired , with empty list or with the error of the last poll
+	 */
+	private void expire(PendingResponse pending, Waiter waiter) {
+
+		Exception lastError = pending.lastError;
+		if(lastError != null)
+			waiter.future.completeExceptionally(new ServiceException(lastError));
+		else
+			waiter.future.complete(Collections.<MessageResponse>emptyList());
+	}
+
+
+	/*
+	 * Remove message from registry if nobody waits for it.
+	 * New waiters registered concurrently keep the message in the registry
+	 * @return true if the message is not polled anymore
+	 */
+	private boolean removeIfNoWaiters(final PendingResponse pending) {
+
+		registry.computeIfPresent(pending.messageId, (id, existing) ->
+			existing == pending && existing.waiters.isEmpty() ? null : existing);
+
+		// Waiters are only added to a message in the registry
+		return pending.waiters.isEmpty() && registry.get(pending.messageId) != pending;
+	}
+
+
+	/*
+	 * Complete all waiters of the message and remove it from the registry
+	 */
+	private void complete(PendingResponse pending, List<MessageResponse> responses, Exception exception) {
+
+		registry.remove(pending.messageId, pending);
+
+		for(Waiter waiter : pending.waiters) {
+			if(exception != null)
+				waiter.future.completeExceptionally(exception);
+			else
+				waiter.future.complete(new ArrayList<MessageResponse>(responses));
+		}
+	}
+
+
+	/**
+	 * Message waiting for response
+	 */
+	private static class PendingResponse {
+
+		private final long messageId;
+
+		private final List<Waiter> waiters = new CopyOnWriteArrayList<Waiter>();
+
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		/*
+		 * Number of polls made, accessed by one poll at a time
+		 */
+		private int attempts;
+
+		/*
+		 * Error of the last poll , null if it succeeded
+		 */
+		private volatile Exception lastError;
+
+		private PendingResponse(long messageId) {
+			this.messageId = messageId;
+		}
+	}
+
+
+	/**
+	 * Result of a single poll
+	 */
+	static class Poll {
+
+		/*
+		 * Responses , null or empty if there are no responses yet
+		 */
+		private final List<MessageResponse> responses;
+
+		/*
+		 * Delay requested by the server before the next poll in milliseconds, or -1 if not requested
+		 */
+		private final long retryAfterMs;
+
+		/**
+		 * Create new poll result
+		 * @param responses responses , null or empty if there are no responses yet
+		 * @param retryAfterMs delay requested by the server before the next poll in milliseconds, or -1 if not requested
+		 */
+		Poll(List<MessageResponse> responses, long retryAfterMs) {
+			this.responses = responses;
+			this.retryAfterMs = retryAfterMs;
+		}
+	}
+
+
+	/**
+	 * Single caller waiting for response
+	 */
+	private static class Waiter {
+
+		private final CompletableFuture<List<MessageResponse>> future = new CompletableFuture<List<MessageResponse>>();
+	}
+}
@@ -0,0 +1,335 @@
+package com.c2w.client.core.service.http;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * Policy of retries of failed HTTP requests.
+ * <p>
+ * Only failures which are safe to retry without sending the same message twice are retried: the connection could not be
+ * established (connect timeout, refused connection, unknown host, no free connection in the pool) or the server rejected
+ * the request with one of the retryable HTTP status codes (by default 429 and 503). Read timeouts and other
+ * errors after the request was sent are not retried.
+ * </p>
+ * <p>
+ * Messages are posted without an idempotency key. 502 and 504 responses of a gateway may come after the server has
+ * already accepted the message , so they are not retried by default: adding them to the retryable status codes
+ * may deliver the same message twice.
+ * </p>
+ * <p>
+ * Delays between attempts grow exponentially and are randomized by the 'jitter' factor, 'Retry-After' response header
+ * is honored up to the max backoff. Retries are limited by the retry budget shared by all requests of the client:
+ * every request adds 'budget ratio' of a retry to the budget and the budget is refilled with 'min retries per second'
+ * regardless of traffic, every retry takes one from it. When the budget is exhausted failures are not retried, so
+ * retries cannot multiply the load on the server which is already failing.
+ * </p>
+ */
+public class RetryPolicy {
+
+	/**
+	 * Default max number of attempts of a single request, including the first one
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	/**
+	 * Default delay before the first retry in milliseconds
+	 */
+	public static final long DEFAULT_INITIAL_BACKOFF = 100;
+
+	/**
+	 * Default max delay between attempts in milliseconds
+	 */
+	public static final long DEFAULT_MAX_BACKOFF = 2000;
+
+	/**
+	 * Default multiplier applied to the delay after every retry
+	 */
+	public static final double DEFAULT_MULTIPLIER = 2.0;
+
+	/**
+	 * Default jitter factor
+	 */
+	public static final double DEFAULT_JITTER = 0.5;
+
+	/**
+	 * Default fraction of a retry added to the budget by every request
+	 */
+	public static final double DEFAULT_BUDGET_RATIO = 0.1;
+
+	/**
+	 * Default number of retries added to the budget every second regardless of traffic
+	 */
+	public static final int DEFAULT_BUDGET_MIN_PER_SECOND = 10;
+
+	/**
+	 * Default HTTP status codes which are retried , the server did not accept the message
+	 */
+	public static final String DEFAULT_STATUS_CODES = "429,503";
+
+	/*
+	 * Max number of retries the budget can accumulate
+	 */
+	private static final long MAX_BUDGET = 100;
+
+	/*
+	 * Budget is accounted in thousandths of a retry
+	 */
+	private static final long RETRY_COST = 1000;
+
+	/*
+	 * Max number of attempts of a single request
+	 */
+	private final int maxAttempts;
+
+	/*
+	 * Schedule of delays between attempts
+	 */
+	private final ExponentialBackoffPollingStrategy backoff;
+
+	/*
+	 * Max delay between attempts in milliseconds
+	 */
+	private final long maxBackoffMs;
+
+	/*
+	 * Budget added by every request , in thousandths of a retry
+	 */
+	private final long budgetDeposit;
+
+	/*
+	 * Retries added to the budget every second regardless of traffic
+	 */
+	private final int budgetMinPerSecond;
+
+	/*
+	 * Retryable HTTP status codes
+	 */
+	private final Set<Integer> statusCodes;
+
+	/*
+	 * Current budget in thousandths of a retry
+	 */
+	private final AtomicLong budget;
+
+	/*
+	 * Time of the last time-based refill of the budget in nanoseconds
+	 */
+	private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+	/*
+	 * Number of retries made
+	 */
+	private final LongAdder retries = new LongAdder();
+
+	/*
+	 * Number of failures not retried because the budget was exhausted
+	 */
+	private final LongAdder budgetExhausted = new LongAdder();
+
+	/**
+	 * Create new instance with default parameters
+	 */
+	public RetryPolicy() {
+		this(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF, DEFAULT_MULTIPLIER, DEFAULT_JITTER,
+				DEFAULT_BUDGET_RATIO, DEFAULT_BUDGET_MIN_PER_SECOND, parseStatusCodes(DEFAULT_STATUS_CODES));
+	}
+
+	/**
+	 * Create new instance
+	 * @param maxAttempts max number of attempts of a single request including the first one , 1 disables retries
+	 * @param initialBackoffMs delay before the first retry in milliseconds
+	 * @param maxBackoffMs max delay between attempts in milliseconds
+	 * @param multiplier multiplier applied to the delay after every retry
+	 * @param jitter jitter factor from 0 to 1 , every delay is randomly changed by up to this fraction
+	 * @param budgetRatio fraction of a retry added to the budget by every request
+	 * @param budgetMinPerSecond number of retries added to the budget every second regardless of traffic
+	 * @param statusCodes retryable HTTP status codes
+	 */
+	public RetryPolicy(int maxAttempts, long initialBackoffMs, long maxBackoffMs, double multiplier, double jitter,
+			double budgetRatio, int budgetMinPerSecond, Set<Integer> statusCodes) {
+
+		if(maxAttempts < 1 || budgetRatio < 0 || budgetMinPerSecond < 0)
+			throw new IllegalArgumentException("Invalid retry parameters, max attempts: " + maxAttempts + ", budget ratio: " + budgetRatio +
+					", budget min per second: " + budgetMinPerSecond);
+
+		this.maxAttempts = maxAttempts;
+		this.backoff = new ExponentialBackoffPollingStrategy(initialBackoffMs, maxBackoffMs, multiplier, jitter);
+		this.maxBackoffMs = maxBackoffMs;
+		this.budgetDeposit = Math.round(budgetRatio * RETRY_COST);
+		this.budgetMinPerSecond = budgetMinPerSecond;
+		this.statusCodes = new HashSet<Integer>(statusCodes);
+		this.budget = new AtomicLong(Math.min(MAX_BUDGET, budgetMinPerSecond) * RETRY_COST);
+	}
+
+	/**
+	 * Create policy which never retries
+	 * @return retry policy
+	 */
+	public static RetryPolicy none() {
+		return new RetryPolicy(1, 0, 0, 1, 0, 0, 0, new HashSet<Integer>());
+	}
+
+	/**
+	 * Parse comma separated list of HTTP status codes
+	 * @param value list of status codes , e.g. "429,502,503"
+	 * @return set of status codes
+	 * @throws IllegalArgumentException if the list contains invalid values
+	 */
+	public static Set<Integer> parseStatusCodes(String value) {
+
+		Set<Integer> codes = new HashSet<Integer>();
+		if(value == null)
+			return codes;
+
+		for(String code : value.split(",")) {
+			if(code.trim().length() < 1)
+				continue;
+			try {
+				codes.add(Integer.parseInt(code.trim()));
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid HTTP status code: " + code);
+			}
+		}
+
+		return codes;
+	}
+
+	/**
+	 * Account new request in the retry budget , must be called once per request before its first attempt
+	 */
+	public void onRequest() {
+		if(budgetDeposit > 0)
+			deposit(budgetDeposit);
+	}
+
+	/**
+	 * Check if the request should be retried after the response with the given HTTP status code
+	 * @param statusCode HTTP status code
+	 * @param attempt number of attempts made , starting from 1
+	 * @return true if the request should be retried , the retry is taken from the budget
+	 */
+	public boolean shouldRetry(int statusCode, int attempt) {
+		return statusCodes.contains(statusCode) && acquire(attempt);
+	}
+
+	/**
+	 * Check if the request should be retried after the given failure
+	 * @param failure failure of the attempt
+	 * @param attempt number of attempts made , starting from 1
+	 * @return true if the request should be retried , the retry is taken from the budget
+	 */
+	public boolean shouldRetry(Exception failure, int attempt) {
+		return isRetryable(failure) && acquire(attempt);
+	}
+
+	/**
+	 * Get delay before the next attempt
+	 * @param attempt number of attempts made , starting from 1
+	 * @param retryAfterMs delay requested by the server in milliseconds , or -1 if not requested
+	 * @return delay in milliseconds
+	 */
+	public long getBackoff(int attempt, long retryAfterMs) {
+		return Math.min(maxBackoffMs, Math.max(backoff.nextDelay(attempt), retryAfterMs));
+	}
+
+	/**
+	 * Get max number of attempts of a single request
+	 * @return max number of attempts including the first one
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Get number of retries made
+	 * @return number of retries
+	 */
+	public long getRetryCount() {
+		return retries.sum();
+	}
+
+	/**
+	 * Get number of failures which were not retried because the retry budget was exhausted
+	 * @return number of failures
+	 */
+	public long getBudgetExhaustedCount() {
+		return budgetExhausted.sum();
+	}
+
+	/**
+	 * Get number of retries currently available in the budget
+	 * @return number of retries
+	 */
+	public long getAvailableRetries() {
+		refill();
+		return budget.get() / RETRY_COST;
+	}
+
+	/*
+	 * Check if the failure happened before the request could reach the server
+	 */
+	private boolean isRetryable(Exception failure) {
+		return failure instanceof ConnectTimeoutException || failure instanceof ConnectException
+				|| failure instanceof NoRouteToHostException || failure instanceof UnknownHostException;
+	}
+
+	/*
+	 * Take a retry from the budget , if attempts are left
+	 */
+	private boolean acquire(int attempt) {
+
+		if(attempt >= maxAttempts)
+			return false;
+
+		refill();
+
+		while(true) {
+			long current = budget.get();
+			if(current < RETRY_COST) {
+				budgetExhausted.increment();
+				return false;
+			}
+			if(budget.compareAndSet(current, current - RETRY_COST)) {
+				retries.increment();
+				return true;
+			}
+		}
+	}
+
+	/*
+	 * Add retries earned by the time passed since the last refill
+	 */
+	private void refill() {
+
+		if(budgetMinPerSecond < 1)
+			return;
+
+		long now = System.nanoTime();
+		long last = lastRefill.get();
+		long earned = (now - last) * budgetMinPerSecond * RETRY_COST / TimeUnit.SECONDS.toNanos(1);
+
+		// The thread which moves the refill time adds what was earned , others see the budget already refilled
+		if(earned > 0 && lastRefill.compareAndSet(last, now))
+			deposit(earned);
+	}
+
+	/*
+	 * Add to the budget up to its max
+	 */
+	private void deposit(long amount) {
+		while(true) {
+			long current = budget.get();
+			long updated = Math.min(MAX_BUDGET * RETRY_COST, current + amount);
+			if(updated == current || budget.compareAndSet(current, updated))
+				return;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package com.c2w.client.core.service.http;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.StatusLine;
+
+import com.c2w.client.core.message.Message;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Tracer of request and response bodies exchanged with the Corp2World service.
+ * <p>
+ * Bodies are logged by the separate 'com.c2w.client.wire' logger at DEBUG level, so wire tracing is switched on
+ * independently of the normal logging of the client. Nothing is serialized or buffered unless the logger is enabled
+ * and the request is sampled: only 'sample rate' of requests are traced, every traced body is truncated to
+ * 'max length' characters and recipients of messages can be replaced with '***'.
+ * </p>
+ */
+public class WireLogger {
+
+	/**
+	 * Name of the logger of request and response bodies
+	 */
+	public static final String LOGGER_NAME = "com.c2w.client.wire";
+
+	/**
+	 * Default max number of characters of a logged body
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 2048;
+
+	/**
+	 * Default fraction of requests logged , all requests
+	 */
+	public static final double DEFAULT_SAMPLE_RATE = 1.0;
+
+	/*
+	 * Wire logger
+	 */
+	private static Log log = LogFactory.getLog(LOGGER_NAME);
+
+	/*
+	 * Charset of the bodies
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/*
+	 * Replacement of redacted recipients
+	 */
+	private static final String REDACTED = "***";
+
+	/*
+	 * Max number of characters of a logged body
+	 */
+	private final int maxLength;
+
+	/*
+	 * Fraction of requests logged
+	 */
+	private final double sampleRate;
+
+	/*
+	 * If recipients are replaced in logged messages
+	 */
+	private final boolean redactRecipients;
+
+
+	/**
+	 * Create new logger
+	 * @param maxLength max number of characters of a logged body
+	 * @param sampleRate fraction of requests logged from 0 to 1
+	 * @param redactRecipients if true , recipients of logged messages are replaced with '***'
+	 */
+	public WireLogger(int maxLength, double sampleRate, boolean redactRecipients) {
+		this.maxLength = Math.max(0, maxLength);
+		this.sampleRate = sampleRate;
+		this.redactRecipients = redactRecipients;
+	}
+
+	/**
+	 * Decide if the request is traced: the logger is enabled and the request is sampled
+	 * @return true if the request and its response should be logged
+	 */
+	public boolean sample() {
+		return log.isDebugEnabled() && sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+	}
+
+	/**
+	 * Log message sent to the service
+	 * @param path path of the requested resource
+	 * @param mapper JSON object mapper
+	 * @param message message
+	 */
+	public void logRequest(String path, ObjectMapper mapper, Message message) {
+		try {
+			log.debug("> POST " + path + " " + format(mapper, message));
+		} catch(IOException e) {
+			log.debug("> POST " + path + " (cannot format message: " + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Log serialized request body sent to the service
+	 * @param path path of the requested resource
+	 * @param mapper JSON object mapper
+	 * @param body buffer with the body in JSON
+	 * @param length length of the body in the buffer
+	 */
+	public void logRequest(String path, ObjectMapper mapper, byte[] body, int length) {
+		try {
+			log.debug("> POST " + path + " " + format(mapper, body, length));
+		} catch(IOException e) {
+			log.debug("> POST " + path + " (cannot format body: " + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Log response of the service
+	 * @param path path of the requested resource
+	 * @param status response status line
+	 * @param content response body , or null if not read
+	 */
+	public void logResponse(String path, StatusLine status, byte[] content) {
+		log.debug("< " + status + " " + path + (content != null ? " " + format(content) : ""));
+	}
+
+	/**
+	 * Get max number of characters of a logged body
+	 * @return max length
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Get fraction of requests logged
+	 * @return sample rate
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Check if recipients are replaced in logged messages
+	 * @return true if recipients are redacted
+	 */
+	public boolean isRedactRecipients() {
+		return redactRecipients;
+	}
+
+	/*
+	 * Format message as truncated JSON , the message is serialized into a bounded buffer
+	 */
+	String format(ObjectMapper mapper, Message message) throws IOException {
+
+		BoundedWriter out = new BoundedWriter(maxLength);
+		mapper.writeValue(out, redactRecipients ? redact(mapper.valueToTree(message)) : message);
+		return out.toString();
+	}
+
+	/*
+	 * Format serialized body as truncated JSON
+	 */
+	String format(ObjectMapper mapper, byte[] body, int length) throws IOException {
+
+		if(!redactRecipients)
+			return truncate(body, length);
+
+		BoundedWriter out = new BoundedWriter(maxLength);
+		mapper.writeValue(out, redact(mapper.readTree(new String(body, 0, length, UTF8))));
+		return out.toString();
+	}
+
+	/*
+	 * Format response body truncated
+	 */
+	String format(byte[] content) {
+		return truncate(content, content.length);
+	}
+
+	/*
+	 * Decode the beginning of the body , at most 'max length' characters
+	 */
+	private String truncate(byte[] body, int length) {
+
+		// Every character takes at least one byte
+		String text = new String(body, 0, Math.min(length, maxLength), UTF8);
+
+		if(text.length() > maxLength)
+			text = text.substring(0, maxLength);
+
+		return length > maxLength ? text + "... (" + length + " bytes)" : text;
+	}
+
+	/*
+	 * Replace recipients of the message or every message of the array
+	 */
+	private JsonNode redact(JsonNode node) {
+
+		if(node == null)
+			return null;
+
+		if(node.isArray()) {
+			for(JsonNode element : node)
+				redact(element);
+			return node;
+		}
+
+		JsonNode recipients = node.get("channelRecipients");
+		if(recipients instanceof ObjectNode) {
+
+			List<String> channels = new ArrayList<String>();
+			for(Iterator<String> names = recipients.fieldNames(); names.hasNext(); )
+				channels.add(names.next());
+
+			for(String channel : channels)
+				((ObjectNode) recipients).put(channel, REDACTED);
+		}
+
+		return node;
+	}
+
+
+	/**
+	 * Writer keeping at most the given number of characters and counting the rest
+	 */
+	private static class BoundedWriter extends Writer {
+
+		private final StringBuilder buffer;
+
+		private final int maxLength;
+
+		private long length;
+
+		private BoundedWriter(int maxLength) {
+			this.buffer = new StringBuilder(Math.min(maxLength, 256));
+			this.maxLength = maxLength;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			int room = (int) Math.max(0, Math.min(len, maxLength - length));
+			buffer.append(cbuf, off, room);
+			length += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			int room = (int) Math.max(0, Math.min(len, maxLength - length));
+			buffer.append(str, off, off + room);
+			length += len;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public String toString() {
+			return length > maxLength ? buffer + "... (" + length + " chars)" : buffer.toString();
+		}
+	}
+}
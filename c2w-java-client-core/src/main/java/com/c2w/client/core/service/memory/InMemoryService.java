@@ -0,0 +1,684 @@
+package com.c2w.client.core.service.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.service.Result;
+import com.c2w.client.core.service.Service;
+import com.c2w.client.core.service.ServiceException;
+
+/**
+ * Service keeping messages in memory instead of sending them, for tests and benchmarks of the code using the client
+ * without the network.
+ * <p>
+ * Every accepted message gets the next message ID, returned in 'messageId' result property like the Corp2World service
+ * does, and is recorded with its ID: the last 'max recorded' messages are kept and can be inspected with
+ * {@link #getSentMessages()}. Behaviour of the real service can be simulated: every request waits for the latency
+ * taken from the {@link LatencyDistribution}, 'error rate' of messages get ERROR results and 'failure rate' of requests
+ * fail with {@link ServiceException}. Dialog messages are answered with the configured option (the first option of the
+ * message by default) after 'response delay' milliseconds, or responses can be added with {@link #respond(long, MessageResponse)}.
+ * Responses are returned by the next waits while the message is recorded , later only to the callers already waiting.
+ * </p>
+ * This service can be configured with the following optional properties when it is created by {@link InMemoryServiceProvider}:
+ * <ul>
+ *  <li>com.c2w.service.memory.latency - latency distribution, e.g. 'fixed:5' or 'lognormal:2:50', see {@link LatencyDistribution#parse(String)} (default is none)</li>
+ *  <li>com.c2w.service.memory.errorRate - fraction of messages with ERROR result from 0 to 1 (default is 0)</li>
+ *  <li>com.c2w.service.memory.failureRate - fraction of requests failed with exception from 0 to 1 (default is 0)</li>
+ *  <li>com.c2w.service.memory.responseDelayMs - delay of responses to dialog messages in milliseconds, negative to disable responses (default is 0)</li>
+ *  <li>com.c2w.service.memory.maxRecorded - max number of recorded messages (default is 10000)</li>
+ * </ul>
+ */
+public class InMemoryService implements Service {
+
+	/**
+	 * Property to specify latency distribution
+	 */
+	public static final String LATENCY = "com.c2w.service.memory.latency";
+
+	/**
+	 * Property to specify fraction of messages with ERROR result
+	 */
+	public static final String ERROR_RATE = "com.c2w.service.memory.errorRate";
+
+	/**
+	 * Property to specify fraction of requests failed with exception
+	 */
+	public static final String FAILURE_RATE = "com.c2w.service.memory.failureRate";
+
+	/**
+	 * Property to specify delay of responses to dialog messages in milliseconds
+	 */
+	public static final String RESPONSE_DELAY = "com.c2w.service.memory.responseDelayMs";
+
+	/**
+	 * Property to specify max number of recorded messages
+	 */
+	public static final String MAX_RECORDED = "com.c2w.service.memory.maxRecorded";
+
+	/**
+	 * Default max number of recorded messages
+	 */
+	public static final int DEFAULT_MAX_RECORDED = 10000;
+
+	/**
+	 * Result property with the ID assigned to the message
+	 */
+	public static final String MESSAGE_ID = "messageId";
+
+	/*
+	 * Generator of message IDs
+	 */
+	private final AtomicLong nextId = new AtomicLong();
+
+	/*
+	 * Recently accepted messages , at most 'max recorded'
+	 */
+	private final Queue<SentMessage> recorded = new ConcurrentLinkedQueue<SentMessage>();
+
+	private final AtomicInteger recordedCount = new AtomicInteger();
+
+	/*
+	 * Responses to dialog messages by message ID , kept while the message is recorded or callers wait for them.
+	 * Entries are changed under the lock of the map , futures are completed outside of it
+	 */
+	private final ConcurrentHashMap<Long, Responses> responses = new ConcurrentHashMap<Long, Responses>();
+
+	/*
+	 * Statistics
+	 */
+	private final LongAdder sent = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	/*
+	 * Simulated behaviour
+	 */
+	private volatile LatencyDistribution latency = LatencyDistribution.none();
+
+	private volatile double errorRate;
+
+	private volatile double failureRate;
+
+	private volatile long responseDelayMs;
+
+	private volatile String responseOption;
+
+	private volatile int maxRecorded = DEFAULT_MAX_RECORDED;
+
+	/*
+	 * Thread completing delayed asynchronous requests and responses , created on demand
+	 */
+	private volatile ScheduledExecutorService scheduler;
+
+
+	/**
+	 * Create new service without latency and errors
+	 */
+	public InMemoryService() {
+	}
+
+	/**
+	 * Create new service configured by the given properties , properties which are not in the set are taken from system properties
+	 * @param properties service properties , or null to use system properties only
+	 * @throws IllegalArgumentException if any property is invalid
+	 */
+	public InMemoryService(Properties properties) {
+		latency = LatencyDistribution.parse(getProperty(properties, LATENCY, null));
+		errorRate = Double.parseDouble(getProperty(properties, ERROR_RATE, "0"));
+		failureRate = Double.parseDouble(getProperty(properties, FAILURE_RATE, "0"));
+		responseDelayMs = Long.parseLong(getProperty(properties, RESPONSE_DELAY, "0"));
+		maxRecorded = Integer.parseInt(getProperty(properties, MAX_RECORDED, String.valueOf(DEFAULT_MAX_RECORDED)));
+	}
+
+	/**
+	 * Start service , has no effect
+	 */
+	@Override
+	public void start() {
+	}
+
+	/**
+	 * Accept message after the simulated latency
+	 */
+	@Override
+	public Result send(Message message) throws ServiceException {
+
+		pause(latency.nextNanos());
+
+		fail();
+
+		return accept(message);
+	}
+
+	/**
+	 * Accept message asynchronously, the future is completed after the simulated latency
+	 */
+	@Override
+	public CompletableFuture<Result> sendAsync(final Message message) {
+
+		final CompletableFuture<Result> future = new CompletableFuture<Result>();
+
+		long delay = latency.nextNanos();
+		if(delay <= 0) {
+			complete(future, message);
+			return future;
+		}
+
+		try {
+			getScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					complete(future, message);
+				}
+			}, delay, TimeUnit.NANOSECONDS);
+		} catch(RejectedExecutionException e) {
+			future.completeExceptionally(new ServiceException("Service is stopped"));
+		}
+
+		return future;
+	}
+
+	/**
+	 * Accept messages as a single request after the simulated latency
+	 */
+	@Override
+	public List<Result> sendBatch(List<Message> messages) throws ServiceException {
+
+		pause(latency.nextNanos());
+
+		fail();
+
+		List<Result> results = new ArrayList<Result>(messages.size());
+		for(Message message : messages)
+			results.add(accept(message));
+
+		return results;
+	}
+
+	/**
+	 * Wait for responses to the dialog message
+	 */
+	@Override
+	public List<MessageResponse> waitForResponse(long messageId, long timeoutSec) throws ServiceException {
+
+		try {
+			return awaitResponseAsync(messageId, timeoutSec).get();
+		} catch(ExecutionException e) {
+			throw new ServiceException(e);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		}
+	}
+
+	/**
+	 * Wait for responses to the dialog message asynchronously , the future is completed with empty list if the timeout expires
+	 */
+	@Override
+	public CompletableFuture<List<MessageResponse>> awaitResponseAsync(long messageId, long timeoutSec) {
+
+		final CompletableFuture<List<MessageResponse>> future = new CompletableFuture<List<MessageResponse>>();
+
+		// Completed by the responses , the timeout or the failure to schedule the timeout
+		final CompletableFuture<List<MessageResponse>> waited = new CompletableFuture<List<MessageResponse>>();
+
+		final Responses entry;
+		synchronized(responses) {
+			entry = getResponses(messageId);
+			entry.waiters++;
+		}
+
+		entry.future.whenComplete((result, error) -> {
+			if(error != null)
+				waited.completeExceptionally(error);
+			else
+				waited.complete(result);
+		});
+
+		final ScheduledFuture<?> timeout;
+		if(waited.isDone()) {
+			timeout = null;
+		} else {
+			ScheduledFuture<?> scheduled = null;
+			try {
+				scheduled = getScheduler().schedule(new Runnable() {
+					@Override
+					public void run() {
+						waited.complete(Collections.<MessageResponse>emptyList());
+					}
+				}, timeoutSec, TimeUnit.SECONDS);
+			} catch(RejectedExecutionException e) {
+				waited.completeExceptionally(new ServiceException("Service is stopped"));
+			}
+			timeout = scheduled;
+		}
+
+		// The timeout is not kept in the scheduler queue after the responses are received and the entry is removed
+		// when the last caller stops waiting , unless the answered message is still recorded. The caller is completed last
+		waited.whenComplete((result, error) -> {
+
+			if(timeout != null)
+				timeout.cancel(false);
+
+			synchronized(responses) {
+				entry.waiters--;
+				trim(messageId);
+			}
+
+			if(error != null)
+				future.completeExceptionally(error);
+			else
+				future.complete(result);
+		});
+
+		return future;
+	}
+
+	/**
+	 * Add response to the message , waiting callers get it immediately
+	 * @param messageId message ID
+	 * @param response response
+	 */
+	public void respond(long messageId, MessageResponse response) {
+
+		while(true) {
+
+			Responses current;
+			synchronized(responses) {
+
+				current = getResponses(messageId);
+
+				// Responses added later are returned by the next waits
+				if(current.future.isDone()) {
+					List<MessageResponse> list = new ArrayList<MessageResponse>(current.future.join());
+					list.add(response);
+					responses.put(messageId, new Responses(Collections.unmodifiableList(list)));
+					trim(messageId);
+					return;
+				}
+
+				// The entry is not removed while it is being completed
+				current.waiters++;
+			}
+
+			boolean completed = current.future.complete(Collections.singletonList(response));
+
+			synchronized(responses) {
+				current.waiters--;
+				trim(messageId);
+			}
+
+			// Otherwise another response completed the entry first , this one is added to it
+			if(completed)
+				return;
+		}
+	}
+
+	/**
+	 * Stop the internal thread , pending asynchronous requests are not completed
+	 */
+	@Override
+	public void stop() {
+
+		synchronized(this) {
+			if(scheduler != null) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+		}
+	}
+
+	/**
+	 * Remove recorded messages and responses and reset statistics
+	 */
+	public void reset() {
+		recorded.clear();
+		recordedCount.set(0);
+		synchronized(responses) {
+			responses.clear();
+		}
+		sent.reset();
+		errors.reset();
+		failures.reset();
+	}
+
+	/**
+	 * Get recently accepted messages with their IDs , in the order they are accepted
+	 * @return recorded messages
+	 */
+	public List<SentMessage> getSentMessages() {
+		return new ArrayList<SentMessage>(recorded);
+	}
+
+	/**
+	 * Get number of accepted messages , including messages with ERROR result
+	 * @return number of messages
+	 */
+	public long getSentCount() {
+		return sent.sum();
+	}
+
+	/**
+	 * Get number of messages with simulated ERROR result
+	 * @return number of errors
+	 */
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	/**
+	 * Get number of requests failed with simulated exception
+	 * @return number of failures
+	 */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	/**
+	 * Get number of messages with responses kept for the next waits or awaited by callers
+	 * @return number of messages
+	 */
+	public int getResponseCount() {
+		return responses.size();
+	}
+
+	/**
+	 * Set distribution of simulated latency of every request
+	 * @param latency latency distribution
+	 */
+	public void setLatency(LatencyDistribution latency) {
+		this.latency = latency != null ? latency : LatencyDistribution.none();
+	}
+
+	/**
+	 * Set fraction of messages with ERROR result
+	 * @param errorRate rate from 0 to 1
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Set fraction of requests failed with {@link ServiceException}
+	 * @param failureRate rate from 0 to 1
+	 */
+	public void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+
+	/**
+	 * Set delay of responses to dialog messages
+	 * @param responseDelayMs delay in milliseconds , negative to disable responses
+	 */
+	public void setResponseDelayMs(long responseDelayMs) {
+		this.responseDelayMs = responseDelayMs;
+	}
+
+	/**
+	 * Set option dialog messages are answered with
+	 * @param responseOption option , or null to answer with the first option of the message
+	 */
+	public void setResponseOption(String responseOption) {
+		this.responseOption = responseOption;
+	}
+
+	/**
+	 * Set max number of recorded messages
+	 * @param maxRecorded max number of messages , 0 disables recording
+	 */
+	public void setMaxRecorded(int maxRecorded) {
+		this.maxRecorded = maxRecorded;
+	}
+
+	/*
+	 * Complete asynchronous request
+	 */
+	private void complete(CompletableFuture<Result> future, Message message) {
+		try {
+			fail();
+			future.complete(accept(message));
+		} catch(ServiceException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/*
+	 * Fail the request with the simulated failure rate
+	 */
+	private void fail() throws ServiceException {
+		if(failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+			failures.increment();
+			throw new ServiceException("Simulated failure");
+		}
+	}
+
+	/*
+	 * Accept message: assign ID , record it and schedule response if it is a dialog
+	 */
+	private Result accept(Message message) {
+
+		sent.increment();
+
+		if(errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			errors.increment();
+			return new Result(Result.Status.ERROR, "Simulated error");
+		}
+
+		long id = nextId.incrementAndGet();
+
+		if(maxRecorded > 0) {
+			recorded.add(new SentMessage(id, message, System.currentTimeMillis()));
+			recordedCount.incrementAndGet();
+			
+			// Remove the oldest messages , also after the limit is lowered
+			while(recordedCount.get() > maxRecorded) {
+				SentMessage oldest = recorded.poll();
+				if(oldest == null)
+					break;
+				recordedCount.decrementAndGet();
+				if(responses.containsKey(oldest.getId())) {
+					synchronized(responses) {
+						trim(oldest.getId());
+					}
+				}
+			}
+		}
+
+		if(message.getDialogOptions() != null && !message.getDialogOptions().isEmpty() && responseDelayMs >= 0)
+			scheduleResponse(id, message);
+
+		return new Result(Result.Status.OK, "Message accepted", MESSAGE_ID, String.valueOf(id));
+	}
+
+	/*
+	 * Answer the dialog message after the response delay
+	 */
+	private void scheduleResponse(final long id, Message message) {
+
+		String option = responseOption != null ? responseOption : message.getDialogOptions().get(0);
+		final MessageResponse response = new MessageResponse(id, 0, option, "in-memory", 0);
+
+		Runnable respond = new Runnable() {
+			@Override
+			public void run() {
+				response.setTimestamp(System.currentTimeMillis());
+				respond(id, response);
+			}
+		};
+
+		if(responseDelayMs == 0) {
+			respond.run();
+			return;
+		}
+
+		try {
+			getScheduler().schedule(respond, responseDelayMs, TimeUnit.MILLISECONDS);
+		} catch(RejectedExecutionException e) {
+			// Service is stopped , the message is never answered
+		}
+	}
+
+	/*
+	 * Get responses of the message , create the entry if not created yet. Called under the lock of the responses
+	 */
+	private Responses getResponses(long messageId) {
+
+		Responses entry = responses.get(messageId);
+		if(entry == null) {
+			entry = new Responses();
+			responses.put(messageId, entry);
+		}
+
+		return entry;
+	}
+
+	/*
+	 * Remove responses of the message unless callers wait for them or the answered message is recorded.
+	 * Called under the lock of the responses
+	 */
+	private void trim(long messageId) {
+
+		Responses entry = responses.get(messageId);
+		if(entry == null || entry.waiters > 0)
+			return;
+
+		SentMessage oldest = recorded.peek();
+		if(!entry.future.isDone() || maxRecorded <= 0 || oldest == null || messageId < oldest.getId())
+			responses.remove(messageId);
+	}
+
+	/*
+	 * Block the calling thread for the simulated latency
+	 */
+	private void pause(long nanos) throws ServiceException {
+
+		long deadline = System.nanoTime() + nanos;
+		for(long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+			LockSupport.parkNanos(remaining);
+			if(Thread.interrupted()) {
+				Thread.currentThread().interrupt();
+				throw new ServiceException("Interrupted");
+			}
+		}
+	}
+
+	/*
+	 * Get scheduler , create it if not created yet
+	 */
+	private ScheduledExecutorService getScheduler() {
+
+		ScheduledExecutorService current = scheduler;
+		if(current != null)
+			return current;
+
+		synchronized(this) {
+
+			if(scheduler == null) {
+				ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "c2w-in-memory-service");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				executor.setRemoveOnCancelPolicy(true);
+				scheduler = executor;
+			}
+
+			return scheduler;
+		}
+	}
+
+	/*
+	 * Get property from the given set , or system property if the set does not have it
+	 */
+	private static String getProperty(Properties properties, String name, String defaultValue) {
+		String value = properties != null ? properties.getProperty(name) : null;
+		return value != null ? value : System.getProperty(name, defaultValue);
+	}
+
+
+	/**
+	 * Responses to the dialog message with the number of callers waiting for them
+	 */
+	private static class Responses {
+
+		private final CompletableFuture<List<MessageResponse>> future;
+
+		private int waiters;
+
+		private Responses() {
+			this.future = new CompletableFuture<List<MessageResponse>>();
+		}
+
+		private Responses(List<MessageResponse> responses) {
+			this.future = CompletableFuture.completedFuture(responses);
+		}
+	}
+
+
+	/**
+	 * Message accepted by the service
+	 */
+	public static class SentMessage {
+
+		private final long id;
+
+		private final Message message;
+
+		private final long timestamp;
+
+		private SentMessage(long id, Message message, long timestamp) {
+			this.id = id;
+			this.message = message;
+			this.timestamp = timestamp;
+		}
+
+		/**
+		 * Get ID assigned to the message
+		 * @return message ID
+		 */
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Get the message
+		 * @return message
+		 */
+		public Message getMessage() {
+			return message;
+		}
+
+		/**
+		 * Get time the message was accepted
+		 * @return time in milliseconds
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+	}
+}
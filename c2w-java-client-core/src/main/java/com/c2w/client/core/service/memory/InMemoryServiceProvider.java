@@ -0,0 +1,32 @@
+package com.c2w.client.core.service.memory;
+
+import java.util.Properties;
+
+import com.c2w.client.core.service.Service;
+import com.c2w.client.core.service.ServiceException;
+import com.c2w.client.core.service.ServiceProvider;
+
+/**
+ * Provider of {@link InMemoryService} , registered as 'memory'
+ */
+public class InMemoryServiceProvider implements ServiceProvider {
+
+	/**
+	 * Name of the provider
+	 */
+	public static final String NAME = "memory";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Service createService(Properties properties) throws ServiceException {
+		try {
+			return new InMemoryService(properties);
+		} catch(IllegalArgumentException e) {
+			throw new ServiceException("Invalid in-memory service configuration: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.c2w.client.core.service.memory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of simulated request latency.
+ * <p>
+ * Distributions are created by the factory methods or parsed from text: 'none' , 'fixed:&lt;ms&gt;' ,
+ * 'uniform:&lt;min ms&gt;:&lt;max ms&gt;' , 'exponential:&lt;mean ms&gt;' or 'lognormal:&lt;median ms&gt;:&lt;p99 ms&gt;'.
+ * Log-normal distribution has a long tail similar to the latency of a real network service.
+ * </p>
+ */
+public abstract class LatencyDistribution {
+
+	/*
+	 * Quantile of the standard normal distribution at 99%
+	 */
+	private static final double Z99 = 2.3263;
+
+	/*
+	 * No latency
+	 */
+	private static final LatencyDistribution NONE = new LatencyDistribution("none") {
+		@Override
+		public long nextNanos() {
+			return 0;
+		}
+	};
+
+	/*
+	 * Description of the distribution
+	 */
+	private final String description;
+
+
+	/**
+	 * Create new distribution
+	 * @param description description of the distribution
+	 */
+	protected LatencyDistribution(String description) {
+		this.description = description;
+	}
+
+	/**
+	 * Get next random latency
+	 * @return latency in nanoseconds , 0 if none
+	 */
+	public abstract long nextNanos();
+
+	/**
+	 * Get distribution without latency
+	 * @return distribution
+	 */
+	public static LatencyDistribution none() {
+		return NONE;
+	}
+
+	/**
+	 * Get distribution with the same latency every time
+	 * @param ms latency in milliseconds
+	 * @return distribution
+	 */
+	public static LatencyDistribution fixed(double ms) {
+
+		final long nanos = toNanos(ms);
+
+		return new LatencyDistribution("fixed:" + ms) {
+			@Override
+			public long nextNanos() {
+				return nanos;
+			}
+		};
+	}
+
+	/**
+	 * Get distribution with latency uniformly distributed in the given range
+	 * @param minMs min latency in milliseconds
+	 * @param maxMs max latency in milliseconds
+	 * @return distribution
+	 */
+	public static LatencyDistribution uniform(double minMs, double maxMs) {
+
+		if(maxMs < minMs)
+			throw new IllegalArgumentException("Invalid latency range: " + minMs + " - " + maxMs);
+
+		final long min = toNanos(minMs);
+		final long range = toNanos(maxMs) - min;
+
+		return new LatencyDistribution("uniform:" + minMs + ":" + maxMs) {
+			@Override
+			public long nextNanos() {
+				return range > 0 ? min + ThreadLocalRandom.current().nextLong(range + 1) : min;
+			}
+		};
+	}
+
+	/**
+	 * Get distribution with exponentially distributed latency
+	 * @param meanMs mean latency in milliseconds
+	 * @return distribution
+	 */
+	public static LatencyDistribution exponential(double meanMs) {
+
+		final double mean = toNanos(meanMs);
+
+		return new LatencyDistribution("exponential:" + meanMs) {
+			@Override
+			public long nextNanos() {
+				return (long) (-mean * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+			}
+		};
+	}
+
+	/**
+	 * Get distribution with log-normally distributed latency
+	 * @param medianMs median latency in milliseconds
+	 * @param p99Ms 99th percentile of latency in milliseconds , not less than the median
+	 * @return distribution
+	 */
+	public static LatencyDistribution logNormal(double medianMs, double p99Ms) {
+
+		if(medianMs <= 0 || p99Ms < medianMs)
+			throw new IllegalArgumentException("Invalid latency percentiles, median: " + medianMs + ", p99: " + p99Ms);
+
+		final double mu = Math.log(toNanos(medianMs));
+		final double sigma = Math.log(p99Ms / medianMs) / Z99;
+
+		return new LatencyDistribution("lognormal:" + medianMs + ":" + p99Ms) {
+			@Override
+			public long nextNanos() {
+				return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+			}
+		};
+	}
+
+	/**
+	 * Parse distribution, e.g. 'fixed:5' or 'lognormal:2:50'
+	 * @param text distribution , null or empty for no latency
+	 * @return distribution
+	 * @throws IllegalArgumentException if the text is not a valid distribution
+	 */
+	public static LatencyDistribution parse(String text) {
+
+		if(text == null || text.trim().length() < 1)
+			return NONE;
+
+		String[] parts = text.trim().split(":");
+		String type = parts[0].trim().toLowerCase();
+
+		try {
+
+			if("none".equals(type) && parts.length == 1)
+				return NONE;
+			if("fixed".equals(type) && parts.length == 2)
+				return fixed(Double.parseDouble(parts[1]));
+			if("uniform".equals(type) && parts.length == 3)
+				return uniform(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			if("exponential".equals(type) && parts.length == 2)
+				return exponential(Double.parseDouble(parts[1]));
+			if("lognormal".equals(type) && parts.length == 3)
+				return logNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid latency distribution: " + text);
+		}
+
+		throw new IllegalArgumentException("Invalid latency distribution: " + text);
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+	/*
+	 * Convert milliseconds to nanoseconds
+	 */
+	private static long toNanos(double ms) {
+		return Math.max(0, (long) (ms * TimeUnit.MILLISECONDS.toNanos(1)));
+	}
+}
@@ -0,0 +1,625 @@
+package com.c2w.client.core.spool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Durable FIFO queue of binary records kept in memory-mapped segment files on local disk.
+ * <p>
+ * Records are appended to the last segment, when it is full a new segment is started. Every record is stored 
+ * as its length, CRC32 checksum and data , the length is written last, so a record is either complete or 
+ * ignored after a crash. Consumed records are acknowledged with {@link #remove()}, the position of the oldest 
+ * unconsumed record is kept in a checkpoint file and fully consumed segments are deleted. 
+ * </p>
+ * <p>
+ * When the spool is opened, all segments are scanned and records are validated, the spool continues 
+ * with the first unconsumed record. Records consumed but not yet acknowledged before a crash are 
+ * read again , so every record is consumed at least once.
+ * </p>
+ * <p>
+ * Total size of segment files is limited , records which do not fit are rejected. 
+ * Data written to mapped segments survives a crash of the process, it is also forced to the storage 
+ * device when a segment is full, when the spool is closed, or after every record if 'sync' is enabled.
+ * </p>
+ * <p>
+ * Only one spool instance may use a directory at a time , the directory is locked while the spool is open. 
+ * All methods are thread safe.
+ * </p>
+ */
+public class Spool implements Closeable {
+
+	/**
+	 * Segment file name suffix
+	 */
+	public static final String SEGMENT_SUFFIX = ".seg";
+	
+	/*
+	 * Segment file header: magic number and format version
+	 */
+	private static final int MAGIC = 0x43325753;
+	
+	private static final int VERSION = 1;
+	
+	private static final int SEGMENT_HEADER_SIZE = 8;
+	
+	/*
+	 * Record header: data length and checksum
+	 */
+	private static final int RECORD_HEADER_SIZE = 8;
+	
+	/*
+	 * Checkpoint: segment ID , position in the segment and checksum
+	 */
+	private static final String CHECKPOINT_FILE = "checkpoint";
+	
+	private static final int CHECKPOINT_SIZE = 20;
+	
+	private static final String LOCK_FILE = "spool.lock";
+	
+	/*
+	 * Logger
+	 */
+	private static Log log = LogFactory.getLog(Spool.class);
+	
+	/*
+	 * Spool directory
+	 */
+	private final File directory;
+	
+	/*
+	 * Size of new segment files in bytes
+	 */
+	private final int segmentSize;
+	
+	/*
+	 * Max total size of segment files in bytes
+	 */
+	private final long maxBytes;
+	
+	/*
+	 * Force every record to the storage device
+	 */
+	private final boolean sync;
+	
+	/*
+	 * Segments from the oldest to the one records are appended to
+	 */
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+	
+	/*
+	 * Mapped checkpoint file
+	 */
+	private final MappedByteBuffer checkpoint;
+	
+	/*
+	 * Lock of the spool directory
+	 */
+	private final FileLock lock;
+	
+	/*
+	 * Checksum calculator
+	 */
+	private final CRC32 crc = new CRC32();
+	
+	/*
+	 * Number of unconsumed records
+	 */
+	private long count;
+	
+	/*
+	 * Closed flag
+	 */
+	private boolean closed;
+	
+	
+	/**
+	 * Open spool in the given directory , recovering records left by the previous instance
+	 * @param directory spool directory , created if does not exist
+	 * @param segmentSize size of segment files in bytes
+	 * @param maxBytes max total size of segment files in bytes
+	 * @param sync if every record should be forced to the storage device
+	 * @throws IOException if the spool cannot be opened
+	 * @throws SpoolLockedException if the directory is used by another spool
+	 */
+	public Spool(File directory, int segmentSize, long maxBytes, boolean sync) throws IOException {
+		
+		if(segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE)
+			throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+		if(maxBytes < segmentSize)
+			throw new IllegalArgumentException("Max size must not be less than the segment size: " + maxBytes);
+		
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create spool directory " + directory);
+		
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxBytes = maxBytes;
+		this.sync = sync;
+		
+		RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+		FileLock fileLock = null;
+		try {
+			fileLock = lockFile.getChannel().tryLock();
+		} catch(OverlappingFileLockException e) {
+			// Locked by another spool of this process
+		} finally {
+			if(fileLock == null)
+				lockFile.close();
+		}
+		if(fileLock == null)
+			throw new SpoolLockedException(directory);
+		this.lock = fileLock;
+		
+		try {
+			this.checkpoint = map(new File(directory, CHECKPOINT_FILE), CHECKPOINT_SIZE);
+			recover();
+		} catch(IOException e) {
+			release();
+			throw e;
+		}
+	}
+	
+	
+	/**
+	 * Append record to the spool
+	 * @param data record data , not empty
+	 * @return true if the record is added , false if the spool is full or the record is larger than a segment
+	 * @throws IOException if a new segment cannot be created
+	 * @throws IllegalArgumentException if the data is empty
+	 */
+	public synchronized boolean append(byte[] data) throws IOException {
+		
+		// Zero length marks the end of records in a segment
+		if(data.length == 0)
+			throw new IllegalArgumentException("Spool record must not be empty");
+		
+		checkOpen();
+		
+		int recordSize = RECORD_HEADER_SIZE + data.length;
+		if(recordSize > segmentSize - SEGMENT_HEADER_SIZE)
+			return false;
+		
+		Segment tail = segments.peekLast();
+		if(tail == null || tail.buffer.capacity() - tail.writePosition < recordSize) {
+			
+			// Delete consumed segments before checking the size
+			head();
+			if(getBytes() + segmentSize > maxBytes)
+				return false;
+			
+			if(tail != null)
+				tail.buffer.force();
+			
+			tail = createSegment(tail == null ? 1 : tail.id + 1);
+			segments.add(tail);
+		}
+		
+		// Length is written last , so the record is found by recovery only if it is complete
+		MappedByteBuffer buffer = tail.buffer;
+		int position = tail.writePosition;
+		
+		buffer.position(position + RECORD_HEADER_SIZE);
+		buffer.put(data);
+		buffer.putInt(position + 4, checksum(data));
+		buffer.putInt(position, data.length);
+		
+		tail.writePosition += recordSize;
+		count++;
+		
+		if(sync)
+			buffer.force();
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Get the oldest unconsumed record without removing it
+	 * @return record data , or null if the spool is empty
+	 */
+	public synchronized byte[] peek() {
+		
+		checkOpen();
+		
+		Segment head = head();
+		if(head == null)
+			return null;
+		
+		ByteBuffer buffer = head.buffer;
+		byte[] data = new byte[buffer.getInt(head.readPosition)];
+		buffer.position(head.readPosition + RECORD_HEADER_SIZE);
+		buffer.get(data);
+		
+		return data;
+	}
+	
+	
+	/**
+	 * Remove the oldest unconsumed record , e.g. after it is delivered
+	 * @return true if the record is removed , false if the spool is empty
+	 */
+	public synchronized boolean remove() {
+		
+		checkOpen();
+		
+		Segment head = head();
+		if(head == null)
+			return false;
+		
+		head.readPosition += RECORD_HEADER_SIZE + head.buffer.getInt(head.readPosition);
+		count--;
+		
+		saveCheckpoint(head.id, head.readPosition);
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Get number of unconsumed records
+	 * @return number of records
+	 */
+	public synchronized long size() {
+		return count;
+	}
+	
+	
+	/**
+	 * Check if there are no unconsumed records
+	 * @return true if the spool is empty
+	 */
+	public synchronized boolean isEmpty() {
+		return count == 0;
+	}
+	
+	
+	/**
+	 * Get total size of segment files
+	 * @return size in bytes
+	 */
+	public synchronized long getBytes() {
+		
+		long bytes = 0;
+		for(Segment segment : segments)
+			bytes += segment.buffer.capacity();
+		return bytes;
+	}
+	
+	
+	/**
+	 * Get spool directory
+	 * @return directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+	
+	
+	/**
+	 * Force all data to the storage device and release the spool directory
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		
+		if(closed)
+			return;
+		closed = true;
+		
+		for(Segment segment : segments)
+			segment.buffer.force();
+		checkpoint.force();
+		segments.clear();
+		
+		release();
+	}
+	
+	
+	/*
+	 * Get the oldest segment with unconsumed records , deleting consumed segments
+	 */
+	private Segment head() {
+		
+		while(!segments.isEmpty()) {
+			
+			Segment head = segments.getFirst();
+			if(head.readPosition < head.writePosition)
+				return head;
+			
+			// The last segment is kept for appending
+			if(segments.size() == 1)
+				return null;
+			
+			segments.removeFirst();
+			delete(head.file);
+		}
+		
+		return null;
+	}
+	
+	
+	/*
+	 * Load segments and the checkpoint , validate records
+	 */
+	private void recover() throws IOException {
+		
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		
+		List<Segment> found = new ArrayList<Segment>();
+		for(File file : files) {
+			try {
+				found.add(new Segment(parseId(file), file, null));
+			} catch(NumberFormatException e) {
+				log.warn("Ignoring unknown file in the spool directory: " + file);
+			}
+		}
+		Segment[] sorted = found.toArray(new Segment[found.size()]);
+		Arrays.sort(sorted, new Comparator<Segment>() {
+			@Override
+			public int compare(Segment s1, Segment s2) {
+				return Long.compare(s1.id, s2.id);
+			}
+		});
+		
+		// Checkpoint is valid only if its checksum matches
+		long checkpointId = checkpoint.getLong(0);
+		int checkpointPosition = (int) checkpoint.getLong(8);
+		if(checkpoint.getInt(16) != checkpointChecksum(checkpointId, checkpointPosition)) {
+			checkpointId = 0;
+			checkpointPosition = 0;
+		}
+		
+		for(Segment segment : sorted) {
+			
+			// Segments before the checkpoint are consumed
+			if(segment.id < checkpointId) {
+				delete(segment.file);
+				continue;
+			}
+			
+			MappedByteBuffer buffer;
+			try {
+				buffer = map(segment.file, 0);
+			} catch(IOException e) {
+				log.error("Cannot read spool segment " + segment.file + ", its records are lost: " + e.getMessage(), e);
+				continue;
+			}
+			
+			if(buffer.capacity() < SEGMENT_HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				log.error("Invalid spool segment " + segment.file + ", its records are lost");
+				delete(segment.file);
+				continue;
+			}
+			
+			Segment loaded = new Segment(segment.id, segment.file, buffer);
+			int start = segment.id == checkpointId ? checkpointPosition : SEGMENT_HEADER_SIZE;
+			scan(loaded, start);
+			segments.add(loaded);
+		}
+		
+		// Records are appended to a new segment , so no data is ever written after a damaged record
+		if(!segments.isEmpty() && segments.getLast().damaged)
+			segments.add(createSegment(segments.getLast().id + 1));
+		
+		if(count > 0)
+			log.info("Recovered " + count + " spooled records from " + directory);
+	}
+	
+	
+	/*
+	 * Find valid records of the segment and set its read and write positions
+	 */
+	private void scan(Segment segment, int start) {
+		
+		ByteBuffer buffer = segment.buffer;
+		int position = SEGMENT_HEADER_SIZE;
+		segment.readPosition = -1;
+		
+		while(position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+			
+			if(position >= start && segment.readPosition < 0)
+				segment.readPosition = position;
+			
+			int length = buffer.getInt(position);
+			if(length == 0)
+				break;
+			
+			if(length < 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+				segment.damaged = true;
+				break;
+			}
+			
+			byte[] data = new byte[length];
+			buffer.position(position + RECORD_HEADER_SIZE);
+			buffer.get(data);
+			if(buffer.getInt(position + 4) != checksum(data)) {
+				segment.damaged = true;
+				break;
+			}
+			
+			if(position >= start)
+				count++;
+			position += RECORD_HEADER_SIZE + length;
+		}
+		
+		segment.writePosition = position;
+		if(segment.readPosition < 0)
+			segment.readPosition = position;
+		
+		if(segment.damaged)
+			log.warn("Spool segment " + segment.file + " is damaged at position " + position + ", following records are lost");
+	}
+	
+	
+	/*
+	 * Create new segment file
+	 */
+	private Segment createSegment(long id) throws IOException {
+		
+		File file = new File(directory, String.format("%020d", id) + SEGMENT_SUFFIX);
+		MappedByteBuffer buffer = map(file, segmentSize);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		
+		Segment segment = new Segment(id, file, buffer);
+		segment.readPosition = SEGMENT_HEADER_SIZE;
+		segment.writePosition = SEGMENT_HEADER_SIZE;
+		return segment;
+	}
+	
+	
+	/*
+	 * Map the file , setting its size if it is shorter
+	 */
+	private static MappedByteBuffer map(File file, int size) throws IOException {
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if(raf.length() < size)
+				raf.setLength(size);
+			// The mapping stays valid after the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+	}
+	
+	
+	/*
+	 * Save position of the oldest unconsumed record
+	 */
+	private void saveCheckpoint(long segmentId, int position) {
+		
+		checkpoint.putLong(0, segmentId);
+		checkpoint.putLong(8, position);
+		checkpoint.putInt(16, checkpointChecksum(segmentId, position));
+		
+		if(sync)
+			checkpoint.force();
+	}
+	
+	
+	/*
+	 * Calculate checksum of the checkpoint
+	 */
+	private int checkpointChecksum(long segmentId, long position) {
+		
+		crc.reset();
+		for(int i = 0; i < 8; i++)
+			crc.update((int) (segmentId >>> (i * 8)));
+		for(int i = 0; i < 8; i++)
+			crc.update((int) (position >>> (i * 8)));
+		return (int) crc.getValue();
+	}
+	
+	
+	/*
+	 * Calculate checksum of the record data
+	 */
+	private int checksum(byte[] data) {
+		
+		crc.reset();
+		crc.update(data, 0, data.length);
+		return (int) crc.getValue();
+	}
+	
+	
+	/*
+	 * Get segment ID from the file name
+	 */
+	private static long parseId(File file) {
+		
+		String name = file.getName();
+		return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+	}
+	
+	
+	/*
+	 * Delete segment file. Mapped files cannot be deleted on some platforms until the mapping is garbage collected
+	 */
+	private static void delete(File file) {
+		
+		if(!file.delete()) {
+			log.debug("Cannot delete spool segment " + file + " , it will be deleted on exit");
+			file.deleteOnExit();
+		}
+	}
+	
+	
+	/*
+	 * Release the directory lock
+	 */
+	private void release() throws IOException {
+		
+		try {
+			lock.release();
+		} finally {
+			lock.channel().close();
+		}
+	}
+	
+	
+	/*
+	 * Check that the spool is not closed
+	 */
+	private void checkOpen() {
+		
+		if(closed)
+			throw new IllegalStateException("Spool is closed");
+	}
+	
+	
+	/**
+	 * Segment file with its mapped content
+	 */
+	private static class Segment {
+		
+		private final long id;
+		
+		private final File file;
+		
+		private final MappedByteBuffer buffer;
+		
+		/*
+		 * Position of the oldest unconsumed record
+		 */
+		private int readPosition;
+		
+		/*
+		 * Position the next record is written at
+		 */
+		private int writePosition;
+		
+		/*
+		 * Flag set if recovery found a damaged record
+		 */
+		private boolean damaged;
+		
+		private Segment(long id, File file, MappedByteBuffer buffer) {
+			this.id = id;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.c2w.client.core.spool;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Exception thrown when the spool directory is locked by another open {@link Spool}
+ */
+public class SpoolLockedException extends IOException {
+
+	/**
+	 * default serial version
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Create new exception
+	 * @param directory locked spool directory
+	 */
+	public SpoolLockedException(File directory) {
+		super("Spool directory is used by another process: " + directory);
+	}
+}
@@ -4,13 +4,33 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.c2w.client.core.limit.TokenBucketTest;
+import com.c2w.client.core.message.MessageBatchTest;
 import com.c2w.client.core.message.MessageDeliveryTest;
 import com.c2w.client.core.message.MessageResponseTest;
 import com.c2w.client.core.message.MessageTest;
 import com.c2w.client.core.message.PropertiesModelTest;
+import com.c2w.client.core.metrics.HistogramTest;
+import com.c2w.client.core.metrics.MetricsRegistryTest;
+import com.c2w.client.core.queue.EventOrderingTest;
+import com.c2w.client.core.queue.OverflowHandlerTest;
+import com.c2w.client.core.queue.RingBufferEventQueueTest;
+import com.c2w.client.core.service.CircuitBreakerServiceTest;
+import com.c2w.client.core.service.CoalescingServiceTest;
+import com.c2w.client.core.service.DeduplicatingServiceTest;
+import com.c2w.client.core.service.RateLimitingServiceTest;
 import com.c2w.client.core.service.ResultTest;
 import com.c2w.client.core.service.ServiceFactoryTest;
+import com.c2w.client.core.service.ServiceTest;
+import com.c2w.client.core.service.SpoolingServiceTest;
+import com.c2w.client.core.service.http.ExponentialBackoffPollingStrategyTest;
 import com.c2w.client.core.service.http.HttpServiceTest;
+import com.c2w.client.core.service.http.JsonEntityTest;
+import com.c2w.client.core.service.http.ResponsePollerTest;
+import com.c2w.client.core.service.http.RetryPolicyTest;
+import com.c2w.client.core.service.http.WireLoggerTest;
+import com.c2w.client.core.service.memory.InMemoryServiceTest;
+import com.c2w.client.core.spool.SpoolTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
@@ -18,9 +38,29 @@ import com.c2w.client.core.service.http.HttpServiceTest;
 	MessageResponseTest.class,
 	MessageDeliveryTest.class,
 	PropertiesModelTest.class,
+	MessageBatchTest.class,
 	ResultTest.class,
 	ServiceFactoryTest.class,
-	HttpServiceTest.class
+	ServiceTest.class,
+	CoalescingServiceTest.class,
+	HttpServiceTest.class,
+	ExponentialBackoffPollingStrategyTest.class,
+	ResponsePollerTest.class,
+	JsonEntityTest.class,
+	RetryPolicyTest.class,
+	RingBufferEventQueueTest.class,
+	OverflowHandlerTest.class,
+	EventOrderingTest.class,
+	SpoolTest.class,
+	SpoolingServiceTest.class,
+	CircuitBreakerServiceTest.class,
+	TokenBucketTest.class,
+	RateLimitingServiceTest.class,
+	DeduplicatingServiceTest.class,
+	HistogramTest.class,
+	MetricsRegistryTest.class,
+	WireLoggerTest.class,
+	InMemoryServiceTest.class
 })
 public class AllTests {
 
@@ -0,0 +1,86 @@
+package com.c2w.client.core.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link com.c2w.client.core.limit.TokenBucket} class
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void testBurst() {
+		
+		TokenBucket bucket = new TokenBucket(1, 3);
+		
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+		assertTrue(bucket.getWaitNanos() > TimeUnit.MILLISECONDS.toNanos(900));
+		
+		// Unused token is returned
+		bucket.release();
+		assertTrue(bucket.tryAcquire());
+	}
+	
+	@Test
+	public void testRefill() throws Exception {
+		
+		TokenBucket bucket = new TokenBucket(100, 1);
+		
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+		assertFalse(bucket.isFull());
+		
+		Thread.sleep(20);
+		assertTrue(bucket.isFull());
+		assertTrue(bucket.tryAcquire());
+	}
+	
+	@Test
+	public void testReserve() {
+		
+		TokenBucket bucket = new TokenBucket(10, 1);
+		
+		assertEquals(0, bucket.reserve(0));
+		
+		// The next token is due in 100 ms
+		assertEquals(-1, bucket.reserve(TimeUnit.MILLISECONDS.toNanos(50)));
+		long wait = bucket.reserve(TimeUnit.MILLISECONDS.toNanos(150));
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(50) && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+		
+		// Reserved tokens are queued
+		wait = bucket.reserve(TimeUnit.SECONDS.toNanos(1));
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(150) && wait <= TimeUnit.MILLISECONDS.toNanos(200));
+	}
+	
+	@Test
+	public void testConcurrentAcquire() throws Exception {
+		
+		final TokenBucket bucket = new TokenBucket(0.001, 1000);
+		final AtomicInteger acquired = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(4);
+		
+		for(int i = 0; i < 4; i++) {
+			new Thread() {
+				public void run() {
+					for(int j = 0; j < 1000; j++)
+						if(bucket.tryAcquire())
+							acquired.incrementAndGet();
+					done.countDown();
+				}
+			}.start();
+		}
+		
+		done.await();
+		assertEquals(1000, acquired.get());
+	}
+}
@@ -0,0 +1,79 @@
+package com.c2w.client.core.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.message.MessageBatch}
+ */
+public class MessageBatchTest {
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	
+	@Test
+	public void testSingleEvent() {
+		
+		MessageBatch batch = new MessageBatch(10, 1000);
+		assertTrue(batch.isEmpty());
+		assertTrue(batch.add("ERROR message", "Text\n"));
+		
+		Message message = batch.toMessage();
+		assertEquals("ERROR message", message.getTopic());
+		assertEquals("Text\n", message.getText());
+		assertNull(message.getProperty(MessageBatch.EVENTS_PROPERTY));
+	}
+	
+	@Test
+	public void testConcatenation() {
+		
+		MessageBatch batch = new MessageBatch(10, 1000);
+		assertTrue(batch.add("ERROR message", "First\n"));
+		assertTrue(batch.add("WARN message", "Second"));
+		assertTrue(batch.add("ERROR message", "Third"));
+		
+		Message message = batch.toMessage();
+		assertEquals("ERROR message (3 events)", message.getTopic());
+		assertEquals("First\nSecond" + LINE_SEPARATOR + "Third", message.getText());
+		assertEquals("3", message.getProperty(MessageBatch.EVENTS_PROPERTY));
+		
+		batch.clear();
+		assertTrue(batch.isEmpty());
+		assertEquals(0, batch.getBytes());
+	}
+	
+	@Test
+	public void testMaxEvents() {
+		
+		MessageBatch batch = new MessageBatch(2, 1000);
+		assertTrue(batch.add("Topic", "1\n"));
+		assertFalse(batch.isFull());
+		assertTrue(batch.add("Topic", "2\n"));
+		assertTrue(batch.isFull());
+		assertFalse(batch.add("Topic", "3\n"));
+		assertEquals(2, batch.size());
+	}
+	
+	@Test
+	public void testMaxBytes() {
+		
+		MessageBatch batch = new MessageBatch(10, 10);
+		
+		// Single event larger than the limit is accepted by the empty batch
+		assertTrue(batch.add("Topic", "0123456789ABCDEF\n"));
+		assertFalse(batch.add("Topic", "1\n"));
+		
+		batch.clear();
+		
+		// Non-ASCII characters are counted in UTF-8 bytes
+		assertTrue(batch.add("Topic", "\u00e9\u00e9\u00e9\n"));
+		assertEquals(7, batch.getBytes());
+		assertFalse(batch.add("Topic", "\u20ac\n"));
+		assertTrue(batch.add("Topic", "ab\n"));
+		assertEquals(10, batch.getBytes());
+		assertTrue(batch.isFull());
+	}
+}
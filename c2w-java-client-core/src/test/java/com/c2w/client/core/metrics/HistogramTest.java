@@ -0,0 +1,75 @@
+package com.c2w.client.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link com.c2w.client.core.metrics.Histogram} class
+ */
+public class HistogramTest {
+
+	@Test
+	public void testPercentiles() {
+		
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getPercentile(99));
+		
+		for(int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000L);
+		
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000, histogram.getMax());
+		assertEquals(500500, histogram.getMean(), 0.001);
+		
+		// Values are reported with relative error below 3%
+		assertEquals(500000, histogram.getPercentile(50), 500000 * 0.03);
+		assertEquals(990000, histogram.getPercentile(99), 990000 * 0.03);
+		assertEquals(999000, histogram.getPercentile(99.9), 999000 * 0.03);
+		assertEquals(1000000, histogram.getPercentile(100));
+		
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+	
+	@Test
+	public void testBuckets() {
+		
+		// Small values are exact
+		for(long value = 0; value < 64; value++)
+			assertEquals(value, Histogram.highestValue(Histogram.index(value)));
+		
+		long[] values = { 64, 100, 1023, 1024, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+		for(long value : values) {
+			long highest = Histogram.highestValue(Histogram.index(value));
+			assertTrue(value + " <= " + highest, highest >= value);
+			assertTrue(value + " ~ " + highest, highest - value <= value / 32);
+		}
+	}
+	
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		
+		final Histogram histogram = new Histogram();
+		final CountDownLatch done = new CountDownLatch(4);
+		
+		for(int t = 0; t < 4; t++) {
+			new Thread() {
+				@Override
+				public void run() {
+					for(int i = 0; i < 10000; i++)
+						histogram.record(i);
+					done.countDown();
+				}
+			}.start();
+		}
+		
+		done.await();
+		assertEquals(40000, histogram.getCount());
+		assertEquals(9999, histogram.getMax());
+	}
+}
@@ -0,0 +1,98 @@
+package com.c2w.client.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link com.c2w.client.core.metrics.MetricsRegistry} class
+ */
+public class MetricsRegistryTest {
+
+	@Test
+	public void testSnapshot() {
+		
+		MetricsRegistry registry = new MetricsRegistry("test");
+		
+		assertSame(registry.counter("sent"), registry.counter("sent"));
+		registry.counter("sent").add(3);
+		registry.histogram("latency").record(100);
+		registry.gauge("depth", new Gauge() {
+			@Override
+			public long getValue() {
+				return 7;
+			}
+		});
+		
+		Map<String, Number> snapshot = registry.snapshot();
+		assertEquals(3L, snapshot.get("sent"));
+		assertEquals(7L, snapshot.get("depth"));
+		assertEquals(1L, snapshot.get("latency.count"));
+		assertEquals(100L, snapshot.get("latency.p50"));
+		assertEquals(100L, snapshot.get("latency.p999"));
+		
+		registry.reset();
+		registry.remove("depth");
+		snapshot = registry.snapshot();
+		assertEquals(0L, snapshot.get("sent"));
+		assertEquals(0L, snapshot.get("latency.count"));
+		assertFalse(snapshot.containsKey("depth"));
+	}
+	
+	@Test
+	public void testRemoveOwnGauge() {
+		
+		MetricsRegistry registry = new MetricsRegistry("test");
+		
+		Gauge first = new Gauge() {
+			@Override
+			public long getValue() {
+				return 1;
+			}
+		};
+		Gauge second = new Gauge() {
+			@Override
+			public long getValue() {
+				return 2;
+			}
+		};
+		
+		// The gauge replaced by another owner is not removed by the first owner
+		registry.gauge("depth", first);
+		registry.gauge("depth", second);
+		assertFalse(registry.remove("depth", first));
+		assertEquals(2L, registry.snapshot().get("depth"));
+		
+		assertTrue(registry.remove("depth", second));
+		assertFalse(registry.snapshot().containsKey("depth"));
+	}
+	
+	@Test
+	public void testJmx() throws Exception {
+		
+		MetricsRegistry registry = new MetricsRegistry("jmx-test");
+		registry.counter("sent").increment();
+		registry.registerMBean();
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(MetricsRegistry.JMX_DOMAIN + ":type=Metrics,name=" + ObjectName.quote("jmx-test"));
+		try {
+			assertTrue(server.isRegistered(name));
+			assertEquals(1L, server.getAttribute(name, "sent"));
+			assertEquals(1, server.getMBeanInfo(name).getAttributes().length);
+		} finally {
+			registry.unregisterMBean();
+		}
+		
+		assertFalse(server.isRegistered(name));
+	}
+}
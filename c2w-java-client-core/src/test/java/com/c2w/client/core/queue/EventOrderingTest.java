@@ -0,0 +1,49 @@
+package com.c2w.client.core.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.queue.EventOrdering}
+ */
+public class EventOrderingTest {
+
+	/**
+	 * Test that the same key is always routed to the same queue , and keys are spread over all queues
+	 */
+	@Test
+	public void testPartition() {
+		
+		assertEquals(0, EventOrdering.partition("com.test.Component", 1));
+		assertEquals(0, EventOrdering.partition(null, 4));
+		
+		assertEquals(EventOrdering.partition("com.test.Component", 4), 
+				EventOrdering.partition(new StringBuilder("com.test.Component"), 4));
+		
+		int[] counts = new int[4];
+		for(int i = 0; i < 400; i++) {
+			int partition = EventOrdering.partition("com.test.Component" + i, 4);
+			assertTrue(partition >= 0 && partition < 4);
+			counts[partition]++;
+		}
+		for(int count : counts)
+			assertTrue("Keys are not spread: " + count, count > 50);
+	}
+	
+	/**
+	 * Test ordering names
+	 */
+	@Test
+	public void testParse() {
+		
+		assertEquals(EventOrdering.LOGGER, EventOrdering.parse("logger"));
+		assertEquals(EventOrdering.TOPIC, EventOrdering.parse("TOPIC"));
+		try {
+			EventOrdering.parse("THREAD");
+			assertTrue(false);
+		} catch(IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.c2w.client.core.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.queue.OverflowHandler}
+ */
+public class OverflowHandlerTest {
+
+	/**
+	 * Test that new events are dropped and counted if the queue is full
+	 */
+	@Test
+	public void testDropNewest() {
+		
+		for(String type : new String[] {EventQueueFactory.BLOCKING, EventQueueFactory.RING_BUFFER}) {
+			
+			EventQueue<Integer> queue = EventQueueFactory.createQueue(type, 4, null);
+			OverflowHandler<Integer> handler = new OverflowHandler<Integer>(queue, OverflowPolicy.DROP_NEWEST);
+			
+			for(int i = 0; i < 6; i++)
+				assertEquals(i < 4, handler.offer(i, true));
+			
+			assertEquals(2, handler.getDroppedCount());
+			assertEquals(Integer.valueOf(0), queue.poll());
+		}
+	}
+	
+	/**
+	 * Test that the oldest events are dropped to make room for new ones
+	 */
+	@Test
+	public void testDropOldest() {
+		
+		for(String type : new String[] {EventQueueFactory.BLOCKING, EventQueueFactory.RING_BUFFER}) {
+			
+			EventQueue<Integer> queue = EventQueueFactory.createQueue(type, 4, null);
+			OverflowHandler<Integer> handler = new OverflowHandler<Integer>(queue, OverflowPolicy.DROP_OLDEST);
+			
+			for(int i = 0; i < 6; i++)
+				assertTrue(handler.offer(i, false));
+			
+			assertEquals(2, handler.getDroppedCount());
+			
+			List<Integer> events = new ArrayList<Integer>();
+			queue.drainTo(events, 10);
+			assertEquals(4, events.size());
+			assertEquals(Integer.valueOf(2), events.get(0));
+			assertEquals(Integer.valueOf(5), events.get(3));
+		}
+	}
+	
+	/**
+	 * Test that the logging thread waits for free space up to the timeout
+	 */
+	@Test
+	public void testBlockWithTimeout() throws InterruptedException {
+		
+		for(String type : new String[] {EventQueueFactory.BLOCKING, EventQueueFactory.RING_BUFFER}) {
+			
+			final EventQueue<Integer> queue = EventQueueFactory.createQueue(type, 2, null);
+			OverflowHandler<Integer> handler = new OverflowHandler<Integer>(queue, OverflowPolicy.BLOCK_WITH_TIMEOUT, 50, 0);
+			
+			assertTrue(handler.offer(-1, false));
+			assertTrue(handler.offer(0, false));
+			
+			// Full queue , the event is dropped after timeout
+			long start = System.nanoTime();
+			assertFalse(handler.offer(1, false));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+			assertEquals(1, handler.getDroppedCount());
+			
+			// The consumer frees space while the logging thread waits
+			Thread consumer = new Thread() {
+				public void run() {
+					try {
+						Thread.sleep(20);
+					} catch(InterruptedException e) {
+					}
+					queue.poll();
+				}
+			};
+			consumer.start();
+			
+			handler = new OverflowHandler<Integer>(queue, OverflowPolicy.BLOCK_WITH_TIMEOUT, 5000, 0);
+			assertTrue(handler.offer(2, false));
+			assertEquals(0, handler.getDroppedCount());
+			consumer.join();
+		}
+	}
+	
+	/**
+	 * Test that less important events are dropped when the queue is nearly full 
+	 * and important events are kept
+	 */
+	@Test
+	public void testDropBelowLevel() {
+		
+		for(String type : new String[] {EventQueueFactory.BLOCKING, EventQueueFactory.RING_BUFFER}) {
+			
+			EventQueue<Integer> queue = EventQueueFactory.createQueue(type, 32, null);
+			OverflowHandler<Integer> handler = new OverflowHandler<Integer>(queue, OverflowPolicy.DROP_BELOW_LEVEL);
+			
+			// 3 slots are kept for important events
+			int added = 0;
+			for(int i = 0; i < 40; i++)
+				if(handler.offer(i, false))
+					added++;
+			assertEquals(29, added);
+			assertEquals(11, handler.getDroppedCount());
+			
+			for(int i = 100; i < 106; i++)
+				assertTrue(handler.offer(i, true));
+			assertEquals(32, queue.size());
+			
+			// The oldest events give way to important ones
+			assertEquals(Integer.valueOf(3), queue.poll());
+			assertEquals(14, handler.getDroppedCount());
+		}
+	}
+	
+	/**
+	 * Test that dropped events are reported once per report interval
+	 */
+	@Test
+	public void testReport() throws InterruptedException {
+		
+		EventQueue<Integer> queue = EventQueueFactory.createQueue(EventQueueFactory.BLOCKING, 1, null);
+		OverflowHandler<Integer> handler = new OverflowHandler<Integer>(queue, OverflowPolicy.DROP_NEWEST, 0, 100);
+		
+		for(int i = 0; i < 5; i++)
+			handler.offer(i, false);
+		
+		assertEquals(0, handler.checkDropped());
+		Thread.sleep(150);
+		assertEquals(4, handler.checkDropped());
+		assertEquals(0, handler.checkDropped());
+		
+		handler.offer(5, false);
+		assertEquals(1, handler.flushDropped());
+		assertEquals(5, handler.getDroppedCount());
+	}
+	
+	/**
+	 * Test policy names
+	 */
+	@Test
+	public void testParse() {
+		
+		assertEquals(OverflowPolicy.DROP_OLDEST, OverflowPolicy.parse("drop_oldest"));
+		assertEquals(OverflowPolicy.BLOCK_WITH_TIMEOUT, OverflowPolicy.parse(" BLOCK_WITH_TIMEOUT "));
+		try {
+			OverflowPolicy.parse("DROP_ALL");
+			assertTrue(false);
+		} catch(IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package com.c2w.client.core.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.queue.RingBufferEventQueue}
+ */
+public class RingBufferEventQueueTest {
+
+	/**
+	 * Test that capacity is rounded up to power of two and the full queue rejects events
+	 */
+	@Test
+	public void testCapacity() {
+		
+		RingBufferEventQueue<Integer> queue = new RingBufferEventQueue<Integer>(5, new SleepingWaitStrategy());
+		assertEquals(8, queue.capacity());
+		
+		for(int i = 0; i < 8; i++)
+			assertTrue(queue.offer(i));
+		assertFalse(queue.offer(8));
+		assertEquals(8, queue.size());
+		
+		assertEquals(Integer.valueOf(0), queue.poll());
+		assertTrue(queue.offer(8));
+		
+		queue = new RingBufferEventQueue<Integer>(1, new SleepingWaitStrategy());
+		assertEquals(2, queue.capacity());
+		assertTrue(queue.offer(0));
+		assertTrue(queue.offer(1));
+		assertFalse(queue.offer(2));
+	}
+	
+	/**
+	 * Test that events are removed in order of adding , across several rounds of the buffer
+	 */
+	@Test
+	public void testOrder() {
+		
+		RingBufferEventQueue<Integer> queue = new RingBufferEventQueue<Integer>(4, new SleepingWaitStrategy());
+		
+		for(int round = 0; round < 3; round++) {
+			for(int i = 0; i < 3; i++)
+				assertTrue(queue.offer(round * 10 + i));
+			
+			List<Integer> events = new ArrayList<Integer>();
+			assertEquals(3, queue.drainTo(events, 10));
+			assertEquals(round * 10, events.get(0).intValue());
+			assertEquals(round * 10 + 2, events.get(2).intValue());
+			assertNull(queue.poll());
+			assertEquals(0, queue.size());
+		}
+	}
+	
+	/**
+	 * Test that poll with timeout returns null for the empty queue
+	 */
+	@Test
+	public void testPollTimeout() throws InterruptedException {
+		
+		for(String strategy : new String[] {"blocking", "sleeping", "yielding", "busySpin"}) {
+			EventQueue<Integer> queue = EventQueueFactory.createQueue(EventQueueFactory.RING_BUFFER, 16, strategy);
+			long start = System.nanoTime();
+			assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		}
+	}
+	
+	/**
+	 * Test that the waiting consumer is interrupted
+	 */
+	@Test(expected = InterruptedException.class)
+	public void testTakeInterrupted() throws InterruptedException {
+		
+		EventQueue<Integer> queue = EventQueueFactory.createQueue(EventQueueFactory.RING_BUFFER, 16, "sleeping");
+		Thread.currentThread().interrupt();
+		queue.take();
+	}
+	
+	/**
+	 * Test many producers and a single consumer with every wait strategy.
+	 * All events should be received, events of every producer in order
+	 */
+	@Test
+	public void testConcurrentProducers() throws Exception {
+		
+		for(String strategy : new String[] {"blocking", "sleeping", "yielding", "busySpin"})
+			runProducers(EventQueueFactory.<long[]>createQueue(EventQueueFactory.RING_BUFFER, 64, strategy));
+	}
+	
+	
+	/**
+	 * Test that events removed by several threads at the same time , as producers dropping the oldest events do , 
+	 * are removed exactly once
+	 */
+	@Test
+	public void testConcurrentRemoval() throws Exception {
+		
+		final RingBufferEventQueue<Integer> queue = new RingBufferEventQueue<Integer>(1024, new SleepingWaitStrategy());
+		final int events = 100000;
+		final AtomicIntegerArray removed = new AtomicIntegerArray(events);
+		final AtomicInteger next = new AtomicInteger();
+		
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					int event;
+					while((event = next.getAndIncrement()) < events) {
+						while(!queue.offer(event)) {
+							Integer oldest = queue.poll();
+							if(oldest != null)
+								removed.incrementAndGet(oldest);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		
+		Integer event;
+		while((event = queue.poll()) != null)
+			removed.incrementAndGet(event);
+		
+		for(int i = 0; i < events; i++)
+			assertEquals("Event " + i, 1, removed.get(i));
+	}
+	
+	/**
+	 * Test several consumers waiting for events with every wait strategy.
+	 * Every event should be received exactly once
+	 */
+	@Test
+	public void testConcurrentConsumers() throws Exception {
+		
+		for(String strategy : new String[] {"blocking", "sleeping", "yielding", "busySpin"}) {
+			
+			final EventQueue<Integer> queue = EventQueueFactory.createQueue(EventQueueFactory.RING_BUFFER, 64, strategy);
+			final int events = 20000;
+			final AtomicIntegerArray received = new AtomicIntegerArray(events);
+			final CountDownLatch done = new CountDownLatch(events);
+			
+			for(int c = 0; c < 3; c++) {
+				Thread consumer = new Thread() {
+					public void run() {
+						try {
+							while(true) {
+								received.incrementAndGet(queue.take());
+								done.countDown();
+							}
+						} catch(InterruptedException e) {
+						}
+					}
+				};
+				consumer.setDaemon(true);
+				consumer.start();
+			}
+			
+			for(int i = 0; i < events; i++)
+				while(!queue.offer(i))
+					Thread.yield();
+			
+			assertTrue("Missing events with " + strategy, done.await(10, TimeUnit.SECONDS));
+			for(int i = 0; i < events; i++)
+				assertEquals(1, received.get(i));
+		}
+	}
+	
+	
+	/*
+	 * Add events from several threads and check them in the consumer
+	 */
+	private void runProducers(final EventQueue<long[]> queue) throws Exception {
+		
+		final int producers = 8;
+		final int events = 5000;
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		for(int p = 0; p < producers; p++) {
+			final int producer = p;
+			Thread thread = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for(long i = 0; i < events; i++)
+							while(!queue.offer(new long[] {producer, i}))
+								Thread.yield();
+					} catch(InterruptedException e) {
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+		start.countDown();
+		
+		long[] next = new long[producers];
+		for(int i = 0; i < producers * events; i++) {
+			long[] event = queue.poll(10, TimeUnit.SECONDS);
+			assertTrue("Missing events with " + queue, event != null);
+			assertEquals(next[(int) event[0]]++, event[1]);
+		}
+		assertNull(queue.poll());
+	}
+}
@@ -0,0 +1,151 @@
+package com.c2w.client.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+
+/**
+ * Unit test for {@link com.c2w.client.core.service.CircuitBreakerService} class
+ */
+public class CircuitBreakerServiceTest {
+
+	/*
+	 * Wrapped service failing or answering slowly on demand
+	 */
+	private TestService testService;
+	
+	@Before
+	public void setUp() {
+		Logger.getLogger(CircuitBreakerService.class.getName()).setLevel(Level.OFF);
+		testService = new TestService();
+	}
+	
+	/**
+	 * Test that the circuit opens when the failure rate is reached , rejects messages without calling the service 
+	 * and closes after successful trial calls
+	 */
+	@Test
+	public void testFailureRate() throws Exception {
+		
+		CircuitBreakerService service = new CircuitBreakerService(testService, 10, 4, 50, 10000, 100, 100, 2);
+		
+		send(service, 2);
+		testService.fail = true;
+		send(service, 1);
+		assertEquals(CircuitBreakerService.State.CLOSED, service.getState());
+		
+		// 2 of 4 calls failed
+		send(service, 1);
+		assertEquals(CircuitBreakerService.State.OPEN, service.getState());
+		
+		testService.fail = false;
+		try {
+			service.send(new Message("Topic", "Text"));
+			fail("CircuitOpenException expected");
+		} catch(CircuitOpenException e) {
+		}
+		assertTrue(service.sendAsync(new Message("Topic", "Text")).isCompletedExceptionally());
+		assertEquals(2, service.getRejectedCount());
+		assertEquals(4, testService.calls);
+		
+		// Trial calls close the circuit
+		Thread.sleep(150);
+		send(service, 1);
+		assertEquals(CircuitBreakerService.State.HALF_OPEN, service.getState());
+		send(service, 1);
+		assertEquals(CircuitBreakerService.State.CLOSED, service.getState());
+	}
+	
+	/**
+	 * Test that the circuit opens when calls are slow and opens again if a trial call fails
+	 */
+	@Test
+	public void testSlowCalls() throws Exception {
+		
+		CircuitBreakerService service = new CircuitBreakerService(testService, 10, 3, 50, 20, 60, 50, 1);
+		
+		testService.delayMs = 30;
+		send(service, 1);
+		testService.delayMs = 0;
+		send(service, 1);
+		testService.delayMs = 30;
+		send(service, 1);
+		assertEquals(CircuitBreakerService.State.OPEN, service.getState());
+		
+		Thread.sleep(100);
+		testService.delayMs = 0;
+		testService.result = new Result(Result.Status.ERROR, "HTTP/1.1 503 Service Unavailable", Result.HTTP_STATUS, "503");
+		send(service, 1);
+		assertEquals(CircuitBreakerService.State.OPEN, service.getState());
+	}
+	
+	/**
+	 * Test that errors which do not mean the service is degraded do not open the circuit
+	 */
+	@Test
+	public void testClientErrors() throws Exception {
+		
+		CircuitBreakerService service = new CircuitBreakerService(testService, 10, 2, 50, 10000, 100, 1000, 1);
+		
+		testService.result = new Result(Result.Status.ERROR, "Invalid message");
+		send(service, 5);
+		testService.result = new Result(Result.Status.ERROR, "HTTP/1.1 400 Bad Request", Result.HTTP_STATUS, "400");
+		send(service, 5);
+		
+		assertEquals(CircuitBreakerService.State.CLOSED, service.getState());
+	}
+	
+	/*
+	 * Send messages ignoring failures
+	 */
+	private void send(Service service, int count) {
+		for(int i = 0; i < count; i++) {
+			try {
+				service.send(new Message("Topic", "Text"));
+			} catch(ServiceException e) {
+			}
+		}
+	}
+	
+	
+	/**
+	 * Service failing or answering slowly on demand
+	 */
+	private static class TestService extends ServiceWrapper {
+		
+		private volatile boolean fail;
+		
+		private volatile long delayMs;
+		
+		private volatile Result result = new Result(Result.Status.OK);
+		
+		private int calls;
+		
+		private TestService() {
+			super(null);
+		}
+		
+		@Override
+		public Result send(Message message) throws ServiceException {
+			calls++;
+			if(delayMs > 0) {
+				try {
+					Thread.sleep(delayMs);
+				} catch(InterruptedException e) {
+					throw new ServiceException(e);
+				}
+			}
+			if(fail)
+				throw new ServiceException("Service is not available");
+			return result;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.c2w.client.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+
+/**
+ * Unit test for {@link com.c2w.client.core.service.CoalescingService} class
+ * 
+ * @author ptrvif
+ *
+ */
+public class CoalescingServiceTest {
+
+	/*
+	 * Wrapped service counting batches and returning message text as result
+	 */
+	private BatchCountingService batchService;
+	
+	@Before
+	public void setUp() {
+		Logger.getLogger(CoalescingService.class.getName()).setLevel(Level.OFF);
+		batchService = new BatchCountingService();
+	}
+	
+	/**
+	 * Test that messages sent from many threads are gathered into batches
+	 * and every caller gets its own result
+	 */
+	@Test
+	public void testSendFromManyThreads() throws Exception {
+		
+		final CoalescingService service = new CoalescingService(batchService, 200, 100, 1000);
+		service.start();
+		
+		final AtomicInteger mismatches = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < 20; i++) {
+			final String text = "Text " + i;
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						Result result = service.send(new Message("Topic", text));
+						if(!text.equals(result.getResponse()))
+							mismatches.incrementAndGet();
+					} catch(ServiceException e) {
+						mismatches.incrementAndGet();
+					}
+				}
+			});
+		}
+		for(Thread thread : threads)
+			thread.start();
+		for(Thread thread : threads)
+			thread.join();
+		
+		service.stop();
+		
+		assertEquals(0, mismatches.get());
+		assertEquals(20, batchService.messages.get());
+		assertTrue(batchService.batches.get() < 20);
+	}
+	
+	/**
+	 * Test that batch is sent as soon as max number of messages is gathered
+	 */
+	@Test
+	public void testMaxMessages() throws Exception {
+		
+		CoalescingService service = new CoalescingService(batchService, 10000, 2, 1000);
+		service.start();
+		
+		CompletableFuture<Result> first = service.sendAsync(new Message("Topic", "Text 1"));
+		CompletableFuture<Result> second = service.sendAsync(new Message("Topic", "Text 2"));
+		
+		assertEquals("Text 1", first.get(5, TimeUnit.SECONDS).getResponse());
+		assertEquals("Text 2", second.get(5, TimeUnit.SECONDS).getResponse());
+		assertEquals(1, batchService.batches.get());
+		
+		service.stop();
+	}
+	
+	/**
+	 * Test that failed batch completes futures of all messages exceptionally
+	 */
+	@Test
+	public void testSendBatchFailure() throws Exception {
+		
+		batchService.fail = true;
+		CoalescingService service = new CoalescingService(batchService, 10, 100, 1000);
+		
+		Exception exception = null;
+		try {
+			service.send(new Message("Topic", "Text"));
+		} catch(ServiceException e) {
+			exception = e;
+		}
+		assertTrue(exception instanceof ServiceException);
+		
+		service.stop();
+	}
+	
+	/**
+	 * Test that stop waits for the batch being sent without interrupting it
+	 */
+	@Test
+	public void testStopWhileSending() throws Exception {
+		
+		batchService.delayMs = 300;
+		CoalescingService service = new CoalescingService(batchService, 10, 100, 1000);
+		service.start();
+		
+		CompletableFuture<Result> future = service.sendAsync(new Message("Topic", "Text"));
+		assertTrue(batchService.sending.await(5, TimeUnit.SECONDS));
+		
+		service.stop();
+		
+		assertTrue(future.isDone());
+		assertEquals("Text", future.get().getResponse());
+		assertFalse(batchService.interrupted);
+	}
+	
+	/**
+	 * Test that messages sent after stop are rejected until the service is started again
+	 */
+	@Test
+	public void testSendAfterStop() throws Exception {
+		
+		CoalescingService service = new CoalescingService(batchService, 10, 100, 1000);
+		service.start();
+		service.stop();
+		
+		try {
+			service.sendAsync(new Message("Topic", "Text")).get(5, TimeUnit.SECONDS);
+			fail("Message sent after stop must be rejected");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof ServiceException);
+		}
+		assertEquals(0, batchService.messages.get());
+		
+		service.start();
+		assertEquals("Text", service.send(new Message("Topic", "Text")).getResponse());
+		service.stop();
+	}
+	
+	
+	/**
+	 * Service stub counting batches
+	 */
+	private static class BatchCountingService extends ServiceWrapper {
+		
+		private final AtomicInteger batches = new AtomicInteger();
+		
+		private final AtomicInteger messages = new AtomicInteger();
+		
+		private volatile boolean fail;
+		
+		private volatile long delayMs;
+		
+		private volatile boolean interrupted;
+		
+		private final CountDownLatch sending = new CountDownLatch(1);
+		
+		private BatchCountingService() {
+			super(null);
+		}
+		
+		@Override
+		public void start() {
+		}
+		
+		@Override
+		public void stop() {
+		}
+		
+		@Override
+		public List<Result> sendBatch(List<Message> batch) throws ServiceException {
+			if(fail)
+				throw new ServiceException("Service is not available");
+			sending.countDown();
+			if(delayMs > 0) {
+				try {
+					Thread.sleep(delayMs);
+				} catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			batches.incrementAndGet();
+			messages.addAndGet(batch.size());
+			List<Result> results = new ArrayList<Result>();
+			for(Message message : batch)
+				results.add(new Result(Result.Status.OK, message.getText()));
+			return results;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.c2w.client.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+
+/**
+ * Unit test for {@link com.c2w.client.core.service.DeduplicatingService} class
+ */
+public class DeduplicatingServiceTest {
+
+	/*
+	 * Wrapped service recording sent messages
+	 */
+	private RecordingService recordingService;
+	
+	@Before
+	public void setUp() {
+		Logger.getLogger(DeduplicatingService.class.getName()).setLevel(Level.OFF);
+		recordingService = new RecordingService();
+	}
+	
+	/**
+	 * Test that messages differing in numbers and white space have the same fingerprint
+	 */
+	@Test
+	public void testFingerprint() {
+		
+		long fingerprint = DeduplicatingService.fingerprint(new Message("DB", "Connection failed after 1023 ms"));
+		
+		assertEquals(fingerprint, DeduplicatingService.fingerprint(new Message("DB", "Connection failed after 7 ms")));
+		assertEquals(fingerprint, DeduplicatingService.fingerprint(new Message("DB", "Connection  failed\tafter 7 ms")));
+		assertTrue(fingerprint != DeduplicatingService.fingerprint(new Message("DB", "Connection failed after 7 s")));
+		assertTrue(fingerprint != DeduplicatingService.fingerprint(new Message("Cache", "Connection failed after 7 ms")));
+	}
+	
+	/**
+	 * Test that messages to other recipients , test messages and messages with other TTL have other fingerprints
+	 */
+	@Test
+	public void testFingerprintRecipients() {
+		
+		long fingerprint = DeduplicatingService.fingerprint(message(1L, "ops@example.com", "dba@example.com"));
+		
+		// Order of recipients does not matter , recipients are not normalized
+		assertEquals(fingerprint, DeduplicatingService.fingerprint(message(1L, "dba@example.com", "ops@example.com")));
+		assertTrue(fingerprint != DeduplicatingService.fingerprint(message(1L, "ops@example.com")));
+		assertTrue(fingerprint != DeduplicatingService.fingerprint(message(2L, "ops@example.com", "dba@example.com")));
+		assertTrue(DeduplicatingService.fingerprint(message(3L, "+15550001")) != DeduplicatingService.fingerprint(message(3L, "+15550002")));
+		assertTrue(fingerprint != DeduplicatingService.fingerprint(new Message("DB", "Connection failed")));
+		
+		Message test = new Message("DB", "Connection failed");
+		test.setTest(true);
+		assertTrue(DeduplicatingService.fingerprint(new Message("DB", "Connection failed")) != DeduplicatingService.fingerprint(test));
+		
+		Message ttl = new Message("DB", "Connection failed");
+		ttl.setTtl(60);
+		assertTrue(DeduplicatingService.fingerprint(new Message("DB", "Connection failed")) != DeduplicatingService.fingerprint(ttl));
+	}
+	
+	/**
+	 * Test that repeats are suppressed and a single summary is sent when the window ends
+	 */
+	@Test
+	public void testSummary() throws Exception {
+		
+		DeduplicatingService service = new DeduplicatingService(recordingService, 200, 100);
+		
+		assertEquals(Result.Status.OK, service.send(new Message("DB", "Connection failed 1")).getStatus());
+		
+		Result result = service.send(new Message("DB", "Connection failed 2"));
+		assertEquals("true", result.getProperty(DeduplicatingService.SUPPRESSED));
+		assertEquals("true", service.sendAsync(new Message("DB", "Connection failed 3")).get().getProperty(DeduplicatingService.SUPPRESSED));
+		
+		// Only new message of the batch is sent
+		List<Result> results = service.sendBatch(Arrays.asList(new Message("DB", "Connection failed 4"), new Message("DB", "Disk full")));
+		assertEquals("true", results.get(0).getProperty(DeduplicatingService.SUPPRESSED));
+		assertEquals(Result.Status.OK, results.get(1).getStatus());
+		
+		assertEquals(3, service.getSuppressedCount());
+		assertEquals(Arrays.asList("Connection failed 1", "Disk full"), recordingService.texts);
+		
+		Thread.sleep(500);
+		
+		assertEquals(3, recordingService.texts.size());
+		assertTrue(recordingService.texts.get(2).startsWith("Connection failed 1"));
+		assertTrue(recordingService.texts.get(2).endsWith("Repeated 3 times in 1s"));
+		
+		// The window is closed , the next message is sent
+		service.send(new Message("DB", "Connection failed 5"));
+		assertEquals(4, recordingService.texts.size());
+		
+		service.stop();
+	}
+	
+	/**
+	 * Test that messages with new fingerprints are sent when the cache is full
+	 */
+	@Test
+	public void testMaxEntries() throws Exception {
+		
+		DeduplicatingService service = new DeduplicatingService(recordingService, 60000, 2);
+		
+		service.send(new Message("A", "Text"));
+		service.send(new Message("B", "Text"));
+		service.send(new Message("C", "Text"));
+		service.send(new Message("C", "Text"));
+		service.send(new Message("A", "Text"));
+		
+		assertEquals(4, recordingService.texts.size());
+		assertEquals(1, service.getSuppressedCount());
+		
+		// Summary is sent on stop
+		service.stop();
+		assertEquals(5, recordingService.texts.size());
+		assertTrue(recordingService.texts.get(4).endsWith("Repeated 1 time in 1s"));
+	}
+	
+	/*
+	 * Message to the recipients of the channel
+	 */
+	private static Message message(Long channel, String... recipients) {
+		
+		Message message = new Message("DB", "Connection failed");
+		message.setChannelRecipients(Collections.singletonMap(channel, Arrays.asList(recipients)));
+		return message;
+	}
+	
+	
+	/**
+	 * Service recording sent messages
+	 */
+	private static class RecordingService extends ServiceWrapper {
+		
+		private final List<String> texts = new CopyOnWriteArrayList<String>();
+		
+		private RecordingService() {
+			super(null);
+		}
+		
+		@Override
+		public void stop() {
+		}
+		
+		@Override
+		public Result send(Message message) {
+			texts.add(message.getText());
+			return new Result(Result.Status.OK);
+		}
+		
+		@Override
+		public CompletableFuture<Result> sendAsync(Message message) {
+			return CompletableFuture.completedFuture(send(message));
+		}
+		
+		@Override
+		public List<Result> sendBatch(List<Message> batch) {
+			List<Result> results = new ArrayList<Result>();
+			for(Message message : batch)
+				results.add(send(message));
+			return results;
+		}
+	}
+}
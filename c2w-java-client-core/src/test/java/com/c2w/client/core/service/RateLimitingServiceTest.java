@@ -0,0 +1,146 @@
+package com.c2w.client.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.c2w.client.core.limit.RateLimitPolicy;
+import com.c2w.client.core.message.Message;
+
+/**
+ * Unit test for {@link com.c2w.client.core.service.RateLimitingService} class
+ */
+public class RateLimitingServiceTest {
+
+	/*
+	 * Wrapped service recording sent messages
+	 */
+	private RecordingService recordingService;
+	
+	@Before
+	public void setUp() {
+		Logger.getLogger(RateLimitingService.class.getName()).setLevel(Level.OFF);
+		recordingService = new RecordingService();
+	}
+	
+	/**
+	 * Test that messages over the global and the topic limits are dropped
+	 */
+	@Test
+	public void testDrop() throws Exception {
+		
+		RateLimitingService service = new RateLimitingService(recordingService, 1, 3, 1, 2, RateLimitPolicy.DROP, 0, 10);
+		
+		assertEquals(Result.Status.OK, service.send(new Message("A", "1")).getStatus());
+		assertEquals(Result.Status.OK, service.send(new Message("A", "2")).getStatus());
+		
+		// Topic limit
+		Result result = service.send(new Message("A", "3"));
+		assertEquals(Result.Status.ERROR, result.getStatus());
+		assertEquals("true", result.getProperty(RateLimitingService.LIMITED));
+		
+		// Global limit
+		assertEquals(Result.Status.OK, service.sendAsync(new Message("B", "4")).get().getStatus());
+		List<Result> results = service.sendBatch(Arrays.asList(new Message("C", "5"), new Message("C", "6")));
+		assertEquals(Result.Status.ERROR, results.get(0).getStatus());
+		assertEquals(Result.Status.ERROR, results.get(1).getStatus());
+		
+		assertEquals(3, service.getDroppedCount());
+		assertEquals(Arrays.asList("1", "2", "4"), recordingService.texts);
+	}
+	
+	/**
+	 * Test that messages over the limit are delayed
+	 */
+	@Test
+	public void testDelay() throws Exception {
+		
+		RateLimitingService service = new RateLimitingService(recordingService, 20, 1, 0, 1, RateLimitPolicy.DELAY, 1000, 10);
+		
+		long start = System.currentTimeMillis();
+		service.send(new Message("A", "1"));
+		service.send(new Message("A", "2"));
+		CompletableFuture<Result> future = service.sendAsync(new Message("A", "3"));
+		service.sendBatch(Arrays.asList(new Message("A", "4"), new Message("A", "5")));
+		assertEquals(Result.Status.OK, future.get().getStatus());
+		
+		// 4 intervals of 50 ms
+		assertTrue(System.currentTimeMillis() - start >= 190);
+		assertEquals(4, service.getDelayedCount());
+		assertEquals(5, recordingService.texts.size());
+		
+		service.stop();
+	}
+	
+	/**
+	 * Test that messages over the limit are merged into a single message
+	 */
+	@Test
+	public void testCoalesce() throws Exception {
+		
+		RateLimitingService service = new RateLimitingService(recordingService, 10, 1, 0, 1, RateLimitPolicy.COALESCE, 0, 10);
+		
+		service.send(new Message("A", "1"));
+		List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+		for(int i = 2; i <= 4; i++)
+			futures.add(service.sendAsync(new Message("A", String.valueOf(i))));
+		
+		for(CompletableFuture<Result> future : futures)
+			assertEquals(Result.Status.OK, future.get().getStatus());
+		
+		assertEquals(3, service.getCoalescedCount());
+		assertEquals(Arrays.asList("1", "2\n3\n4"), recordingService.texts);
+		assertEquals("A (3 events)", recordingService.topics.get(1));
+		
+		service.stop();
+	}
+	
+	
+	/**
+	 * Service recording sent messages
+	 */
+	private static class RecordingService extends ServiceWrapper {
+		
+		private final List<String> texts = new CopyOnWriteArrayList<String>();
+		
+		private final List<String> topics = new CopyOnWriteArrayList<String>();
+		
+		private RecordingService() {
+			super(null);
+		}
+		
+		@Override
+		public void stop() {
+		}
+		
+		@Override
+		public Result send(Message message) {
+			texts.add(message.getText());
+			topics.add(message.getTopic());
+			return new Result(Result.Status.OK);
+		}
+		
+		@Override
+		public CompletableFuture<Result> sendAsync(Message message) {
+			return CompletableFuture.completedFuture(send(message));
+		}
+		
+		@Override
+		public List<Result> sendBatch(List<Message> batch) {
+			List<Result> results = new ArrayList<Result>();
+			for(Message message : batch)
+				results.add(send(message));
+			return results;
+		}
+	}
+}
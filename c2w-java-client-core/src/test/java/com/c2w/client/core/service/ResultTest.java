@@ -59,4 +59,22 @@ public class ResultTest {
 		assertEquals(result.getResponse(), response);
 	}
 
+	@Test
+	public void testGetHttpStatus() {
+		assertEquals(503, Result.getHttpStatus(new Result(Result.Status.ERROR, "HTTP/1.1 503 Service Unavailable", Result.HTTP_STATUS, "503")));
+		assertEquals(-1, Result.getHttpStatus(new Result(Result.Status.ERROR, "HTTP/1.1 503 Service Unavailable")));
+		assertEquals(-1, Result.getHttpStatus(new Result(Result.Status.ERROR, "Invalid", Result.HTTP_STATUS, "unknown")));
+		assertEquals(-1, Result.getHttpStatus(null));
+	}
+
+	@Test
+	public void testIsTransientFailure() {
+		assertTrue(Result.isTransientFailure(new Result(Result.Status.ERROR, "HTTP/1.1 503 Service Unavailable", Result.HTTP_STATUS, "503")));
+		assertTrue(Result.isTransientFailure(new Result(Result.Status.ERROR, "HTTP/1.1 429 Too Many Requests", Result.HTTP_STATUS, "429")));
+		assertFalse(Result.isTransientFailure(new Result(Result.Status.ERROR, "HTTP/1.1 400 Bad Request", Result.HTTP_STATUS, "400")));
+		assertFalse(Result.isTransientFailure(new Result(Result.Status.ERROR, "HTTP/1.1 503 Service Unavailable")));
+		assertFalse(Result.isTransientFailure(new Result(Result.Status.OK, "Accepted", Result.HTTP_STATUS, "503")));
+		assertFalse(Result.isTransientFailure(null));
+	}
+
 }
@@ -1,8 +1,14 @@
 package com.c2w.client.core.service;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,5 +39,69 @@ public class ServiceFactoryTest {
 		
 		assertTrue(service instanceof HttpService);
 	}
+	
+	@Test
+	public void testNamedServices() throws ServiceException {
+		
+		Properties first = new Properties();
+		first.setProperty(HttpService.SERVER_URL, "http://localhost:1/rest");
+		
+		Properties second = new Properties();
+		second.setProperty(HttpService.SERVER_URL, "http://localhost:2/rest");
+		second.setProperty(DeduplicatingService.ENABLED, "true");
+		
+		try {
+			
+			Service a = ServiceFactory.getService("a", first);
+			Service b = ServiceFactory.getService("b", second);
+			
+			assertTrue(a instanceof HttpService);
+			assertTrue(b instanceof DeduplicatingService);
+			assertSame(a, ServiceFactory.getService("a", second));
+			assertNotSame(a, ServiceFactory.getService("b", first));
+			
+			// Closed service is created again
+			ServiceFactory.closeService("a");
+			assertNotSame(a, ServiceFactory.getService("a", first));
+			
+		} finally {
+			ServiceFactory.closeService("a");
+			ServiceFactory.closeService("b");
+		}
+	}
+	
+	@Test
+	public void testWrappedServiceProperties() throws ServiceException {
+		
+		File directory = new File(System.getProperty("java.io.tmpdir"), "c2w-spool-tenant");
+		
+		Properties properties = new Properties();
+		properties.setProperty(HttpService.SERVER_URL, "http://localhost:1/rest");
+		properties.setProperty(CircuitBreakerService.ENABLED, "true");
+		properties.setProperty(SpoolingService.ENABLED, "true");
+		properties.setProperty(SpoolingService.DIRECTORY, directory.getPath());
+		
+		Service service = ServiceFactory.createService(properties);
+		
+		// Spooling service takes the directory from the service properties
+		assertTrue(service instanceof SpoolingService);
+		assertEquals(directory, ((SpoolingService) service).getDirectory());
+		assertTrue(((SpoolingService) service).getWrappedService() instanceof CircuitBreakerService);
+	}
+	
+	@Test
+	public void testUnknownProvider() {
+		
+		assertNotNull(ServiceFactory.getProvider("HTTP"));
+		
+		Properties properties = new Properties();
+		properties.setProperty(ServiceFactory.PROVIDER, "unknown");
+		try {
+			ServiceFactory.createService(properties);
+			fail("Unknown provider must be rejected");
+		} catch(ServiceException e) {
+			assertTrue(e.getMessage().contains("unknown"));
+		}
+	}
 
 }
@@ -0,0 +1,166 @@
+package com.c2w.client.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageResponse;
+
+/**
+ * Unit test for default methods of {@link com.c2w.client.core.service.Service} interface
+ */
+public class ServiceTest {
+
+	@Test
+	public void testSendAsync() throws Exception {
+
+		Service service = new MinimalService();
+
+		Result result = service.sendAsync(new Message("Topic", "Text")).get(1, TimeUnit.SECONDS);
+		assertEquals(Result.Status.OK, result.getStatus());
+
+		try {
+			service.sendAsync(new Message("Topic", "fail")).get(1, TimeUnit.SECONDS);
+			fail("Failure is not reported");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof ServiceException);
+		}
+	}
+
+
+	/**
+	 * Default asynchronous send must not run in the common fork-join pool
+	 */
+	@Test
+	public void testSendAsyncThread() throws Exception {
+
+		final AtomicReference<Thread> sender = new AtomicReference<Thread>();
+
+		Service service = new MinimalService() {
+			@Override
+			public Result send(Message message) throws ServiceException {
+				sender.set(Thread.currentThread());
+				return super.send(message);
+			}
+		};
+
+		service.sendAsync(new Message("Topic", "Text")).get(1, TimeUnit.SECONDS);
+		assertFalse(sender.get() instanceof ForkJoinWorkerThread);
+		assertTrue(sender.get().isDaemon());
+	}
+
+
+	@Test
+	public void testSendBatch() throws Exception {
+
+		Service service = new MinimalService();
+
+		List<Result> results = service.sendBatch(Arrays.asList(new Message("Topic", "First"), new Message("Topic", "fail"), new Message("Topic", "Last")));
+		assertEquals(3, results.size());
+		assertEquals("First", results.get(0).getResponse());
+		assertEquals(Result.Status.ERROR, results.get(1).getStatus());
+		assertEquals("Cannot send message", results.get(1).getResponse());
+		assertEquals("Last", results.get(2).getResponse());
+	}
+
+
+	@Test
+	public void testAwaitResponseAsync() throws Exception {
+
+		Service service = new MinimalService();
+
+		List<MessageResponse> responses = service.awaitResponseAsync(10, 1).get(1, TimeUnit.SECONDS);
+		assertEquals(1, responses.size());
+		assertEquals(10, responses.get(0).getMessageId());
+
+		try {
+			service.awaitResponseAsync(-1, 1).get(1, TimeUnit.SECONDS);
+			fail("Failure is not reported");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof ServiceException);
+		}
+	}
+
+
+	/**
+	 * Blocked waits must not be limited by the size of the common fork-join pool
+	 */
+	@Test
+	public void testAwaitResponseAsyncManyWaits() throws Exception {
+
+		final int waits = ForkJoinPool.commonPool().getParallelism() + 4;
+		final CountDownLatch started = new CountDownLatch(waits);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		Service service = new MinimalService() {
+			@Override
+			public List<MessageResponse> waitForResponse(long messageId, long timeoutSec) throws ServiceException {
+				started.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					throw new ServiceException(e);
+				}
+				return super.waitForResponse(messageId, timeoutSec);
+			}
+		};
+
+		List<CompletableFuture<List<MessageResponse>>> futures = new ArrayList<CompletableFuture<List<MessageResponse>>>();
+		try {
+			for(int i = 0; i < waits; i++)
+				futures.add(service.awaitResponseAsync(i, 60));
+
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+		}
+
+		for(CompletableFuture<List<MessageResponse>> future : futures)
+			assertEquals(1, future.get(1, TimeUnit.SECONDS).size());
+	}
+
+
+	/**
+	 * Service implementing only the original methods of the interface , like services written before they were added
+	 */
+	private static class MinimalService implements Service {
+
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public Result send(Message message) throws ServiceException {
+			if("fail".equals(message.getText()))
+				throw new ServiceException("Cannot send message");
+			return new Result(Result.Status.OK, message.getText());
+		}
+
+		@Override
+		public List<MessageResponse> waitForResponse(long messageId, long timeoutSec) throws ServiceException {
+			if(messageId < 0)
+				throw new ServiceException("Unknown message");
+			return Collections.singletonList(new MessageResponse(messageId, 0, "Yes", "user", 1));
+		}
+
+		@Override
+		public void stop() {
+		}
+	}
+}
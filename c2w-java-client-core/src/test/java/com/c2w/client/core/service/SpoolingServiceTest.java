@@ -0,0 +1,292 @@
+package com.c2w.client.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.spool.Spool;
+
+/**
+ * Unit test for {@link com.c2w.client.core.service.SpoolingService} class
+ */
+public class SpoolingServiceTest {
+
+	/*
+	 * Wrapped service recording sent message texts
+	 */
+	private RecordingService recordingService;
+	
+	private File directory;
+	
+	@Before
+	public void setUp() throws IOException {
+		Logger.getLogger(SpoolingService.class.getName()).setLevel(Level.OFF);
+		Logger.getLogger(Spool.class.getName()).setLevel(Level.OFF);
+		recordingService = new RecordingService();
+		directory = File.createTempFile("c2w-spool", "");
+		directory.delete();
+	}
+	
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+	
+	/**
+	 * Test that messages are spooled while the service is down and replayed in order when it is up again
+	 */
+	@Test
+	public void testReplay() throws Exception {
+		
+		SpoolingService service = new SpoolingService(recordingService, directory, 1024 * 1024, 4 * 1024 * 1024, false, 50);
+		service.start();
+		
+		assertEquals(Result.Status.OK, service.send(new Message("Topic", "1")).getStatus());
+		
+		recordingService.fail = true;
+		Result result = service.send(new Message("Topic", "2"));
+		assertEquals("true", result.getProperties().getProperty(SpoolingService.SPOOLED));
+		
+		// Service is up , but new messages wait for the spooled ones
+		recordingService.fail = false;
+		service.send(new Message("Topic", "3"));
+		service.sendAsync(new Message("Topic", "4")).get();
+		service.sendBatch(Arrays.asList(new Message("Topic", "5"), new Message("Topic", "6")));
+		
+		waitForReplay(service);
+		service.stop();
+		
+		assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6"), recordingService.texts);
+	}
+	
+	/**
+	 * Test that messages failed with HTTP 429 or 5xx results are spooled and kept until accepted , rejected messages are dropped
+	 */
+	@Test
+	public void testTransientErrorResults() throws Exception {
+		
+		SpoolingService service = new SpoolingService(recordingService, directory, 1024 * 1024, 4 * 1024 * 1024, false, 20);
+		service.start();
+		
+		recordingService.error = new Result(Result.Status.ERROR, "HTTP/1.1 503 Service Unavailable", Result.HTTP_STATUS, "503");
+		assertEquals("true", service.send(new Message("Topic", "1")).getProperties().getProperty(SpoolingService.SPOOLED));
+		
+		recordingService.error = new Result(Result.Status.ERROR, "HTTP/1.1 429 Too Many Requests", Result.HTTP_STATUS, "429");
+		assertEquals("true", service.sendAsync(new Message("Topic", "2")).get().getProperties().getProperty(SpoolingService.SPOOLED));
+		
+		// Replay keeps failing , nothing is dropped
+		Thread.sleep(100);
+		assertEquals(2, service.getSpooledCount());
+		
+		recordingService.error = null;
+		waitForReplay(service);
+		assertEquals(Arrays.asList("1", "2"), recordingService.texts);
+		
+		// Rejected message is returned to the caller
+		Result invalid = new Result(Result.Status.ERROR, "Invalid message");
+		recordingService.error = invalid;
+		assertSame(invalid, service.send(new Message("Topic", "3")));
+		assertEquals(0, service.getSpooledCount());
+		
+		// Message spooled because of the failure and rejected on replay is dropped
+		recordingService.error = new Result(Result.Status.ERROR, "HTTP/1.1 502 Bad Gateway", Result.HTTP_STATUS, "502");
+		service.sendBatch(Arrays.asList(new Message("Topic", "4")));
+		recordingService.error = invalid;
+		waitForReplay(service);
+		service.stop();
+		
+		assertEquals(Arrays.asList("1", "2"), recordingService.texts);
+	}
+	
+	/**
+	 * Test that spooled messages are sent after restart
+	 */
+	@Test
+	public void testRestart() throws Exception {
+		
+		SpoolingService service = new SpoolingService(recordingService, directory, 1024 * 1024, 4 * 1024 * 1024, false, 50);
+		service.start();
+		
+		recordingService.fail = true;
+		for(int i = 0; i < 3; i++)
+			service.send(new Message("Topic", "Text " + i));
+		service.stop();
+		assertEquals(0, recordingService.texts.size());
+		
+		recordingService.fail = false;
+		service = new SpoolingService(recordingService, directory, 1024 * 1024, 4 * 1024 * 1024, false, 50);
+		service.start();
+		waitForReplay(service);
+		service.stop();
+		
+		assertEquals(Arrays.asList("Text 0", "Text 1", "Text 2"), recordingService.texts);
+	}
+	
+	/**
+	 * Test that the original error is thrown if the spool is full
+	 */
+	@Test(expected = ServiceException.class)
+	public void testSpoolFull() throws Exception {
+		
+		SpoolingService service = new SpoolingService(recordingService, directory, 1024, 1024, false, 60000);
+		service.start();
+		
+		recordingService.fail = true;
+		try {
+			char[] text = new char[400];
+			Arrays.fill(text, 'a');
+			for(int i = 0; i < 3; i++)
+				service.send(new Message("Topic", new String(text)));
+		} finally {
+			service.stop();
+		}
+	}
+	
+	
+	/**
+	 * Test that the second service spooling in the same directory uses its own subdirectory
+	 */
+	@Test
+	public void testSharedDirectory() throws Exception {
+		
+		SpoolingService first = new SpoolingService(recordingService, directory, 1024 * 1024, 4 * 1024 * 1024, false, 50);
+		SpoolingService second = new SpoolingService(recordingService, directory, 1024 * 1024, 4 * 1024 * 1024, false, 50);
+		first.start();
+		second.start();
+		
+		try {
+			
+			assertEquals(directory, first.getDirectory());
+			assertEquals(new File(directory, SpoolingService.INSTANCE_DIRECTORY_PREFIX + "1"), second.getDirectory());
+			
+			recordingService.fail = true;
+			assertEquals("true", second.send(new Message("Topic", "1")).getProperties().getProperty(SpoolingService.SPOOLED));
+			assertEquals(1, second.getSpooledCount());
+			
+			recordingService.fail = false;
+			waitForReplay(second);
+			assertEquals(Arrays.asList("1"), recordingService.texts);
+			
+		} finally {
+			first.stop();
+			second.stop();
+		}
+	}
+	
+	/**
+	 * Test that messages are sent without spooling if the spool cannot be opened
+	 */
+	@Test
+	public void testSpoolNotOpened() throws Exception {
+		
+		// Spool directory cannot be created under a file
+		assertTrue(directory.createNewFile());
+		SpoolingService service = new SpoolingService(recordingService, new File(directory, "spool"), 1024 * 1024, 4 * 1024 * 1024, false, 50);
+		service.start();
+		
+		assertEquals(Result.Status.OK, service.send(new Message("Topic", "1")).getStatus());
+		
+		recordingService.fail = true;
+		try {
+			service.send(new Message("Topic", "2"));
+			fail("Message is spooled without the spool");
+		} catch(ServiceException e) {
+			assertEquals("Service is not available", e.getMessage());
+		}
+		service.stop();
+	}
+	
+	
+	/*
+	 * Delete file or directory with its content
+	 */
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if(files != null)
+			for(File child : files)
+				delete(child);
+		file.delete();
+	}
+	
+	/*
+	 * Wait until all spooled messages are sent
+	 */
+	private void waitForReplay(SpoolingService service) throws InterruptedException {
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(service.getSpooledCount() > 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(0, service.getSpooledCount());
+	}
+	
+	
+	/**
+	 * Service recording texts of sent messages , or failing
+	 */
+	private static class RecordingService extends ServiceWrapper {
+		
+		private final List<String> texts = new CopyOnWriteArrayList<String>();
+		
+		private volatile boolean fail;
+		
+		private volatile Result error;
+		
+		private RecordingService() {
+			super(null);
+		}
+		
+		@Override
+		public void start() {
+		}
+		
+		@Override
+		public void stop() {
+		}
+		
+		@Override
+		public Result send(Message message) throws ServiceException {
+			if(fail)
+				throw new ServiceException("Service is not available");
+			Result result = error;
+			if(result != null)
+				return result;
+			texts.add(message.getText());
+			return new Result(Result.Status.OK);
+		}
+		
+		@Override
+		public CompletableFuture<Result> sendAsync(Message message) {
+			CompletableFuture<Result> future = new CompletableFuture<Result>();
+			try {
+				future.complete(send(message));
+			} catch(ServiceException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		
+		@Override
+		public List<Result> sendBatch(List<Message> batch) throws ServiceException {
+			List<Result> results = new ArrayList<Result>();
+			for(Message message : batch)
+				results.add(send(message));
+			return results;
+		}
+	}
+}
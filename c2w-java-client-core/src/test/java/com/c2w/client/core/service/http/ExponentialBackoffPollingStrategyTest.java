@@ -0,0 +1,46 @@
+package com.c2w.client.core.service.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.service.http.ExponentialBackoffPollingStrategy}
+ * 
+ * @author ptrvif
+ *
+ */
+public class ExponentialBackoffPollingStrategyTest {
+
+	@Test
+	public void testBackoffWithoutJitter() {
+		
+		PollingStrategy strategy = new ExponentialBackoffPollingStrategy(100, 1000, 2, 0);
+		
+		assertEquals(100, strategy.nextDelay(1));
+		assertEquals(200, strategy.nextDelay(2));
+		assertEquals(400, strategy.nextDelay(3));
+		assertEquals(800, strategy.nextDelay(4));
+		assertEquals(1000, strategy.nextDelay(5));
+		assertEquals(1000, strategy.nextDelay(100));
+	}
+	
+	@Test
+	public void testBackoffWithJitter() {
+		
+		PollingStrategy strategy = new ExponentialBackoffPollingStrategy(100, 1000, 2, 0.5);
+		
+		for(int i = 0; i < 100; i++) {
+			long delay = strategy.nextDelay(2);
+			assertTrue(delay >= 100 && delay <= 300);
+			assertTrue(strategy.nextDelay(10) <= 1000);
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidParameters() {
+		
+		new ExponentialBackoffPollingStrategy(1000, 100, 2, 0);
+	}
+}
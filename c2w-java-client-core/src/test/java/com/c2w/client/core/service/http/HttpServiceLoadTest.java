@@ -0,0 +1,243 @@
+package com.c2w.client.core.service.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.metrics.Histogram;
+import com.c2w.client.core.metrics.MetricsRegistry;
+import com.c2w.client.core.service.Result;
+import com.c2w.client.core.service.memory.LatencyDistribution;
+
+/**
+ * End-to-end test of {@link com.c2w.client.core.service.http.HttpService} against {@link StubServer}.
+ * Messages are sent by concurrent threads through the real connection pool , throughput and latency are logged.
+ * The test is not run by default , run it with 'load-tests' profile
+ */
+public class HttpServiceLoadTest {
+
+	private static Log log = LogFactory.getLog(HttpServiceLoadTest.class);
+
+	private StubServer server;
+
+	private HttpService service;
+
+	private MetricsRegistry metrics;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new StubServer(32);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if(service != null)
+			service.stop();
+		server.stop();
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+
+		start(properties(16));
+
+		LoadResult result = drive("throughput", 16, 100);
+
+		assertEquals(1600, result.ok);
+		assertEquals(1600, server.getMessageCount());
+		assertEquals(1600, server.getStatusCount(200));
+		assertEquals(1600, metrics.counter(HttpMetrics.STATUS + 200).sum());
+		assertEquals(1600, metrics.histogram(HttpMetrics.SEND_LATENCY).getCount());
+		assertTrue(metrics.counter(HttpMetrics.BYTES_SENT).sum() > 0);
+	}
+
+	@Test
+	public void testPoolBoundThroughput() throws Exception {
+
+		// More senders than connections , the senders queue for the pool
+		Properties properties = properties(4);
+		start(properties);
+		server.setLatency(LatencyDistribution.logNormal(2, 10));
+
+		LoadResult result = drive("pool-bound", 16, 50);
+
+		assertEquals(800, result.ok);
+		assertEquals(800, server.getMessageCount());
+		assertTrue(metrics.histogram(HttpMetrics.POOL_WAIT).getMax() > 0);
+		assertTrue(result.latency.getPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(2) / 2);
+	}
+
+	@Test
+	public void testServerFaults() throws Exception {
+
+		start(properties(8));
+		server.setFaultRate(0.1, 503);
+
+		LoadResult result = drive("faults", 8, 100);
+
+		// Failed requests are retried , the retry budget is not limiting
+		assertEquals(800, result.ok);
+		assertEquals(800, server.getMessageCount());
+		assertTrue(server.getStatusCount(503) > 0);
+		assertEquals(server.getStatusCount(503), metrics.counter(HttpMetrics.STATUS + 503).sum());
+		assertEquals(server.getStatusCount(503), service.getRetryPolicy().getRetryCount());
+	}
+
+	@Test
+	public void testThrottling() throws Exception {
+
+		start(properties(8));
+		server.setRateLimit(500, 20);
+
+		long start = System.nanoTime();
+		LoadResult result = drive("throttled", 8, 50);
+		long elapsed = System.nanoTime() - start;
+
+		// Only accepted messages are reported OK , the rest are errors after all attempts
+		assertEquals(server.getMessageCount(), result.ok);
+		assertEquals(400, result.ok + result.errors);
+		assertTrue(server.getStatusCount(429) > 0);
+		assertEquals(server.getStatusCount(429), metrics.counter(HttpMetrics.STATUS + 429).sum());
+
+		// Accepted rate does not exceed the limit
+		assertTrue(result.ok - 20 <= 500 * elapsed / (double) TimeUnit.SECONDS.toNanos(1) + 1);
+	}
+
+	@Test
+	public void testDialog() throws Exception {
+
+		Properties properties = properties(2);
+		properties.setProperty(HttpService.RESPONSE_POLL_INTERVAL, "20");
+		start(properties);
+		server.setResponseDelayMs(100);
+
+		Message message = new Message("Topic", "Restart?");
+		message.setDialogOptions(Arrays.asList("Yes", "No"));
+
+		Result result = service.send(message);
+		assertEquals(Result.Status.OK, result.getStatus());
+
+		long messageId = Long.parseLong(result.getProperties().getProperty("messageId"));
+		List<MessageResponse> responses = service.waitForResponse(messageId, 5);
+
+		assertEquals(1, responses.size());
+		assertEquals(messageId, responses.get(0).getMessageId());
+		assertEquals("Yes", responses.get(0).getRespondedOption());
+		assertTrue(server.getRequestCount() >= 2);
+	}
+
+	/*
+	 * Properties of the service connected to the stub server
+	 */
+	private Properties properties(int connections) {
+
+		Properties properties = new Properties();
+		properties.setProperty(HttpService.SERVER_URL, server.getUrl());
+		properties.setProperty(HttpService.API_TOKEN, "load-test");
+		properties.setProperty(HttpService.API_KEY, "load-test");
+		properties.setProperty(HttpService.POOL_MAX_TOTAL, String.valueOf(connections));
+		properties.setProperty(HttpService.POOL_MAX_PER_ROUTE, String.valueOf(connections));
+		properties.setProperty(HttpService.RETRY_MAX_ATTEMPTS, "5");
+		properties.setProperty(HttpService.RETRY_INITIAL_BACKOFF, "1");
+		properties.setProperty(HttpService.RETRY_MAX_BACKOFF, "10");
+		properties.setProperty(HttpService.RETRY_BUDGET_RATIO, "1");
+
+		return properties;
+	}
+
+	/*
+	 * Start service with own metrics registry
+	 */
+	private void start(Properties properties) throws Exception {
+
+		metrics = new MetricsRegistry("load-test");
+
+		service = new HttpService(properties);
+		service.setMetricsRegistry(metrics);
+		service.start();
+	}
+
+	/*
+	 * Send messages by concurrent threads and log throughput and latency
+	 */
+	private LoadResult drive(String name, int threads, final int messagesPerThread) throws Exception {
+
+		final LoadResult result = new LoadResult();
+		final LongAdder ok = new LongAdder();
+		final LongAdder errors = new LongAdder();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+		long start = System.nanoTime();
+
+		for(int i = 0; i < threads; i++) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for(int j = 0; j < messagesPerThread; j++) {
+						long sent = System.nanoTime();
+						Result sendResult = service.send(new Message("Load", "Message " + j));
+						result.latency.record(System.nanoTime() - sent);
+						if(sendResult.getStatus() == Result.Status.OK)
+							ok.increment();
+						else
+							errors.increment();
+					}
+					return null;
+				}
+			}));
+		}
+
+		for(Future<Void> future : futures)
+			future.get(60, TimeUnit.SECONDS);
+
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+
+		result.ok = ok.sum();
+		result.errors = errors.sum();
+
+		log.info(String.format("%s: %d messages by %d threads in %d ms , %.0f msgs/sec , latency p50 %.2f ms , p99 %.2f ms , p99.9 %.2f ms , max %.2f ms",
+				name, threads * messagesPerThread, threads, TimeUnit.NANOSECONDS.toMillis(elapsed),
+				threads * messagesPerThread * (double) TimeUnit.SECONDS.toNanos(1) / elapsed,
+				millis(result.latency.getPercentile(50)), millis(result.latency.getPercentile(99)),
+				millis(result.latency.getPercentile(99.9)), millis(result.latency.getMax())));
+
+		return result;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Results of a load run
+	 */
+	private static class LoadResult {
+
+		private final Histogram latency = new Histogram();
+
+		private long ok;
+
+		private long errors;
+	}
+}
@@ -2,11 +2,28 @@ package com.c2w.client.core.service.http;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import mockit.Delegate;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
@@ -22,6 +39,7 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -29,6 +47,7 @@ import org.junit.runner.RunWith;
 
 import com.c2w.client.core.message.Message;
 import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.metrics.MetricsRegistry;
 import com.c2w.client.core.service.Result;
 import com.c2w.client.core.service.ServiceException;
 
@@ -67,6 +86,9 @@ public class HttpServiceTest {
 		
 		Logger.getLogger(HttpService.class.getName()).setLevel(Level.OFF);
 		
+		// Ensure credentials from previous test cases are not used
+		System.getProperties().remove(HttpService.API_TOKEN);
+		System.getProperties().remove(HttpService.API_KEY);
 	}
 	
 	@Test
@@ -92,7 +114,7 @@ public class HttpServiceTest {
 			response.getStatusLine(); result = status;
 			status.getStatusCode(); result = HttpStatus.SC_OK;
 			response.getEntity(); result = entity;
-			EntityUtils.toString(entity); result = responseAsString;
+			entity.getContent(); result = new JsonContent(responseAsString);
 		}};
 		
 		HttpService service = new HttpService();
@@ -110,6 +132,259 @@ public class HttpServiceTest {
 	}
 
 	
+	/**
+	 * Test case for metrics recorded by 'send' method
+	 */
+	@Test
+	public void testSendMetrics( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params, 
+			@Mocked final HttpResponse response, @Mocked final StatusLine status, @Mocked final HttpEntity entity, @Mocked final EntityUtils utils) throws Exception {
+		
+		final String responseAsString = "{\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1000\" } }";
+		
+		new NonStrictExpectations() {{
+			
+			httpClient.getParams(); result= params;
+			httpClient.execute(withInstanceOf(HttpPost.class)); result = response;
+			response.getStatusLine(); result = status;
+			status.getStatusCode(); result = HttpStatus.SC_OK;
+			response.getEntity(); result = entity;
+			entity.getContent(); result = new JsonContent(responseAsString);
+		}};
+		
+		MetricsRegistry registry = new MetricsRegistry("test");
+		
+		HttpService service = new HttpService();
+		service.setApiKey(apiKey);
+		service.setApiToken(apiToken);
+		service.setMetricsRegistry(registry);
+		service.send(new Message("Topic", "Text"));
+		
+		Map<String, Number> metrics = registry.snapshot();
+		assertEquals(1L, metrics.get("send.latency.count"));
+		assertEquals(1L, metrics.get("send.results.OK"));
+		assertEquals(0L, metrics.get("send.results.ERROR"));
+		assertEquals(1L, metrics.get("http.status.200"));
+		assertEquals(1L, metrics.get("http.request.latency.count"));
+		assertEquals((long) responseAsString.length(), metrics.get("http.bytes.received"));
+		assertTrue(metrics.containsKey("http.pool.leased"));
+		
+		// Service with the prefix records separate metrics in the same registry
+		HttpService tenant = new HttpService();
+		tenant.setApiKey(apiKey);
+		tenant.setApiToken(apiToken);
+		tenant.setMetricsRegistry(registry);
+		tenant.setMetricsPrefix("service.tenant.");
+		tenant.send(new Message("Topic", "Text"));
+		
+		metrics = registry.snapshot();
+		assertEquals(1L, metrics.get("send.results.OK"));
+		assertEquals(1L, metrics.get("service.tenant.send.results.OK"));
+		assertEquals(1L, metrics.get("service.tenant.http.status.200"));
+		assertTrue(metrics.containsKey("service.tenant.http.pool.leased"));
+	}
+
+	
+	/**
+	 * Test case for 'sendAsync' method
+	 */
+	@Test
+	public void testSendAsync( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params, 
+			@Mocked final HttpResponse response, @Mocked final StatusLine status, @Mocked final HttpEntity entity, @Mocked final EntityUtils utils) throws Exception {
+		
+		final String responseAsString = "{\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1000\" } }";
+		
+		new NonStrictExpectations() {{
+			
+			httpClient.getParams(); result= params;
+			httpClient.execute(withInstanceOf(HttpPost.class)); result = response;
+			response.getStatusLine(); result = status;
+			status.getStatusCode(); result = HttpStatus.SC_OK;
+			response.getEntity(); result = entity;
+			entity.getContent(); result = new JsonContent(responseAsString);
+		}};
+		
+		HttpService service = new HttpService();
+		service.setApiKey(apiKey);
+		service.setApiToken(apiToken);
+		Message message = new Message("Topic", "Text");
+		Result result = service.sendAsync(message).get(10, TimeUnit.SECONDS);
+		assertNotNull(result);
+		assertEquals(result.getStatus(), Result.Status.OK);
+		assertEquals(result.getProperty("messageId"), "1000");
+		
+		new Verifications() {{
+			httpClient.execute(withInstanceOf(HttpPost.class)); times=1;
+		}};
+		
+	}
+	
+	
+	/**
+	 * Test case for 'sendAsync' method when the service cannot be started.
+	 * The expected behavior is exceptionally completed future
+	 */
+	@Test
+	public void testSendAsyncNoCredentials() throws Exception {
+		
+		HttpService service = new HttpService();
+		CompletableFuture<Result> future = service.sendAsync(new Message("Topic", "Text"));
+		assertTrue(future.isCompletedExceptionally());
+		
+		Exception exception = null;
+		try {
+			future.get();
+		} catch(ExecutionException e) {
+			exception = e;
+		}
+		assertNotNull(exception);
+		assertTrue(exception.getCause() instanceof ServiceException);
+	}
+	
+	
+	/**
+	 * Test case for 'sendBatch' method.
+	 * Messages should be split into batches limited by max number of messages
+	 */
+	@Test
+	public void testSendBatch( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params, 
+			@Mocked final HttpResponse response, @Mocked final StatusLine status, @Mocked final HttpEntity entity, @Mocked final EntityUtils utils) throws Exception {
+		
+		final String responseAsString = "[ {\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1000\" } }, " +
+				"{\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1001\" } } ]";
+		
+		new NonStrictExpectations() {{
+			
+			httpClient.getParams(); result= params;
+			httpClient.execute(withInstanceOf(HttpPost.class)); result = response;
+			response.getStatusLine(); result = status;
+			status.getStatusCode(); result = HttpStatus.SC_OK;
+			response.getEntity(); result = entity;
+			entity.getContent(); result = new JsonContent(responseAsString);
+		}};
+		
+		HttpService service = new HttpService();
+		service.setApiKey(apiKey);
+		service.setApiToken(apiToken);
+		service.setBatchMaxMessages(2);
+		List<Message> messages = Arrays.asList(new Message("Topic", "Text 1"), new Message("Topic", "Text 2"), new Message("Topic", "Text 3"));
+		List<Result> results = service.sendBatch(messages);
+		
+		assertEquals(results.size(), 3);
+		assertEquals(results.get(1).getProperty("messageId"), "1001");
+		assertEquals(results.get(2).getProperty("messageId"), "1000");
+		
+		new Verifications() {{
+			httpClient.execute(withInstanceOf(HttpPost.class)); times=2;
+		}};
+	}
+	
+	
+	/**
+	 * Test case for 'sendBatch' method when the service responds with an error.
+	 * The expected behavior is 'ERROR' result for every message
+	 */
+	@Test
+	public void testSendBatchError( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params, 
+			@Mocked final HttpResponse response, @Mocked final StatusLine status, @Mocked final EntityUtils utils) throws Exception {
+		
+		new NonStrictExpectations() {{
+			
+			httpClient.getParams(); result= params;
+			httpClient.execute(withInstanceOf(HttpPost.class)); result = response;
+			response.getStatusLine(); result = status;
+			status.getStatusCode(); result = HttpStatus.SC_SERVICE_UNAVAILABLE;
+		}};
+		
+		HttpService service = new HttpService();
+		service.setApiKey(apiKey);
+		service.setApiToken(apiToken);
+		List<Result> results = service.sendBatch(Arrays.asList(new Message("Topic", "Text 1"), new Message("Topic", "Text 2")));
+		
+		assertEquals(results.size(), 2);
+		assertEquals(results.get(0).getStatus(), Result.Status.ERROR);
+		assertEquals(results.get(1).getStatus(), Result.Status.ERROR);
+		assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, Result.getHttpStatus(results.get(0)));
+		assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, Result.getHttpStatus(results.get(1)));
+	}
+	
+	
+	/**
+	 * Test case for 'send' method when the service is temporarily unavailable.
+	 * The expected behavior is the request retried and every attempt reported to the listener
+	 */
+	@Test
+	public void testSendRetry( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params, 
+			@Mocked final HttpResponse response, @Mocked final StatusLine status, @Mocked final HttpEntity entity, @Mocked final EntityUtils utils) throws Exception {
+		
+		final String responseAsString = "{\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1000\" } }";
+		
+		new NonStrictExpectations() {{
+			
+			httpClient.getParams(); result= params;
+			httpClient.execute(withInstanceOf(HttpPost.class)); result = new ConnectException("Connection refused"); result = response;
+			response.getStatusLine(); result = status;
+			status.getStatusCode(); returns(HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_OK);
+			response.getEntity(); result = entity;
+			entity.getContent(); result = new JsonContent(responseAsString);
+		}};
+		
+		final List<Integer> attempts = new ArrayList<Integer>();
+		
+		HttpService service = new HttpService();
+		service.setApiKey(apiKey);
+		service.setApiToken(apiToken);
+		service.setRetryPolicy(new RetryPolicy(3, 1, 10, 2, 0, 0, 10, RetryPolicy.parseStatusCodes("503")));
+		service.setRequestListener(new RequestListener() {
+			@Override
+			public void onAttempt(String path, int attempt, long durationNanos, int statusCode, Exception failure) {
+				assertEquals("/message/post", path);
+				assertTrue(durationNanos >= 0);
+				attempts.add(statusCode);
+			}
+		});
+		
+		Result result = service.send(new Message("Topic", "Text"));
+		assertEquals(result.getStatus(), Result.Status.OK);
+		assertEquals(Arrays.asList(-1, HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_OK), attempts);
+		assertEquals(2, service.getRetryPolicy().getRetryCount());
+		
+		new Verifications() {{
+			httpClient.execute(withInstanceOf(HttpPost.class)); times=3;
+		}};
+	}
+	
+	
+	/**
+	 * Test case for 'send' method when the failure is not safe to retry.
+	 * The expected behavior is single attempt
+	 */
+	@Test
+	public void testSendNoRetry( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params) throws Exception {
+		
+		new NonStrictExpectations() {{
+			
+			httpClient.getParams(); result= params;
+			httpClient.execute(withInstanceOf(HttpPost.class)); result = new SocketTimeoutException("Read timed out");
+		}};
+		
+		HttpService service = new HttpService();
+		service.setApiKey(apiKey);
+		service.setApiToken(apiToken);
+		service.setRetryPolicy(new RetryPolicy(3, 1, 10, 2, 0, 0, 10, RetryPolicy.parseStatusCodes("503")));
+		
+		try {
+			service.send(new Message("Topic", "Text"));
+			fail("ServiceException expected");
+		} catch(ServiceException e) {
+			assertTrue(e.getCause() instanceof SocketTimeoutException);
+		}
+		
+		new Verifications() {{
+			httpClient.execute(withInstanceOf(HttpPost.class)); times=1;
+		}};
+	}
+	
+	
 	/**
 	 * Test case for 'waitForResponse' method
 	 */
@@ -127,7 +402,7 @@ public class HttpServiceTest {
 			response.getStatusLine(); result = status;
 			status.getStatusCode(); result = HttpStatus.SC_OK;
 			response.getEntity(); result = entity;
-			EntityUtils.toString(entity); result = responseAsString;
+			entity.getContent(); result = new JsonContent(responseAsString);
 		}};
 		
 		HttpService service = new HttpService();
@@ -144,6 +419,74 @@ public class HttpServiceTest {
 	}
 	
 	
+	/**
+	 * Test case for 'awaitResponseAsync' method when several callers wait for the same message
+	 */
+	@Test
+	public void testAwaitResponseAsync( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params, 
+			@Mocked final HttpResponse response, @Mocked final StatusLine status, @Mocked final HttpEntity entity, @Mocked final EntityUtils utils) throws Exception {
+		
+		final String responseAsString = "[ { \"properties\": {},  \"messageId\": 100, \"timestamp\": 1414290538079,  \"respondedOption\": \"Confirm\"," +
+		" \"userId\": \"recipient1@mail.com\", \"channelId\": 5} ]";
+		
+		new NonStrictExpectations() {{
+			
+			httpClient.getParams(); result= params;
+			httpClient.execute(withInstanceOf(HttpGet.class)); result = response;
+			response.getStatusLine(); result = status;
+			status.getStatusCode(); result = HttpStatus.SC_OK;
+			response.getEntity(); result = entity;
+			entity.getContent(); result = new JsonContent("[]"); result = new JsonContent(responseAsString);
+		}};
+		
+		System.setProperty(HttpService.RESPONSE_POLL_INTERVAL, "100");
+		try {
+			HttpService service = new HttpService();
+			service.setApiKey(apiKey);
+			service.setApiToken(apiToken);
+			CompletableFuture<List<MessageResponse>> first = service.awaitResponseAsync(100l, 60);
+			CompletableFuture<List<MessageResponse>> second = service.awaitResponseAsync(100l, 60);
+			
+			assertEquals(first.get(10, TimeUnit.SECONDS).get(0).getRespondedOption() , "Confirm" );
+			assertEquals(second.get(10, TimeUnit.SECONDS).get(0).getRespondedOption() , "Confirm" );
+		} finally {
+			System.getProperties().remove(HttpService.RESPONSE_POLL_INTERVAL);
+		}
+		
+		new Verifications() {{
+			httpClient.execute(withInstanceOf(HttpGet.class)); times=2;
+		}};
+	}
+	
+	
+	/**
+	 * Test case for 'waitForResponse' method when there is no response.
+	 * The expected behavior is empty list after timeout expires
+	 */
+	@Test
+	public void testWaitForResponseTimeout( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params, 
+			@Mocked final HttpResponse response, @Mocked final StatusLine status, @Mocked final HttpEntity entity, @Mocked final EntityUtils utils) throws Exception {
+		
+		new NonStrictExpectations() {{
+			
+			httpClient.getParams(); result= params;
+			httpClient.execute(withInstanceOf(HttpGet.class)); result = response;
+			response.getStatusLine(); result = status;
+			status.getStatusCode(); result = HttpStatus.SC_OK;
+			response.getEntity(); result = entity;
+			entity.getContent(); result = new JsonContent("[]");
+		}};
+		
+		HttpService service = new HttpService();
+		service.setApiKey(apiKey);
+		service.setApiToken(apiToken);
+		List<MessageResponse> responseList = service.waitForResponse(1l, 1);
+		
+		assertNotNull(responseList);
+		assertTrue(responseList.isEmpty());
+	}
+	
+	
 	/**
 	 * Test 'start' method when no credentials are provided
 	 * The expected behavior is thrown Exception
@@ -198,6 +541,36 @@ public class HttpServiceTest {
 	}	
 	
 	
+	/**
+	 * Test 'start' method when credentials are provided in the instance properties.
+	 * The expected behavior is to prefer them to system properties
+	 * @param credentials  mocked object holding user credentials
+	 */
+	@Test
+	public void testStartWithInstanceProperties(@Mocked UsernamePasswordCredentials credentials) throws ServiceException {
+		
+		new NonStrictExpectations() {{
+			 
+		}};
+		
+		System.setProperty(HttpService.API_TOKEN, envApiToken);
+		System.setProperty(HttpService.API_KEY, envApiKey);
+		
+		Properties properties = new Properties();
+		properties.setProperty(HttpService.API_TOKEN, apiToken);
+		properties.setProperty(HttpService.API_KEY, apiKey);
+		
+		HttpService service = new HttpService(properties);
+		service.start();
+		service.stop();
+		
+		new Verifications() {{
+			new UsernamePasswordCredentials(apiToken, apiKey); times=1;
+			new UsernamePasswordCredentials(envApiToken, envApiKey); times=0;
+		}};
+	}	
+	
+	
 	/**
 	 * Test 'start' method when credentials are provided via 'set' method.
 	 * The expected behavior is to use provided credentials
@@ -273,4 +646,182 @@ public class HttpServiceTest {
 			connectionManager.shutdown(); times=1;
 		}};
 	}
+	
+	
+	/**
+	 * Test lifecycle state transitions. 
+	 * Repeated 'start' and 'stop' calls should have no effect , stopped service should be started again by the next request
+	 */
+	@Test
+	public void testLifecycle(@Mocked final DefaultHttpClient httpClient, @Mocked final ClientConnectionManager connectionManager,
+			@Mocked final HttpParams params) throws ServiceException {
+		
+		new NonStrictExpectations() {{
+			httpClient.getParams(); result = params;
+			httpClient.getConnectionManager(); result = connectionManager;
+		}};
+		
+		HttpService service = new HttpService();
+		service.setApiToken(apiToken);
+		service.setApiKey(apiKey);
+		assertEquals(HttpService.State.NEW, service.getState());
+		
+		service.stop();
+		assertEquals(HttpService.State.NEW, service.getState());
+		
+		service.start();
+		service.start();
+		assertEquals(HttpService.State.RUNNING, service.getState());
+		
+		service.stop();
+		service.stop();
+		assertEquals(HttpService.State.STOPPED, service.getState());
+		
+		service.awaitResponseAsync(1000, 0);
+		assertEquals(HttpService.State.RUNNING, service.getState());
+		
+		new Verifications() {{
+			new DefaultHttpClient(withInstanceOf(ClientConnectionManager.class)); times=2;
+			connectionManager.shutdown(); times=1;
+		}};
+	}
+	
+	
+	/**
+	 * Test lazy start by many concurrent requests.
+	 * The expected behavior is a single HTTP client and connection pool
+	 */
+	@Test
+	public void testConcurrentStart(@Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params) throws Exception {
+		
+		new NonStrictExpectations() {{
+			httpClient.getParams(); result = params;
+		}};
+		
+		final HttpService service = new HttpService();
+		service.setApiToken(apiToken);
+		service.setApiKey(apiKey);
+		
+		final CountDownLatch ready = new CountDownLatch(1);
+		List<CompletableFuture<List<MessageResponse>>> futures = new ArrayList<CompletableFuture<List<MessageResponse>>>();
+		for(int i = 0; i < 16; i++) {
+			final long messageId = i;
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					ready.await();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return service.awaitResponseAsync(messageId, 0);
+			}).thenCompose(future -> future));
+		}
+		ready.countDown();
+		
+		for(CompletableFuture<List<MessageResponse>> future : futures)
+			assertNotNull(future.get(10, TimeUnit.SECONDS));
+		assertEquals(HttpService.State.RUNNING, service.getState());
+		
+		new Verifications() {{
+			new DefaultHttpClient(withInstanceOf(ClientConnectionManager.class)); times=1;
+		}};
+	}
+	
+	
+	/**
+	 * Test that 'stop' waits for in-flight asynchronous requests and rejects new ones
+	 */
+	@Test
+	public void testStopDrainsInFlightRequests( @Mocked final DefaultHttpClient httpClient, @Mocked final HttpParams params, 
+			@Mocked final ClientConnectionManager connectionManager, @Mocked final HttpResponse response, 
+			@Mocked final StatusLine status, @Mocked final HttpEntity entity) throws Exception {
+		
+		final String responseAsString = "{\"status\": \"OK\", \"response\": \"Message accepted\", \"properties\": { \"messageId\": \"1000\" } }";
+		
+		new NonStrictExpectations() {{
+			httpClient.getParams(); result = params;
+			httpClient.getConnectionManager(); result = connectionManager;
+			httpClient.execute(withInstanceOf(HttpPost.class)); result = new Delegate<HttpResponse>() {
+				@SuppressWarnings("unused")
+				HttpResponse execute(HttpPost post) throws InterruptedException {
+					Thread.sleep(200);
+					return response;
+				}
+			};
+			response.getStatusLine(); result = status;
+			status.getStatusCode(); result = HttpStatus.SC_OK;
+			response.getEntity(); result = entity;
+			entity.getContent(); result = new JsonContent(responseAsString);
+		}};
+		
+		HttpService service = new HttpService();
+		service.setApiKey(apiKey);
+		service.setApiToken(apiToken);
+		service.setAsyncThreads(1);
+		service.setStopTimeoutMs(10000);
+		service.start();
+		
+		List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+		for(int i = 0; i < 3; i++)
+			futures.add(service.sendAsync(new Message("Topic", "Text")));
+		
+		service.stop();
+		assertEquals(HttpService.State.STOPPED, service.getState());
+		
+		for(CompletableFuture<Result> future : futures) {
+			assertTrue(future.isDone());
+			assertEquals(Result.Status.OK, future.get().getStatus());
+		}
+		
+		new Verifications() {{
+			connectionManager.shutdown(); times=1;
+		}};
+	}
+	
+	
+	/**
+	 * Test that connection pool is configured from system properties
+	 */
+	@Test
+	public void testPoolConfiguration() throws ServiceException {
+		
+		System.setProperty(HttpService.POOL_MAX_TOTAL, "20");
+		System.setProperty(HttpService.POOL_MAX_PER_ROUTE, "5");
+		try {
+			HttpService service = new HttpService();
+			service.setApiToken(apiToken);
+			service.setApiKey(apiKey);
+			assertNull(service.getPoolStats());
+			
+			service.start();
+			PoolStats stats = service.getPoolStats();
+			assertEquals(20, stats.getMax());
+			assertEquals(0, stats.getLeased());
+			assertEquals(0, stats.getPending());
+			service.stop();
+			
+			// Closed pool is not reported
+			assertNull(service.getPoolStats());
+		} finally {
+			System.getProperties().remove(HttpService.POOL_MAX_TOTAL);
+			System.getProperties().remove(HttpService.POOL_MAX_PER_ROUTE);
+		}
+	}
+	
+	
+	/**
+	 * Delegate providing fresh JSON content stream for every call of mocked 'HttpEntity.getContent()' method
+	 */
+	private static class JsonContent implements Delegate<InputStream> {
+		
+		private final String content;
+		
+		private JsonContent(String content) {
+			this.content = content;
+		}
+		
+		@SuppressWarnings("unused")
+		InputStream getContent() throws IOException {
+			return new ByteArrayInputStream(content.getBytes("UTF-8"));
+		}
+	}
 }
@@ -0,0 +1,81 @@
+package com.c2w.client.core.service.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.service.http.JsonEntity}
+ * 
+ * @author ptrvif
+ *
+ */
+public class JsonEntityTest {
+
+	private ObjectMapper mapper = new ObjectMapper();
+	
+	/**
+	 * Test that entity writes the same JSON every time and does not close the target stream
+	 */
+	@Test
+	public void testWriteTo() throws IOException {
+		
+		Message message = new Message("Topic ä", "Text €");
+		JsonEntity entity = new JsonEntity(mapper.writerWithType(Message.class), message);
+		
+		final boolean[] closed = new boolean[1];
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		
+		entity.writeTo(out);
+		assertFalse(closed[0]);
+		
+		String json = out.toString("UTF-8");
+		assertEquals(mapper.writeValueAsString(message), json);
+		
+		// Entity is sent with known length
+		assertFalse(entity.isChunked());
+		assertEquals(out.size(), entity.getContentLength());
+		
+		// Entity is repeatable
+		assertTrue(entity.isRepeatable());
+		assertEquals(json, EntityUtils.toString(entity, "UTF-8"));
+		
+		Message parsed = mapper.readValue(json, Message.class);
+		assertEquals("Topic ä", parsed.getTopic());
+		assertEquals("Text €", parsed.getText());
+	}
+	
+	/**
+	 * Test that message larger than the retained buffer is sent with its length and keeps its content
+	 * when the thread creates the next entity
+	 */
+	@Test
+	public void testLargeMessage() throws IOException {
+		
+		StringBuilder text = new StringBuilder();
+		while(text.length() <= JsonEntity.MAX_RETAINED_BUFFER)
+			text.append("Text of a large message ");
+		
+		Message message = new Message("Topic", text.toString());
+		JsonEntity entity = new JsonEntity(mapper.writerWithType(Message.class), message);
+		new JsonEntity(mapper.writerWithType(Message.class), new Message("Topic", "Text"));
+		
+		String json = mapper.writeValueAsString(message);
+		assertEquals(json.getBytes("UTF-8").length, entity.getContentLength());
+		assertEquals(json, EntityUtils.toString(entity, "UTF-8"));
+	}
+}
@@ -0,0 +1,110 @@
+package com.c2w.client.core.service.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.service.ServiceException;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.service.http.ResponsePoller}
+ *
+ * @author ptrvif
+ *
+ */
+public class ResponsePollerTest {
+
+	/**
+	 * Waiters must be completed at their deadline even if the poll of their message never returns
+	 */
+	@Test
+	public void testTimeoutWhileFetchHangs() throws Exception {
+
+		final CountDownLatch release = new CountDownLatch(1);
+		HttpService service = new HttpService() {
+			@Override
+			ResponsePoller.Poll fetchResponses(long messageId) throws Exception {
+				release.await();
+				return new ResponsePoller.Poll(null, -1);
+			}
+		};
+
+		ResponsePoller poller = new ResponsePoller(service, new FixedPollingStrategy(100), 1);
+		try {
+			CompletableFuture<List<MessageResponse>> hung = poller.await(1l, 1);
+			CompletableFuture<List<MessageResponse>> queued = poller.await(2l, 1);
+
+			assertTrue(hung.get(3, TimeUnit.SECONDS).isEmpty());
+			assertTrue(queued.get(3, TimeUnit.SECONDS).isEmpty());
+			assertEquals(0, poller.getPendingCount());
+		} finally {
+			release.countDown();
+			poller.shutdown();
+		}
+	}
+
+	/**
+	 * Failed poll is retried instead of failing the waiters
+	 */
+	@Test
+	public void testRetryAfterFetchError() throws Exception {
+
+		final AtomicInteger fetches = new AtomicInteger();
+		HttpService service = new HttpService() {
+			@Override
+			ResponsePoller.Poll fetchResponses(long messageId) throws Exception {
+				if(fetches.incrementAndGet() == 1)
+					throw new SocketTimeoutException("Read timed out");
+				return new ResponsePoller.Poll(Arrays.asList(new MessageResponse(messageId, 0, "Confirm", "user", 1)), -1);
+			}
+		};
+
+		ResponsePoller poller = new ResponsePoller(service, new FixedPollingStrategy(50), 2);
+		try {
+			List<MessageResponse> responses = poller.await(1l, 10).get(5, TimeUnit.SECONDS);
+
+			assertEquals("Confirm", responses.get(0).getRespondedOption());
+			assertEquals(2, fetches.get());
+		} finally {
+			poller.shutdown();
+		}
+	}
+
+	/**
+	 * Waiter whose timeout expires after failed polls gets the error of the last poll
+	 */
+	@Test
+	public void testTimeoutAfterFetchError() throws Exception {
+
+		HttpService service = new HttpService() {
+			@Override
+			ResponsePoller.Poll fetchResponses(long messageId) throws Exception {
+				throw new IOException("Connection reset");
+			}
+		};
+
+		ResponsePoller poller = new ResponsePoller(service, new FixedPollingStrategy(50), 2);
+		try {
+			poller.await(1l, 1).get(3, TimeUnit.SECONDS);
+			fail("Error of the last poll expected");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof ServiceException);
+			assertTrue(e.getCause().getCause() instanceof IOException);
+		} finally {
+			poller.shutdown();
+		}
+	}
+}
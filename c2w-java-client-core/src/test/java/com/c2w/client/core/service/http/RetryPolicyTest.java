@@ -0,0 +1,112 @@
+package com.c2w.client.core.service.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.junit.Test;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.service.http.RetryPolicy}
+ * 
+ * @author ptrvif
+ *
+ */
+public class RetryPolicyTest {
+
+	@Test
+	public void testRetryableFailures() {
+		
+		RetryPolicy policy = new RetryPolicy(3, 0, 0, 1, 0, 0, 10, RetryPolicy.parseStatusCodes("503, 429"));
+		
+		assertTrue(policy.shouldRetry(503, 1));
+		assertTrue(policy.shouldRetry(429, 1));
+		assertFalse(policy.shouldRetry(500, 1));
+		assertTrue(policy.shouldRetry(new ConnectException(), 1));
+		assertTrue(policy.shouldRetry(new ConnectionPoolTimeoutException(), 1));
+		
+		// The request might be processed by the server
+		assertFalse(policy.shouldRetry(new SocketTimeoutException(), 1));
+		assertFalse(policy.shouldRetry(new IOException(), 1));
+		
+		// No attempts left
+		assertFalse(policy.shouldRetry(503, 3));
+		
+		assertEquals(4, policy.getRetryCount());
+	}
+	
+	@Test
+	public void testBudget() {
+		
+		// Budget is earned by requests only
+		RetryPolicy policy = new RetryPolicy(3, 0, 0, 1, 0, 0.5, 0, RetryPolicy.parseStatusCodes("503"));
+		
+		assertFalse(policy.shouldRetry(503, 1));
+		assertEquals(1, policy.getBudgetExhaustedCount());
+		
+		policy.onRequest();
+		policy.onRequest();
+		assertEquals(1, policy.getAvailableRetries());
+		assertTrue(policy.shouldRetry(503, 1));
+		assertFalse(policy.shouldRetry(503, 1));
+		assertEquals(1, policy.getRetryCount());
+		assertEquals(2, policy.getBudgetExhaustedCount());
+	}
+	
+	@Test
+	public void testBudgetRefill() throws Exception {
+		
+		RetryPolicy policy = new RetryPolicy(3, 0, 0, 1, 0, 0, 100, RetryPolicy.parseStatusCodes("503"));
+		
+		while(policy.shouldRetry(503, 1));
+		
+		Thread.sleep(100);
+		assertTrue(policy.shouldRetry(503, 1));
+	}
+	
+	@Test
+	public void testBackoff() {
+		
+		RetryPolicy policy = new RetryPolicy(5, 100, 1000, 2, 0, 0, 0, RetryPolicy.parseStatusCodes(RetryPolicy.DEFAULT_STATUS_CODES));
+		
+		assertEquals(100, policy.getBackoff(1, -1));
+		assertEquals(200, policy.getBackoff(2, -1));
+		
+		// Server hint is honored up to max backoff
+		assertEquals(500, policy.getBackoff(1, 500));
+		assertEquals(1000, policy.getBackoff(1, 5000));
+	}
+	
+	@Test
+	public void testDefaultStatusCodes() {
+		
+		RetryPolicy policy = new RetryPolicy(3, 0, 0, 1, 0, 0, 10, RetryPolicy.parseStatusCodes(RetryPolicy.DEFAULT_STATUS_CODES));
+		
+		assertTrue(policy.shouldRetry(429, 1));
+		assertTrue(policy.shouldRetry(503, 1));
+		
+		// Gateway errors may come after the message is accepted
+		assertFalse(policy.shouldRetry(502, 1));
+		assertFalse(policy.shouldRetry(504, 1));
+	}
+	
+	@Test
+	public void testNone() {
+		
+		RetryPolicy policy = RetryPolicy.none();
+		
+		assertFalse(policy.shouldRetry(503, 1));
+		assertFalse(policy.shouldRetry(new ConnectException(), 1));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidStatusCodes() {
+		
+		RetryPolicy.parseStatusCodes("503,abc");
+	}
+}
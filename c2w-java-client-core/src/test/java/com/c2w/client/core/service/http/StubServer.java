@@ -0,0 +1,326 @@
+package com.c2w.client.core.service.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.c2w.client.core.limit.TokenBucket;
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.service.Result;
+import com.c2w.client.core.service.memory.LatencyDistribution;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stub of the Corp2World REST service for end-to-end tests of {@link HttpService}.
+ * <p>
+ * The server implements '/message/post' , '/message/batch' and '/message/response' resources with the same JSON as
+ * the real service: accepted messages get sequential IDs in {@link Result} 'messageId' property and dialog messages are
+ * answered with their first option in {@link MessageResponse} lists. Every request can be delayed by the latency taken
+ * from a {@link LatencyDistribution}, requests exceeding the rate limit are rejected with 429 and 'fault rate' of
+ * requests fail with 5xx status.
+ * </p>
+ */
+public class StubServer {
+
+	/*
+	 * JSON mapper , unknown properties of the client messages are ignored
+	 */
+	private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	private final HttpServer server;
+
+	private final ExecutorService executor;
+
+	/*
+	 * Generator of message IDs
+	 */
+	private final AtomicLong nextId = new AtomicLong();
+
+	/*
+	 * Accepted dialog messages by ID
+	 */
+	private final Map<Long, Dialog> dialogs = new ConcurrentHashMap<Long, Dialog>();
+
+	/*
+	 * Statistics
+	 */
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder messages = new LongAdder();
+
+	private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<Integer, LongAdder>();
+
+	/*
+	 * Injected behaviour
+	 */
+	private volatile LatencyDistribution latency = LatencyDistribution.none();
+
+	private volatile TokenBucket rateLimit;
+
+	private volatile double faultRate;
+
+	private volatile int faultStatus = 503;
+
+	private volatile long responseDelayMs;
+
+
+	/**
+	 * Start server on a free local port
+	 * @param threads number of threads serving requests
+	 * @throws IOException if the server cannot be started
+	 */
+	public StubServer(int threads) throws IOException {
+
+		// Response headers and body are written separately , avoid delayed ACK stalls on loopback
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+		server.createContext("/rest/message/post", new StubHandler() {
+			@Override
+			protected Object handle(HttpExchange exchange, byte[] body) throws IOException {
+				return accept(mapper.readValue(body, Message.class));
+			}
+		});
+
+		server.createContext("/rest/message/batch", new StubHandler() {
+			@Override
+			protected Object handle(HttpExchange exchange, byte[] body) throws IOException {
+				List<Message> batch = mapper.readValue(body, new TypeReference<List<Message>>(){});
+				List<Result> results = new ArrayList<Result>(batch.size());
+				for(Message message : batch)
+					results.add(accept(message));
+				return results;
+			}
+		});
+
+		server.createContext("/rest/message/response", new StubHandler() {
+			@Override
+			protected Object handle(HttpExchange exchange, byte[] body) {
+				String query = exchange.getRequestURI().getQuery();
+				long messageId = Long.parseLong(query.substring(query.indexOf("messageId=") + "messageId=".length()));
+				Dialog dialog = dialogs.get(messageId);
+				if(dialog == null || System.currentTimeMillis() < dialog.answerTime)
+					return Collections.emptyList();
+				return Collections.singletonList(new MessageResponse(messageId, dialog.answerTime, dialog.option, "stub", 1));
+			}
+		});
+
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Get service URL of this server
+	 * @return URL
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/rest";
+	}
+
+	/**
+	 * Set latency added to every request
+	 * @param latency latency distribution
+	 */
+	public void setLatency(LatencyDistribution latency) {
+		this.latency = latency != null ? latency : LatencyDistribution.none();
+	}
+
+	/**
+	 * Limit rate of requests , requests over the limit are rejected with 429 status
+	 * @param ratePerSecond max number of requests per second , 0 to remove the limit
+	 * @param burst max number of requests above the rate
+	 */
+	public void setRateLimit(double ratePerSecond, int burst) {
+		this.rateLimit = ratePerSecond > 0 ? new TokenBucket(ratePerSecond, burst) : null;
+	}
+
+	/**
+	 * Set fraction of requests failed with the fault status
+	 * @param faultRate rate from 0 to 1
+	 * @param faultStatus HTTP status of failed requests , e.g. 503
+	 */
+	public void setFaultRate(double faultRate, int faultStatus) {
+		this.faultRate = faultRate;
+		this.faultStatus = faultStatus;
+	}
+
+	/**
+	 * Set delay of answers to dialog messages
+	 * @param responseDelayMs delay in milliseconds
+	 */
+	public void setResponseDelayMs(long responseDelayMs) {
+		this.responseDelayMs = responseDelayMs;
+	}
+
+	/**
+	 * Get number of received requests
+	 * @return number of requests
+	 */
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	/**
+	 * Get number of accepted messages
+	 * @return number of messages
+	 */
+	public long getMessageCount() {
+		return messages.sum();
+	}
+
+	/**
+	 * Get number of responses with the given HTTP status
+	 * @param statusCode HTTP status code
+	 * @return number of responses
+	 */
+	public long getStatusCount(int statusCode) {
+		LongAdder counter = statusCodes.get(statusCode);
+		return counter != null ? counter.sum() : 0;
+	}
+
+	/**
+	 * Stop server
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/*
+	 * Accept message , the dialog message is answered after the response delay
+	 */
+	private Result accept(Message message) {
+
+		long id = nextId.incrementAndGet();
+		messages.increment();
+
+		if(message.getDialogOptions() != null && !message.getDialogOptions().isEmpty())
+			dialogs.put(id, new Dialog(message.getDialogOptions().get(0), System.currentTimeMillis() + responseDelayMs));
+
+		return new Result(Result.Status.OK, "Message accepted", "messageId", String.valueOf(id));
+	}
+
+	/*
+	 * Count response status
+	 */
+	private void count(int statusCode) {
+		LongAdder counter = statusCodes.get(statusCode);
+		if(counter == null) {
+			statusCodes.putIfAbsent(statusCode, new LongAdder());
+			counter = statusCodes.get(statusCode);
+		}
+		counter.increment();
+	}
+
+
+	/**
+	 * Handler applying injected latency and faults , then answering with JSON
+	 */
+	private abstract class StubHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+
+			requests.increment();
+
+			try {
+
+				// Read the whole request , as the real server does
+				byte[] body = readBody(exchange.getRequestBody());
+
+				long delay = latency.nextNanos();
+				if(delay > 0)
+					LockSupport.parkNanos(delay);
+
+				TokenBucket bucket = rateLimit;
+				if(bucket != null && !bucket.tryAcquire()) {
+					send(exchange, 429, null);
+					return;
+				}
+
+				if(faultRate > 0 && ThreadLocalRandom.current().nextDouble() < faultRate) {
+					send(exchange, faultStatus, null);
+					return;
+				}
+
+				send(exchange, 200, mapper.writeValueAsBytes(handle(exchange, body)));
+
+			} catch(RuntimeException e) {
+				send(exchange, 500, null);
+			}
+		}
+
+		/**
+		 * Handle request
+		 * @param exchange HTTP exchange
+		 * @param body request body
+		 * @return response object serialized to JSON
+		 * @throws IOException if the request cannot be parsed
+		 */
+		protected abstract Object handle(HttpExchange exchange, byte[] body) throws IOException;
+
+		private void send(HttpExchange exchange, int statusCode, byte[] content) throws IOException {
+
+			count(statusCode);
+
+			if(content == null) {
+				exchange.sendResponseHeaders(statusCode, -1);
+				exchange.close();
+				return;
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(statusCode, content.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(content);
+			out.close();
+		}
+
+		private byte[] readBody(InputStream in) throws IOException {
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for(int count; (count = in.read(buffer)) >= 0; )
+				body.write(buffer, 0, count);
+			in.close();
+
+			return body.toByteArray();
+		}
+	}
+
+	/**
+	 * Dialog message waiting for the answer
+	 */
+	private static class Dialog {
+
+		private final String option;
+
+		private final long answerTime;
+
+		private Dialog(String option, long answerTime) {
+			this.option = option;
+			this.answerTime = answerTime;
+		}
+	}
+}
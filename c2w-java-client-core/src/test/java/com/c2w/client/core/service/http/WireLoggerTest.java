@@ -0,0 +1,70 @@
+package com.c2w.client.core.service.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit test for {@link com.c2w.client.core.service.http.WireLogger} class
+ */
+public class WireLoggerTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void testTruncate() throws Exception {
+		
+		char[] text = new char[5000];
+		Arrays.fill(text, 'x');
+		Message message = new Message("Topic", new String(text));
+		
+		String logged = new WireLogger(100, 1, false).format(mapper, message);
+		assertTrue(logged, logged.startsWith("{"));
+		assertTrue(logged, logged.endsWith(" chars)"));
+		assertEquals(100, logged.indexOf("..."));
+		
+		byte[] body = "[{\"topic\":\"Topic\"}]".getBytes("UTF-8");
+		assertEquals("[{\"topic\":\"Topic\"}]", new WireLogger(100, 1, false).format(mapper, body, body.length));
+		assertEquals("[{\"to... (19 bytes)", new WireLogger(5, 1, false).format(body));
+	}
+	
+	@Test
+	public void testRedactRecipients() throws Exception {
+		
+		Map<Long, List<String>> recipients = new HashMap<Long, List<String>>();
+		recipients.put(1L, Collections.singletonList("user@example.com"));
+		Message message = new Message("Topic", "Text");
+		message.setChannelRecipients(recipients);
+		
+		String logged = new WireLogger(2048, 1, false).format(mapper, message);
+		assertTrue(logged, logged.contains("user@example.com"));
+		
+		logged = new WireLogger(2048, 1, true).format(mapper, message);
+		assertFalse(logged, logged.contains("user@example.com"));
+		assertTrue(logged, logged.contains("\"1\":\"***\""));
+		assertTrue(logged, logged.contains("\"text\":\"Text\""));
+		
+		// Every message of the batch is redacted
+		byte[] batch = ("[" + mapper.writeValueAsString(message) + "," + mapper.writeValueAsString(message) + "]").getBytes("UTF-8");
+		logged = new WireLogger(4096, 1, true).format(mapper, batch, batch.length);
+		assertFalse(logged, logged.contains("user@example.com"));
+	}
+	
+	@Test
+	public void testSampleDisabled() {
+		
+		// Nothing is sampled with zero rate , even if the wire logger is enabled
+		assertFalse(new WireLogger(2048, 0, false).sample());
+	}
+}
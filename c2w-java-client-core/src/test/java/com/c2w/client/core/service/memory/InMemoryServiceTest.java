@@ -0,0 +1,174 @@
+package com.c2w.client.core.service.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageResponse;
+import com.c2w.client.core.service.Result;
+import com.c2w.client.core.service.Service;
+import com.c2w.client.core.service.ServiceException;
+import com.c2w.client.core.service.ServiceFactory;
+
+/**
+ * Unit test for {@link com.c2w.client.core.service.memory.InMemoryService} class
+ */
+public class InMemoryServiceTest {
+
+	@Test
+	public void testSend() throws Exception {
+		
+		InMemoryService service = new InMemoryService();
+		
+		Message first = new Message("Topic", "First");
+		Message second = new Message("Topic", "Second");
+		
+		Result result = service.send(first);
+		assertEquals(Result.Status.OK, result.getStatus());
+		assertEquals("1", result.getProperties().getProperty(InMemoryService.MESSAGE_ID));
+		
+		List<Result> results = service.sendBatch(Arrays.asList(second, second));
+		assertEquals("3", results.get(1).getProperties().getProperty(InMemoryService.MESSAGE_ID));
+		
+		assertEquals("4", service.sendAsync(first).get().getProperties().getProperty(InMemoryService.MESSAGE_ID));
+		
+		List<InMemoryService.SentMessage> sent = service.getSentMessages();
+		assertEquals(4, sent.size());
+		assertSame(first, sent.get(0).getMessage());
+		assertEquals(2, sent.get(1).getId());
+		assertEquals(4, service.getSentCount());
+		
+		// Only the last messages are recorded
+		service.setMaxRecorded(2);
+		service.send(second);
+		assertEquals(2, service.getSentMessages().size());
+		assertEquals(5, service.getSentMessages().get(1).getId());
+		
+		service.reset();
+		assertEquals(0, service.getSentCount());
+		assertTrue(service.getSentMessages().isEmpty());
+	}
+	
+	@Test
+	public void testSimulatedLatencyAndErrors() throws Exception {
+		
+		InMemoryService service = new InMemoryService();
+		service.setLatency(LatencyDistribution.fixed(20));
+		
+		long start = System.nanoTime();
+		service.send(new Message("Topic", "Text"));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+		
+		CompletableFuture<Result> future = service.sendAsync(new Message("Topic", "Text"));
+		assertEquals(Result.Status.OK, future.get(1, TimeUnit.SECONDS).getStatus());
+		
+		service.setLatency(LatencyDistribution.none());
+		service.setErrorRate(1);
+		assertEquals(Result.Status.ERROR, service.send(new Message("Topic", "Text")).getStatus());
+		assertEquals(1, service.getErrorCount());
+		
+		service.setFailureRate(1);
+		try {
+			service.send(new Message("Topic", "Text"));
+			fail("Simulated failure expected");
+		} catch(ServiceException e) {
+			assertEquals(1, service.getFailureCount());
+		}
+		
+		service.stop();
+	}
+	
+	@Test
+	public void testDialogResponses() throws Exception {
+		
+		InMemoryService service = new InMemoryService();
+		service.setResponseDelayMs(50);
+		
+		Message dialog = new Message("Topic", "Approve?");
+		dialog.addDialogOption("Yes");
+		dialog.addDialogOption("No");
+		
+		long id = Long.parseLong(service.send(dialog).getProperties().getProperty(InMemoryService.MESSAGE_ID));
+		
+		List<MessageResponse> responses = service.waitForResponse(id, 5);
+		assertEquals(1, responses.size());
+		assertEquals("Yes", responses.get(0).getRespondedOption());
+		assertEquals(id, responses.get(0).getMessageId());
+		
+		// Messages without responses time out with empty list
+		assertTrue(service.waitForResponse(id + 100, 1).isEmpty());
+		
+		service.stop();
+	}
+	
+	@Test
+	public void testResponsesRemoved() throws Exception {
+		
+		InMemoryService service = new InMemoryService();
+		service.setResponseDelayMs(-1);
+		service.setMaxRecorded(2);
+		
+		// Wait for unknown message leaves nothing behind
+		assertTrue(service.awaitResponseAsync(100, 1).get(5, TimeUnit.SECONDS).isEmpty());
+		assertEquals(0, service.getResponseCount());
+		
+		Message dialog = new Message("Topic", "Approve?");
+		dialog.addDialogOption("Yes");
+		long id = Long.parseLong(service.send(dialog).getProperties().getProperty(InMemoryService.MESSAGE_ID));
+		
+		CompletableFuture<List<MessageResponse>> future = service.awaitResponseAsync(id, 60);
+		assertEquals(1, service.getResponseCount());
+		
+		service.respond(id, new MessageResponse(id, System.currentTimeMillis(), "Yes", "user", 1));
+		assertEquals("Yes", future.get(5, TimeUnit.SECONDS).get(0).getRespondedOption());
+		
+		// Responses are kept while the message is recorded
+		assertEquals(1, service.waitForResponse(id, 1).size());
+		assertEquals(1, service.getResponseCount());
+		
+		service.send(new Message("Topic", "Text 1"));
+		service.send(new Message("Topic", "Text 2"));
+		assertEquals(0, service.getResponseCount());
+		
+		service.stop();
+	}
+	
+	@Test
+	public void testProvider() throws ServiceException {
+		
+		Properties properties = new Properties();
+		properties.setProperty(ServiceFactory.PROVIDER, InMemoryServiceProvider.NAME);
+		properties.setProperty(InMemoryService.LATENCY, "lognormal:1:10");
+		
+		Service service = ServiceFactory.createService(properties);
+		assertTrue(service instanceof InMemoryService);
+		assertEquals(Result.Status.OK, service.send(new Message("Topic", "Text")).getStatus());
+	}
+	
+	@Test
+	public void testParseLatency() {
+		
+		assertEquals("none", LatencyDistribution.parse(null).toString());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(5), LatencyDistribution.parse("fixed:5").nextNanos());
+		
+		long nanos = LatencyDistribution.parse("uniform:1:2").nextNanos();
+		assertTrue(nanos >= TimeUnit.MILLISECONDS.toNanos(1) && nanos <= TimeUnit.MILLISECONDS.toNanos(2));
+		
+		try {
+			LatencyDistribution.parse("gaussian:5");
+			fail("Invalid distribution must be rejected");
+		} catch(IllegalArgumentException e) {
+			// Expected
+		}
+	}
+}
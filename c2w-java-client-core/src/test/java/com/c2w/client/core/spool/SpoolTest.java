@@ -0,0 +1,216 @@
+package com.c2w.client.core.spool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test case for {@link com.c2w.client.core.spool.Spool}
+ */
+public class SpoolTest {
+
+	private File directory;
+	
+	private Spool spool;
+	
+	@Before
+	public void setUp() throws IOException {
+		Logger.getLogger(Spool.class.getName()).setLevel(Level.OFF);
+		directory = File.createTempFile("c2w-spool", "");
+		directory.delete();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		if(spool != null)
+			spool.close();
+		File[] files = directory.listFiles();
+		if(files != null)
+			for(File file : files)
+				file.delete();
+		directory.delete();
+	}
+	
+	/**
+	 * Test that records are removed in order of adding
+	 */
+	@Test
+	public void testOrder() throws IOException {
+		
+		spool = new Spool(directory, 1024, 4096, false);
+		assertTrue(spool.isEmpty());
+		assertNull(spool.peek());
+		assertFalse(spool.remove());
+		
+		for(int i = 0; i < 3; i++)
+			assertTrue(spool.append(record(i, 10)));
+		assertEquals(3, spool.size());
+		
+		for(int i = 0; i < 3; i++) {
+			assertArrayEquals(record(i, 10), spool.peek());
+			assertArrayEquals(record(i, 10), spool.peek());
+			assertTrue(spool.remove());
+		}
+		assertTrue(spool.isEmpty());
+	}
+	
+	/**
+	 * Test that new segments are started when the last one is full , consumed segments are deleted 
+	 * and records are rejected when the size limit is reached
+	 */
+	@Test
+	public void testSegments() throws IOException {
+		
+		// 9 records of 108 bytes fit into a segment
+		spool = new Spool(directory, 1024, 3072, false);
+		
+		int added = 0;
+		while(spool.append(record(added, 100)))
+			added++;
+		assertEquals(27, added);
+		assertEquals(3072, spool.getBytes());
+		assertEquals(3, segmentFiles());
+		
+		// Records larger than a segment never fit
+		assertFalse(spool.append(new byte[1024]));
+		
+		for(int i = 0; i < 10; i++) {
+			assertArrayEquals(record(i, 100), spool.peek());
+			spool.remove();
+		}
+		assertEquals(2, segmentFiles());
+		
+		// Space of the consumed segment is reused
+		assertTrue(spool.append(record(added, 100)));
+		assertEquals(3, segmentFiles());
+		
+		for(int i = 10; i <= added; i++) {
+			assertArrayEquals(record(i, 100), spool.peek());
+			spool.remove();
+		}
+		assertTrue(spool.isEmpty());
+	}
+	
+	/**
+	 * Test that records and the position of the oldest unconsumed record are recovered after restart
+	 */
+	@Test
+	public void testRecovery() throws IOException {
+		
+		spool = new Spool(directory, 1024, 8192, false);
+		for(int i = 0; i < 20; i++)
+			spool.append(record(i, 100));
+		for(int i = 0; i < 12; i++)
+			spool.remove();
+		spool.close();
+		
+		spool = new Spool(directory, 1024, 8192, false);
+		assertEquals(8, spool.size());
+		assertArrayEquals(record(12, 100), spool.peek());
+		
+		// New records follow the recovered ones
+		spool.append(record(20, 100));
+		for(int i = 12; i <= 20; i++) {
+			assertArrayEquals(record(i, 100), spool.peek());
+			spool.remove();
+		}
+		assertTrue(spool.isEmpty());
+	}
+	
+	/**
+	 * Test that a damaged record and records after it are dropped on recovery , 
+	 * and new records are not mixed with damaged data
+	 */
+	@Test
+	public void testDamagedRecord() throws IOException {
+		
+		spool = new Spool(directory, 1024, 8192, false);
+		for(int i = 0; i < 5; i++)
+			spool.append(record(i, 100));
+		spool.close();
+		spool = null;
+		
+		// Damage data of the 4th record
+		RandomAccessFile file = new RandomAccessFile(directory.listFiles(segmentFilter())[0], "rw");
+		file.seek(8 + 3 * 108 + 8 + 50);
+		file.write(0xFF);
+		file.close();
+		
+		spool = new Spool(directory, 1024, 8192, false);
+		assertEquals(3, spool.size());
+		
+		spool.append(record(5, 100));
+		assertEquals(2, segmentFiles());
+		
+		for(int i : new int[] {0, 1, 2, 5}) {
+			assertArrayEquals(record(i, 100), spool.peek());
+			spool.remove();
+		}
+		assertTrue(spool.isEmpty());
+	}
+	
+	/**
+	 * Test that the spool directory is used by one spool at a time
+	 */
+	@Test(expected = IOException.class)
+	public void testLock() throws IOException {
+		
+		spool = new Spool(directory, 1024, 8192, false);
+		new Spool(directory, 1024, 8192, false);
+	}
+	
+	/**
+	 * Test that empty record is rejected , it would end the records of the segment when the spool is reopened
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyRecord() throws IOException {
+		
+		spool = new Spool(directory, 1024, 8192, false);
+		spool.append(new byte[0]);
+	}
+	
+	
+	/*
+	 * Create record with the number at the beginning
+	 */
+	private static byte[] record(int number, int length) {
+		
+		byte[] data = new byte[length];
+		for(int i = 0; i < length; i++)
+			data[i] = (byte) (number + i);
+		data[0] = (byte) number;
+		return data;
+	}
+	
+	/*
+	 * Count segment files
+	 */
+	private int segmentFiles() {
+		return directory.listFiles(segmentFilter()).length;
+	}
+	
+	/*
+	 * Filter of segment files
+	 */
+	private static FileFilter segmentFilter() {
+		return new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(Spool.SEGMENT_SUFFIX);
+			}
+		};
+	}
+}
@@ -1,17 +1,33 @@
 package com.c2w.client.log4j;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
 import org.apache.log4j.PatternLayout;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.LoggingEvent;
 
 import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageBatch;
+import com.c2w.client.core.metrics.Gauge;
+import com.c2w.client.core.metrics.MetricsRegistry;
+import com.c2w.client.core.queue.BlockingEventQueue;
+import com.c2w.client.core.queue.EventOrdering;
+import com.c2w.client.core.queue.EventQueue;
+import com.c2w.client.core.queue.OverflowHandler;
+import com.c2w.client.core.queue.OverflowPolicy;
+import com.c2w.client.core.service.CircuitBreakerService;
+import com.c2w.client.core.service.CircuitOpenException;
+import com.c2w.client.core.service.DeduplicatingService;
+import com.c2w.client.core.service.RateLimitingService;
 import com.c2w.client.core.service.Service;
 import com.c2w.client.core.service.ServiceException;
+import com.c2w.client.core.service.SpoolingService;
 import com.c2w.client.core.service.http.HttpService;
 
 /**
@@ -23,7 +39,28 @@ import com.c2w.client.core.service.http.HttpService;
  * It uses internal in-memory buffer to send logging events messages asynchronously.
  * </p>
  * <p>
- * If internal buffer is full, all incoming logging events will be ignored. 
+ * If internal buffer is full, incoming logging events are handled according to OverflowPolicy: 
+ * DROP_NEWEST (default) ignores them, DROP_OLDEST drops the oldest waiting events instead, 
+ * BLOCK_WITH_TIMEOUT makes the logging thread wait up to OverflowTimeoutMs for free space and 
+ * DROP_BELOW_LEVEL ignores events below OverflowLevel (ERROR by default) while the buffer is nearly full 
+ * and keeps the more important ones. Dropped events are counted and reported periodically.
+ * </p>
+ * <p>
+ * If MaxBatchEvents is greater than 1 , events waiting in the buffer are sent as a single message: 
+ * the publisher thread takes all available events (waiting up to LingerMs for more) until MaxBatchEvents 
+ * or MaxBatchBytes of message text is reached and concatenates their texts.
+ * </p>
+ * <p>
+ * By default a single publisher thread sends messages, so delivery rate is limited by the round trip time 
+ * to the service. With PublisherThreads greater than 1 several threads send messages in parallel over 
+ * the pooled connections of the service. Their order is not kept unless Ordering is LOGGER or TOPIC: 
+ * then every publisher thread has its own part of the buffer and events of the same logger or 
+ * with the same topic are always published by the same thread.
+ * </p>
+ * <p>
+ * If SpoolDir is specified, messages which cannot be sent, e.g. while the service is not reachable, are kept 
+ * in files in this directory and sent in order as soon as the service is available, also after restart. 
+ * Size of the spool is limited by 'com.c2w.service.spool.*' system properties.
  * </p>
  * 
  * Configuration example:
@@ -36,6 +73,12 @@ import com.c2w.client.core.service.http.HttpService;
  * log4j.appender.C2W.ApiToken=<your api token>
  * log4j.appender.C2W.ApiKey=<your api key>
  * log4j.appender.C2W.BufferSize=100
+ * log4j.appender.C2W.MaxBatchEvents=100
+ * log4j.appender.C2W.LingerMs=200
+ * log4j.appender.C2W.OverflowPolicy=DROP_BELOW_LEVEL
+ * log4j.appender.C2W.PublisherThreads=4
+ * log4j.appender.C2W.Ordering=LOGGER
+ * log4j.appender.C2W.SpoolDir=/var/spool/myapp/c2w
  * log4j.appender.C2W.TopicPattern=Log %-5p Message
  * log4j.appender.C2W.Layout=org.apache.log4j.PatternLayout
  * log4j.appender.C2W.Layout.ConversionPattern=%d %p [%t] %c{10} (%M:%L) - %m%n
@@ -54,15 +97,61 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 	public static final int DEFAULT_QUEUE_SIZE = 1000;
 	
 	/**
-	 * Blocking queue to hold events
-	 * Serves as an internal buffer for asynchronous message publishing
+	 * Queue size
+	 */
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	
+	/**
+	 * Max number of events sent in a single message, 1 disables batching
 	 */
-	private BlockingQueue<LoggingEvent> eventQueue;
+	private int maxBatchEvents = 1;
 	
 	/**
-	 * Queue size
+	 * Max size of a single message text in bytes when batching
 	 */
-	private int queueSize = DEFAULT_QUEUE_SIZE;
+	private int maxBatchBytes = MessageBatch.DEFAULT_MAX_BYTES;
+	
+	/**
+	 * Max time in milliseconds to wait for more events when batching
+	 */
+	private long lingerMs = 0;
+	
+	/**
+	 * What to do with events if the queue is full
+	 */
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+	
+	/**
+	 * Max time in milliseconds to wait for free space in the queue with BLOCK_WITH_TIMEOUT policy
+	 */
+	private long overflowTimeoutMs = OverflowHandler.DEFAULT_TIMEOUT_MS;
+	
+	/**
+	 * Min level of events kept with DROP_BELOW_LEVEL policy
+	 */
+	private Level overflowLevel = Level.ERROR;
+	
+	/**
+	 * Number of publisher threads
+	 */
+	private int publisherThreads = 1;
+	
+	/**
+	 * Order of events kept by several publisher threads
+	 */
+	private EventOrdering ordering = EventOrdering.NONE;
+	
+	/**
+	 * Queues to hold events , one shared by all publisher threads or one per thread if the order is kept.
+	 * Serve as an internal buffer for asynchronous message publishing , 
+	 * every queue is accessed through the handler applying the overflow policy
+	 */
+	private List<OverflowHandler<LoggingEvent>> partitions;
+	
+	/**
+	 * Directory of the spool of undelivered messages , null if disabled
+	 */
+	private String spoolDir;
 	
 	/**
 	 * Corp2World Service instance
@@ -70,9 +159,9 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 	private Service service;
 	
 	/**
-	 * Internal message publishing thread
+	 * Internal message publishing threads
 	 */
-	private Thread publisherThread;
+	private final List<Thread> publishers = new ArrayList<Thread>();
 	
 	/**
 	 * Flag to control publisher thread
@@ -89,6 +178,12 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 	 */
 	private PatternLayout topicLayout;
 	
+	/**
+	 * Copy of the topic layout used by logging threads to partition events by topic , 
+	 * so they do not contend with publisher threads for the topic layout
+	 */
+	private PatternLayout partitionLayout;
+	
 	/**
 	 * Create new appender instance
 	 */
@@ -116,8 +211,11 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 			if(isRunning)
 				isRunning = false;
 			
-			if(publisherThread != null)
+			for(Thread publisherThread : publishers)
 				publisherThread.interrupt();
+			publishers.clear();
+			
+			unregisterMetrics();
 			
 			if(service != null)
 				service.stop();
@@ -154,14 +252,19 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 			/*
 			 * Initialize buffer queue
 			 */
-			if(eventQueue == null || eventQueue.size() != queueSize)
-				eventQueue = new ArrayBlockingQueue<LoggingEvent>(queueSize);
+			if(!isRunning)
+				partitions = createPartitions();
 		
 			/*
 			 * Start publisher thread
 			 */
 			startPublisherThread();
 			
+			/*
+			 * Report queue depth and dropped events
+			 */
+			registerMetrics();
+			
 		} catch(ServiceException e) {
 			LogLog.error("Cannot initialize Corp2World service. Appender will be disabled.");
 		}
@@ -182,16 +285,10 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 		if(isRunning) {
 			
 			/*
-			 * Try to offer the event to the queue
+			 * Offer the event to the queue , if the queue is full the event is handled according to the overflow policy 
+			 * and counted if dropped
 			 */
-			if(! eventQueue.offer(loggingEvent) ) {
-				
-				/*
-				 * If queue is full , print warning
-				 */
-				LogLog.warn("The internal logging event buffer queue is full. Most likely the messages are not sent to the Corp2Wrold service. " +
-						"PLese check the appender configuration");
-			}
+			getPartition(loggingEvent).offer(loggingEvent, loggingEvent.getLevel().isGreaterOrEqual(overflowLevel));
 		}
 	}
 
@@ -208,6 +305,185 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 	}
 
 	
+	/**
+	 * Set max number of logging events sent in a single message.
+	 * Values greater than 1 enable batching
+	 * @param maxBatchEvents max number of events
+	 */
+	public void setMaxBatchEvents(int maxBatchEvents) {
+		this.maxBatchEvents = maxBatchEvents;
+	}
+	
+	
+	/**
+	 * Set max size of a single message text in bytes when batching
+	 * @param maxBatchBytes max size in bytes
+	 */
+	public void setMaxBatchBytes(int maxBatchBytes) {
+		this.maxBatchBytes = maxBatchBytes;
+	}
+	
+	
+	/**
+	 * Set max time in milliseconds to wait for more events when batching.
+	 * 0 means only events already waiting in the buffer are sent together
+	 * @param lingerMs linger time in milliseconds
+	 */
+	public void setLingerMs(long lingerMs) {
+		this.lingerMs = lingerMs;
+	}
+	
+	
+	/**
+	 * Set what to do with logging events if the queue is full: 
+	 * DROP_NEWEST (default), DROP_OLDEST, BLOCK_WITH_TIMEOUT or DROP_BELOW_LEVEL
+	 * @param overflowPolicy overflow policy name
+	 */
+	public void setOverflowPolicy(String overflowPolicy) {
+		
+		try {
+			this.overflowPolicy = OverflowPolicy.parse(overflowPolicy);
+		} catch(IllegalArgumentException e) {
+			LogLog.error("Invalid Corp2World appender configuration: " + e.getMessage() + ". Events will be dropped if the buffer is full.");
+		}
+	}
+	
+	
+	/**
+	 * Set max time in milliseconds the logging thread waits for free space in the queue 
+	 * with BLOCK_WITH_TIMEOUT policy
+	 * @param overflowTimeoutMs timeout in milliseconds
+	 */
+	public void setOverflowTimeoutMs(long overflowTimeoutMs) {
+		this.overflowTimeoutMs = overflowTimeoutMs;
+	}
+	
+	
+	/**
+	 * Set min level of logging events kept with DROP_BELOW_LEVEL policy , ERROR by default
+	 * @param overflowLevel level name
+	 */
+	public void setOverflowLevel(String overflowLevel) {
+		this.overflowLevel = Level.toLevel(overflowLevel, Level.ERROR);
+	}
+	
+	
+	/**
+	 * Set number of threads publishing messages in parallel
+	 * @param publisherThreads number of threads
+	 */
+	public void setPublisherThreads(int publisherThreads) {
+		this.publisherThreads = Math.max(1, publisherThreads);
+	}
+	
+	
+	/**
+	 * Set order of events kept by several publisher threads: NONE (default), LOGGER or TOPIC
+	 * @param ordering event ordering name
+	 */
+	public void setOrdering(String ordering) {
+		
+		try {
+			this.ordering = EventOrdering.parse(ordering);
+		} catch(IllegalArgumentException e) {
+			LogLog.error("Invalid Corp2World appender configuration: " + e.getMessage() + ". Events will be published in any order.");
+		}
+	}
+	
+	
+	/**
+	 * Get number of logging events waiting in the queues
+	 * @return number of queued events
+	 */
+	public long getQueueDepth() {
+		
+		long depth = 0;
+		if(partitions != null)
+			for(OverflowHandler<LoggingEvent> partition : partitions)
+				depth += partition.getQueue().size();
+		return depth;
+	}
+	
+	
+	/**
+	 * Register gauges of the queue depth and dropped events in the default metrics registry 
+	 * as 'appender.&lt;name&gt;.queueDepth' and 'appender.&lt;name&gt;.dropped'
+	 */
+	protected void registerMetrics() {
+		
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		
+		queueDepthGauge = new Gauge() {
+			@Override
+			public long getValue() {
+				return getQueueDepth();
+			}
+		};
+		droppedGauge = new Gauge() {
+			@Override
+			public long getValue() {
+				return getDroppedCount();
+			}
+		};
+		
+		registry.gauge(getMetricPrefix() + "queueDepth", queueDepthGauge);
+		registry.gauge(getMetricPrefix() + "dropped", droppedGauge);
+	}
+	
+	
+	/**
+	 * Remove gauges of this appender from the default metrics registry , 
+	 * gauges of the same name registered by another appender are kept
+	 */
+	protected void unregisterMetrics() {
+		
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		if(queueDepthGauge != null)
+			registry.remove(getMetricPrefix() + "queueDepth", queueDepthGauge);
+		if(droppedGauge != null)
+			registry.remove(getMetricPrefix() + "dropped", droppedGauge);
+	}
+	
+	
+	/*
+	 * Gauges registered by this appender
+	 */
+	private Gauge queueDepthGauge;
+	
+	private Gauge droppedGauge;
+	
+	
+	/*
+	 * Prefix of metric names of this appender and its service
+	 */
+	private String getMetricPrefix() {
+		return "appender." + (getName() != null ? getName() : "Corp2World") + ".";
+	}
+	
+	
+	/**
+	 * Get number of logging events dropped because the queue was full
+	 * @return number of dropped events
+	 */
+	public long getDroppedCount() {
+		
+		long count = 0;
+		if(partitions != null)
+			for(OverflowHandler<LoggingEvent> partition : partitions)
+				count += partition.getDroppedCount();
+		return count;
+	}
+	
+	
+	/**
+	 * Set directory to keep messages which cannot be sent , spooling is disabled if not set
+	 * @param spoolDir spool directory
+	 */
+	public void setSpoolDir(String spoolDir) {
+		this.spoolDir = spoolDir;
+	}
+	
+	
 	/**
 	 * Set Corp2World API access token.
 	 * This value will override the value provided in system properties (if any)
@@ -235,6 +511,7 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 	 */
 	public void setTopicPattern(String pattern) {
 		this.topicLayout = new PatternLayout(pattern);
+		this.partitionLayout = new PatternLayout(pattern);
 	}
 	
 	
@@ -245,17 +522,59 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 	
 		if(!isRunning) {
 
-			publisherThread = new PublisherThread();
-			
-			publisherThread.setDaemon(true);
-
 			isRunning = true;
-
-			publisherThread.start();
+			
+			for(int i = 0; i < publisherThreads; i++) {
+				
+				// Every thread consumes its own queue if the order is kept
+				Thread publisherThread = new PublisherThread(partitions.get(i % partitions.size()));
+				
+				publisherThread.setDaemon(true);
+				
+				publishers.add(publisherThread);
+				
+				publisherThread.start();
+			}
 		}
 	}
 	
 	
+	/**
+	 * Create event queues with their overflow handlers: a single queue if the order is not kept , 
+	 * otherwise a queue per publisher thread sharing the configured size
+	 * @return queue handlers
+	 */
+	protected List<OverflowHandler<LoggingEvent>> createPartitions() {
+		
+		int count = ordering == EventOrdering.NONE ? 1 : publisherThreads;
+		int capacity = Math.max(1, (queueSize + count - 1) / count);
+		
+		List<OverflowHandler<LoggingEvent>> queues = new ArrayList<OverflowHandler<LoggingEvent>>(count);
+		for(int i = 0; i < count; i++)
+			queues.add(new OverflowHandler<LoggingEvent>(new BlockingEventQueue<LoggingEvent>(capacity), overflowPolicy, 
+					overflowTimeoutMs, OverflowHandler.DEFAULT_REPORT_INTERVAL_MS));
+		
+		return queues;
+	}
+	
+	
+	/**
+	 * Get queue the logging event is added to according to the event ordering
+	 * @param event logging event
+	 * @return queue handler
+	 */
+	protected OverflowHandler<LoggingEvent> getPartition(LoggingEvent event) {
+		
+		if(partitions.size() == 1)
+			return partitions.get(0);
+		
+		if(ordering == EventOrdering.TOPIC)
+			return partitions.get(EventOrdering.partition(formatPartitionKey(event), partitions.size()));
+		
+		return partitions.get(EventOrdering.partition(event.getLoggerName(), partitions.size()));
+	}
+	
+	
 	/**
 	 * Get service instance
 	 * @return Corp2World service instance
@@ -271,8 +590,21 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 		else
 			synchronized(this) {
 				if(service == null) {
-					service = new HttpService();
-					service.start();
+					HttpService httpService = new HttpService();
+					httpService.setMetricsPrefix(getMetricPrefix());
+					
+					Service created = httpService;
+					if(Boolean.getBoolean(CircuitBreakerService.ENABLED))
+						created = new CircuitBreakerService(created);
+					if(spoolDir != null && spoolDir.trim().length() > 0)
+						created = new SpoolingService(created, new File(spoolDir.trim()));
+					if(Boolean.getBoolean(RateLimitingService.ENABLED))
+						created = new RateLimitingService(created);
+					if(Boolean.getBoolean(DeduplicatingService.ENABLED))
+						created = new DeduplicatingService(created);
+					
+					created.start();
+					service = created;
 				}
 			}
 		
@@ -285,22 +617,114 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 	 * @param event logging event
 	 */
 	protected void publishMessage(LoggingEvent event) {
+		
+		send(new Message(formatTopic(event), formatText(event)));
+	}
+	
+	
+	/**
+	 * This method publishes the given logging event and events waiting in the buffer 
+	 * to Corp2World service as a single message
+	 * @param first the first logging event of the batch
+	 * @param eventQueue queue to take more events from
+	 * @throws InterruptedException if publisher thread is interrupted while waiting for events, 
+	 * events gathered so far are published
+	 */
+	protected void publishBatch(LoggingEvent first, EventQueue<LoggingEvent> eventQueue) throws InterruptedException {
+		
+		MessageBatch batch = new MessageBatch(maxBatchEvents, maxBatchBytes);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+		
+		try {
+			
+			LoggingEvent event = first;
+			
+			while(event != null) {
+				
+				String messageTopic = formatTopic(event);
+				String messageText = formatText(event);
+				
+				// Send full batch and start the next one with this event
+				if(!batch.add(messageTopic, messageText)) {
+					send(batch.toMessage());
+					batch.clear();
+					batch.add(messageTopic, messageText);
+				}
+				
+				if(batch.isFull())
+					break;
+				
+				// Take the next available event , or wait for it until linger time expires
+				event = eventQueue.poll();
+				if(event == null) {
+					long remaining = deadline - System.nanoTime();
+					if(remaining > 0)
+						event = eventQueue.poll(remaining, TimeUnit.NANOSECONDS);
+				}
+			}
+			
+		} finally {
+			if(!batch.isEmpty())
+				send(batch.toMessage());
+		}
+	}
+	
+	
+	/**
+	 * Format message topic of the logging event.
+	 * Layouts of log4j are not thread safe , publisher threads share the topic layout under its lock
+	 * @param event logging event
+	 * @return topic
+	 */
+	protected String formatTopic(LoggingEvent event) {
 
-		String messageTopic = null;
-		if(topicLayout != null)
-			messageTopic = topicLayout.format(event);
-		else
-			messageTopic = topic;
+		PatternLayout currentLayout = topicLayout;
+		if(currentLayout == null)
+			return topic;
+		
+		synchronized(currentLayout) {
+			return currentLayout.format(event);
+		}
+	}
+	
+	
+	/**
+	 * Format topic of the logging event to select its queue , by the copy of the topic layout
+	 * @param event logging event
+	 * @return topic
+	 */
+	protected String formatPartitionKey(LoggingEvent event) {
 		
+		PatternLayout currentLayout = partitionLayout;
+		if(currentLayout == null)
+			return topic;
+		
+		synchronized(currentLayout) {
+			return currentLayout.format(event);
+		}
+	}
+	
+	
+	/**
+	 * Format message text of the logging event
+	 * @param event logging event
+	 * @return text
+	 */
+	protected String formatText(LoggingEvent event) {
 		
 		StringBuilder messageText = new StringBuilder();
+		Layout currentLayout = layout;
 		
-		if(layout != null) 
-			messageText = new StringBuilder ( layout.format(event) );
+		// Layout is shared by publisher threads
+		if(currentLayout != null) {
+			synchronized(currentLayout) {
+				messageText.append(currentLayout.format(event));
+			}
+		}
 		else
 			messageText.append(event.getRenderedMessage());
 			
-		if(layout == null || layout.ignoresThrowable()) {
+		if(currentLayout == null || currentLayout.ignoresThrowable()) {
 			String[] s = event.getThrowableStrRep();
 			if (s != null) {
 				int len = s.length;
@@ -311,9 +735,32 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 			}
 		}
 		
+		return messageText.toString();
+	}
+	
+	
+	/**
+	 * Report logging events dropped since the last report
+	 * @param count number of dropped events
+	 */
+	protected void reportDropped(long count) {
+		
+		if(count > 0)
+			LogLog.warn(count + " logging events were dropped because the internal buffer queue is full (overflow policy " + 
+					overflowPolicy + "). Most likely the messages are not sent to the Corp2World service fast enough. " +
+					"Please check the appender configuration");
+	}
+	
+	
+	/*
+	 * Send message to Corp2World service
+	 */
+	private void send(Message message) {
+		
 		try {
-			Message message = new Message(messageTopic, messageText.toString());
 			getService().send(message);
+		}catch(CircuitOpenException e) {
+			// Rejected messages are counted by the circuit breaker , which reports when it opens and closes
 		}catch(ServiceException e) {
 			LogLog.error("Cannot send message to Corp2World service: " + e.getMessage(), e);
 		}
@@ -325,19 +772,43 @@ public class Corp2WorldAppender extends AppenderSkeleton {
 	 *
 	 */
 	private class PublisherThread extends Thread {
+		
+		/*
+		 * Queue consumed by this thread
+		 */
+		private final OverflowHandler<LoggingEvent> partition;
+		
+		private PublisherThread(OverflowHandler<LoggingEvent> partition) {
+			this.partition = partition;
+		}
 
 		public void run() {
 			
+			EventQueue<LoggingEvent> eventQueue = partition.getQueue();
+			
 			while(isRunning) {
 				
 				try {
-					publishMessage( eventQueue.take() );
+					
+					// Wake up regularly to report dropped events
+					LoggingEvent event = eventQueue.poll(OverflowHandler.DEFAULT_REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+					
+					if(event != null) {
+						if(maxBatchEvents > 1)
+							publishBatch(event, eventQueue);
+						else
+							publishMessage(event);
+					}
+					
 				}catch(InterruptedException e) {
 					LogLog.debug("Internal publisher thread is interrupted");
 				}
 				
+				reportDropped(partition.checkDropped());
 			}
 			
+			reportDropped(partition.flushDropped());
+			
 			LogLog.debug("Terminating internal publisher thread");
 		}
 	}
@@ -2,7 +2,12 @@ package com.c2w.client.log4j;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import mockit.Mocked;
+import mockit.NonStrictExpectations;
 import mockit.Verifications;
 import mockit.integration.junit4.JMockit;
 
@@ -16,6 +21,7 @@ import org.junit.runner.RunWith;
 
 import com.c2w.client.core.message.Message;
 import com.c2w.client.core.service.ServiceException;
+import com.c2w.client.core.service.SpoolingService;
 import com.c2w.client.core.service.http.HttpService;
 
 /**
@@ -111,6 +117,124 @@ public class Corp2WorldAppenderTest {
 		
 	}
 
+	@Test
+	public void testAppendBatch() throws ServiceException {
+
+		LoggingEvent event = new LoggingEvent("com.c2w.client.log4j.Corp2WorldAppenderTest", 
+				Logger.getLogger(Corp2WorldAppenderTest.class), Level.ERROR, "Test ERROR message", null);
+
+		appender.setTopicPattern(topicPattern);
+		appender.setLayout(new PatternLayout(pattern));
+		appender.setMaxBatchEvents(10);
+		appender.setLingerMs(500);
+
+		appender.activateOptions();
+		for(int i = 0; i < 5; i++)
+			appender.append(event);
+		
+		try {
+			Thread.sleep(1500);
+		} catch (InterruptedException e) {
+		}
+		
+		appender.close();
+		
+		new Verifications() {{
+			service.send(withInstanceOf(Message.class)); times=1;
+		}};
+		
+	}
+
+	@Test
+	public void testAppendParallel() throws ServiceException {
+
+		appender.setTopicPattern(topicPattern);
+		appender.setLayout(new PatternLayout(pattern));
+		appender.setPublisherThreads(4);
+		appender.setOrdering("LOGGER");
+
+		appender.activateOptions();
+		for(int i = 0; i < 12; i++)
+			appender.append(new LoggingEvent("com.c2w.client.log4j.Corp2WorldAppenderTest", 
+					Logger.getLogger("com.c2w.client.log4j.Logger" + (i % 3)), Level.ERROR, "Test ERROR message " + i, null));
+		
+		try {
+			Thread.sleep(1000);
+		} catch (InterruptedException e) {
+		}
+		
+		appender.close();
+		
+		assertEquals(0, appender.getDroppedCount());
+		new Verifications() {{
+			service.send(withInstanceOf(Message.class)); times=12;
+		}};
+		
+	}
+
+	@Test
+	public void testFormatConcurrently() throws Exception {
+
+		// Publisher threads and logging threads share the layouts
+		appender.setTopicPattern("%m topic");
+		appender.setLayout(new PatternLayout("%m text"));
+		
+		final AtomicInteger garbled = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for(int i = 0; i < 2000; i++) {
+						String message = "Message " + thread + "-" + i;
+						LoggingEvent event = new LoggingEvent("com.c2w.client.log4j.Corp2WorldAppenderTest", 
+								Logger.getLogger(Corp2WorldAppenderTest.class), Level.ERROR, message, null);
+						if(!(message + " topic").equals(appender.formatTopic(event)) || !(message + " topic").equals(appender.formatPartitionKey(event)) 
+								|| !(message + " text").equals(appender.formatText(event)))
+							garbled.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		
+		assertEquals(0, garbled.get());
+	}
+
+	@Test
+	public void testAppendSpooled() throws Exception {
+
+		File spoolDir = File.createTempFile("c2w-spool", "");
+		spoolDir.delete();
+		
+		new NonStrictExpectations() {{
+			service.send(withInstanceOf(Message.class)); result = new ServiceException("Service is not available");
+		}};
+		
+		LoggingEvent event = new LoggingEvent("com.c2w.client.log4j.Corp2WorldAppenderTest", 
+				Logger.getLogger(Corp2WorldAppenderTest.class), Level.ERROR, "Test ERROR message", null);
+
+		appender.setSpoolDir(spoolDir.getPath());
+		appender.activateOptions();
+		appender.append(event);
+		
+		try {
+			Thread.sleep(1000);
+		} catch (InterruptedException e) {
+		}
+		
+		SpoolingService spoolingService = (SpoolingService) appender.getService();
+		assertEquals(1, spoolingService.getSpooledCount());
+		
+		appender.close();
+		
+		for(File file : spoolDir.listFiles())
+			file.delete();
+		spoolDir.delete();
+	}
+
 	@Test
 	public void testSetBufferSize() {
 		appender.setBufferSize(1000);
@@ -1,13 +1,17 @@
 package com.c2w.client.log4j2;
 
+import java.io.File;
 import java.io.Serializable;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
@@ -17,8 +21,21 @@ import org.apache.logging.log4j.core.util.Booleans;
 import org.apache.logging.log4j.core.util.Integers;
 
 import com.c2w.client.core.message.Message;
+import com.c2w.client.core.message.MessageBatch;
+import com.c2w.client.core.metrics.Gauge;
+import com.c2w.client.core.metrics.MetricsRegistry;
+import com.c2w.client.core.queue.EventOrdering;
+import com.c2w.client.core.queue.EventQueue;
+import com.c2w.client.core.queue.EventQueueFactory;
+import com.c2w.client.core.queue.OverflowHandler;
+import com.c2w.client.core.queue.OverflowPolicy;
+import com.c2w.client.core.service.CircuitBreakerService;
+import com.c2w.client.core.service.CircuitOpenException;
+import com.c2w.client.core.service.DeduplicatingService;
+import com.c2w.client.core.service.RateLimitingService;
 import com.c2w.client.core.service.Service;
 import com.c2w.client.core.service.ServiceException;
+import com.c2w.client.core.service.SpoolingService;
 import com.c2w.client.core.service.http.HttpService;
 
 /**
@@ -30,7 +47,38 @@ import com.c2w.client.core.service.http.HttpService;
  * It uses internal in-memory buffer to send logging events messages asynchronously.
  * </p>
  * <p>
- * If internal buffer is full, all incoming logging events will be ignored. 
+ * If internal buffer is full, incoming logging events are handled according to 'overflowPolicy': 
+ * "DROP_NEWEST" (default) ignores them, "DROP_OLDEST" drops the oldest waiting events instead, 
+ * "BLOCK_WITH_TIMEOUT" makes the logging thread wait up to overflowTimeoutMs for free space and 
+ * "DROP_BELOW_LEVEL" ignores events less specific than 'overflowLevel' (ERROR by default) while the buffer is 
+ * nearly full and keeps the more important ones. Dropped events are counted and reported periodically.
+ * </p>
+ * <p>
+ * By default the buffer is a blocking queue guarded by a single lock. With queueType="ringBuffer" it is a lock-free 
+ * ring buffer , so many threads logging at the same time do not serialize on the appender. The publisher thread 
+ * waits for events in the ring buffer according to 'waitStrategy': "sleeping" (default, spins and parks for a short time), 
+ * "blocking" (sleeps until signaled, lowest CPU usage), "yielding" or "busySpin" (lowest latency, keep a CPU core busy).
+ * </p>
+ * <p>
+ * If maxBatchEvents is greater than 1 , events waiting in the buffer are sent as a single message: 
+ * the publisher thread takes all available events (waiting up to lingerMs for more) until maxBatchEvents 
+ * or maxBatchBytes of message text is reached and concatenates their texts.
+ * </p>
+ * <p>
+ * By default a single publisher thread sends messages, so delivery rate is limited by the round trip time 
+ * to the service. With publisherThreads greater than 1 several threads send messages in parallel over 
+ * the pooled connections of the service. Their order is not kept unless 'ordering' is "LOGGER" or "TOPIC": 
+ * then every publisher thread has its own part of the buffer and events of the same logger or 
+ * with the same topic are always published by the same thread.
+ * </p>
+ * <p>
+ * If 'spoolDir' is specified, messages which cannot be sent, e.g. while the service is not reachable, are kept 
+ * in files in this directory and sent in order as soon as the service is available, also after restart. 
+ * Size of the spool is limited by 'com.c2w.service.spool.*' system properties.
+ * </p>
+ * <p>
+ * Topic and text are rendered into buffers reused by the publisher thread, so formatting an event 
+ * allocates nothing but the outgoing message.
  * </p>
  * 
  * Configuration example:
@@ -45,7 +93,15 @@ import com.c2w.client.core.service.http.HttpService;
     	  apiToken="<your api token>"
     	  apiKey="<your api key>"
     	  topicPattern="Log  %-5p Message"
-    	  bufferSize="100" >
+    	  bufferSize="100"
+    	  queueType="ringBuffer"
+    	  waitStrategy="sleeping"
+    	  maxBatchEvents="100"
+    	  lingerMs="200"
+    	  overflowPolicy="DROP_BELOW_LEVEL"
+    	  publisherThreads="4"
+    	  ordering="LOGGER"
+    	  spoolDir="/var/spool/myapp/c2w" >
     	  <PatternLayout pattern="%d %-5p [%t] %C{2} (%F:%L) - %m%n"/>
       </Corp2World>
     </Appenders>
@@ -81,15 +137,66 @@ public class Corp2WorldAppender extends AbstractAppender {
 	public static final int DEFAULT_QUEUE_SIZE = 1000;
 	
 	/**
-	 * Blocking queue to hold events
-	 * Serves as an internal buffer for asynchronous message publishing
+	 * Queue size
 	 */
-	private BlockingQueue<LogEvent> eventQueue;
+	private int queueSize = DEFAULT_QUEUE_SIZE;
 	
 	/**
-	 * Queue size
+	 * Queue type
 	 */
-	private int queueSize = DEFAULT_QUEUE_SIZE;
+	private String queueType = EventQueueFactory.BLOCKING;
+	
+	/**
+	 * Publisher thread wait strategy, used by ring buffer queue
+	 */
+	private String waitStrategy = EventQueueFactory.WAIT_SLEEPING;
+	
+	/**
+	 * Max number of events sent in a single message, 1 disables batching
+	 */
+	private int maxBatchEvents = 1;
+	
+	/**
+	 * Max size of a single message text in bytes when batching
+	 */
+	private int maxBatchBytes = MessageBatch.DEFAULT_MAX_BYTES;
+	
+	/**
+	 * Max time in milliseconds to wait for more events when batching
+	 */
+	private long lingerMs = 0;
+	
+	/**
+	 * What to do with events if the queue is full
+	 */
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+	
+	/**
+	 * Max time in milliseconds to wait for free space in the queue with BLOCK_WITH_TIMEOUT policy
+	 */
+	private long overflowTimeoutMs = OverflowHandler.DEFAULT_TIMEOUT_MS;
+	
+	/**
+	 * Min level of events kept with DROP_BELOW_LEVEL policy
+	 */
+	private Level overflowLevel = Level.ERROR;
+	
+	/**
+	 * Number of publisher threads
+	 */
+	private int publisherThreads = 1;
+	
+	/**
+	 * Order of events kept by several publisher threads
+	 */
+	private EventOrdering ordering = EventOrdering.NONE;
+	
+	/**
+	 * Queues to hold events , one shared by all publisher threads or one per thread if the order is kept.
+	 * Serve as an internal buffer for asynchronous message publishing , 
+	 * every queue is accessed through the handler applying the overflow policy
+	 */
+	private List<OverflowHandler<LogEvent>> partitions;
 	
 	/**
 	 * API access token
@@ -101,15 +208,20 @@ public class Corp2WorldAppender extends AbstractAppender {
 	 */
 	private String apiKey;
 	
+	/**
+	 * Directory of the spool of undelivered messages , null if disabled
+	 */
+	private String spoolDir;
+	
 	/**
 	 * Corp2World Service instance
 	 */
-	private HttpService service;
+	private Service service;
 	
 	/**
-	 * Internal message publishing thread
+	 * Internal message publishing threads
 	 */
-	private Thread publisherThread;
+	private final List<Thread> publishers = new ArrayList<Thread>();
 	
 	/**
 	 * Flag to control publisher thread
@@ -121,8 +233,33 @@ public class Corp2WorldAppender extends AbstractAppender {
 	 */
 	private Layout<? extends Serializable> topicLayout;
 	
+	/**
+	 * Per-thread buffers for rendering events
+	 */
+	private final transient ThreadLocal<EventRenderer> renderers = new ThreadLocal<EventRenderer>() {
+		@Override
+		protected EventRenderer initialValue() {
+			return new EventRenderer();
+		}
+	};
+	
 
 	
+	/**
+	 * Create new instance with the given arguments
+	 * @param name name
+	 * @param filter filter
+	 * @param layout layout
+	 * @param ignoreExceptions ignore exceptions flag
+	 * @param properties appender properties , may be null
+	 */
+	protected Corp2WorldAppender(String name, Filter filter, Layout<? extends Serializable> layout, 
+			boolean ignoreExceptions, Property[] properties) {
+		
+		super(name, filter, layout, ignoreExceptions, properties != null ? properties : Property.EMPTY_ARRAY);
+	}
+
+
 	/**
 	 * Create new instance with the given arguments
 	 * @param name name
@@ -133,7 +270,7 @@ public class Corp2WorldAppender extends AbstractAppender {
 	protected Corp2WorldAppender(String name, Filter filter, Layout<? extends Serializable> layout, 
 			boolean ignoreExceptions) {
 		
-		super(name, filter, layout, ignoreExceptions);
+		this(name, filter, layout, ignoreExceptions, Property.EMPTY_ARRAY);
 	}
 
 
@@ -145,7 +282,7 @@ public class Corp2WorldAppender extends AbstractAppender {
 	 */
 	protected Corp2WorldAppender(String name, Filter filter, Layout<? extends Serializable> layout) {
 		
-		super(name, filter, layout);
+		this(name, filter, layout, true, Property.EMPTY_ARRAY);
 	}
 
 
@@ -154,23 +291,29 @@ public class Corp2WorldAppender extends AbstractAppender {
 	 * Release resources
 	 */
 	@Override
-	public void stop() {
+	public boolean stop(long timeout, TimeUnit timeUnit) {
 		
-		super.stop();
+		boolean stopped = super.stop(timeout, timeUnit);
 		
 		try {
 			
 			if(isRunning)
 				isRunning = false;
 			
-			publisherThread.interrupt();
+			for(Thread publisherThread : publishers)
+				publisherThread.interrupt();
+			publishers.clear();
+			
+			unregisterMetrics();
 			
-			service.stop();
+			if(service != null)
+				service.stop();
 			
 		} catch(ServiceException e) {
 			LOGGER.warn("Error while stopping service: " + e.getMessage());
 		}
 		
+		return stopped;
 	}
 
 
@@ -191,14 +334,19 @@ public class Corp2WorldAppender extends AbstractAppender {
 			/*
 			 * Initialize buffer queue
 			 */
-			if(eventQueue == null || eventQueue.size() != queueSize)
-				eventQueue = new ArrayBlockingQueue<LogEvent>(queueSize);
+			if(partitions == null)
+				partitions = createPartitions();
 		
 			/*
 			 * Start publisher thread
 			 */
 			startPublisherThread();
 			
+			/*
+			 * Report queue depth and dropped events
+			 */
+			registerMetrics();
+			
 			super.start();
 			
 		} catch(ServiceException e) {
@@ -221,16 +369,10 @@ public class Corp2WorldAppender extends AbstractAppender {
 		if(isRunning) {
 			
 			/*
-			 * Try to offer the event to the queue
+			 * Offer the event to the queue , if the queue is full the event is handled according to the overflow policy 
+			 * and counted if dropped. Mutable events reused by log4j are copied as they are published later
 			 */
-			if(! eventQueue.offer(logEvent) ) {
-				
-				/*
-				 * If queue is full , print warning
-				 */
-				LOGGER.warn("The internal logging event buffer queue is full. Most likely the messages are not sent to the Corp2Wrold service. " +
-						"PLese check the appender configuration");
-			}
+			getPartition(logEvent).offer(logEvent.toImmutable(), logEvent.getLevel().isMoreSpecificThan(overflowLevel));
 		}
 	}
 	
@@ -246,6 +388,184 @@ public class Corp2WorldAppender extends AbstractAppender {
 	}
 
 	
+	/**
+	 * Set queue type, 'blocking' or 'ringBuffer'
+	 * @param queueType queue type
+	 */
+	protected void setQueueType(String queueType) {
+		this.queueType = queueType;
+	}
+	
+	
+	/**
+	 * Set publisher thread wait strategy used by ring buffer queue, 
+	 * 'sleeping', 'blocking', 'yielding' or 'busySpin'
+	 * @param waitStrategy wait strategy name
+	 */
+	protected void setWaitStrategy(String waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+	
+	
+	/**
+	 * Set max number of logging events sent in a single message.
+	 * Values greater than 1 enable batching
+	 * @param maxBatchEvents max number of events
+	 */
+	protected void setMaxBatchEvents(int maxBatchEvents) {
+		this.maxBatchEvents = maxBatchEvents;
+	}
+	
+	
+	/**
+	 * Set max size of a single message text in bytes when batching
+	 * @param maxBatchBytes max size in bytes
+	 */
+	protected void setMaxBatchBytes(int maxBatchBytes) {
+		this.maxBatchBytes = maxBatchBytes;
+	}
+	
+	
+	/**
+	 * Set max time in milliseconds to wait for more events when batching.
+	 * 0 means only events already waiting in the buffer are sent together
+	 * @param lingerMs linger time in milliseconds
+	 */
+	protected void setLingerMs(long lingerMs) {
+		this.lingerMs = lingerMs;
+	}
+	
+	
+	/**
+	 * Set what to do with logging events if the queue is full
+	 * @param overflowPolicy overflow policy
+	 */
+	protected void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+	
+	
+	/**
+	 * Set max time in milliseconds the logging thread waits for free space in the queue 
+	 * with {@link OverflowPolicy#BLOCK_WITH_TIMEOUT} policy
+	 * @param overflowTimeoutMs timeout in milliseconds
+	 */
+	protected void setOverflowTimeoutMs(long overflowTimeoutMs) {
+		this.overflowTimeoutMs = overflowTimeoutMs;
+	}
+	
+	
+	/**
+	 * Set min level of logging events kept with {@link OverflowPolicy#DROP_BELOW_LEVEL} policy
+	 * @param overflowLevel level
+	 */
+	protected void setOverflowLevel(Level overflowLevel) {
+		this.overflowLevel = overflowLevel;
+	}
+	
+	
+	/**
+	 * Set number of threads publishing messages in parallel
+	 * @param publisherThreads number of threads
+	 */
+	protected void setPublisherThreads(int publisherThreads) {
+		this.publisherThreads = Math.max(1, publisherThreads);
+	}
+	
+	
+	/**
+	 * Set order of events kept by several publisher threads
+	 * @param ordering event ordering
+	 */
+	protected void setOrdering(EventOrdering ordering) {
+		this.ordering = ordering;
+	}
+	
+	
+	/**
+	 * Get number of logging events waiting in the queues
+	 * @return number of queued events
+	 */
+	public long getQueueDepth() {
+		
+		long depth = 0;
+		if(partitions != null)
+			for(OverflowHandler<LogEvent> partition : partitions)
+				depth += partition.getQueue().size();
+		return depth;
+	}
+	
+	
+	/**
+	 * Register gauges of the queue depth and dropped events in the default metrics registry 
+	 * as 'appender.&lt;name&gt;.queueDepth' and 'appender.&lt;name&gt;.dropped'
+	 */
+	protected void registerMetrics() {
+		
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		
+		queueDepthGauge = new Gauge() {
+			@Override
+			public long getValue() {
+				return getQueueDepth();
+			}
+		};
+		droppedGauge = new Gauge() {
+			@Override
+			public long getValue() {
+				return getDroppedCount();
+			}
+		};
+		
+		registry.gauge(getMetricPrefix() + "queueDepth", queueDepthGauge);
+		registry.gauge(getMetricPrefix() + "dropped", droppedGauge);
+	}
+	
+	
+	/**
+	 * Remove gauges of this appender from the default metrics registry , 
+	 * gauges of the same name registered by another appender are kept
+	 */
+	protected void unregisterMetrics() {
+		
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		if(queueDepthGauge != null)
+			registry.remove(getMetricPrefix() + "queueDepth", queueDepthGauge);
+		if(droppedGauge != null)
+			registry.remove(getMetricPrefix() + "dropped", droppedGauge);
+	}
+	
+	
+	/*
+	 * Gauges registered by this appender
+	 */
+	private Gauge queueDepthGauge;
+	
+	private Gauge droppedGauge;
+	
+	
+	/*
+	 * Prefix of metric names of this appender and its service
+	 */
+	private String getMetricPrefix() {
+		return "appender." + (getName() != null ? getName() : "Corp2World") + ".";
+	}
+	
+	
+	/**
+	 * Get number of logging events dropped because the queue was full
+	 * @return number of dropped events
+	 */
+	public long getDroppedCount() {
+		
+		long count = 0;
+		if(partitions != null)
+			for(OverflowHandler<LogEvent> partition : partitions)
+				count += partition.getDroppedCount();
+		return count;
+	}
+	
+	
 	/**
 	 * Set Corp2World API access token.
 	 * This value will override the value provided in system properties (if any)
@@ -268,6 +588,15 @@ public class Corp2WorldAppender extends AbstractAppender {
 	}
 	
 	
+	/**
+	 * Set directory to keep messages which cannot be sent , spooling is disabled if null
+	 * @param spoolDir spool directory
+	 */
+	protected void setSpoolDir(String spoolDir) {
+		this.spoolDir = spoolDir;
+	}
+	
+	
 	/**
 	 * Set Topic Layout
 	 * @param layout layout used to format message topic
@@ -284,14 +613,80 @@ public class Corp2WorldAppender extends AbstractAppender {
 	
 		if(!isRunning) {
 
-			publisherThread = new PublisherThread();
-			
-			publisherThread.setDaemon(true);
-
 			isRunning = true;
-
-			publisherThread.start();
+			
+			for(int i = 0; i < publisherThreads; i++) {
+				
+				// Every thread consumes its own queue if the order is kept
+				Thread publisherThread = new PublisherThread(partitions.get(i % partitions.size()));
+				
+				publisherThread.setDaemon(true);
+				
+				publishers.add(publisherThread);
+				
+				publisherThread.start();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Create event queues of the configured type with their overflow handlers: 
+	 * a single queue if the order is not kept , otherwise a queue per publisher thread sharing the configured size
+	 * @return queue handlers
+	 */
+	protected List<OverflowHandler<LogEvent>> createPartitions() {
+		
+		int count = ordering == EventOrdering.NONE ? 1 : publisherThreads;
+		int capacity = Math.max(1, (queueSize + count - 1) / count);
+		
+		List<OverflowHandler<LogEvent>> queues = new ArrayList<OverflowHandler<LogEvent>>(count);
+		for(int i = 0; i < count; i++)
+			queues.add(new OverflowHandler<LogEvent>(createEventQueue(capacity), overflowPolicy, overflowTimeoutMs, 
+					OverflowHandler.DEFAULT_REPORT_INTERVAL_MS));
+		
+		return queues;
+	}
+	
+	
+	/**
+	 * Create event queue of the configured type , or blocking queue if the configuration is invalid
+	 * @param capacity max number of events
+	 * @return event queue
+	 */
+	protected EventQueue<LogEvent> createEventQueue(int capacity) {
+		
+		try {
+			return EventQueueFactory.createQueue(queueType, capacity, waitStrategy);
+		} catch(IllegalArgumentException e) {
+			LOGGER.error("Invalid Corp2World appender queue configuration: " + e.getMessage() + ". Blocking queue will be used.");
+			return EventQueueFactory.createQueue(EventQueueFactory.BLOCKING, capacity, null);
+		}
+	}
+	
+	
+	/**
+	 * Get queue the logging event is added to according to the event ordering
+	 * @param event logging event
+	 * @return queue handler
+	 */
+	protected OverflowHandler<LogEvent> getPartition(LogEvent event) {
+		
+		if(partitions.size() == 1)
+			return partitions.get(0);
+		
+		if(ordering == EventOrdering.TOPIC) {
+			// Topic is rendered into the buffer of the logging thread , only to route the event
+			EventRenderer renderer = renderers.get();
+			try {
+				formatTopic(event, renderer.getTopic());
+				return partitions.get(EventOrdering.partition(renderer.getTopic(), partitions.size()));
+			} finally {
+				renderer.clear();
+			}
 		}
+		
+		return partitions.get(EventOrdering.partition(event.getLoggerName(), partitions.size()));
 	}
 	
 	
@@ -310,10 +705,23 @@ public class Corp2WorldAppender extends AbstractAppender {
 		else
 			synchronized(this) {
 				if(service == null) {
-					service = new HttpService();
-					service.setApiToken(apiToken);
-					service.setApiKey(apiKey);
-					service.start();
+					HttpService httpService = new HttpService();
+					httpService.setMetricsPrefix(getMetricPrefix());
+					httpService.setApiToken(apiToken);
+					httpService.setApiKey(apiKey);
+					
+					Service created = httpService;
+					if(Boolean.getBoolean(CircuitBreakerService.ENABLED))
+						created = new CircuitBreakerService(created);
+					if(spoolDir != null && spoolDir.trim().length() > 0)
+						created = new SpoolingService(created, new File(spoolDir.trim()));
+					if(Boolean.getBoolean(RateLimitingService.ENABLED))
+						created = new RateLimitingService(created);
+					if(Boolean.getBoolean(DeduplicatingService.ENABLED))
+						created = new DeduplicatingService(created);
+					
+					created.start();
+					service = created;
 				}
 			}
 		
@@ -326,25 +734,121 @@ public class Corp2WorldAppender extends AbstractAppender {
 	 * @param event logging event
 	 */
 	protected void publishMessage(LogEvent event) {
-
-		String messageTopic = null;
-		if(topicLayout != null)
-			messageTopic = new String( topicLayout.toByteArray(event) );
-		else
-			messageTopic = DEFAULT_TOPIC;
 		
+		EventRenderer renderer = renderers.get();
+		
+		try {
+			formatTopic(event, renderer.getTopic());
+			formatText(event, renderer.getText());
+			send(new Message(renderer.getTopic().toString(), renderer.getText().toString()));
+		} finally {
+			renderer.clear();
+		}
+	}
+	
+	
+	/**
+	 * This method publishes the given logging event and events waiting in the buffer 
+	 * to Corp2World service as a single message
+	 * @param first the first logging event of the batch
+	 * @param eventQueue queue to take more events from
+	 * @throws InterruptedException if publisher thread is interrupted while waiting for events, 
+	 * events gathered so far are published
+	 */
+	protected void publishBatch(LogEvent first, EventQueue<LogEvent> eventQueue) throws InterruptedException {
+		
+		MessageBatch batch = new MessageBatch(maxBatchEvents, maxBatchBytes);
+		EventRenderer renderer = renderers.get();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+		
+		try {
+			
+			LogEvent event = first;
+			
+			while(event != null) {
+				
+				formatTopic(event, renderer.getTopic());
+				formatText(event, renderer.getText());
+				
+				// Send full batch and start the next one with this event
+				if(!batch.add(renderer.getTopic(), renderer.getText())) {
+					send(batch.toMessage());
+					batch.clear();
+					batch.add(renderer.getTopic(), renderer.getText());
+				}
+				
+				renderer.clear();
+				
+				if(batch.isFull())
+					break;
+				
+				// Take the next available event , or wait for it until linger time expires
+				event = eventQueue.poll();
+				if(event == null) {
+					long remaining = deadline - System.nanoTime();
+					if(remaining > 0)
+						event = eventQueue.poll(remaining, TimeUnit.NANOSECONDS);
+				}
+			}
+			
+		} finally {
+			renderer.clear();
+			if(!batch.isEmpty())
+				send(batch.toMessage());
+		}
+	}
+	
+	
+	/**
+	 * Format message topic of the logging event
+	 * @param event logging event
+	 * @param topic buffer to append the topic to
+	 */
+	protected void formatTopic(LogEvent event, StringBuilder topic) {
 		
-		StringBuilder messageText = new StringBuilder();
+		if(topicLayout != null)
+			renderers.get().render(topicLayout, event, topic);
+		else
+			topic.append(DEFAULT_TOPIC);
+	}
+	
+	
+	/**
+	 * Format message text of the logging event
+	 * @param event logging event
+	 * @param text buffer to append the text to
+	 */
+	protected void formatText(LogEvent event, StringBuilder text) {
 		
 		if(getLayout() != null) 
-			messageText = new StringBuilder ( new String(getLayout().toByteArray(event) ) );
+			renderers.get().render(getLayout(), event, text);
 		else
-			messageText.append(event.getMessage().getFormattedMessage());
-
+			renderers.get().renderMessage(event, text);
+	}
+	
+	
+	/**
+	 * Report logging events dropped since the last report
+	 * @param count number of dropped events
+	 */
+	protected void reportDropped(long count) {
+		
+		if(count > 0)
+			LOGGER.warn(count + " logging events were dropped because the internal buffer queue is full (overflow policy " + 
+					overflowPolicy + "). Most likely the messages are not sent to the Corp2World service fast enough. " +
+					"Please check the appender configuration");
+	}
+	
+	
+	/*
+	 * Send message to Corp2World service
+	 */
+	private void send(Message message) {
 		
 		try {
-			Message message = new Message(messageTopic, messageText.toString());
 			getService().send(message);
+		}catch(CircuitOpenException e) {
+			// Rejected messages are counted by the circuit breaker , which reports when it opens and closes
 		}catch(ServiceException e) {
 			LOGGER.error("Cannot send message to Corp2World service: " + e.getMessage(), e);
 		}
@@ -356,33 +860,91 @@ public class Corp2WorldAppender extends AbstractAppender {
 	 *
 	 */
 	private class PublisherThread extends Thread {
+		
+		/*
+		 * Queue consumed by this thread
+		 */
+		private final OverflowHandler<LogEvent> partition;
+		
+		private PublisherThread(OverflowHandler<LogEvent> partition) {
+			this.partition = partition;
+		}
 
 		public void run() {
 			
+			EventQueue<LogEvent> eventQueue = partition.getQueue();
+			
 			while(isRunning) {
 				
 				try {
-					publishMessage( eventQueue.take() );
+					
+					// Wake up regularly to report dropped events
+					LogEvent event = eventQueue.poll(OverflowHandler.DEFAULT_REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+					
+					if(event != null) {
+						if(maxBatchEvents > 1)
+							publishBatch(event, eventQueue);
+						else
+							publishMessage(event);
+					}
+					
 				}catch(InterruptedException e) {
 					LOGGER.debug("Internal publisher thread is interrupted");
 				}
 				
+				reportDropped(partition.checkDropped());
 			}
 			
+			reportDropped(partition.flushDropped());
+			
 			LOGGER.debug("Terminating internal publisher thread");
 		}
 	}
 	
 	
+	/**
+	 * Create new Corp2WorldAppender instance with the default queue
+	 * @param name appender name
+	 * @param ignore if ignore exceptions
+	 * @param bufferSizeStr internal buffer size as number of log events
+	 * @param apiToken Corp2World API access token
+	 * @param apiKey Corp2World API access key
+	 * @param topicPattern message topic pattern
+	 * @param layout layout
+	 * @param filter filter
+	 * @return appender instance
+	 */
+	public static Corp2WorldAppender createAppender(String name, String ignore, String bufferSizeStr, String apiToken, 
+			String apiKey, String topicPattern, Layout<? extends Serializable> layout, Filter filter) {
+		
+		return createAppender(name, ignore, bufferSizeStr, null, null, null, null, null, null, null, null, null, null, null, 
+				apiToken, apiKey, topicPattern, layout, filter, null);
+	}
+	
+	
 	/**
 	 * Create new Corp2WorldAppender instance
 	 * @param name appender name
 	 * @param ignore if ignore exceptions
 	 * @param bufferSizeStr internal buffer size as number of log events
+	 * @param queueType internal buffer type, 'blocking' (default) or 'ringBuffer'
+	 * @param waitStrategy publisher thread wait strategy for ring buffer, 'sleeping' (default), 'blocking', 'yielding' or 'busySpin'
+	 * @param maxBatchEventsStr max number of events sent in a single message, batching is disabled if not specified
+	 * @param maxBatchBytesStr max size of a single message text in bytes when batching
+	 * @param lingerMsStr max time in milliseconds to wait for more events when batching
+	 * @param overflowPolicyStr what to do with events if the buffer is full: 'DROP_NEWEST' (default), 'DROP_OLDEST', 
+	 * 'BLOCK_WITH_TIMEOUT' or 'DROP_BELOW_LEVEL'
+	 * @param overflowTimeoutMsStr max time in milliseconds to wait for free space with 'BLOCK_WITH_TIMEOUT' policy
+	 * @param overflowLevelStr min level of events kept with 'DROP_BELOW_LEVEL' policy , ERROR if not specified
+	 * @param publisherThreadsStr number of threads publishing messages in parallel , 1 if not specified
+	 * @param orderingStr order of events kept by several publisher threads: 'NONE' (default), 'LOGGER' or 'TOPIC'
+	 * @param spoolDir directory to keep messages which cannot be sent , spooling is disabled if not specified
 	 * @param apiToken Corp2World API access token
 	 * @param apiKey Corp2World API access key
+	 * @param topicPattern message topic pattern
 	 * @param layout layout
 	 * @param filter filter
+	 * @param properties appender properties
 	 * @return appender instance
 	 */
 	@PluginFactory
@@ -390,11 +952,23 @@ public class Corp2WorldAppender extends AbstractAppender {
 			@PluginAttribute("name") final String name,
 			@PluginAttribute("ignoreExceptions") final String ignore,
 			@PluginAttribute("bufferSize") final String bufferSizeStr,
+			@PluginAttribute("queueType") final String queueType,
+			@PluginAttribute("waitStrategy") final String waitStrategy,
+			@PluginAttribute("maxBatchEvents") final String maxBatchEventsStr,
+			@PluginAttribute("maxBatchBytes") final String maxBatchBytesStr,
+			@PluginAttribute("lingerMs") final String lingerMsStr,
+			@PluginAttribute("overflowPolicy") final String overflowPolicyStr,
+			@PluginAttribute("overflowTimeoutMs") final String overflowTimeoutMsStr,
+			@PluginAttribute("overflowLevel") final String overflowLevelStr,
+			@PluginAttribute("publisherThreads") final String publisherThreadsStr,
+			@PluginAttribute("ordering") final String orderingStr,
+			@PluginAttribute("spoolDir") final String spoolDir,
 			@PluginAttribute("apiToken") final String apiToken,
 			@PluginAttribute("apiKey") final String apiKey,
 			@PluginAttribute("topicPattern") final String topicPattern,
 			@PluginElement("Layout") Layout<? extends Serializable> layout,
-			@PluginElement("Filter") final Filter filter
+			@PluginElement("Filter") final Filter filter,
+			@PluginElement("Properties") final Property[] properties
 			) {
 		
 		/*
@@ -425,8 +999,33 @@ public class Corp2WorldAppender extends AbstractAppender {
 		/*
 		 * Create instance and set the properties
 		 */
-		Corp2WorldAppender appender = new Corp2WorldAppender(name, filter, layout, ignoreExceptions);
+		Corp2WorldAppender appender = new Corp2WorldAppender(name, filter, layout, ignoreExceptions, properties);
 		appender.setQueueSize(queueSize);
+		if(queueType != null)
+			appender.setQueueType(queueType);
+		if(waitStrategy != null)
+			appender.setWaitStrategy(waitStrategy);
+		appender.setMaxBatchEvents(Integers.parseInt(maxBatchEventsStr, 1));
+		appender.setMaxBatchBytes(Integers.parseInt(maxBatchBytesStr, MessageBatch.DEFAULT_MAX_BYTES));
+		appender.setLingerMs(Integers.parseInt(lingerMsStr, 0));
+		if(overflowPolicyStr != null) {
+			try {
+				appender.setOverflowPolicy(OverflowPolicy.parse(overflowPolicyStr));
+			} catch(IllegalArgumentException e) {
+				LOGGER.error("Invalid Corp2World appender configuration: " + e.getMessage() + ". Events will be dropped if the buffer is full.");
+			}
+		}
+		appender.setOverflowTimeoutMs(Integers.parseInt(overflowTimeoutMsStr, (int) OverflowHandler.DEFAULT_TIMEOUT_MS));
+		appender.setOverflowLevel(Level.toLevel(overflowLevelStr, Level.ERROR));
+		appender.setPublisherThreads(Integers.parseInt(publisherThreadsStr, 1));
+		if(orderingStr != null) {
+			try {
+				appender.setOrdering(EventOrdering.parse(orderingStr));
+			} catch(IllegalArgumentException e) {
+				LOGGER.error("Invalid Corp2World appender configuration: " + e.getMessage() + ". Events will be published in any order.");
+			}
+		}
+		appender.setSpoolDir(spoolDir);
 		appender.setApiToken(apiToken);
 		appender.setApiKey(apiKey);
 		
@@ -0,0 +1,212 @@
+package com.c2w.client.log4j2;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.StringLayout;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.layout.ByteBufferDestinationHelper;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+/**
+ * Renders logging events into reusable text buffers without per-event allocations.
+ * <p>
+ * {@link PatternLayout} renders directly into the buffer. Other layouts are encoded into a reusable byte buffer 
+ * through {@link ByteBufferDestination} and decoded with the layout charset. Events without layout are formatted 
+ * with {@link StringBuilderFormattable} if the message supports it.
+ * </p>
+ * Every thread must use its own instance.
+ */
+final class EventRenderer {
+
+	/*
+	 * Initial size of the text buffers
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+	
+	/*
+	 * Max size of text buffers kept between events, larger buffers are released
+	 */
+	private static final int MAX_BUFFER_SIZE = 64 * 1024;
+	
+	/*
+	 * Topic buffer
+	 */
+	private final StringBuilder topic = new StringBuilder(INITIAL_BUFFER_SIZE);
+	
+	/*
+	 * Text buffer
+	 */
+	private StringBuilder text = new StringBuilder(INITIAL_BUFFER_SIZE);
+	
+	/*
+	 * Destination of encoded layouts
+	 */
+	private final DecodingDestination destination = new DecodingDestination();
+	
+	
+	/**
+	 * Get topic buffer , empty before the event is rendered
+	 * @return topic buffer
+	 */
+	StringBuilder getTopic() {
+		return topic;
+	}
+	
+	/**
+	 * Get text buffer , empty before the event is rendered
+	 * @return text buffer
+	 */
+	StringBuilder getText() {
+		return text;
+	}
+	
+	/**
+	 * Render the event with the given layout
+	 * @param layout layout
+	 * @param event logging event
+	 * @param target buffer to append the result to
+	 */
+	void render(Layout<? extends Serializable> layout, LogEvent event, StringBuilder target) {
+		
+		if(layout instanceof PatternLayout) {
+			((PatternLayout) layout).serialize(event, target);
+			return;
+		}
+		
+		Charset charset = layout instanceof StringLayout ? ((StringLayout) layout).getCharset() : StandardCharsets.UTF_8;
+		destination.begin(charset, target);
+		layout.encode(event, destination);
+		destination.end();
+	}
+	
+	/**
+	 * Append formatted message of the event
+	 * @param event logging event
+	 * @param target buffer to append the message to
+	 */
+	void renderMessage(LogEvent event, StringBuilder target) {
+		
+		Message message = event.getMessage();
+		
+		if(message instanceof StringBuilderFormattable)
+			((StringBuilderFormattable) message).formatTo(target);
+		else
+			target.append(message.getFormattedMessage());
+	}
+	
+	/**
+	 * Clear buffers after the event is sent, release too large buffers
+	 */
+	void clear() {
+		
+		topic.setLength(0);
+		
+		if(text.capacity() > MAX_BUFFER_SIZE)
+			text = new StringBuilder(INITIAL_BUFFER_SIZE);
+		else
+			text.setLength(0);
+	}
+	
+	
+	/**
+	 * Byte buffer destination decoding bytes into the text buffer as the buffer fills up
+	 */
+	private static class DecodingDestination implements ByteBufferDestination {
+		
+		private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+		
+		private final CharBuffer chars = CharBuffer.allocate(8192);
+		
+		private CharsetDecoder decoder;
+		
+		private StringBuilder target;
+		
+		/*
+		 * Start decoding into the given buffer
+		 */
+		private void begin(Charset charset, StringBuilder target) {
+			
+			if(decoder == null || !decoder.charset().equals(charset))
+				decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			
+			decoder.reset();
+			bytes.clear();
+			this.target = target;
+		}
+		
+		/*
+		 * Decode remaining bytes
+		 */
+		private void end() {
+			
+			bytes.flip();
+			decode(true);
+			
+			while(decoder.flush(chars).isOverflow())
+				flushChars();
+			flushChars();
+			
+			bytes.clear();
+			target = null;
+		}
+		
+		@Override
+		public ByteBuffer getByteBuffer() {
+			return bytes;
+		}
+
+		@Override
+		public ByteBuffer drain(ByteBuffer buffer) {
+			
+			buffer.flip();
+			decode(false);
+			buffer.compact();
+			
+			return buffer;
+		}
+
+		@Override
+		public void writeBytes(ByteBuffer data) {
+			ByteBufferDestinationHelper.writeToUnsynchronized(data, this);
+		}
+
+		@Override
+		public void writeBytes(byte[] data, int offset, int length) {
+			ByteBufferDestinationHelper.writeToUnsynchronized(data, offset, length, this);
+		}
+		
+		/*
+		 * Decode available bytes , incomplete characters are left in the byte buffer
+		 */
+		private void decode(boolean endOfInput) {
+			
+			CoderResult result;
+			do {
+				result = decoder.decode(bytes, chars, endOfInput);
+				flushChars();
+			} while(result.isOverflow());
+		}
+		
+		/*
+		 * Move decoded characters to the target buffer
+		 */
+		private void flushChars() {
+			chars.flip();
+			target.append(chars);
+			chars.clear();
+		}
+	}
+}
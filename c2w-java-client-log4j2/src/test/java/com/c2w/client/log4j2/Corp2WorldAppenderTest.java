@@ -11,6 +11,7 @@ import mockit.integration.junit4.JMockit;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Property;
 import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.apache.logging.log4j.message.ObjectMessage;
@@ -96,6 +97,100 @@ public class Corp2WorldAppenderTest {
 	}
 
 
+	@Test
+	public void testAppendRingBuffer() throws ServiceException {
+		
+		appender = Corp2WorldAppender.createAppender(name,"true", "100", "ringBuffer", "blocking", null, null, null, null, null, null, null, null, null, "API|0011...", "AABBCC...", "%-5p message",
+				PatternLayout.newBuilder().withPattern("%d %-5p [%t] %C{2} (%F:%L) - %m%n").build(), null,
+				new Property[] { Property.createProperty("tenant", "ops") });
+		
+		LogEvent event = Log4jLogEvent.createEvent(
+				"com.c2w.client.log4j2.Corp2WorldAppenderTest", null,
+				"com.c2w.client.log4j2.Corp2WorldAppenderTest", Level.ERROR,
+				new ObjectMessage("Test ERROR Message"), null, null, null, null, 
+				Thread.currentThread().getName(), null, System.currentTimeMillis());
+		
+		// Properties of the configuration are kept by the appender
+		assertEquals(1, appender.getPropertyArray().length);
+		assertEquals("ops", appender.getPropertyArray()[0].getValue());
+				
+		appender.start();
+		
+		for(int i = 0; i < 3; i++)
+			appender.append(event);
+		
+		try {
+			Thread.sleep(1000);
+		} catch (InterruptedException e) {
+		}
+		
+		appender.stop();
+		
+		new Verifications() {{
+			service.send(withInstanceOf(com.c2w.client.core.message.Message.class)); times=3;
+		}};
+	}
+
+
+	@Test
+	public void testAppendBatch() throws ServiceException {
+		
+		appender = Corp2WorldAppender.createAppender(name,"true", "100", null, null, "10", "65536", "500", null, null, null, null, null, null, "API|0011...", "AABBCC...", "%-5p message",
+				PatternLayout.newBuilder().withPattern("%d %-5p [%t] %C{2} (%F:%L) - %m%n").build(), null, null);
+		
+		LogEvent event = Log4jLogEvent.createEvent(
+				"com.c2w.client.log4j2.Corp2WorldAppenderTest", null,
+				"com.c2w.client.log4j2.Corp2WorldAppenderTest", Level.ERROR,
+				new ObjectMessage("Test ERROR Message"), null, null, null, null, 
+				Thread.currentThread().getName(), null, System.currentTimeMillis());
+				
+		appender.start();
+		
+		for(int i = 0; i < 5; i++)
+			appender.append(event);
+		
+		try {
+			Thread.sleep(1500);
+		} catch (InterruptedException e) {
+		}
+		
+		appender.stop();
+		
+		new Verifications() {{
+			service.send(withInstanceOf(com.c2w.client.core.message.Message.class)); times=1;
+		}};
+	}
+
+
+	@Test
+	public void testAppendParallel() throws ServiceException {
+		
+		appender = Corp2WorldAppender.createAppender(name,"true", "100", null, null, null, null, null, null, null, null, "4", "TOPIC", null, "API|0011...", "AABBCC...", "%c message",
+				PatternLayout.newBuilder().withPattern("%d %-5p [%t] %C{2} (%F:%L) - %m%n").build(), null, null);
+		
+		appender.start();
+		
+		for(int i = 0; i < 12; i++)
+			appender.append(Log4jLogEvent.createEvent(
+					"com.c2w.client.log4j2.Logger" + (i % 3), null,
+					"com.c2w.client.log4j2.Corp2WorldAppenderTest", Level.ERROR,
+					new ObjectMessage("Test ERROR Message " + i), null, null, null, null, 
+					Thread.currentThread().getName(), null, System.currentTimeMillis()));
+		
+		try {
+			Thread.sleep(1000);
+		} catch (InterruptedException e) {
+		}
+		
+		appender.stop();
+		
+		assertEquals(0, appender.getDroppedCount());
+		new Verifications() {{
+			service.send(withInstanceOf(com.c2w.client.core.message.Message.class)); times=12;
+		}};
+	}
+
+
 	@Test
 	public void testCreateAppender() {
 		assertEquals(appender.getName(), name);
@@ -0,0 +1,84 @@
+package com.c2w.client.log4j2;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.AbstractStringLayout;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Test;
+
+/**
+ * Unit test case for {@link com.c2w.client.log4j2.EventRenderer}
+ */
+public class EventRendererTest {
+
+	private EventRenderer renderer = new EventRenderer();
+	
+	@Test
+	public void testPatternLayout() {
+		
+		PatternLayout layout = PatternLayout.newBuilder().withPattern("%-5p %m").build();
+		
+		renderer.render(layout, event("Disk is full"), renderer.getText());
+		assertEquals("ERROR Disk is full", renderer.getText().toString());
+		
+		renderer.clear();
+		assertEquals(0, renderer.getText().length());
+	}
+	
+	@Test
+	public void testMessageWithoutLayout() {
+		
+		LogEvent event = Log4jLogEvent.newBuilder().setLevel(Level.ERROR)
+				.setMessage(new ParameterizedMessage("Disk {} is {}% full", "/var", 99)).build();
+		
+		renderer.renderMessage(event, renderer.getText());
+		assertEquals("Disk /var is 99% full", renderer.getText().toString());
+	}
+	
+	/**
+	 * Layouts other than pattern layout are encoded and decoded with the layout charset.
+	 * Text larger than the byte buffer is decoded in parts
+	 */
+	@Test
+	public void testEncodedLayout() {
+		
+		StringBuilder text = new StringBuilder();
+		while(text.length() < 20000)
+			text.append("Stra\u00dfe \u20ac \ud83d\ude00 ");
+		
+		for(Charset charset : new Charset[] {StandardCharsets.UTF_8, StandardCharsets.UTF_16}) {
+			renderer.render(new MessageLayout(charset), event(text.toString()), renderer.getText());
+			assertEquals(text.toString(), renderer.getText().toString());
+			renderer.clear();
+		}
+	}
+	
+	
+	private LogEvent event(String message) {
+		return Log4jLogEvent.newBuilder().setLevel(Level.ERROR).setMessage(new SimpleMessage(message)).build();
+	}
+	
+	
+	/**
+	 * Layout writing message only , encoded with the default encoding of string layouts
+	 */
+	private static class MessageLayout extends AbstractStringLayout {
+		
+		private MessageLayout(Charset charset) {
+			super(charset);
+		}
+
+		@Override
+		public String toSerializable(LogEvent event) {
+			return event.getMessage().getFormattedMessage();
+		}
+	}
+}